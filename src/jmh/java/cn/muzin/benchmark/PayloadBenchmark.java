@@ -0,0 +1,128 @@
+package cn.muzin.benchmark;
+
+import cn.muzin.WechatAPI;
+import cn.muzin.mass.MassMessage;
+import cn.muzin.template.TemplateMessageBatch;
+import cn.muzin.template.TemplatePayload;
+import com.google.gson.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求 JSON 的构建、序列化与响应解析，传输层不进行网络请求
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadBenchmark {
+
+    /**
+     * 群发的 openid 数量
+     */
+    @Param({"100", "10000"})
+    public int receivers;
+
+    private WechatAPI api;
+
+    private Map<String, Object> templateData;
+
+    private Map<String, Object> miniprogram;
+
+    private Map<String, Object> massOpts;
+
+    private List<String> openids;
+
+    private TemplatePayload templatePayload;
+
+    private MassMessage massMessage;
+
+    @Setup
+    public void setup() {
+        api = new WechatAPI("appid", "appsecret", new StubTransport());
+        api.ensureAccessToken();
+
+        templateData = new HashMap<String, Object>();
+        for (String key : new String[]{"first", "keyword1", "keyword2", "keyword3", "remark"}) {
+            Map<String, Object> item = new HashMap<String, Object>();
+            item.put("value", "模板消息内容 " + key);
+            item.put("color", "#173177");
+            templateData.put(key, item);
+        }
+        miniprogram = new HashMap<String, Object>();
+        miniprogram.put("appid", "xiaochengxuappid12345");
+        miniprogram.put("pagepath", "index?foo=bar");
+
+        massOpts = new HashMap<String, Object>();
+        Map<String, Object> text = new HashMap<String, Object>();
+        text.put("content", "群发消息内容");
+        massOpts.put("text", text);
+        massOpts.put("msgtype", "text");
+
+        openids = new ArrayList<String>(receivers);
+        for (int i = 0; i < receivers; i++) {
+            openids.add("oOAKn1EqJnrnOWP_pU4Z4Dt" + String.format("%05d", i));
+        }
+
+        // 与 templateData 相同的内容，keyword1~3 为逐个用户填入的字段
+        templatePayload = new TemplateMessageBatch(api)
+                .setTemplateId("ngqIpbwh8bUfcSsECmogfXcV14J0tQlEpBO27izEYtY")
+                .setUrl("http://weixin.qq.com/download")
+                .setMiniprogram("xiaochengxuappid12345", "index?foo=bar")
+                .setColor("#FF0000")
+                .addData("first", "模板消息内容 first", "#173177")
+                .addField("keyword1", "#173177")
+                .addField("keyword2", "#173177")
+                .addField("keyword3", "#173177")
+                .addData("remark", "模板消息内容 remark", "#173177")
+                .compile();
+
+        massMessage = MassMessage.text("群发消息内容").toUsers(openids).build();
+    }
+
+    @Benchmark
+    public JsonObject sendTemplate() {
+        return api.sendTemplate("oOAKn1EqJnrnOWP_pU4Z4DtaZ3Zk", "ngqIpbwh8bUfcSsECmogfXcV14J0tQlEpBO27izEYtY",
+                "http://weixin.qq.com/download", "#FF0000", templateData, miniprogram);
+    }
+
+    @Benchmark
+    public JsonObject sendTemplatePayload() {
+        return api.sendTemplate(templatePayload.render("oOAKn1EqJnrnOWP_pU4Z4DtaZ3Zk",
+                "模板消息内容 keyword1", "模板消息内容 keyword2", "模板消息内容 keyword3"));
+    }
+
+    @Benchmark
+    public byte[] renderTemplatePayload() {
+        return templatePayload.render("oOAKn1EqJnrnOWP_pU4Z4DtaZ3Zk",
+                "模板消息内容 keyword1", "模板消息内容 keyword2", "模板消息内容 keyword3");
+    }
+
+    @Benchmark
+    public JsonObject massSend() {
+        return api.massSend(massOpts, openids);
+    }
+
+    @Benchmark
+    public JsonObject massSendMessage() {
+        return api.massSend(massMessage);
+    }
+
+}
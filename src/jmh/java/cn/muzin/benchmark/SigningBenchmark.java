@@ -0,0 +1,96 @@
+package cn.muzin.benchmark;
+
+import cn.muzin.WechatAPI;
+import cn.muzin.entity.JsConfig;
+import cn.muzin.util.CryptoUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JS-SDK 与卡券签名相关的本地计算
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SigningBenchmark {
+
+    private static final String TICKET = "bxLdikRXVbTPdHSM05e5u5sUoXNKd8-41ZO3MhKoyN5OfkWITDGgnr2fwJ0m9E8NYzWKVZvdVtaUgWvsdshFKA";
+
+    private WechatAPI api;
+
+    private Map<String, String> rawArgs;
+
+    private Map<String, Object> jsConfigParam;
+
+    private byte[] digest;
+
+    @Setup
+    public void setup() {
+        api = new WechatAPI("appid", "appsecret", new StubTransport());
+        // 预先获取 ticket，getJsConfig 只测量签名与组装
+        api.ensureTicket("jsapi");
+
+        rawArgs = new HashMap<String, String>();
+        rawArgs.put("jsapi_ticket", TICKET);
+        rawArgs.put("noncestr", "Wm3WZYTPz0wzccnW");
+        rawArgs.put("timestamp", "1414587457");
+        rawArgs.put("url", "http://mp.weixin.qq.com?params=value");
+
+        jsConfigParam = new HashMap<String, Object>();
+        jsConfigParam.put("debug", false);
+        jsConfigParam.put("jsApiList", Arrays.asList("onMenuShareTimeline", "onMenuShareAppMessage"));
+        jsConfigParam.put("url", "http://www.xxx.com");
+
+        digest = new byte[20];
+        for (int i = 0; i < digest.length; i++) {
+            digest[i] = (byte) (i * 13);
+        }
+    }
+
+    @Benchmark
+    public String ticketSign() {
+        return api.ticketSign("Wm3WZYTPz0wzccnW", TICKET, "1414587457", "http://mp.weixin.qq.com?params=value");
+    }
+
+    @Benchmark
+    public String signCardExt() {
+        return api.signCardExt(TICKET, "p-hXXXXXXX", "1414587457", "1234", "111111", "100");
+    }
+
+    @Benchmark
+    public String raw() {
+        return WechatAPI.raw(rawArgs);
+    }
+
+    @Benchmark
+    public String createNonceStr() {
+        return WechatAPI.createNonceStr();
+    }
+
+    @Benchmark
+    public String byteToStr() {
+        return CryptoUtils.byteToStr(digest);
+    }
+
+    @Benchmark
+    public JsConfig getJsConfig() {
+        return api.getJsConfig(jsConfigParam);
+    }
+
+}
@@ -0,0 +1,72 @@
+package cn.muzin.benchmark;
+
+import cn.muzin.http.BinaryResponse;
+import cn.muzin.http.WechatHttpTransport;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Map;
+
+/**
+ * 不进行网络请求的传输层，按接口返回固定响应，用于只测量本地开销的基准测试
+ */
+public class StubTransport implements WechatHttpTransport {
+
+    private static final String TOKEN = "{\"access_token\":\"TOKEN\",\"expires_in\":7200}";
+
+    private static final String TICKET = "{\"errcode\":0,\"errmsg\":\"ok\",\"ticket\":\"bxLdikRXVbTPdHSM05e5u5sUoXNKd8-41ZO3MhKoyN5OfkWITDGgnr2fwJ0m9E8NYzWKVZvdVtaUgWvsdshFKA\",\"expires_in\":7200}";
+
+    private static final String OK = "{\"errcode\":0,\"errmsg\":\"ok\",\"msg_id\":34182}";
+
+    /**
+     * 最近一次请求体的长度，防止 JIT 消除请求体构建
+     */
+    private volatile int lastBodyLength;
+
+    public int getLastBodyLength() {
+        return lastBodyLength;
+    }
+
+    private static String respond(String url) {
+        if (url.contains("cgi-bin/token")) {
+            return TOKEN;
+        }
+        if (url.contains("ticket/getticket")) {
+            return TICKET;
+        }
+        return OK;
+    }
+
+    @Override
+    public String get(String url, Map<String, String> headers) {
+        return respond(url);
+    }
+
+    @Override
+    public String postJson(String url, String body) {
+        lastBodyLength = body.length();
+        return respond(url);
+    }
+
+    @Override
+    public String postFormData(String url, Map<String, Object> param) {
+        return respond(url);
+    }
+
+    @Override
+    public String postFile(String url, File file) {
+        return respond(url);
+    }
+
+    @Override
+    public BinaryResponse download(String url, String jsonBody) {
+        byte[] bytes = respond(url).getBytes();
+        return new BinaryResponse(200, "application/json", bytes.length, new ByteArrayInputStream(bytes), null);
+    }
+
+    @Override
+    public void close() {
+
+    }
+
+}
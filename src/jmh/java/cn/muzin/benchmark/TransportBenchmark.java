@@ -0,0 +1,112 @@
+package cn.muzin.benchmark;
+
+import cn.muzin.WechatAPI;
+import cn.muzin.http.ApacheHttpTransport;
+import cn.muzin.http.JdkHttpTransport;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对进程内 HTTP 服务的完整请求/响应周期，衡量传输层与 WechatAPI 的额外开销
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class TransportBenchmark {
+
+    private static final byte[] TOKEN = "{\"access_token\":\"TOKEN\",\"expires_in\":7200}".getBytes();
+
+    private static final byte[] OK = "{\"errcode\":0,\"errmsg\":\"ok\"}".getBytes();
+
+    private static final String BODY = "{\"touser\":\"OPENID\",\"msgtype\":\"text\",\"text\":{\"content\":\"Hello World\"}}";
+
+    private HttpServer server;
+
+    private String baseUrl;
+
+    private ApacheHttpTransport apache;
+
+    private JdkHttpTransport jdk;
+
+    private WechatAPI api;
+
+    @Setup
+    public void setup() throws IOException {
+        // 关闭 Nagle 算法，否则小响应会叠加 40ms 的延迟确认
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                InputStream in = exchange.getRequestBody();
+                byte[] buffer = new byte[8192];
+                while (in.read(buffer) != -1) {
+                }
+                byte[] response = exchange.getRequestURI().getPath().endsWith("/token") ? TOKEN : OK;
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, response.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(response);
+                out.close();
+            }
+        });
+        server.setExecutor(Executors.newFixedThreadPool(16));
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        apache = new ApacheHttpTransport();
+        jdk = new JdkHttpTransport();
+        api = new WechatAPI("appid", "appsecret", new ApacheHttpTransport()).setBaseUrl(baseUrl);
+        api.ensureAccessToken();
+    }
+
+    @TearDown
+    public void tearDown() {
+        api.close();
+        apache.close();
+        jdk.close();
+        server.stop(0);
+        ((java.util.concurrent.ExecutorService) server.getExecutor()).shutdownNow();
+    }
+
+    @Benchmark
+    public String apachePostJson() {
+        return apache.postJson(baseUrl + "/cgi-bin/message/custom/send?access_token=TOKEN", BODY);
+    }
+
+    @Benchmark
+    public String jdkPostJson() {
+        return jdk.postJson(baseUrl + "/cgi-bin/message/custom/send?access_token=TOKEN", BODY);
+    }
+
+    @Benchmark
+    public JsonObject wechatApiSendText() {
+        return api.sendText("OPENID", "Hello World");
+    }
+
+}
@@ -0,0 +1,48 @@
+package cn.muzin;
+
+import cn.muzin.entity.BatchFailure;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * `BulkTagger` 的结果：成功处理的用户数与失败的批次
+ */
+public class BulkTagResult {
+
+    private final int succeeded;
+
+    private final List<BatchFailure> failures;
+
+    BulkTagResult(int succeeded, List<BatchFailure> failures){
+        this.succeeded = succeeded;
+        this.failures = failures;
+    }
+
+    /**
+     * 成功处理的用户数
+     */
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    public List<BatchFailure> getFailures() {
+        return failures;
+    }
+
+    /**
+     * 失败批次中的全部 openid，可用于重试
+     */
+    public List<String> getFailedOpenids() {
+        List<String> openids = new ArrayList<String>();
+        for (BatchFailure failure : failures) {
+            openids.addAll(failure.getOpenids());
+        }
+        return openids;
+    }
+
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+
+}
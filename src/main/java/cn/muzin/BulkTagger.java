@@ -0,0 +1,226 @@
+package cn.muzin;
+
+import cn.muzin.entity.BatchFailure;
+import cn.muzin.util.ChunkedExecutor;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Stream;
+
+/**
+ * 为任意数量的用户批量打标签、取消标签或移动分组
+ *
+ * 将 openid 按每批 50 个（batchtagging、batchuntagging、groups/members/batchupdate 的上限）切分，
+ * 以 `parallelism` 个并发请求、不超过 `rateLimit` 次/秒的速率提交。
+ * 同时在途的批次不超过 2 * parallelism，openid 可以来自迭代器或 Stream，内存占用与总数无关。
+ *
+ * 某一批返回错误码或请求失败时不影响其他批次，失败的批次连同其 openid 记录在 `BulkTagResult` 中。
+ * 设置了 `TagIndex` 时，成功的批次同步更新索引。
+ *
+ * Examples:
+ * ```
+ * BulkTagger tagger = new BulkTagger(api)
+ *         .setParallelism(4)
+ *         .setRateLimit(50);
+ *
+ * BulkTagResult result = tagger.tag(tagId, openids);
+ * result.getSucceeded();
+ * result.getFailedOpenids();
+ *
+ * tagger.untag(tagId, api.tagMembers(oldTagId));
+ * tagger.moveToGroup(groupId, openidStream);
+ * ```
+ */
+public class BulkTagger {
+
+    /**
+     * 标签、分组批量接口单次最多处理的用户数
+     */
+    public static final int MAX_CHUNK_SIZE = 50;
+
+    private final WechatAPI api;
+
+    private int parallelism = 4;
+
+    /**
+     * 每秒最多发起的请求数，0 表示不限制
+     */
+    private double rateLimit = 0;
+
+    private int chunkSize = MAX_CHUNK_SIZE;
+
+    private ExecutorService executor;
+
+    public BulkTagger(WechatAPI api){
+        this.api = api;
+    }
+
+    public BulkTagger setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param rateLimit 每秒最多发起的请求数（每个请求一批），0 表示不限制
+     */
+    public BulkTagger setRateLimit(double rateLimit) {
+        this.rateLimit = rateLimit;
+        return this;
+    }
+
+    public double getRateLimit() {
+        return rateLimit;
+    }
+
+    public BulkTagger setChunkSize(int chunkSize) {
+        if (chunkSize < 1 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("chunkSize must be between 1 and " + MAX_CHUNK_SIZE);
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * 使用外部线程池，其生命周期由调用方管理；未设置时优先使用 `api.getExecutor()`，
+     * 均未设置则每次提交时创建 parallelism 个线程，结束后关闭
+     */
+    public BulkTagger setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * 批量为用户打标签
+     * @param tagId 标签id
+     * @param openids openid 列表
+     */
+    public BulkTagResult tag(String tagId, Iterable<String> openids) {
+        return tag(tagId, openids.iterator());
+    }
+
+    public BulkTagResult tag(String tagId, Stream<String> openids) {
+        return tag(tagId, openids.iterator());
+    }
+
+    public BulkTagResult tag(final String tagId, Iterator<String> openids) {
+        return run(openids, new Operation() {
+            @Override
+            public JsonObject apply(List<String> chunk) {
+                return api.batchTaggingResponse(chunk, tagId);
+            }
+        });
+    }
+
+    /**
+     * 批量为用户取消标签
+     * @param tagId 标签id
+     * @param openids openid 列表
+     */
+    public BulkTagResult untag(String tagId, Iterable<String> openids) {
+        return untag(tagId, openids.iterator());
+    }
+
+    public BulkTagResult untag(String tagId, Stream<String> openids) {
+        return untag(tagId, openids.iterator());
+    }
+
+    public BulkTagResult untag(final String tagId, Iterator<String> openids) {
+        return run(openids, new Operation() {
+            @Override
+            public JsonObject apply(List<String> chunk) {
+                return api.batchUnTaggingResponse(chunk, tagId);
+            }
+        });
+    }
+
+    /**
+     * 批量移动用户分组
+     * @param groupId 分组ID
+     * @param openids openid 列表
+     */
+    public BulkTagResult moveToGroup(String groupId, Iterable<String> openids) {
+        return moveToGroup(groupId, openids.iterator());
+    }
+
+    public BulkTagResult moveToGroup(String groupId, Stream<String> openids) {
+        return moveToGroup(groupId, openids.iterator());
+    }
+
+    public BulkTagResult moveToGroup(final String groupId, Iterator<String> openids) {
+        return run(openids, new Operation() {
+            @Override
+            public JsonObject apply(List<String> chunk) {
+                return api.moveUsersToGroupResponse(chunk, groupId);
+            }
+        });
+    }
+
+    /**
+     * 对一批 openid 发起一次请求
+     */
+    private interface Operation {
+        JsonObject apply(List<String> chunk);
+    }
+
+    private BulkTagResult run(Iterator<String> openids, final Operation operation) {
+        ExecutorService pool = this.executor != null ? this.executor : api.getExecutor();
+        final int[] succeeded = new int[1];
+        final List<BatchFailure> failures = new ArrayList<BatchFailure>();
+        new ChunkedExecutor(pool, parallelism, rateLimit, "wechatapi-bulk-tags-").run(
+                ChunkedExecutor.chunks(openids, chunkSize),
+                new ChunkedExecutor.Task<List<String>, JsonObject>() {
+                    @Override
+                    public JsonObject call(List<String> chunk) {
+                        return operation.apply(chunk);
+                    }
+                },
+                new ChunkedExecutor.Handler<List<String>, JsonObject>() {
+                    @Override
+                    public void onResult(List<String> chunk, JsonObject resp) {
+                        BatchFailure failure = check(chunk, resp);
+                        if (failure == null) {
+                            succeeded[0] += chunk.size();
+                        } else {
+                            failures.add(failure);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(List<String> chunk, String errmsg) {
+                        failures.add(new BatchFailure(chunk, -1, errmsg));
+                    }
+                });
+        return new BulkTagResult(succeeded[0], failures);
+    }
+
+    /**
+     * 检查一批的响应
+     * @return 失败时的 BatchFailure，成功时返回 null
+     */
+    private static BatchFailure check(List<String> chunk, JsonObject resp) {
+        if (resp == null) {
+            return new BatchFailure(chunk, -1, "request failed");
+        }
+        int errcode = resp.has("errcode") ? resp.get("errcode").getAsInt() : -1;
+        if (errcode != 0) {
+            String errmsg = resp.has("errmsg") ? resp.get("errmsg").getAsString() : resp.toString();
+            return new BatchFailure(chunk, errcode, errmsg);
+        }
+        return null;
+    }
+
+}
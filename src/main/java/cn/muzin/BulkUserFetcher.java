@@ -0,0 +1,207 @@
+package cn.muzin;
+
+import cn.muzin.entity.BatchFailure;
+import cn.muzin.util.ChunkedExecutor;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+/**
+ * 批量获取任意数量用户的基本信息
+ *
+ * 将 openid 按每批 100 个（user/info/batchget 的上限）切分，以 `parallelism` 个并发请求、
+ * 不超过 `rateLimit` 次/秒的速率获取，并按 openid 的原始顺序交付结果。
+ * 同时在途的批次不超过 2 * parallelism，openid 可以来自迭代器（如 `api.followers()`），内存占用与总数无关。
+ *
+ * 某一批返回错误码或请求失败时不影响其他批次，失败的批次连同其 openid 以 `BatchFailure` 返回，可据此重试。
+ *
+ * Examples:
+ * ```
+ * BulkUserFetcher fetcher = new BulkUserFetcher(api)
+ *         .setParallelism(8)
+ *         .setRateLimit(100);
+ *
+ * // 按顺序流式处理全部关注者
+ * List<BatchFailure> failures = fetcher.fetch(api.followers(), user -> save(user));
+ *
+ * // 一次取回，按顺序或按 openid 读取
+ * BulkUserResult result = fetcher.fetchAll(openids);
+ * result.getUsers();
+ * result.getUser(openid);
+ * result.getFailures();
+ * ```
+ */
+public class BulkUserFetcher {
+
+    /**
+     * user/info/batchget 单次最多查询的用户数
+     */
+    public static final int MAX_CHUNK_SIZE = 100;
+
+    private final WechatAPI api;
+
+    private int parallelism = 4;
+
+    /**
+     * 每秒最多发起的请求数，0 表示不限制
+     */
+    private double rateLimit = 0;
+
+    private int chunkSize = MAX_CHUNK_SIZE;
+
+    private String language = "zh_CN";
+
+    private ExecutorService executor;
+
+    public BulkUserFetcher(WechatAPI api){
+        this.api = api;
+    }
+
+    public BulkUserFetcher setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param rateLimit 每秒最多发起的请求数（每个请求一批），0 表示不限制
+     */
+    public BulkUserFetcher setRateLimit(double rateLimit) {
+        this.rateLimit = rateLimit;
+        return this;
+    }
+
+    public double getRateLimit() {
+        return rateLimit;
+    }
+
+    public BulkUserFetcher setChunkSize(int chunkSize) {
+        if (chunkSize < 1 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("chunkSize must be between 1 and " + MAX_CHUNK_SIZE);
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public BulkUserFetcher setLanguage(String language) {
+        this.language = language;
+        return this;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    /**
+     * 使用外部线程池，其生命周期由调用方管理；未设置时优先使用 `api.getExecutor()`，
+     * 均未设置则每次获取时创建 parallelism 个线程，结束后关闭
+     */
+    public BulkUserFetcher setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * 获取全部用户信息并按顺序交付给 consumer，consumer 在调用线程中执行
+     * @param openids openid 列表
+     * @param consumer 处理每个用户信息
+     * @return 失败的批次，全部成功时为空
+     */
+    public List<BatchFailure> fetch(Iterable<String> openids, Consumer<JsonObject> consumer) {
+        return fetch(openids.iterator(), consumer);
+    }
+
+    /**
+     * 获取全部用户信息并按顺序交付给 consumer，consumer 在调用线程中执行
+     * @param openids openid 迭代器，按需读取
+     * @param consumer 处理每个用户信息
+     * @return 失败的批次，全部成功时为空
+     */
+    public List<BatchFailure> fetch(Iterator<String> openids, Consumer<JsonObject> consumer) {
+        final List<BatchFailure> failures = new ArrayList<BatchFailure>();
+        fetch(openids, consumer, new Consumer<BatchFailure>() {
+            @Override
+            public void accept(BatchFailure failure) {
+                failures.add(failure);
+            }
+        });
+        return failures;
+    }
+
+    /**
+     * 获取全部用户信息，用户信息与失败的批次按 openid 的顺序交付，均在调用线程中执行
+     * @param openids openid 迭代器，按需读取
+     * @param consumer 处理每个用户信息
+     * @param failureConsumer 处理失败的批次
+     */
+    public void fetch(Iterator<String> openids, final Consumer<JsonObject> consumer,
+                      final Consumer<BatchFailure> failureConsumer) {
+        ExecutorService pool = this.executor != null ? this.executor : api.getExecutor();
+        new ChunkedExecutor(pool, parallelism, rateLimit, "wechatapi-bulk-users-").run(
+                ChunkedExecutor.chunks(openids, chunkSize),
+                new ChunkedExecutor.Task<List<String>, JsonObject>() {
+                    @Override
+                    public JsonObject call(List<String> chunk) {
+                        return api.batchGetUsersResponse(chunk, language);
+                    }
+                },
+                new ChunkedExecutor.Handler<List<String>, JsonObject>() {
+                    @Override
+                    public void onResult(List<String> chunk, JsonObject resp) {
+                        deliver(chunk, resp, consumer, failureConsumer);
+                    }
+
+                    @Override
+                    public void onFailure(List<String> chunk, String errmsg) {
+                        failureConsumer.accept(new BatchFailure(chunk, -1, errmsg));
+                    }
+                });
+    }
+
+    /**
+     * 获取全部用户信息，结果保存在内存中，适合数量可控的列表
+     */
+    public BulkUserResult fetchAll(List<String> openids) {
+        final List<JsonObject> users = new ArrayList<JsonObject>(openids.size());
+        List<BatchFailure> failures = fetch(openids, new Consumer<JsonObject>() {
+            @Override
+            public void accept(JsonObject user) {
+                users.add(user);
+            }
+        });
+        return new BulkUserResult(users, failures);
+    }
+
+    private static void deliver(List<String> chunk, JsonObject resp,
+                                Consumer<JsonObject> consumer, Consumer<BatchFailure> failures) {
+        if (resp == null) {
+            failures.accept(new BatchFailure(chunk, -1, "request failed"));
+            return;
+        }
+        if (!resp.has("user_info_list")) {
+            int errcode = resp.has("errcode") ? resp.get("errcode").getAsInt() : -1;
+            String errmsg = resp.has("errmsg") ? resp.get("errmsg").getAsString() : resp.toString();
+            failures.accept(new BatchFailure(chunk, errcode, errmsg));
+            return;
+        }
+        for (JsonElement user : resp.getAsJsonArray("user_info_list")) {
+            consumer.accept(user.getAsJsonObject());
+        }
+    }
+
+}
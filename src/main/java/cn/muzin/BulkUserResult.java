@@ -0,0 +1,74 @@
+package cn.muzin;
+
+import cn.muzin.entity.BatchFailure;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * `BulkUserFetcher.fetchAll` 的结果：按请求顺序排列的用户信息与失败的批次
+ */
+public class BulkUserResult {
+
+    private final List<JsonObject> users;
+
+    private final List<BatchFailure> failures;
+
+    private Map<String, JsonObject> usersByOpenid;
+
+    BulkUserResult(List<JsonObject> users, List<BatchFailure> failures){
+        this.users = users;
+        this.failures = failures;
+    }
+
+    /**
+     * 成功获取的用户信息，顺序与请求的 openid 一致（失败批次中的用户除外）
+     */
+    public List<JsonObject> getUsers() {
+        return users;
+    }
+
+    /**
+     * 以 openid 为键的用户信息，保持请求顺序
+     */
+    public synchronized Map<String, JsonObject> getUsersByOpenid() {
+        if (usersByOpenid == null) {
+            Map<String, JsonObject> map = new LinkedHashMap<String, JsonObject>(users.size() * 4 / 3 + 1);
+            for (JsonObject user : users) {
+                map.put(user.get("openid").getAsString(), user);
+            }
+            usersByOpenid = map;
+        }
+        return usersByOpenid;
+    }
+
+    /**
+     * 获取指定用户的信息，未获取到时返回 null
+     */
+    public JsonObject getUser(String openid) {
+        return getUsersByOpenid().get(openid);
+    }
+
+    public List<BatchFailure> getFailures() {
+        return failures;
+    }
+
+    /**
+     * 失败批次中的全部 openid，可用于重试
+     */
+    public List<String> getFailedOpenids() {
+        List<String> openids = new ArrayList<String>();
+        for (BatchFailure failure : failures) {
+            openids.addAll(failure.getOpenids());
+        }
+        return openids;
+    }
+
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+
+}
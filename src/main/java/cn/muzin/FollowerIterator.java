@@ -0,0 +1,249 @@
+package cn.muzin;
+
+import cn.muzin.exception.WechatApiException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 逐个返回关注者 openid 的迭代器，用于 `api.followers()` 与 `api.tagMembers(tagId)`
+ *
+ * 自动跟随 `next_openid` 翻页，每页以 `JsonReader` 流式解析为 openid 列表，不构建 JsonObject；
+ * 消费当前页时在后台预取下一页。内存中最多同时持有两页（各不超过 10000 个 openid），与关注者总数无关。
+ *
+ * 某一页返回错误码或请求失败时，`hasNext`/`next` 抛出 `WechatApiException`。
+ * `getCheckpoint()` 为最后一个已返回的 openid，可用 `api.followers(checkpoint)` 从中断处继续。
+ *
+ * Examples:
+ * ```
+ * FollowerIterator it = api.followers();
+ * try {
+ *     while (it.hasNext()) {
+ *         String openid = it.next();
+ *     }
+ * } finally {
+ *     it.close();
+ * }
+ * ```
+ */
+public class FollowerIterator implements Iterator<String>, Closeable {
+
+    /**
+     * user/get 每页最多返回的 openid 数量，不足该数量的页为最后一页
+     */
+    static final int PAGE_SIZE = 10000;
+
+    /**
+     * 根据 next_openid 请求一页，返回未解析的响应
+     */
+    private final Function<String, String> fetchPage;
+
+    private final Executor prefetchExecutor;
+
+    private List<String> page;
+
+    private int index;
+
+    private int total = -1;
+
+    private String checkpoint;
+
+    private CompletableFuture<Page> nextPage;
+
+    private boolean lastPage;
+
+    private boolean closed;
+
+    /**
+     * @param fetchPage 根据 next_openid 请求一页，请求失败时返回 null
+     * @param nextOpenid 从该 openid 之后开始，为 null 时从头开始
+     * @param prefetchExecutor 预取下一页使用的线程池
+     */
+    FollowerIterator(Function<String, String> fetchPage, String nextOpenid, Executor prefetchExecutor) {
+        this.fetchPage = fetchPage;
+        this.checkpoint = nextOpenid;
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    /**
+     * 关注者总数，读取第一页之前为 -1；标签粉丝列表不返回总数，为 0
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * 最后一个已返回的 openid，尚未返回任何 openid 时为起始的 nextOpenid
+     */
+    public String getCheckpoint() {
+        return checkpoint;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (page == null || index >= page.size()) {
+            if (closed || lastPage) {
+                return false;
+            }
+            if (nextPage == null) {
+                nextPage = fetch(checkpoint, false);
+            }
+            Page fetched = await(nextPage);
+            nextPage = null;
+            accept(fetched);
+        }
+        return true;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String openid = page.get(index);
+        // 释放已返回的 openid
+        page.set(index++, null);
+        checkpoint = openid;
+        return openid;
+    }
+
+    /**
+     * 停止迭代，取消未完成的预取
+     */
+    @Override
+    public void close() {
+        closed = true;
+        page = null;
+        if (nextPage != null) {
+            nextPage.cancel(true);
+            nextPage = null;
+        }
+    }
+
+    private void accept(Page fetched) {
+        if (fetched.errcode != 0) {
+            throw new WechatApiException(fetched.errcode, fetched.errmsg);
+        }
+        total = fetched.total;
+        page = fetched.openids;
+        index = 0;
+        lastPage = fetched.openids.size() < PAGE_SIZE
+                || fetched.nextOpenid == null || fetched.nextOpenid.isEmpty();
+        if (!lastPage) {
+            nextPage = fetch(fetched.nextOpenid, true);
+        }
+    }
+
+    private CompletableFuture<Page> fetch(final String nextOpenid, boolean async) {
+        Supplier<Page> task = new Supplier<Page>() {
+            @Override
+            public Page get() {
+                String respStr = fetchPage.apply(nextOpenid);
+                if (respStr == null) {
+                    throw new WechatApiException("get followers failed, next_openid: " + nextOpenid, null);
+                }
+                return parsePage(respStr);
+            }
+        };
+        if (async) {
+            return CompletableFuture.supplyAsync(task, prefetchExecutor);
+        }
+        CompletableFuture<Page> future = new CompletableFuture<Page>();
+        try {
+            future.complete(task.get());
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private static Page await(CompletableFuture<Page> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WechatApiException("interrupted while fetching followers", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof WechatApiException) {
+                throw (WechatApiException) cause;
+            }
+            throw new WechatApiException("get followers failed", cause);
+        }
+    }
+
+    /**
+     * 一页关注者
+     */
+    static class Page {
+        int errcode;
+        String errmsg;
+        int total;
+        List<String> openids;
+        String nextOpenid;
+    }
+
+    /**
+     * 以 JsonReader 流式解析 user/get 的响应
+     */
+    static Page parsePage(String json) {
+        Page page = new Page();
+        int count = 16;
+        JsonReader reader = new JsonReader(new StringReader(json));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("total")) {
+                    page.total = reader.nextInt();
+                } else if (name.equals("count")) {
+                    count = reader.nextInt();
+                } else if (name.equals("next_openid")) {
+                    page.nextOpenid = reader.nextString();
+                } else if (name.equals("errcode")) {
+                    page.errcode = reader.nextInt();
+                } else if (name.equals("errmsg")) {
+                    page.errmsg = reader.nextString();
+                } else if (name.equals("data") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (reader.nextName().equals("openid")) {
+                            page.openids = new ArrayList<String>(count);
+                            reader.beginArray();
+                            while (reader.hasNext()) {
+                                page.openids.add(reader.nextString());
+                            }
+                            reader.endArray();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IOException | RuntimeException e) {
+            throw new WechatApiException("invalid followers response", e);
+        }
+        if (page.openids == null) {
+            page.openids = new ArrayList<String>(0);
+        }
+        return page;
+    }
+
+}
@@ -0,0 +1,255 @@
+package cn.muzin;
+
+import cn.muzin.entity.AccessToken;
+import cn.muzin.entity.Ticket;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * access token 与 ticket 的后台提前刷新
+ *
+ * 在凭证剩余有效期的 `refreshFraction`（默认 80%）处于后台刷新，并加入随机抖动，
+ * 稳定运行时调用方永远拿到有效的凭证，不会在请求路径上等待 `token`、`ticket/getticket` 请求。
+ *
+ * 刷新前先读取 TokenStorageResolver / TicketStorageResolver，若其他进程已保存了更新的凭证则直接采用，
+ * 配合抖动，多节点部署时通常只有一个节点真正请求微信，其余节点读取其保存的结果。
+ *
+ * Examples:
+ * ```
+ * RefreshAheadScheduler scheduler = new RefreshAheadScheduler(api)
+ *         .setRefreshFraction(0.8)
+ *         .setJitterFraction(0.1)
+ *         .setTicketTypes("jsapi", "wx_card")
+ *         .start();
+ * // 不再使用时
+ * scheduler.stop();
+ * ```
+ */
+public class RefreshAheadScheduler {
+
+    private WechatAPI api;
+
+    /**
+     * 在剩余有效期的该比例处刷新
+     */
+    private double refreshFraction = 0.8;
+
+    /**
+     * 随机抖动占刷新延迟的比例，刷新延迟在 [1 - jitter, 1 + jitter] 倍之间浮动
+     */
+    private double jitterFraction = 0.1;
+
+    /**
+     * 刷新失败后的重试间隔
+     */
+    private long retryDelayMillis = 30000;
+
+    /**
+     * 最小刷新间隔，避免凭证即将过期时频繁刷新
+     */
+    private long minDelayMillis = 1000;
+
+    /**
+     * 需要提前刷新的 ticket 类型，默认只刷新 jsapi
+     */
+    private List<String> ticketTypes = new ArrayList<String>(Arrays.asList("jsapi"));
+
+    private ScheduledExecutorService scheduler;
+
+    private boolean ownScheduler;
+
+    private final Random random = new Random();
+
+    private volatile boolean running;
+
+    public RefreshAheadScheduler(WechatAPI api){
+        this.api = api;
+    }
+
+    public RefreshAheadScheduler setRefreshFraction(double refreshFraction) {
+        if (refreshFraction <= 0 || refreshFraction >= 1) {
+            throw new IllegalArgumentException("refreshFraction must be between 0 and 1");
+        }
+        this.refreshFraction = refreshFraction;
+        return this;
+    }
+
+    public double getRefreshFraction() {
+        return refreshFraction;
+    }
+
+    public RefreshAheadScheduler setJitterFraction(double jitterFraction) {
+        if (jitterFraction < 0 || jitterFraction >= 1) {
+            throw new IllegalArgumentException("jitterFraction must be between 0 and 1");
+        }
+        this.jitterFraction = jitterFraction;
+        return this;
+    }
+
+    public double getJitterFraction() {
+        return jitterFraction;
+    }
+
+    public RefreshAheadScheduler setRetryDelayMillis(long retryDelayMillis) {
+        this.retryDelayMillis = retryDelayMillis;
+        return this;
+    }
+
+    public long getRetryDelayMillis() {
+        return retryDelayMillis;
+    }
+
+    public RefreshAheadScheduler setMinDelayMillis(long minDelayMillis) {
+        this.minDelayMillis = minDelayMillis;
+        return this;
+    }
+
+    public long getMinDelayMillis() {
+        return minDelayMillis;
+    }
+
+    /**
+     * 设置需要提前刷新的 ticket 类型，不需要 ticket 时可传入空
+     */
+    public RefreshAheadScheduler setTicketTypes(String... ticketTypes) {
+        this.ticketTypes = new ArrayList<String>(Arrays.asList(ticketTypes));
+        return this;
+    }
+
+    public List<String> getTicketTypes() {
+        return ticketTypes;
+    }
+
+    /**
+     * 使用外部的定时线程池，其生命周期由调用方管理
+     */
+    public RefreshAheadScheduler setScheduler(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        return this;
+    }
+
+    /**
+     * 启动后台刷新，立即检查一次 access token 与各类型 ticket
+     */
+    public RefreshAheadScheduler start() {
+        if (running) {
+            return this;
+        }
+        if (scheduler == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "wechatapi-refresh-ahead");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            scheduler = executor;
+            ownScheduler = true;
+        }
+        running = true;
+        scheduleToken(null, 0);
+        for (String type : ticketTypes) {
+            scheduleTicket(type, null, 0);
+        }
+        return this;
+    }
+
+    /**
+     * 停止后台刷新
+     */
+    public void stop() {
+        running = false;
+        if (ownScheduler) {
+            scheduler.shutdownNow();
+            scheduler = null;
+            ownScheduler = false;
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void scheduleToken(final AccessToken last, long delayMillis) {
+        if (!running) {
+            return;
+        }
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                refreshToken(last);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param last 上一次调度时的 token，首次为 null
+     */
+    private void refreshToken(AccessToken last) {
+        if (!running) {
+            return;
+        }
+        try {
+            AccessToken token = api.peekAccessToken();
+            if (token == null) {
+                token = api.ensureAccessToken();
+            } else if (last != null && token == last) {
+                // 到期前未被其他途径刷新过，执行提前刷新
+                token = api.refreshAccessTokenAhead();
+            }
+            scheduleToken(token, nextDelay(token.getExpireTime()));
+        } catch (Exception e) {
+            e.printStackTrace();
+            scheduleToken(last, retryDelayMillis);
+        }
+    }
+
+    private void scheduleTicket(final String type, final Ticket last, long delayMillis) {
+        if (!running) {
+            return;
+        }
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                refreshTicket(type, last);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void refreshTicket(String type, Ticket last) {
+        if (!running) {
+            return;
+        }
+        try {
+            Ticket ticket = api.refreshTicketAhead(type, last);
+            scheduleTicket(type, ticket, nextDelay(ticket.getExpireTime()));
+        } catch (Exception e) {
+            e.printStackTrace();
+            scheduleTicket(type, last, retryDelayMillis);
+        }
+    }
+
+    private static long remainingMillis(long expireTime) {
+        return expireTime - new Date().getTime();
+    }
+
+    /**
+     * 距下次刷新的时间：剩余有效期 * refreshFraction，再乘以 [1 - jitter, 1 + jitter] 的随机系数
+     */
+    long nextDelay(long expireTime) {
+        double jitter = 1 + (random.nextDouble() * 2 - 1) * jitterFraction;
+        long delay = (long) (remainingMillis(expireTime) * refreshFraction * jitter);
+        return Math.max(delay, minDelayMillis);
+    }
+
+}
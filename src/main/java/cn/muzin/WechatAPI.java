@@ -1,26 +1,56 @@
 package cn.muzin;
 
+import cn.muzin.cache.UserProfileCache;
 import cn.muzin.entity.*;
 import cn.muzin.exception.WebAuthAccessTokenException;
+import cn.muzin.http.ApacheHttpTransport;
+import cn.muzin.http.BinaryResponse;
+import cn.muzin.http.HttpPoolConfig;
+import cn.muzin.http.MultipartBody;
+import cn.muzin.http.WechatHttpTransport;
+import cn.muzin.http.WechatRequestEvent;
+import cn.muzin.http.WechatRequestListener;
+import cn.muzin.mass.MassMessage;
+import cn.muzin.metrics.EndpointMetrics;
+import cn.muzin.metrics.WechatMetrics;
 import cn.muzin.resolver.TicketStorageResolver;
 import cn.muzin.resolver.TokenStorageResolver;
+import cn.muzin.tag.TagIndex;
 import cn.muzin.util.Base64Utils;
 import cn.muzin.util.CryptoUtils;
-import cn.muzin.util.HttpUtils;
+import cn.muzin.util.ThreadUtils;
 import com.google.gson.*;
-import com.mashape.unirest.http.Unirest;
-import com.mashape.unirest.http.exceptions.UnirestException;
-import org.apache.http.HttpResponse;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class WechatAPI {
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     private String appid;
 
     private String appsecret;
@@ -29,6 +59,8 @@ public class WechatAPI {
 
     private TicketStorageResolver ticketStorageResolver;
 
+    private String API_PREFIX = "https://api.weixin.qq.com/";
+
     private String PREFIX = "https://api.weixin.qq.com/cgi-bin/";
 
     private String MP_PREFIX = "https://mp.weixin.qq.com/cgi-bin/";
@@ -49,6 +81,63 @@ public class WechatAPI {
 
     private Gson gson;
 
+    /**
+     * HTTP 传输层，所有接口调用共享其中的 Keep-Alive 连接
+     */
+    private WechatHttpTransport httpTransport;
+
+    /**
+     * 请求监听器，默认不做任何处理
+     */
+    private volatile WechatRequestListener requestListener = WechatRequestListener.NOOP;
+
+    /**
+     * 按接口统计的请求指标
+     */
+    private final WechatMetrics metrics = new WechatMetrics();
+
+    /**
+     * 用户基本信息缓存，为 null 时不缓存
+     */
+    private volatile UserProfileCache userProfileCache;
+
+    /**
+     * 标签成员索引，为 null 时不维护
+     */
+    private volatile TagIndex tagIndex;
+
+    /**
+     * 批量接口（如 batchGetUsers 分片、batchPreview）并发执行子请求的线程池，为 null 时在调用线程中依次执行
+     */
+    private ExecutorService executor;
+
+    /**
+     * 由 `useVirtualThreads()` 创建、归本对象所有的线程池，close() 时关闭
+     */
+    private final AtomicReference<ExecutorService> ownedExecutor = new AtomicReference<ExecutorService>();
+
+    /**
+     * 当前使用的 access token，有效时 ensureAccessToken 直接返回，不加锁
+     */
+    private final AtomicReference<AccessToken> currentToken = new AtomicReference<AccessToken>();
+
+    /**
+     * 进行中的 access token 刷新，同一时刻只有一个线程刷新，其余线程等待并共享其结果
+     */
+    private final AtomicReference<CompletableFuture<AccessToken>> tokenRefresh =
+            new AtomicReference<CompletableFuture<AccessToken>>();
+
+    /**
+     * 各类型 ticket 进行中的刷新
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<Ticket>> ticketRefreshes =
+            new ConcurrentHashMap<String, CompletableFuture<Ticket>>();
+
+    /**
+     * 本实例在 TokenStorageResolver 刷新租约中的持有者标识
+     */
+    private final String refreshOwner = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+
 
     /**
      * 根据 appid 和 appsecret 创建API的构造函数
@@ -72,17 +161,7 @@ public class WechatAPI {
      * @param {String} appsecret 在公众平台上申请得到的app secret
      */
     public WechatAPI(String appid, String appsecret){
-        this(appid, appsecret, new TokenStorageResolver() {
-            @Override
-            public AccessToken getToken() {
-                return this.getAccessToken();
-            }
-
-            @Override
-            public void saveToken(AccessToken accessToken) {
-                this.setAccessToken(accessToken);
-            }
-        });
+        this(appid, appsecret, defaultTokenStorageResolver());
     }
 
     /**
@@ -109,17 +188,122 @@ public class WechatAPI {
      * @param {TokenStorageResolver} tokenStorageResolver 可选的。获取全局token对象的方法，多进程模式部署时需在意
      */
     public WechatAPI(String appid, String appsecret, TokenStorageResolver tokenStorageResolver){
-        this(appid, appsecret, new TokenStorageResolver() {
+        this(appid, appsecret, tokenStorageResolver, defaultTicketStorageResolver());
+    }
+
+    /**
+     * 根据 appid 和 appsecret 创建API的构造函数
+     * 如需跨进程跨机器进行操作Wechat API（依赖access token），access token需要进行全局维护
+     * 使用策略如下：
+     * 1. 调用用户传入的获取 token 的异步方法，获得 token 之后使用
+     * 2. 使用appid/appsecret获取 token 。并调用用户传入的保存 token 方法保存
+     * Tips:
+     * - 如果跨机器运行wechat模块，需要注意同步机器之间的系统时间。
+     * Examples:
+     * ```
+     * import com.fanglesoft.WechatAPI;
+     * WechatAPI api = new WechatAPI('appid', 'secret');
+     * ```
+     * 以上即可满足单进程使用。
+     * 当多进程时，token 需要全局维护，以下为保存 token 的接口。
+     * ```
+     * WechatAPI api = new WechatAPI('appid', 'secret');
+     * ```
+     * ```
+     * @param {String} appid 在公众平台上申请得到的appid
+     * @param {String} appsecret 在公众平台上申请得到的app secret
+     * @param {TokenStorageResolver} tokenStorageResolver 可选的。获取全局token对象的方法，多进程模式部署时需在意
+     * @param {TicketStorageResolver} ticketStorageResolver 可选的。获取全局ticket对象的方法，多进程模式部署时需在意
+     */
+    public WechatAPI(String appid, String appsecret,
+                     TokenStorageResolver tokenStorageResolver,
+                     TicketStorageResolver ticketStorageResolver){
+        this(appid, appsecret, tokenStorageResolver, ticketStorageResolver, new HttpPoolConfig());
+    }
+
+    /**
+     * 根据 appid 和 appsecret 创建API的构造函数，并指定HTTP连接池配置
+     * 连接池由本实例持有，所有接口调用复用其中的连接，不再使用时调用 `close()` 释放
+     * Examples:
+     * ```
+     * HttpPoolConfig config = new HttpPoolConfig().setMaxTotal(400).setMaxPerRoute(400);
+     * WechatAPI api = new WechatAPI('appid', 'secret', tokenStorageResolver, ticketStorageResolver, config);
+     * ```
+     * @param {String} appid 在公众平台上申请得到的appid
+     * @param {String} appsecret 在公众平台上申请得到的app secret
+     * @param {TokenStorageResolver} tokenStorageResolver 获取全局token对象的方法，多进程模式部署时需在意
+     * @param {TicketStorageResolver} ticketStorageResolver 获取全局ticket对象的方法，多进程模式部署时需在意
+     * @param {HttpPoolConfig} httpPoolConfig HTTP连接池配置
+     */
+    public WechatAPI(String appid, String appsecret,
+                     TokenStorageResolver tokenStorageResolver,
+                     TicketStorageResolver ticketStorageResolver,
+                     HttpPoolConfig httpPoolConfig){
+        this(appid, appsecret, tokenStorageResolver, ticketStorageResolver,
+                new ApacheHttpTransport(httpPoolConfig));
+    }
+
+    /**
+     * 根据 appid 和 appsecret 创建API的构造函数，并指定HTTP传输层
+     * 可注入 `ApacheHttpTransport`、`JdkHttpTransport` 或自定义实现（如测试用的内存实现）
+     * Examples:
+     * ```
+     * WechatAPI api = new WechatAPI('appid', 'secret', new JdkHttpTransport());
+     * ```
+     * @param {String} appid 在公众平台上申请得到的appid
+     * @param {String} appsecret 在公众平台上申请得到的app secret
+     * @param {WechatHttpTransport} httpTransport HTTP传输层
+     */
+    public WechatAPI(String appid, String appsecret, WechatHttpTransport httpTransport){
+        this(appid, appsecret, defaultTokenStorageResolver(), defaultTicketStorageResolver(), httpTransport);
+    }
+
+    /**
+     * 根据 appid 和 appsecret 创建API的构造函数，并指定HTTP传输层
+     * @param {String} appid 在公众平台上申请得到的appid
+     * @param {String} appsecret 在公众平台上申请得到的app secret
+     * @param {TokenStorageResolver} tokenStorageResolver 获取全局token对象的方法，多进程模式部署时需在意
+     * @param {TicketStorageResolver} ticketStorageResolver 获取全局ticket对象的方法，多进程模式部署时需在意
+     * @param {WechatHttpTransport} httpTransport HTTP传输层
+     */
+    public WechatAPI(String appid, String appsecret,
+                     TokenStorageResolver tokenStorageResolver,
+                     TicketStorageResolver ticketStorageResolver,
+                     WechatHttpTransport httpTransport){
+        this.appid = appid;
+        this.appsecret = appsecret;
+        this.jsonParser = new JsonParser();
+        this.gson= new Gson();
+        this.tokenStorageResolver = tokenStorageResolver;
+        this.ticketStorageResolver = ticketStorageResolver;
+        this.httpTransport = httpTransport;
+    }
+
+    /**
+     * 默认的token存储，保存在内存中，仅适用于单进程
+     */
+    private static TokenStorageResolver defaultTokenStorageResolver(){
+        return new TokenStorageResolver() {
+
+            private AccessToken token;
+
             @Override
             public AccessToken getToken() {
-                return this.getAccessToken();
+                return this.token;
             }
 
             @Override
             public void saveToken(AccessToken accessToken) {
-                this.setAccessToken(accessToken);
+                this.token = accessToken;
             }
-        }, new TicketStorageResolver(new TicketStore()) {
+        };
+    }
+
+    /**
+     * 默认的ticket存储，保存在内存中，仅适用于单进程
+     */
+    private static TicketStorageResolver defaultTicketStorageResolver(){
+        return new TicketStorageResolver(new TicketStore()) {
             @Override
             public Ticket getTicket(String type) {
                 return this.getTicketStore().get(type);
@@ -129,50 +313,528 @@ public class WechatAPI {
             public void saveTicket(String type, Ticket ticket) {
                 this.getTicketStore().put(type, ticket);
             }
-        });
+        };
+    }
+
+    public String getAppid() {
+        return appid;
+    }
+
+    public String getAppsecret() {
+        return appsecret;
+    }
+
+    /**
+     * 关闭HTTP连接池，释放所有连接；`useVirtualThreads()` 创建的线程池一并关闭
+     * Examples:
+     * ```
+     * api.close();
+     * ```
+     */
+    public void close() {
+        this.httpTransport.close();
+        this.shutdownOwnedExecutor();
+    }
+
+    private void shutdownOwnedExecutor() {
+        ExecutorService owned = this.ownedExecutor.getAndSet(null);
+        if (owned != null) {
+            owned.shutdown();
+        }
+    }
+
+    public WechatHttpTransport getHttpTransport() {
+        return httpTransport;
+    }
+
+    /**
+     * 将所有 api.weixin.qq.com 与 file.api.weixin.qq.com 的接口改为请求指定地址，
+     * 用于本地模拟服务、压测或经由代理访问
+     *
+     * 只影响之后发起的请求；`MP_PREFIX` 用于拼接返回给用户的二维码地址，不受影响。
+     * Examples:
+     * ```
+     * WechatSimulator simulator = new WechatSimulator().start();
+     * WechatAPI api = new WechatAPI(appid, appsecret).setBaseUrl(simulator.getBaseUrl());
+     * ```
+     * @param {String} baseUrl 替代 `https://api.weixin.qq.com/` 的地址
+     */
+    public WechatAPI setBaseUrl(String baseUrl) {
+        String base = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        this.API_PREFIX = base;
+        this.PREFIX = base + "cgi-bin/";
+        this.FILE_SERVER_PREFIX = base + "cgi-bin/";
+        this.PAY_PREFIX = base + "pay/";
+        this.MERCHANT_PREFIX = base + "merchant/";
+        this.CUSTOM_SERVICE_PREFIX = base + "customservice/";
+        this.WXA_PREFIX = base + "wxa/";
+        this.WEB_AUTH_PREFIX = base + "sns/";
+        return this;
+    }
+
+    public String getBaseUrl() {
+        return this.API_PREFIX;
+    }
+
+    public WechatAPI setPrefix(String prefix) {
+        this.PREFIX = prefix;
+        return this;
+    }
+
+    public WechatAPI setMpPrefix(String mpPrefix) {
+        this.MP_PREFIX = mpPrefix;
+        return this;
+    }
+
+    public WechatAPI setFileServerPrefix(String fileServerPrefix) {
+        this.FILE_SERVER_PREFIX = fileServerPrefix;
+        return this;
+    }
+
+    public WechatAPI setPayPrefix(String payPrefix) {
+        this.PAY_PREFIX = payPrefix;
+        return this;
+    }
+
+    public WechatAPI setMerchantPrefix(String merchantPrefix) {
+        this.MERCHANT_PREFIX = merchantPrefix;
+        return this;
+    }
+
+    public WechatAPI setCustomServicePrefix(String customServicePrefix) {
+        this.CUSTOM_SERVICE_PREFIX = customServicePrefix;
+        return this;
+    }
+
+    public WechatAPI setWxaPrefix(String wxaPrefix) {
+        this.WXA_PREFIX = wxaPrefix;
+        return this;
+    }
+
+    public WechatAPI setWebAuthPrefix(String webAuthPrefix) {
+        this.WEB_AUTH_PREFIX = webAuthPrefix;
+        return this;
+    }
+
+    /**
+     * 设置请求监听器，每个请求完成后回调，可用于日志、监控
+     * Examples:
+     * ```
+     * api.setRequestListener(new Slf4jRequestListener(0.01));
+     * ```
+     * @param {WechatRequestListener} requestListener 监听器，为 null 时不做任何处理
+     */
+    public WechatAPI setRequestListener(WechatRequestListener requestListener) {
+        this.requestListener = requestListener == null ? WechatRequestListener.NOOP : requestListener;
+        return this;
+    }
+
+    public WechatRequestListener getRequestListener() {
+        return requestListener;
+    }
+
+    /**
+     * 获取请求指标：各接口的耗时分布、字节数、errcode 次数、进行中的请求数，以及 token、ticket 的刷新次数
+     * Examples:
+     * ```
+     * EndpointMetrics send = api.getMetrics().getEndpoint("cgi-bin/message/custom/send");
+     * ```
+     */
+    public WechatMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 设置用户基本信息缓存，`getUser`、`batchGetUsers` 优先读取缓存，只请求未命中的用户
+     * Examples:
+     * ```
+     * api.setUserProfileCache(new UserProfileCache().setMaxSize(50000).setTtlMillis(10 * 60 * 1000));
+     * ```
+     * @param {UserProfileCache} userProfileCache 缓存，为 null 时不缓存
+     */
+    public WechatAPI setUserProfileCache(UserProfileCache userProfileCache) {
+        this.userProfileCache = userProfileCache;
+        return this;
+    }
+
+    public UserProfileCache getUserProfileCache() {
+        return userProfileCache;
+    }
+
+    /**
+     * 设置标签成员索引，通过本实例成功调用 `batchTagging`、`batchUnTagging`、`deleteTag` 后同步更新索引
+     * Examples:
+     * ```
+     * TagIndex index = new TagIndex(api);
+     * api.setTagIndex(index);
+     * index.load(tagId);
+     * ```
+     * @param {TagIndex} tagIndex 标签索引，为 null 时不维护
+     */
+    public WechatAPI setTagIndex(TagIndex tagIndex) {
+        this.tagIndex = tagIndex;
+        return this;
+    }
+
+    public TagIndex getTagIndex() {
+        return tagIndex;
+    }
+
+    /**
+     * 使缓存的用户信息失效，用于取消关注、修改备注等事件
+     * Examples:
+     * ```
+     * api.invalidateUser(openid);
+     * ```
+     * @param {String} openid 用户的openid
+     */
+    public void invalidateUser(String openid) {
+        UserProfileCache cache = this.userProfileCache;
+        if (cache != null) {
+            cache.invalidate(openid);
+        }
+    }
+
+    /**
+     * 设置批量接口并发执行子请求的线程池，线程池的生命周期由调用方管理
+     * Examples:
+     * ```
+     * api.setExecutor(Executors.newFixedThreadPool(16));
+     * ```
+     * @param {ExecutorService} executor 线程池，为 null 时在调用线程中依次执行
+     */
+    public WechatAPI setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        // 替换掉 useVirtualThreads() 创建的线程池时将其关闭
+        if (executor != this.ownedExecutor.get()) {
+            this.shutdownOwnedExecutor();
+        }
+        return this;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * 使用虚拟线程执行批量接口的子请求，每个子请求一个虚拟线程（需要 JDK 21+）
+     * 阻塞的 HTTP 调用在虚拟线程中执行时只占用很少的资源，适合大量并发请求。
+     * 线程池由本对象创建，`close()` 时关闭。
+     * Examples:
+     * ```
+     * WechatAPI api = new WechatAPI(appid, appsecret).useVirtualThreads();
+     * ```
+     * @throws UnsupportedOperationException JDK 低于 21 时
+     */
+    public WechatAPI useVirtualThreads() {
+        ExecutorService virtual = ThreadUtils.newVirtualThreadPerTaskExecutor();
+        this.setExecutor(virtual);
+        this.ownedExecutor.set(virtual);
+        return this;
+    }
+
+    /**
+     * 并发执行一组子请求，结果顺序与任务顺序一致，执行失败的任务结果为 null
+     */
+    private <T> List<T> fanOut(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<T>(tasks.size());
+        if (this.executor == null || tasks.size() < 2) {
+            for (Callable<T> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    results.add(null);
+                }
+            }
+            return results;
+        }
+        List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        for (Callable<T> task : tasks) {
+            futures.add(this.executor.submit(task));
+        }
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.add(null);
+            } catch (Exception e) {
+                e.printStackTrace();
+                results.add(null);
+            }
+        }
+        return results;
+    }
+
+    private String httpGet(String url) {
+        return this.httpGet(url, null);
+    }
+
+    private String httpGet(String url, Map<String, Object> reqOpts) {
+        Map<String, String> headers = null;
+        if(reqOpts != null && reqOpts.containsKey("headers")){
+            headers = (Map<String, String>) reqOpts.get("headers");
+        }
+        final Map<String, String> requestHeaders = headers;
+        return this.request("GET", url, null, true, u -> this.httpTransport.get(u, requestHeaders));
+    }
+
+    private String httpPostJson(String url) {
+        return this.httpPostJson(url, "");
+    }
+
+    private String httpPostJson(String url, String data) {
+        return this.request("POST", url, data, true, u -> this.httpTransport.postJson(u, data));
+    }
+
+    private String httpPostJson(String url, byte[] data) {
+        return this.request("POST", url, data, true, u -> this.httpTransport.postJson(u, data));
+    }
+
+    private String httpPostJson(String url, ByteBuffer data) {
+        return this.request("POST", url, data, true, u -> this.httpTransport.postJson(u, data));
+    }
+
+    private String httpPostFormData(String url, Map<String, Object> data) {
+        MultipartBody body = MultipartBody.of(data);
+        try {
+            return this.httpPostMultipart(url, body);
+        } finally {
+            body.close();
+        }
+    }
+
+    private String httpPostMultipart(String url, MultipartBody body) {
+        // InputStream 已被第一次请求读取，无法重放
+        return this.request("POST", url, body, body.isRepeatable(), u -> this.httpTransport.postMultipart(u, body));
+    }
+
+    private String httpPostFile(String url, File file) {
+        return this.request("POST", url, file, true, u -> this.httpTransport.postFile(u, file));
+    }
+
+    private interface HttpCall {
+        String execute(String url);
+    }
+
+    /**
+     * 执行请求：检查 access token 错误并重放一次，完成后通知 WechatRequestListener
+     * @param body 请求体，仅用于统计字节数
+     * @param replayable 请求能否重放
+     */
+    private String request(String method, String url, Object body, boolean replayable, HttpCall call) {
+        EndpointMetrics endpoint = this.beginRequest(url);
+        long start = System.nanoTime();
+        String respStr = null;
+        int retries = 0;
+        try {
+            respStr = call.execute(url);
+            if (replayable && isTokenError(peekErrcode(respStr))) {
+                String retryUrl = this.retryUrlOnTokenError(url);
+                if (retryUrl != null) {
+                    respStr = call.execute(retryUrl);
+                    retries = 1;
+                }
+            }
+        } finally {
+            this.endRequest(endpoint, method, url, start, body, respStr, retries);
+        }
+        return respStr;
+    }
+
+    /**
+     * 开始统计一次请求，与 `endRequest` 成对调用，供 `WechatAsyncAPI` 复用同一套指标与监听器
+     */
+    EndpointMetrics beginRequest(String url) {
+        EndpointMetrics endpoint = this.metrics.forUrl(url);
+        endpoint.begin();
+        return endpoint;
+    }
+
+    /**
+     * 记录请求结果并通知 WechatRequestListener
+     * @param start 请求开始时的 `System.nanoTime()`
+     * @param body 请求体，仅用于统计字节数
+     * @param respStr 响应正文，网络异常时为 null
+     */
+    void endRequest(EndpointMetrics endpoint, String method, String url, long start,
+                    Object body, String respStr, int retries) {
+        long latency = System.nanoTime() - start;
+        int errcode = peekErrcode(respStr);
+        long bytesOut = byteLength(body);
+        long bytesIn = respStr == null ? 0 : utf8Length(respStr);
+        endpoint.end(latency, bytesOut, bytesIn, errcode, retries, respStr == null);
+        if (this.requestListener != WechatRequestListener.NOOP) {
+            this.requestListener.onRequest(new WechatRequestEvent(method, url, latency,
+                    bytesOut, bytesIn, errcode, retries, respStr == null));
+        }
+    }
+
+    /**
+     * 下载文件，响应为 JSON 时（微信返回错误）同样检查 access token 错误并重放
+     */
+    private BinaryResponse httpDownload(String url, String jsonBody) {
+        EndpointMetrics endpoint = this.metrics.forUrl(url);
+        endpoint.begin();
+        long start = System.nanoTime();
+        String method = jsonBody == null ? "GET" : "POST";
+        BinaryResponse response = this.httpTransport.download(url, jsonBody);
+        int retries = 0;
+        int errcode = 0;
+        if (response != null && response.isJson()) {
+            byte[] bytes;
+            try {
+                bytes = response.readAllBytes();
+            } catch (IOException e) {
+                e.printStackTrace();
+                bytes = null;
+            }
+            if (bytes == null) {
+                response = null;
+            } else {
+                errcode = peekErrcode(new String(bytes, UTF_8));
+                String retryUrl = isTokenError(errcode) ? this.retryUrlOnTokenError(url) : null;
+                if (retryUrl != null) {
+                    response = this.httpTransport.download(retryUrl, jsonBody);
+                    retries = 1;
+                    errcode = 0;
+                } else {
+                    response = new BinaryResponse(response.getStatusCode(), response.getContentType(), bytes.length,
+                            new ByteArrayInputStream(bytes), null);
+                }
+            }
+        }
+        long latency = System.nanoTime() - start;
+        long bytesOut = byteLength(jsonBody);
+        long bytesIn = response == null ? 0 : Math.max(response.getContentLength(), 0);
+        endpoint.end(latency, bytesOut, bytesIn, errcode, retries, response == null);
+        if (this.requestListener != WechatRequestListener.NOOP) {
+            this.requestListener.onRequest(new WechatRequestEvent(method, url, latency,
+                    bytesOut, bytesIn, errcode, retries, response == null));
+        }
+        return response;
+    }
+
+    /**
+     * 请求体的字节数，InputStream 无法预知长度，不计入
+     */
+    private static long byteLength(Object body) {
+        if (body instanceof String) {
+            return utf8Length((String) body);
+        }
+        if (body instanceof File) {
+            return ((File) body).length();
+        }
+        if (body instanceof byte[]) {
+            return ((byte[]) body).length;
+        }
+        if (body instanceof ByteBuffer) {
+            return ((ByteBuffer) body).remaining();
+        }
+        if (body instanceof MultipartBody) {
+            return Math.max(((MultipartBody) body).getContentLength(), 0);
+        }
+        if (body instanceof Map) {
+            long length = 0;
+            for (Object val : ((Map<?, ?>) body).values()) {
+                length += byteLength(val);
+            }
+            return length;
+        }
+        return 0;
+    }
+
+    /**
+     * 字符串以 UTF-8 编码后的字节数，不进行实际编码
+     */
+    private static long utf8Length(String str) {
+        long length = 0;
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
     }
 
     /**
-     * 根据 appid 和 appsecret 创建API的构造函数
-     * 如需跨进程跨机器进行操作Wechat API（依赖access token），access token需要进行全局维护
-     * 使用策略如下：
-     * 1. 调用用户传入的获取 token 的异步方法，获得 token 之后使用
-     * 2. 使用appid/appsecret获取 token 。并调用用户传入的保存 token 方法保存
-     * Tips:
-     * - 如果跨机器运行wechat模块，需要注意同步机器之间的系统时间。
-     * Examples:
-     * ```
-     * import com.fanglesoft.WechatAPI;
-     * WechatAPI api = new WechatAPI('appid', 'secret');
-     * ```
-     * 以上即可满足单进程使用。
-     * 当多进程时，token 需要全局维护，以下为保存 token 的接口。
-     * ```
-     * WechatAPI api = new WechatAPI('appid', 'secret');
-     * ```
-     * ```
-     * @param {String} appid 在公众平台上申请得到的appid
-     * @param {String} appsecret 在公众平台上申请得到的app secret
-     * @param {TokenStorageResolver} tokenStorageResolver 可选的。获取全局token对象的方法，多进程模式部署时需在意
-     * @param {TicketStorageResolver} ticketStorageResolver 可选的。获取全局ticket对象的方法，多进程模式部署时需在意
+     * access token 无效或过期的错误码：40001 获取access_token时AppSecret错误或access_token无效，
+     * 40014 不合法的access_token，42001 access_token超时
      */
-    public WechatAPI(String appid, String appsecret,
-                     TokenStorageResolver tokenStorageResolver,
-                     TicketStorageResolver ticketStorageResolver){
-        this.appid = appid;
-        this.appsecret = appsecret;
-        this.jsonParser = new JsonParser();
-        this.gson= new Gson();
-        this.tokenStorageResolver = tokenStorageResolver;
-        this.ticketStorageResolver = ticketStorageResolver;
+    static boolean isTokenError(int errcode) {
+        return errcode == 40001 || errcode == 40014 || errcode == 42001;
     }
 
-    public String getAppid() {
-        return appid;
+    /**
+     * 不解析整个 JSON，仅读取响应中的 errcode，没有时返回 0
+     */
+    static int peekErrcode(String respStr) {
+        if (respStr == null) {
+            return 0;
+        }
+        int index = respStr.indexOf("\"errcode\"");
+        if (index < 0) {
+            return 0;
+        }
+        int i = respStr.indexOf(':', index + 9);
+        if (i < 0) {
+            return 0;
+        }
+        i++;
+        while (i < respStr.length() && Character.isWhitespace(respStr.charAt(i))) {
+            i++;
+        }
+        boolean negative = i < respStr.length() && respStr.charAt(i) == '-';
+        if (negative) {
+            i++;
+        }
+        int code = 0;
+        while (i < respStr.length() && Character.isDigit(respStr.charAt(i))) {
+            code = code * 10 + (respStr.charAt(i) - '0');
+            i++;
+        }
+        return negative ? -code : code;
     }
 
-    public String getAppsecret() {
-        return appsecret;
+    /**
+     * 响应拦截：微信因 access token 无效或过期拒绝请求时（如其他节点刷新了 token），
+     * 使当前 token 失效并通过单飞刷新获取新 token，返回替换了 access_token 的请求地址，调用方据此重放一次。
+     * 请求未携带 access_token 时返回 null。
+     */
+    private String retryUrlOnTokenError(String url) {
+        int start = url.indexOf("access_token=");
+        if (start < 0) {
+            return null;
+        }
+        start += "access_token=".length();
+        int end = url.indexOf('&', start);
+        if (end < 0) {
+            end = url.length();
+        }
+        AccessToken fresh = this.renewAccessToken(url.substring(start, end));
+        return url.substring(0, start) + fresh.getAccessToken() + url.substring(end);
+    }
+
+    /**
+     * 使被微信拒绝的 token 失效并获取新 token，并发的多个失败请求只会触发一次刷新
+     * @param rejected 被拒绝的 token 字符串
+     */
+    AccessToken renewAccessToken(String rejected) {
+        AccessToken current = currentToken.get();
+        if (current != null && current.isValid() && !current.getAccessToken().equals(rejected)) {
+            // 已被其他线程刷新
+            return current;
+        }
+        return this.refreshAccessToken(current);
     }
 
     /*!
@@ -189,18 +851,66 @@ public class WechatAPI {
      * ```
      */
     public AccessToken getAccessToken() {
+        AccessToken token = this.fetchAccessToken();
+
+        tokenStorageResolver.setAccessToken(token);
+        tokenStorageResolver.saveToken(token);
+        currentToken.set(token);
+
+        return token;
+    }
+
+    /**
+     * 向微信请求新的 access token，不保存
+     */
+    private AccessToken fetchAccessToken() {
+        this.metrics.recordTokenRefresh();
         String url = this.PREFIX + "token?grant_type=client_credential&appid=" + this.appid + "&secret=" + this.appsecret;
-        String dataStr = HttpUtils.sendGetRequest(url);
+        String dataStr = this.httpGet(url);
         JsonObject data = (JsonObject) jsonParser.parse(dataStr);
 
         // 过期时间，因网络延迟等，将实际过期时间提前10秒，以防止临界点
         Long expireTime = new Date().getTime() + (data.get("expires_in").getAsLong() - 10) * 1000;
-        AccessToken token = new AccessToken(data.get("access_token").getAsString(), expireTime);
-
-        tokenStorageResolver.setAccessToken(token);
-        tokenStorageResolver.saveToken(token);
+        return new AccessToken(data.get("access_token").getAsString(), expireTime);
+    }
 
-        return token;
+    /**
+     * 通过 TokenStorageResolver 的刷新租约协调多个节点：
+     * 取得租约的节点请求微信并以版本号比较保存，其余节点等待其保存的新 token，
+     * 等待超时（租约持有者可能已异常退出）时自行刷新。
+     * @param stale 需要被替换的 token，可为 null
+     */
+    private AccessToken refreshWithLease(AccessToken stale) {
+        TokenStorageResolver resolver = this.tokenStorageResolver;
+        if (!resolver.tryAcquireRefreshLease(this.refreshOwner, resolver.getRefreshLeaseMillis())) {
+            AccessToken token = resolver.awaitNewToken(stale, resolver.getRefreshWaitMillis());
+            if (token == null) {
+                return this.getAccessToken();
+            }
+            resolver.setAccessToken(token);
+            return token;
+        }
+        try {
+            // 取得租约前其他节点可能已完成刷新
+            AccessToken stored = resolver.getToken();
+            if (isNewer(stored, stale)) {
+                resolver.setAccessToken(stored);
+                return stored;
+            }
+            AccessToken token = this.fetchAccessToken();
+            while (!resolver.compareAndSaveToken(stored == null ? 0 : stored.getVersion(), token)) {
+                // 租约过期期间其他节点保存了 token，保留较晚获取的一个
+                stored = resolver.getToken();
+                if (stored != null && stored.isValid() && stored.getExpireTime() >= token.getExpireTime()) {
+                    token = stored;
+                    break;
+                }
+            }
+            resolver.setAccessToken(token);
+            return token;
+        } finally {
+            resolver.releaseRefreshLease(this.refreshOwner);
+        }
     }
 
     /*!
@@ -212,13 +922,108 @@ public class WechatAPI {
      * api.ensureAccessToken();
      * ```
      */
-    public synchronized AccessToken ensureAccessToken() {
-        // 调用用户传入的获取token的异步方法，获得token之后使用（并缓存它）。
-        AccessToken token = tokenStorageResolver.getAccessToken();
+    public AccessToken ensureAccessToken() {
+        AccessToken token = currentToken.get();
         if (token != null && token.isValid()) {
             return token;
         }
-        return this.getAccessToken();
+        return this.refreshAccessToken(token);
+    }
+
+    /**
+     * 提前刷新当前仍然有效的 access token，供 RefreshAheadScheduler 调用
+     * 与 ensureAccessToken 共享同一个单飞刷新，若其他进程已保存了更新的 token 则直接采用
+     */
+    AccessToken refreshAccessTokenAhead() {
+        return this.refreshAccessToken(currentToken.get());
+    }
+
+    /**
+     * 单飞刷新：抢到刷新权的线程先读取 TokenStorageResolver（其他进程可能已保存了新 token），
+     * 没有比 stale 更新的有效 token 时再调用 getAccessToken，其余线程等待同一个结果。
+     * 等待使用 CompletableFuture 而非监视器锁，虚拟线程等待时不会占用载体线程。
+     * @param stale 调用方看到的需要被替换的 token，可为 null
+     */
+    private AccessToken refreshAccessToken(AccessToken stale) {
+        while (true) {
+            CompletableFuture<AccessToken> flight = tokenRefresh.get();
+            if (flight != null) {
+                return awaitToken(flight);
+            }
+            CompletableFuture<AccessToken> mine = new CompletableFuture<AccessToken>();
+            if (!tokenRefresh.compareAndSet(null, mine)) {
+                continue;
+            }
+            try {
+                // 竞争刷新权期间可能已被上一轮刷新更新
+                AccessToken token = currentToken.get();
+                if (token == stale || token == null || !token.isValid()) {
+                    // 调用用户传入的获取token的方法，获得token之后使用（并缓存它）。
+                    token = tokenStorageResolver.getAccessToken();
+                    if (!isNewer(token, stale)) {
+                        token = this.refreshWithLease(stale);
+                    }
+                    currentToken.set(token);
+                }
+                mine.complete(token);
+                return token;
+            } catch (RuntimeException e) {
+                mine.completeExceptionally(e);
+                throw e;
+            } finally {
+                tokenRefresh.compareAndSet(mine, null);
+            }
+        }
+    }
+
+    private static boolean isNewer(AccessToken candidate, AccessToken stale) {
+        if (candidate == null || !candidate.isValid()) {
+            return false;
+        }
+        if (stale == null) {
+            return true;
+        }
+        return !candidate.getAccessToken().equals(stale.getAccessToken())
+                && (!stale.isValid() || candidate.getExpireTime() > stale.getExpireTime());
+    }
+
+    private static AccessToken awaitToken(CompletableFuture<AccessToken> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 使当前缓存的 access token 失效，下次调用接口时重新获取
+     * 若 TokenStorageResolver 中保存的 token 与失效的相同，同样不再使用
+     * Examples:
+     * ```
+     * api.invalidateAccessToken();
+     * ```
+     */
+    public void invalidateAccessToken() {
+        AccessToken current = currentToken.get();
+        if (current != null) {
+            // 保留 token 字符串以便刷新时识别 TokenStorageResolver 中相同的失效 token
+            currentToken.compareAndSet(current, new AccessToken(current.getAccessToken(), 0L));
+        }
+    }
+
+    /**
+     * 不加锁地读取当前缓存的 access token，无效时返回 null，不会触发刷新
+     */
+    AccessToken peekAccessToken() {
+        AccessToken token = currentToken.get();
+        return token != null && token.isValid() ? token : null;
+    }
+
+    String getPrefix() {
+        return this.PREFIX;
     }
 
     /**
@@ -245,7 +1050,7 @@ public class WechatAPI {
                 "&code=" + code +
                 "&grant_type=authorization_code";
 
-        String dataStr = HttpUtils.sendGetRequest(url, null,"utf-8");
+        String dataStr = this.httpGet(url);
         JsonObject data = (JsonObject) jsonParser.parse(dataStr);
 
         if(!data.has("errcode")){
@@ -283,6 +1088,7 @@ public class WechatAPI {
      * - `expires_in`, 有效期7200秒，开发者必须在自己的服务全局缓存jsapi_ticket
      */
     public Ticket getTicket (String type) {
+        this.metrics.recordTicketRefresh();
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
@@ -292,7 +1098,7 @@ public class WechatAPI {
         Map<String, String> headers = new HashMap<String, String>();
         headers.put("content-type", "application/json");
         reqOpts.put("headers", headers);
-        String dataStr = HttpUtils.sendGetRequest(url, reqOpts,"utf-8");
+        String dataStr = this.httpGet(url, reqOpts);
         JsonObject data = (JsonObject) jsonParser.parse(dataStr);
 
         // 过期时间，因网络延迟等，将实际过期时间提前10秒，以防止临界点
@@ -438,22 +1244,78 @@ public class WechatAPI {
         return signature;
     };
 
-    public Ticket ensureTicket (String type) {
-        Ticket cache = ticketStorageResolver.getTicket(type);
+    /**
+     * 提前刷新指定类型的 ticket，供 RefreshAheadScheduler 调用
+     * 与 ensureTicket 共享同一类型的单飞刷新，若其他进程已保存了比 stale 更新的 ticket 则直接采用
+     * @param stale 上一次刷新得到的 ticket，可为 null
+     */
+    Ticket refreshTicketAhead (String type, Ticket stale) {
+        return this.refreshTicket(type, stale);
+    }
 
-        Ticket ticket = null;
+    public Ticket ensureTicket (String type) {
+        Ticket ticket = ticketStorageResolver.getTicket(type);
         // 有ticket并且ticket有效直接调用
-        if (cache != null) {
-            ticket = new Ticket(cache.getTicket(), cache.getExpireTime());
+        if (ticket != null && ticket.isValid()) {
+            return ticket;
+        }
+        // 没有ticket或者无效，从微信端获取ticket
+        return this.refreshTicket(type, ticket);
+    };
+
+    /**
+     * 按类型单飞刷新 ticket：同一类型同一时刻只有一个线程请求微信，其余线程等待同一个结果，
+     * 不同类型（如 jsapi 与 wx_card）互不影响
+     * @param stale 调用方看到的需要被替换的 ticket，可为 null
+     */
+    private Ticket refreshTicket (String type, Ticket stale) {
+        while (true) {
+            CompletableFuture<Ticket> flight = ticketRefreshes.get(type);
+            if (flight != null) {
+                return awaitTicket(flight);
+            }
+            CompletableFuture<Ticket> mine = new CompletableFuture<Ticket>();
+            if (ticketRefreshes.putIfAbsent(type, mine) != null) {
+                continue;
+            }
+            try {
+                // 竞争刷新权期间可能已被上一轮刷新或其他进程更新
+                Ticket ticket = ticketStorageResolver.getTicket(type);
+                if (!isNewer(ticket, stale)) {
+                    ticket = this.getTicket(type);
+                }
+                mine.complete(ticket);
+                return ticket;
+            } catch (RuntimeException e) {
+                mine.completeExceptionally(e);
+                throw e;
+            } finally {
+                ticketRefreshes.remove(type, mine);
+            }
         }
+    }
 
-        // 没有ticket或者无效
-        if (ticket == null || !ticket.isValid()) {
-            // 从微信端获取ticket
-            ticket = getTicket(type);
+    private static Ticket awaitTicket(CompletableFuture<Ticket> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
         }
-        return ticket;
-    };
+    }
+
+    private static boolean isNewer(Ticket candidate, Ticket stale) {
+        if (candidate == null || !candidate.isValid()) {
+            return false;
+        }
+        if (stale == null) {
+            return true;
+        }
+        return !candidate.getTicket().equals(stale.getTicket())
+                && (!stale.isValid() || candidate.getExpireTime() > stale.getExpireTime());
+    }
 
     /**
      * 获取微信JS SDK Config的所需参数
@@ -564,7 +1426,7 @@ public class WechatAPI {
         Map<String, String> headers = new HashMap<String, String>();
         headers.put("content-type", "application/json");
         reqOpts.put("headers", headers);
-        String dataStr = HttpUtils.sendGetRequest(url, reqOpts,"utf-8");
+        String dataStr = this.httpGet(url, reqOpts);
         JsonObject data = (JsonObject) jsonParser.parse(dataStr);
 
         JsonArray array = data.get("ip_list").getAsJsonArray();
@@ -622,7 +1484,7 @@ public class WechatAPI {
         // https://api.weixin.qq.com/customservice/msgrecord/getrecord?access_token=ACCESS_TOKEN
         String url = this.CUSTOM_SERVICE_PREFIX + "msgrecord/getrecord?access_token=" + accessToken;
         String data = gson.toJson(opts);
-        String respStr = HttpUtils.sendPostJsonRequest(url, data);
+        String respStr = this.httpPostJson(url, data);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         JsonArray recordlist = resp.get("recordlist").getAsJsonArray();
@@ -664,7 +1526,7 @@ public class WechatAPI {
         // https://api.weixin.qq.com/cgi-bin/customservice/getkflist?access_token= ACCESS_TOKEN
         String url = this.PREFIX + "customservice/getkflist?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url);
+        String respStr = this.httpPostJson(url);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         JsonArray kf_list = resp.get("kf_list").getAsJsonArray();
@@ -705,7 +1567,7 @@ public class WechatAPI {
         // https://api.weixin.qq.com/cgi-bin/customservice/getkflist?access_token= ACCESS_TOKEN
         String url = this.PREFIX + "customservice/getonlinekflist?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url);
+        String respStr = this.httpPostJson(url);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         JsonArray kf_online_list = resp.get("kf_online_list").getAsJsonArray();
@@ -732,7 +1594,7 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
         // https://api.weixin.qq.com/customservice/kfaccount/add?access_token=ACCESS_TOKEN
-        String prefix = "https://api.weixin.qq.com/";
+        String prefix = this.API_PREFIX;
         String url = prefix + "customservice/kfaccount/add?access_token=" + accessToken;
 
         Map<String, String> data = new HashMap<String, String>();
@@ -740,7 +1602,7 @@ public class WechatAPI {
         data.put("nickname", nick);
         data.put("password", password);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
 
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         Integer errCode = resp.get("errcode").getAsInt();
@@ -774,14 +1636,14 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
         // https://api.weixin.qq.com/customservice/kfaccount/inviteworker?access_token=ACCESS_TOKEN
-        String prefix = "https://api.weixin.qq.com/";
+        String prefix = this.API_PREFIX;
         String url = prefix + "customservice/kfaccount/inviteworker?access_token=" + accessToken;
 
         Map<String, String> data = new HashMap<String, String>();
         data.put("kf_account", account);
         data.put("invite_wx", wx);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
 
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         Integer errCode = resp.get("errcode").getAsInt();
@@ -813,14 +1675,14 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
         // https://api.weixin.qq.com/customservice/kfaccount/add?access_token=ACCESS_TOKEN
-        String prefix = "https://api.weixin.qq.com/";
+        String prefix = this.API_PREFIX;
         String url = prefix + "customservice/kfaccount/update?access_token=" + accessToken;
         Map<String, String> data = new HashMap<String, String>();
         data.put("kf_account", account);
         data.put("nickname", nick);
         data.put("password", password);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
 
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         Integer errCode = resp.get("errcode").getAsInt();
@@ -851,14 +1713,14 @@ public class WechatAPI {
          AccessToken token = this.ensureAccessToken();
          String accessToken = token.getAccessToken();
             // https://api.weixin.qq.com/customservice/kfaccount/del?access_token=ACCESS_TOKEN
-         String prefix = "https://api.weixin.qq.com/";
+         String prefix = this.API_PREFIX;
          String url = prefix + "customservice/kfaccount/del?access_token=" + accessToken + "&kf_account=" + account;
 
          Map<String, Object> reqOpts = new HashMap<String, Object>();
          Map<String, String> headers = new HashMap<String, String>();
          headers.put("content-type", "application/json");
          reqOpts.put("headers", headers);
-         String dataStr = HttpUtils.sendGetRequest(url, reqOpts,"utf-8");
+         String dataStr = this.httpGet(url, reqOpts);
 
          JsonObject resp = (JsonObject) jsonParser.parse(dataStr);
          Integer errCode = resp.get("errcode").getAsInt();
@@ -892,10 +1754,10 @@ public class WechatAPI {
         // http://api.weixin.qq.com/customservice/kfaccount/uploadheadimg?access_token=ACCESS_TOKEN&kf_account=KFACCOUNT
         Map<String, Object> formData = new HashMap<String, Object>();
         formData.put("media", new File(filepath));
-        String prefix = "https://api.weixin.qq.com/";
+        String prefix = this.API_PREFIX;
         String url = prefix + "customservice/kfaccount/uploadheadimg?access_token=" + accessToken + "&kf_account=" + account;
 
-        String respStr = HttpUtils.sendPostFormDataRequest(url, formData);
+        String respStr = this.httpPostFormData(url, formData);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         Integer errCode = resp.get("errcode").getAsInt();
 
@@ -926,14 +1788,14 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
         // https://api.weixin.qq.com/customservice/kfsession/create?access_token=ACCESS_TOKEN
-        String prefix = "https://api.weixin.qq.com/";
+        String prefix = this.API_PREFIX;
         String url = prefix + "customservice/kfsession/create?access_token=" + accessToken;
 
         Map<String, String> data = new HashMap<String, String>();
         data.put("kf_account", account);
         data.put("openid", openid);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
 
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         Integer errCode = resp.get("errcode").getAsInt();
@@ -972,7 +1834,7 @@ public class WechatAPI {
 
         String url = this.FILE_SERVER_PREFIX + "media/uploadimg?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostFormDataRequest(url, formData);
+        String respStr = this.httpPostFormData(url, formData);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     }
@@ -988,9 +1850,9 @@ public class WechatAPI {
          Map<String, Object> data = new HashMap<String, Object>();
          data.put("location_list", locations);
 
-         String url = "https://api.weixin.qq.com/card/location/batchadd?access_token=" + accessToken;
+         String url = this.API_PREFIX + "card/location/batchadd?access_token=" + accessToken;
 
-         String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+         String respStr = this.httpPostJson(url, gson.toJson(data));
          JsonObject resp = (JsonObject) jsonParser.parse(respStr);
          return resp;
      };
@@ -1007,8 +1869,8 @@ public class WechatAPI {
         data.put("offset", offset);
         data.put("count", count);
 
-        String url = "https://api.weixin.qq.com/card/location/batchget?access_token=" + accessToken;
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String url = this.API_PREFIX + "card/location/batchget?access_token=" + accessToken;
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     };
@@ -1017,12 +1879,12 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/card/getcolors?access_token=" + accessToken;
+        String url = this.API_PREFIX + "card/getcolors?access_token=" + accessToken;
         Map<String, Object> reqOpts = new HashMap<String, Object>();
         Map<String, String> headers = new HashMap<String, String>();
         headers.put("content-type", "application/json");
         reqOpts.put("headers", headers);
-        String respStr = HttpUtils.sendGetRequest(url, reqOpts,"utf-8");
+        String respStr = this.httpGet(url, reqOpts);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     }
@@ -1041,12 +1903,12 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/card/create?access_token=" + accessToken;
+        String url = this.API_PREFIX + "card/create?access_token=" + accessToken;
 
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("card", card);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     };
@@ -1059,7 +1921,7 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/card/qrcode/create?access_token=" + accessToken;
+        String url = this.API_PREFIX + "card/qrcode/create?access_token=" + accessToken;
 
         Map<String, Object> data = new HashMap<String, Object>();
             data.put("action_name", "QR_CARD");
@@ -1068,7 +1930,7 @@ public class WechatAPI {
             data.put("action_info", actionInfo);
             data.put("card", card);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     };
@@ -1078,13 +1940,13 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/card/code/consume?access_token=" + accessToken;
+        String url = this.API_PREFIX + "card/code/consume?access_token=" + accessToken;
 
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("code", code);
         data.put("cardId", cardId);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     };
@@ -1094,12 +1956,12 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/card/code/decrypt?access_token=" + accessToken;
+        String url = this.API_PREFIX + "card/code/decrypt?access_token=" + accessToken;
 
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("encrypt_code", encryptCode);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     };
@@ -1109,12 +1971,12 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/card/delete?access_token=" + accessToken;
+        String url = this.API_PREFIX + "card/delete?access_token=" + accessToken;
 
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("card_id", cardId);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     };
@@ -1128,14 +1990,14 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/card/code/get?access_token=" + accessToken;
+        String url = this.API_PREFIX + "card/code/get?access_token=" + accessToken;
 
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("code", code);
         if(cardId != null) {
             data.put("card_id", cardId);
         }
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     };
@@ -1150,7 +2012,7 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/card/batchget?access_token=" + accessToken;
+        String url = this.API_PREFIX + "card/batchget?access_token=" + accessToken;
 
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("offset", offset);
@@ -1158,7 +2020,7 @@ public class WechatAPI {
         if(status_list != null) {
             data.put("status_list", status_list);
         }
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     }
@@ -1168,11 +2030,11 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/card/get?access_token=" + accessToken;
+        String url = this.API_PREFIX + "card/get?access_token=" + accessToken;
 
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("card_id", cardId);
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     }
@@ -1192,14 +2054,14 @@ public class WechatAPI {
          AccessToken token = this.ensureAccessToken();
          String accessToken = token.getAccessToken();
 
-         String prefix = "https://api.weixin.qq.com/";
+         String prefix = this.API_PREFIX;
          String url = prefix + "card/user/getcardlist?access_token=" + accessToken;
 
          Map<String, Object> data = new HashMap<String, Object>();
          data.put("openid", openid);
          data.put("card_id", cardId);
 
-         String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+         String respStr = this.httpPostJson(url, gson.toJson(data));
          JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
          return resp;
@@ -1210,14 +2072,14 @@ public class WechatAPI {
          AccessToken token = this.ensureAccessToken();
          String accessToken = token.getAccessToken();
 
-         String url = "https://api.weixin.qq.com/card/code/update?access_token=" + accessToken;
+         String url = this.API_PREFIX + "card/code/update?access_token=" + accessToken;
 
          Map<String, Object> data = new HashMap<String, Object>();
          data.put("code", code);
          data.put("card_id", cardId);
          data.put("newcode", newcode);
 
-         String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+         String respStr = this.httpPostJson(url, gson.toJson(data));
          JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
          return resp;
@@ -1231,7 +2093,7 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/card/code/unavailable?access_token=" + accessToken;
+        String url = this.API_PREFIX + "card/code/unavailable?access_token=" + accessToken;
 
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("code", code);
@@ -1240,7 +2102,7 @@ public class WechatAPI {
             data.put("card_id", cardId);
         }
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1251,7 +2113,7 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/card/update?access_token=" + accessToken;
+        String url = this.API_PREFIX + "card/update?access_token=" + accessToken;
 
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("card_id", cardId);
@@ -1262,7 +2124,7 @@ public class WechatAPI {
             data.put("card_id", cardId);
         }
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1273,7 +2135,7 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/card/modifystock?access_token=" + accessToken;
+        String url = this.API_PREFIX + "card/modifystock?access_token=" + accessToken;
 
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("card_id", cardId);
@@ -1284,7 +2146,7 @@ public class WechatAPI {
             data.put("reduce_stock_value", Math.abs(num));
         }
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1296,9 +2158,9 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/card/membercard/activate?access_token=" + accessToken;
+        String url = this.API_PREFIX + "card/membercard/activate?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(info));
+        String respStr = this.httpPostJson(url, gson.toJson(info));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1309,9 +2171,9 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/card/membercard/activate/geturl?access_token=" + accessToken;
+        String url = this.API_PREFIX + "card/membercard/activate/geturl?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(info));
+        String respStr = this.httpPostJson(url, gson.toJson(info));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1323,9 +2185,9 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/card/membercard/updateuser?access_token=" + accessToken;
+        String url = this.API_PREFIX + "card/membercard/updateuser?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(info));
+        String respStr = this.httpPostJson(url, gson.toJson(info));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1336,10 +2198,10 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/card/membercard/activatetempinfo/get?access_token=" + accessToken;
+        String url = this.API_PREFIX + "card/membercard/activatetempinfo/get?access_token=" + accessToken;
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("activate_ticket", activate_ticket);
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1350,9 +2212,9 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/card/membercard/activateuserform/set?access_token=" + accessToken;
+        String url = this.API_PREFIX + "card/membercard/activateuserform/set?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1363,9 +2225,9 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/card/movieticket/updateuser?access_token=" + accessToken;
+        String url = this.API_PREFIX + "card/movieticket/updateuser?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(info));
+        String respStr = this.httpPostJson(url, gson.toJson(info));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1376,9 +2238,9 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/card/boardingpass/checkin?access_token=" + accessToken;
+        String url = this.API_PREFIX + "card/boardingpass/checkin?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(info));
+        String respStr = this.httpPostJson(url, gson.toJson(info));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1389,14 +2251,14 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/card/luckymonkey/updateuserbalance?access_token=" + accessToken;
+        String url = this.API_PREFIX + "card/luckymonkey/updateuserbalance?access_token=" + accessToken;
 
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("code", code);
         data.put("card_id", cardId);
         data.put("balance", balance);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1407,9 +2269,9 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/card/meetingticket/updateuser?access_token=" + accessToken;
+        String url = this.API_PREFIX + "card/meetingticket/updateuser?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(info));
+        String respStr = this.httpPostJson(url, gson.toJson(info));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1420,9 +2282,9 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/card/testwhitelist/set?access_token=" + accessToken;
+        String url = this.API_PREFIX + "card/testwhitelist/set?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(info));
+        String respStr = this.httpPostJson(url, gson.toJson(info));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1481,12 +2343,12 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/datacube/" + type + "?access_token=" + accessToken;
+        String url = this.API_PREFIX + "datacube/" + type + "?access_token=" + accessToken;
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("begin_date", begin);
         data.put("end_date", end);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         JsonArray list = resp.get("list").getAsJsonArray();
@@ -1519,14 +2381,14 @@ public class WechatAPI {
         String accessToken = token.getAccessToken();
 
         // https://api.weixin.qq.com/device/transmsg?access_token=ACCESS_TOKEN
-        String url = "https://api.weixin.qq.com/device/transmsg?access_token=" + accessToken;
+        String url = this.API_PREFIX + "device/transmsg?access_token=" + accessToken;
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("device_type", deviceType);
         data.put("device_id", deviceId);
         data.put("open_id", openid);
         data.put("content", Base64Utils.encode(content));
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1538,7 +2400,7 @@ public class WechatAPI {
         String accessToken = token.getAccessToken();
 
         // https://api.weixin.qq.com/device/transmsg?access_token=ACCESS_TOKEN
-        String url = "https://api.weixin.qq.com/device/transmsg?access_token=" + accessToken;
+        String url = this.API_PREFIX + "device/transmsg?access_token=" + accessToken;
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("device_type", deviceType);
         data.put("device_id", deviceId);
@@ -1546,7 +2408,7 @@ public class WechatAPI {
         data.put("msg_type", 2);
         data.put("device_status", status);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1567,12 +2429,12 @@ public class WechatAPI {
         String accessToken = token.getAccessToken();
 
         // https://api.weixin.qq.com/device/create_qrcode?access_token=ACCESS_TOKEN
-        String url = "https://api.weixin.qq.com/device/create_qrcode?access_token=" + accessToken;
+        String url = this.API_PREFIX + "device/create_qrcode?access_token=" + accessToken;
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("device_num", deviceIds.size());
         data.put("device_id_list", deviceIds);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1584,14 +2446,14 @@ public class WechatAPI {
         String accessToken = token.getAccessToken();
 
         // https://api.weixin.qq.com/device/authorize_device?access_token=ACCESS_TOKEN
-        String url = "https://api.weixin.qq.com/device/authorize_device?access_token=" + accessToken;
+        String url = this.API_PREFIX + "device/authorize_device?access_token=" + accessToken;
 
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("device_num", devices.size());
         data.put("device_list", devices);
         data.put("op_type", optype);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1604,9 +2466,9 @@ public class WechatAPI {
         String accessToken = token.getAccessToken();
 
         // https://api.weixin.qq.com/device/getqrcode?access_token=ACCESS_TOKEN
-        String url = "https://api.weixin.qq.com/device/getqrcode?access_token=" + accessToken;
+        String url = this.API_PREFIX + "device/getqrcode?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendGetRequest(url);
+        String respStr = this.httpGet(url);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1618,14 +2480,14 @@ public class WechatAPI {
         String accessToken = token.getAccessToken();
 
         // https://api.weixin.qq.com/device/bind?access_token=ACCESS_TOKEN
-        String  url = "https://api.weixin.qq.com/device/bind?access_token=" + accessToken;
+        String  url = this.API_PREFIX + "device/bind?access_token=" + accessToken;
 
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("ticket", ticket);
         data.put("device_id", deviceId);
         data.put("openid", openid);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1637,14 +2499,14 @@ public class WechatAPI {
         String accessToken = token.getAccessToken();
 
         // https://api.weixin.qq.com/device/unbind?access_token=ACCESS_TOKEN
-        String url = "https://api.weixin.qq.com/device/unbind?access_token=" + accessToken;
+        String url = this.API_PREFIX + "device/unbind?access_token=" + accessToken;
 
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("ticket", ticket);
         data.put("device_id", deviceId);
         data.put("openid", openid);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1656,13 +2518,13 @@ public class WechatAPI {
         String accessToken = token.getAccessToken();
 
         // https://api.weixin.qq.com/device/compel_bind?access_token=ACCESS_TOKEN
-        String url = "https://api.weixin.qq.com/device/compel_bind?access_token=" + accessToken;
+        String url = this.API_PREFIX + "device/compel_bind?access_token=" + accessToken;
 
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("device_id", deviceId);
         data.put("openid", openid);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1674,13 +2536,13 @@ public class WechatAPI {
         String accessToken = token.getAccessToken();
 
         // https://api.weixin.qq.com/device/compel_unbind?access_token=ACCESS_TOKEN
-        String url = "https://api.weixin.qq.com/device/compel_unbind?access_token=" + accessToken;
+        String url = this.API_PREFIX + "device/compel_unbind?access_token=" + accessToken;
 
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("device_id", deviceId);
         data.put("openid", openid);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1692,9 +2554,9 @@ public class WechatAPI {
         String accessToken = token.getAccessToken();
 
         // https://api.weixin.qq.com/device/get_stat?access_token=ACCESS_TOKEN&device_id=DEVICE_ID
-        String url = "https://api.weixin.qq.com/device/get_stat?access_token=" + accessToken + "&device_id=" + deviceId;
+        String url = this.API_PREFIX + "device/get_stat?access_token=" + accessToken + "&device_id=" + deviceId;
 
-        String respStr = HttpUtils.sendGetRequest(url);
+        String respStr = this.httpGet(url);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1706,12 +2568,12 @@ public class WechatAPI {
         String accessToken = token.getAccessToken();
 
         // https://api.weixin.qq.com/device/verify_qrcode?access_token=ACCESS_TOKEN
-        String url = "https://api.weixin.qq.com/device/verify_qrcode?access_token=" + accessToken;
+        String url = this.API_PREFIX + "device/verify_qrcode?access_token=" + accessToken;
 
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("ticket", ticket);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1723,14 +2585,14 @@ public class WechatAPI {
         String accessToken = token.getAccessToken();
 
         // https://api.weixin.qq.com/device/get_openid?access_token=ACCESS_TOKEN&device_type=DEVICE_TYPE&device_id=DEVICE_ID
-        String url = "https://api.weixin.qq.com/device/get_openid?access_token="
+        String url = this.API_PREFIX + "device/get_openid?access_token="
                 + accessToken
                 + "&device_id="
                 + deviceId
                 + "&device_type="
                 + deviceType;
 
-        String respStr = HttpUtils.sendGetRequest(url);
+        String respStr = this.httpGet(url);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1742,12 +2604,12 @@ public class WechatAPI {
         String accessToken = token.getAccessToken();
 
         // https://api.weixin.qq.com/device/get_bind_device?access_token=ACCESS_TOKEN&openid=OPENID
-        String url = "https://api.weixin.qq.com/device/get_bind_device?access_token="
+        String url = this.API_PREFIX + "device/get_bind_device?access_token="
                 + accessToken
                 + "&openid="
                 + openid;
 
-        String respStr = HttpUtils.sendGetRequest(url);
+        String respStr = this.httpGet(url);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1776,7 +2638,7 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String feedbackUrl = "https://api.weixin.qq.com/payfeedback/update?access_token=";
+        String feedbackUrl = this.API_PREFIX + "payfeedback/update?access_token=";
         // https://api.weixin.qq.com/payfeedback/update?access_token=xxxxx&openid=XXXX&feedbackid=xxxx
         String url = feedbackUrl
                 + accessToken
@@ -1785,7 +2647,7 @@ public class WechatAPI {
                 + "&feedbackid="
                 + feedbackId;
 
-        String respStr = HttpUtils.sendGetRequest(url);
+        String respStr = this.httpGet(url);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         int errCode = resp.get("errcode").getAsInt();
@@ -1820,7 +2682,7 @@ public class WechatAPI {
         // https://api.weixin.qq.com/cgi-bin/groups/get?access_token=ACCESS_TOKEN
         String url = this.PREFIX + "groups/get?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendGetRequest(url);
+        String respStr = this.httpGet(url);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         JsonArray groups = resp.get("groups").getAsJsonArray();
@@ -1853,7 +2715,7 @@ public class WechatAPI {
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("openid", openid);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1887,7 +2749,7 @@ public class WechatAPI {
             group.put("name", name);
         data.put("group", group);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -1924,7 +2786,7 @@ public class WechatAPI {
                 group.put("name", name);
         data.put("group", group);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         int errCode = resp.get("errcode").getAsInt();
@@ -1964,7 +2826,7 @@ public class WechatAPI {
         data.put("openid", openid);
         data.put("to_groupid", groupId);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         int errCode = resp.get("errcode").getAsInt();
@@ -1986,11 +2848,25 @@ public class WechatAPI {
      * ```
      * {"errcode": 0, "errmsg": "ok"}
      * ```
+     * 每次最多移动 50 个用户，超过时自动分批并发提交（见 `BulkTagger`），全部成功时返回 true。
      * @param {String} openids 用户的openid数组
      * @param {Number} groupId 分组ID
      */
     public boolean moveUsersToGroup (List<String> openids, String groupId) {
 
+        if (openids.size() > BulkTagger.MAX_CHUNK_SIZE) {
+            return new BulkTagger(this).moveToGroup(groupId, openids).isComplete();
+        }
+
+        JsonObject resp = this.moveUsersToGroupResponse(openids, groupId);
+        return resp != null && resp.get("errcode").getAsInt() == 0;
+    }
+
+    /**
+     * 移动一批（不超过 50 个）用户的分组；请求失败时返回 null
+     */
+    JsonObject moveUsersToGroupResponse (List<String> openids, String groupId) {
+
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
@@ -2004,16 +2880,12 @@ public class WechatAPI {
         data.put("openid_list", openids);
         data.put("to_groupid", groupId);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
-        JsonObject resp = (JsonObject) jsonParser.parse(respStr);
-
-        int errCode = resp.get("errcode").getAsInt();
-        if(errCode == 0){
-            return true;
-        }else{
-            return false;
+        String respStr = this.httpPostJson(url, gson.toJson(data));
+        if (respStr == null) {
+            return null;
         }
-    };
+        return (JsonObject) jsonParser.parse(respStr);
+    }
 
 
     /**
@@ -2040,7 +2912,7 @@ public class WechatAPI {
             group.put("id", groupId);
         data.put("group", group);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         int errCode = resp.get("errcode").getAsInt();
@@ -2084,7 +2956,7 @@ public class WechatAPI {
 
         String url = this.PAY_PREFIX + "delivernotify?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errCode = resp.get("errcode").getAsInt();
         if(errCode == 0){
@@ -2147,7 +3019,7 @@ public class WechatAPI {
 
         String url = this.PAY_PREFIX + "orderquery?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(query));
+        String respStr = this.httpPostJson(url, gson.toJson(query));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -2188,7 +3060,7 @@ public class WechatAPI {
         data.put("action_name", "QR_SCENE");
         data.put("action_info", action_info);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -2236,7 +3108,7 @@ public class WechatAPI {
         data.put("action_name", "QR_STR_SCENE");
         data.put("action_info", action_info);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         String ticket = resp.get("ticket").getAsString();
@@ -2284,7 +3156,7 @@ public class WechatAPI {
         data.put("action_name", "QR_LIMIT_SCENE");
         data.put("action_info", action_info);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         String ticket = resp.get("ticket").getAsString();
@@ -2308,7 +3180,7 @@ public class WechatAPI {
         data.put("action_name", "QR_LIMIT_STR_SCENE");
         data.put("action_info", action_info);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         String ticket = resp.get("ticket").getAsString();
@@ -2352,7 +3224,7 @@ public class WechatAPI {
         data.put("action", "long2short");
         data.put("long_url", longUrl);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -2411,7 +3283,7 @@ public class WechatAPI {
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("articles", news);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -2449,7 +3321,7 @@ public class WechatAPI {
 
         // https://file.api.weixin.qq.com/cgi-bin/media/uploadvideo?access_token=ACCESS_TOKEN
         String url = this.FILE_SERVER_PREFIX + "media/uploadvideo?access_token=" + accessToken;
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(opts));
+        String respStr = this.httpPostJson(url, gson.toJson(opts));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -2480,7 +3352,7 @@ public class WechatAPI {
      *  "msg_id":34182
      * }
      * ```
-     * @param {Object} opts 待发送的数据
+     * @param {Object} opts 待发送的数据，不会被修改；同一条消息多次群发时可使用 `massSend(MassMessage)`
      * @param {String|Array|Boolean} receivers 接收人。一个标签，或者openid列表,或者布尔值是否发送给全部用户
      * @param {String|Array} clientMsgId 开发者侧群发msgid，长度限制64字节，如不填，则后台默认以群发范围和群发内容的摘要值做为clientmsgid
      * @param {Int} sendIgnoreReprint 图文消息被判定为转载时，是否继续群发。 1为继续群发（转载），0为停止群发。 该参数默认为0。
@@ -2518,34 +3390,118 @@ public class WechatAPI {
         String accessToken = token.getAccessToken();
 
         String url = null;
+        // 复制一份，不修改调用方的 opts，同一份 opts 可以重复使用
+        Map<String, Object> data = new HashMap<String, Object>(opts);
         if (sendIgnoreReprint != null) {
-            opts.put("send_ignore_reprint", sendIgnoreReprint);
+            data.put("send_ignore_reprint", sendIgnoreReprint);
         }
         if (clientMsgId != null) {
-            opts.put("clientmsgid", clientMsgId);
+            data.put("clientmsgid", clientMsgId);
         }
         if (receivers instanceof List) {
-            opts.put("touser", receivers);
+            data.remove("filter");
+            data.put("touser", receivers);
             url = this.PREFIX + "message/mass/send?access_token=" + accessToken;
         } else {
             Map<String, Object> filter = new HashMap<String, Object>();
             if (receivers instanceof Boolean) {
                 filter.put("is_to_all", receivers);
             } else if(receivers instanceof String) {
+                filter.put("is_to_all", false);
                 filter.put("tag_id", receivers);
             } else {
                 filter.put("is_to_all", true);
             }
+            data.remove("touser");
+            data.put("filter", filter);
             url = this.PREFIX + "message/mass/sendall?access_token=" + accessToken;
         }
         // https://api.weixin.qq.com/cgi-bin/message/mass/sendall?access_token=ACCESS_TOKEN
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(opts));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
     };
 
+    /**
+     * 群发已构建的消息，请求体在 `MassMessage` 创建时已序列化，可重复发送
+     * Examples:
+     * ```
+     * MassMessage message = MassMessage.mpNews(mediaId).toTag("2").setSendIgnoreReprint(1).build();
+     * api.massSend(message);
+     * ```
+     * Result:
+     * ```
+     * {
+     *  "errcode":0,
+     *  "errmsg":"send job submission success",
+     *  "msg_id":34182
+     * }
+     * ```
+     * 请求失败时返回 null。
+     * @param {MassMessage} message 群发消息
+     */
+    public JsonObject massSend (MassMessage message) {
+
+        AccessToken token = this.ensureAccessToken();
+        String accessToken = token.getAccessToken();
+
+        String url = this.PREFIX + message.getEndpoint() + "?access_token=" + accessToken;
+
+        // 只读视图，直接写出，不复制请求体
+        String respStr = this.httpPostJson(url, message.getBody());
+        if (respStr == null) {
+            return null;
+        }
+        return (JsonObject) jsonParser.parse(respStr);
+    }
+
+    /**
+     * 按openid列表群发一批消息，不修改传入的opts，供 `MassCampaign` 逐批提交
+     * 详情请见：<https://mp.weixin.qq.com/wiki?t=resource/res_main&id=mp1481187827_i0l21>
+     * Examples:
+     * ```
+     * api.massSendToUsers(opts, openids, "campaign-20240101-0", 0);
+     * ```
+     * Result:
+     * ```
+     * {
+     *  "errcode":0,
+     *  "errmsg":"send job submission success",
+     *  "msg_id":34182
+     * }
+     * ```
+     * 相同 clientmsgid 已有群发记录时返回 45065，并带有已存在的群发任务的 msg_id。请求失败时返回 null。
+     * @param {Object} opts 待发送的数据，含 msgtype 及对应的消息内容
+     * @param {Array} openids 接收人openid列表，2 至 10000 个
+     * @param {String} clientMsgId 开发者侧群发msgid，长度限制64字节，可不填
+     * @param {Int} sendIgnoreReprint 图文消息被判定为转载时，是否继续群发，可不填
+     */
+    public JsonObject massSendToUsers (Map<String, Object> opts, List<String> openids, String clientMsgId, Integer sendIgnoreReprint) {
+
+        AccessToken token = this.ensureAccessToken();
+        String accessToken = token.getAccessToken();
+
+        // https://api.weixin.qq.com/cgi-bin/message/mass/send?access_token=ACCESS_TOKEN
+        String url = this.PREFIX + "message/mass/send?access_token=" + accessToken;
+
+        Map<String, Object> data = new HashMap<String, Object>(opts);
+        data.put("touser", openids);
+        if (clientMsgId != null) {
+            data.put("clientmsgid", clientMsgId);
+        }
+        if (sendIgnoreReprint != null) {
+            data.put("send_ignore_reprint", sendIgnoreReprint);
+        }
+
+        String respStr = this.httpPostJson(url, gson.toJson(data));
+        if (respStr == null) {
+            return null;
+        }
+        return (JsonObject) jsonParser.parse(respStr);
+    }
+
     /**
      * 群发图文（news）消息
      * 详情请见：<http://mp.weixin.qq.com/wiki/15/5380a4e6f02f2ffdc7981a8ed7a40753.html>
@@ -2750,7 +3706,7 @@ public class WechatAPI {
         Map<String, Object> opts = new HashMap<String, Object>();
         opts.put("msg_id", messageId);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(opts));
+        String respStr = this.httpPostJson(url, gson.toJson(opts));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         int errCode = resp.get("errcode").getAsInt();
@@ -2793,7 +3749,7 @@ public class WechatAPI {
         opts.put("msgtype", "mpnews");
         opts.put("touser", openid);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(opts));
+        String respStr = this.httpPostJson(url, gson.toJson(opts));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     };
@@ -2830,7 +3786,7 @@ public class WechatAPI {
         opts.put("msgtype", "text");
         opts.put("touser", openid);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(opts));
+        String respStr = this.httpPostJson(url, gson.toJson(opts));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     };
@@ -2867,7 +3823,7 @@ public class WechatAPI {
         opts.put("msgtype", "voice");
         opts.put("touser", openid);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(opts));
+        String respStr = this.httpPostJson(url, gson.toJson(opts));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -2905,7 +3861,7 @@ public class WechatAPI {
         opts.put("msgtype", "image");
         opts.put("touser", openid);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(opts));
+        String respStr = this.httpPostJson(url, gson.toJson(opts));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -2943,12 +3899,47 @@ public class WechatAPI {
         opts.put("msgtype", "mpvideo");
         opts.put("touser", openid);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(opts));
+        String respStr = this.httpPostJson(url, gson.toJson(opts));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
     };
 
+    /**
+     * 预览接口，向多个用户发送同一条预览消息，设置了 executor 时每个用户的请求并发执行
+     * Examples:
+     * ```
+     * Map<String, Object> opts = new HashMap<String, Object>();
+     * Map<String, Object> text = new HashMap<String, Object>();
+     * text.put("content", "hello");
+     * opts.put("text", text);
+     * opts.put("msgtype", "text");
+     * api.batchPreview(openids, opts);
+     * ```
+     * @param {Array} openids 用户openid列表
+     * @param {Object} opts 预览消息，不含 touser
+     * @return 与 openids 顺序一致的响应列表，请求失败的位置为 null
+     */
+    public List<JsonObject> batchPreview (List<String> openids, final Map<String, Object> opts) {
+        List<Callable<JsonObject>> tasks = new ArrayList<Callable<JsonObject>>(openids.size());
+        for (final String openid : openids) {
+            tasks.add(new Callable<JsonObject>() {
+                @Override
+                public JsonObject call() {
+                    AccessToken token = ensureAccessToken();
+                    String url = PREFIX + "message/mass/preview?access_token=" + token.getAccessToken();
+
+                    Map<String, Object> data = new HashMap<String, Object>(opts);
+                    data.put("touser", openid);
+
+                    String respStr = httpPostJson(url, gson.toJson(data));
+                    return (JsonObject) jsonParser.parse(respStr);
+                }
+            });
+        }
+        return this.fanOut(tasks);
+    }
+
     /**
      * 查询群发消息状态
      * 详情请见：<http://mp.weixin.qq.com/wiki/15/5380a4e6f02f2ffdc7981a8ed7a40753.html>
@@ -2963,6 +3954,7 @@ public class WechatAPI {
      *  "msg_status":"SEND_SUCCESS"
      * }
      * ```
+     * 请求失败时返回 null。
      * @param {String} messageId 消息ID
      */
     public JsonObject getMassMessageStatus (String messageId) {
@@ -2975,7 +3967,10 @@ public class WechatAPI {
         Map<String, Object> opts = new HashMap<String, Object>();
         opts.put("msg_id", messageId);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(opts));
+        String respStr = this.httpPostJson(url, gson.toJson(opts));
+        if (respStr == null) {
+            return null;
+        }
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -3000,20 +3995,24 @@ public class WechatAPI {
      * - `uploadImageMaterial(filepath);`
      * - `uploadVoiceMaterial(filepath);`
      * - `uploadThumbMaterial(filepath);`
+     * 文件以流式上传，不在内存中缓冲。
      * @param {String} filepath 文件路径
      * @param {String} type 媒体类型，可用值有image、voice、video、thumb
      */
     public JsonObject uploadMaterial (String filepath, MaterialType type) {
+        return uploadMaterial(Paths.get(filepath), type);
+    };
+
+    public JsonObject uploadMaterial (Path file, MaterialType type) {
 
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
         String url = this.PREFIX + "material/add_material?access_token=" + accessToken + "&type=" + type;
 
-        Map<String, Object> data = new HashMap<String, Object>();
-        data.put("file", new File(filepath));
+        MultipartBody body = new MultipartBody().addFile("file", file);
 
-        String respStr = HttpUtils.sendHttpsPostFormDataRequest(url, data);
+        String respStr = this.httpPostMultipart(url, body);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -3062,7 +4061,7 @@ public class WechatAPI {
         data.put("media", new File(filepath));
         data.put("description", gson.toJson(description));
 
-        String respStr = HttpUtils.sendPostFormDataRequest(url, data);
+        String respStr = this.httpPostFormData(url, data);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -3107,7 +4106,7 @@ public class WechatAPI {
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("articles", news);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errCode = resp.get("errcode").getAsInt();
         if(errCode == 0){
@@ -3155,7 +4154,7 @@ public class WechatAPI {
 
         String url = this.PREFIX + "material/add_news?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(news));
+        String respStr = this.httpPostJson(url, gson.toJson(news));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errCode = resp.get("errcode").getAsInt();
         if(errCode == 0){
@@ -3173,12 +4172,61 @@ public class WechatAPI {
      * api.getMaterial('media_id');
      * ```
      *
-     * - `result`, 调用正常时得到的文件Buffer对象
-     * - `res`, HTTP响应对象
+     * 图文、视频素材以JSON返回；图片、语音等二进制素材不读取内容，返回
+     * `{"errcode":-1,"errmsg":"binary material, use getMaterial(mediaId, target)","content_type":"image/jpeg"}`，
+     * 请使用 `getMaterial(mediaId, target)` 下载。请求失败时返回 null。
      * @param {String} mediaId 媒体文件的ID
      */
     public JsonObject getMaterial (String mediaId) {
 
+        BinaryResponse response = this.downloadMaterial(mediaId);
+        if (response == null) {
+            return null;
+        }
+        try {
+            if (!response.isJson()) {
+                JsonObject resp = new JsonObject();
+                resp.addProperty("errcode", -1);
+                resp.addProperty("errmsg", "binary material, use getMaterial(mediaId, target)");
+                resp.addProperty("content_type", response.getContentType());
+                return resp;
+            }
+            return (JsonObject) jsonParser.parse(new String(response.readAllBytes(), UTF_8));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * 根据媒体ID下载永久素材，二进制内容直接写入文件，不在内存中缓存
+     * 详情请见：<http://mp.weixin.qq.com/wiki/4/b3546879f07623cb30df9ca0e420a5d0.html>
+     * Examples:
+     * ```
+     * api.getMaterial(mediaId, Paths.get("/data/material/" + mediaId + ".jpg"));
+     * try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+     *     api.getMaterial(mediaId, channel);
+     * }
+     * ```
+     * Result:
+     * ```
+     * {"errcode":0,"content_type":"image/jpeg","size":102400}
+     * ```
+     * 响应为JSON时（出错，或图文、视频素材）不写入任何内容，直接返回该JSON。请求或写入失败时返回 null。
+     * @param {String} mediaId 媒体文件的ID
+     * @param {Path|WritableByteChannel} target 目标文件（完成后原子替换）或通道（不会被关闭）
+     */
+    public JsonObject getMaterial (String mediaId, Path target) {
+        return this.transferDownload(this.downloadMaterial(mediaId), target);
+    }
+    public JsonObject getMaterial (String mediaId, WritableByteChannel target) {
+        return this.transferDownload(this.downloadMaterial(mediaId), target);
+    }
+
+    private BinaryResponse downloadMaterial (String mediaId) {
+
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
@@ -3187,10 +4235,36 @@ public class WechatAPI {
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("media_id", mediaId);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
-        JsonObject resp = (JsonObject) jsonParser.parse(respStr);
+        return this.httpDownload(url, gson.toJson(data));
+    }
 
-        return resp;
+    /**
+     * 将下载的响应写入目标；响应为JSON时解析后返回，不写入
+     * @param target Path 或 WritableByteChannel
+     */
+    private JsonObject transferDownload (BinaryResponse response, Object target) {
+        if (response == null) {
+            return null;
+        }
+        try {
+            if (response.isJson()) {
+                return (JsonObject) jsonParser.parse(new String(response.readAllBytes(), UTF_8));
+            }
+            String contentType = response.getContentType();
+            long size = target instanceof Path
+                    ? response.transferTo((Path) target)
+                    : response.transferTo((WritableByteChannel) target);
+            JsonObject resp = new JsonObject();
+            resp.addProperty("errcode", 0);
+            resp.addProperty("content_type", contentType);
+            resp.addProperty("size", size);
+            return resp;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            response.close();
+        }
     }
 
     /**
@@ -3215,7 +4289,7 @@ public class WechatAPI {
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("media_id", mediaId);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -3247,7 +4321,7 @@ public class WechatAPI {
 
         String url = this.PREFIX + "material/get_materialcount?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendGetRequest(url);
+        String respStr = this.httpGet(url);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -3292,7 +4366,7 @@ public class WechatAPI {
         data.put("offset", offset);
         data.put("count", count);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -3351,11 +4425,11 @@ public class WechatAPI {
         String accessToken = token.getAccessToken();
 
         // https://api.weixin.qq.com/semantic/semproxy/search?access_token=YOUR_ACCESS_TOKEN
-        String url = "https://api.weixin.qq.com/semantic/semproxy/search?access_token=" + accessToken;
+        String url = this.API_PREFIX + "semantic/semproxy/search?access_token=" + accessToken;
         opts.put("appid", this.appid);
         opts.put("uid", openid);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(opts));
+        String respStr = this.httpPostJson(url, gson.toJson(opts));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -3394,7 +4468,7 @@ public class WechatAPI {
         data.put("path", path);
         data.put("width", width);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -3439,7 +4513,7 @@ public class WechatAPI {
         data.put("line_color", line_color);
         data.put("is_hyaline", is_hyaline);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -3487,7 +4561,7 @@ public class WechatAPI {
         data.put("line_color", line_color);
         data.put("is_hyaline", is_hyaline);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -3523,7 +4597,7 @@ public class WechatAPI {
         String url = this.MERCHANT_PREFIX + "common/upload_img?access_token=" +
                 accessToken + "&filename=" + basename;
 
-        String respStr = HttpUtils.sendPostFileRequest(url, file);
+        String respStr = this.httpPostFile(url, file);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -3552,7 +4626,7 @@ public class WechatAPI {
 
         String url = this.PREFIX + "template/api_set_industry?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(industryIds));
+        String respStr = this.httpPostJson(url, gson.toJson(industryIds));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -3577,7 +4651,7 @@ public class WechatAPI {
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("template_id_short", templateIdShort);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -3626,12 +4700,35 @@ public class WechatAPI {
         template.put("color", topColor);
         template.put("data", data);
 
-        String respStr = HttpUtils.sendPostJsonRequest(apiUrl, gson.toJson(template));
+        String respStr = this.httpPostJson(apiUrl, gson.toJson(template));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
     };
 
+    /**
+     * 发送已序列化的模板消息，请求体由调用方生成（见 `TemplateMessageBatch`）
+     * Examples:
+     * ```
+     * api.sendTemplate(payload.render(openid, "已发货", "顺丰 SF1234567890"));
+     * ```
+     * 请求失败时返回 null。
+     * @param {byte[]} body UTF-8 编码的模板消息 JSON，须包含 touser、template_id
+     */
+    public JsonObject sendTemplate (byte[] body) {
+
+        AccessToken token = this.ensureAccessToken();
+        String accessToken = token.getAccessToken();
+
+        String apiUrl = this.PREFIX + "message/template/send?access_token=" + accessToken;
+
+        String respStr = this.httpPostJson(apiUrl, body);
+        if (respStr == null) {
+            return null;
+        }
+        return (JsonObject) jsonParser.parse(respStr);
+    }
+
     /**
      * 发送模板消息支持小程序
      * Examples:
@@ -3679,7 +4776,7 @@ public class WechatAPI {
         data.put("color", color);
         data.put("emphasis_keyword", emphasisKeyword);
 
-        String respStr = HttpUtils.sendPostJsonRequest(apiUrl, gson.toJson(template));
+        String respStr = this.httpPostJson(apiUrl, gson.toJson(template));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -3704,7 +4801,9 @@ public class WechatAPI {
      * - `api.uploadVideoMedia(filepath);`
      * - `api.uploadThumbMedia(filepath);`
      *
-     * @param {String|InputStream} filepath 文件路径/文件Buffer数据
+     * 文件以流式上传，请求体长度在发送前计算，不在内存中缓冲；传入的 InputStream 在上传结束后关闭。
+     *
+     * @param {String|File|Path|InputStream} filepath 文件路径/文件Buffer数据
      * @param {String} type 媒体类型，可用值有image、voice、video、thumb
      */
     public JsonObject uploadMedia (String filepath, String type) {
@@ -3713,28 +4812,54 @@ public class WechatAPI {
     public JsonObject uploadMedia (InputStream fileInputStream, String type) {
         return uploadMedia((Object) fileInputStream, type);
     }
+    public JsonObject uploadMedia (Path file, String type) {
+        return uploadMedia((Object) file, type);
+    }
 
-    public JsonObject uploadMedia (Object filepath, String type) {
-
-        AccessToken token = this.ensureAccessToken();
-        String accessToken = token.getAccessToken();
-
-        String apiUrl = this.PREFIX + "media/upload?access_token=" + accessToken + "&type=" + type;
-
-        Map<String, Object> data = new HashMap<String, Object>();
+    /**
+     * 上传内存中的临时素材
+     * Examples:
+     * ```
+     * api.uploadMedia(ByteBuffer.wrap(bytes), "qrcode.jpg", "image");
+     * ```
+     * @param {ByteBuffer} content 文件内容，读取 position 到 limit 之间的字节，不改变传入的 ByteBuffer
+     * @param {String} filename 文件名，微信根据扩展名判断文件格式
+     * @param {String} type 媒体类型，可用值有image、voice、video、thumb
+     */
+    public JsonObject uploadMedia (ByteBuffer content, String filename, String type) {
+        MultipartBody body = new MultipartBody().addBytes("file", filename, content);
+        return uploadMedia(body, type);
+    }
 
+    public JsonObject uploadMedia (Object filepath, String type) {
+        MultipartBody body = new MultipartBody();
         if(filepath instanceof String) {
-            String filepathStr = (String) filepath;
-            data.put("file", new File(filepathStr));
+            body.addFile("file", Paths.get((String) filepath));
+        }else if(filepath instanceof File){
+            body.addFile("file", ((File) filepath).toPath());
+        }else if(filepath instanceof Path){
+            body.addFile("file", (Path) filepath);
         }else if(filepath instanceof InputStream){
-            data.put("file", filepath);
+            body.addStream("file", null, (InputStream) filepath);
         }
+        return uploadMedia(body, type);
+    };
 
-        String respStr = HttpUtils.sendHttpsPostFormDataRequest(apiUrl, data);
-        JsonObject resp = (JsonObject) jsonParser.parse(respStr);
+    private JsonObject uploadMedia (MultipartBody body, String type) {
+        try {
+            AccessToken token = this.ensureAccessToken();
+            String accessToken = token.getAccessToken();
 
-        return resp;
-    };
+            String apiUrl = this.PREFIX + "media/upload?access_token=" + accessToken + "&type=" + type;
+
+            String respStr = this.httpPostMultipart(apiUrl, body);
+            JsonObject resp = (JsonObject) jsonParser.parse(respStr);
+
+            return resp;
+        } finally {
+            body.close();
+        }
+    }
 
     public JsonObject uploadImageMedia (String filepath) {
         return uploadMedia(filepath, "image");
@@ -3782,28 +4907,54 @@ public class WechatAPI {
      * ```
      * - `result`, 调用正常时得到的文件Buffer对象
      * - `res`, HTTP响应对象
+     * 文件内容全部读入内存，较大的文件请使用 `getMedia(mediaId, target)`。
      * @param {String} mediaId 媒体文件的ID
      */
     public InputStream getMedia (String mediaId) {
 
-        AccessToken token = this.ensureAccessToken();
-        String accessToken = token.getAccessToken();
-
-        String url = this.PREFIX + "media/get?access_token=" + accessToken + "&media_id=" + mediaId;
-
-        com.mashape.unirest.http.HttpResponse<InputStream> inputStreamHttpResponse = null;
+        BinaryResponse response = this.downloadMedia(mediaId);
+        if (response == null) {
+            return null;
+        }
 
         try {
-
-            inputStreamHttpResponse = Unirest.get(url).asBinary();
-            InputStream body = inputStreamHttpResponse.getBody();
-
-            return body;
-        } catch (UnirestException e) {
+            return new ByteArrayInputStream(response.readAllBytes());
+        } catch (IOException e) {
             e.printStackTrace();
             return null;
         }
+    }
 
+    /**
+     * 下载临时素材，二进制内容直接写入文件或通道，不在内存中缓存，适用于较大的视频、语音
+     * 详情请见：<http://mp.weixin.qq.com/wiki/11/07b6b76a6b6e8848e855a435d5e34a5f.html>
+     * Examples:
+     * ```
+     * api.getMedia(mediaId, Paths.get("/data/media/" + mediaId));
+     * ```
+     * Result:
+     * ```
+     * {"errcode":0,"content_type":"image/jpeg","size":102400}
+     * ```
+     * 响应为JSON时（出错，或视频素材返回的 video_url）不写入任何内容，直接返回该JSON。请求或写入失败时返回 null。
+     * @param {String} mediaId 媒体文件的ID
+     * @param {Path|WritableByteChannel} target 目标文件（完成后原子替换）或通道（不会被关闭）
+     */
+    public JsonObject getMedia (String mediaId, Path target) {
+        return this.transferDownload(this.downloadMedia(mediaId), target);
+    }
+    public JsonObject getMedia (String mediaId, WritableByteChannel target) {
+        return this.transferDownload(this.downloadMedia(mediaId), target);
+    }
+
+    private BinaryResponse downloadMedia (String mediaId) {
+
+        AccessToken token = this.ensureAccessToken();
+        String accessToken = token.getAccessToken();
+
+        String url = this.PREFIX + "media/get?access_token=" + accessToken + "&media_id=" + mediaId;
+
+        return this.httpDownload(url, null);
     }
     /**
      * 上传图文消息内的图片获取URL
@@ -3828,7 +4979,7 @@ public class WechatAPI {
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("media", new File(filepath));
 
-        String respStr = HttpUtils.sendPostFormDataRequest(apiUrl, data);
+        String respStr = this.httpPostFormData(apiUrl, data);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -3881,7 +5032,7 @@ public class WechatAPI {
 
         String apiUrl = this.PREFIX + "menu/create?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(apiUrl, gson.toJson(menu));
+        String respStr = this.httpPostJson(apiUrl, gson.toJson(menu));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errCode = resp.get("errcode").getAsInt();
         if(errCode == 0){
@@ -3922,7 +5073,7 @@ public class WechatAPI {
 
         String apiUrl = this.PREFIX + "menu/get?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendGetRequest(apiUrl);
+        String respStr = this.httpGet(apiUrl);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         JsonObject menu = resp.get("menu").getAsJsonObject();
         return menu;
@@ -3947,7 +5098,7 @@ public class WechatAPI {
 
         String apiUrl = this.PREFIX + "menu/delete?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendGetRequest(apiUrl);
+        String respStr = this.httpGet(apiUrl);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errcode = resp.get("errcode").getAsInt();
         if(errcode == 0){
@@ -3976,7 +5127,7 @@ public class WechatAPI {
 
         String apiUrl = this.PREFIX + "get_current_selfmenu_info?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendGetRequest(apiUrl);
+        String respStr = this.httpGet(apiUrl);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     }
@@ -4039,7 +5190,7 @@ public class WechatAPI {
         // https://api.weixin.qq.com/cgi-bin/menu/addconditional?access_token=ACCESS_TOKEN
         String apiUrl = this.PREFIX + "menu/addconditional?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(apiUrl, gson.toJson(menu));
+        String respStr = this.httpPostJson(apiUrl, gson.toJson(menu));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errCode = resp.get("errcode").getAsInt();
         if(errCode == 0){
@@ -4078,7 +5229,7 @@ public class WechatAPI {
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("menuid", menuid);
 
-        String respStr = HttpUtils.sendPostJsonRequest(apiUrl, gson.toJson(data));
+        String respStr = this.httpPostJson(apiUrl, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errCode = resp.get("errcode").getAsInt();
         if(errCode == 0){
@@ -4138,7 +5289,7 @@ public class WechatAPI {
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("user_id", user_id);
 
-        String respStr = HttpUtils.sendPostJsonRequest(apiUrl, gson.toJson(data));
+        String respStr = this.httpPostJson(apiUrl, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     };
@@ -4168,7 +5319,7 @@ public class WechatAPI {
         data.put("msgtype", "text");
         data.put("text", textMap);
 
-        String respStr = HttpUtils.sendPostJsonRequest(apiUrl, gson.toJson(data));
+        String respStr = this.httpPostJson(apiUrl, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     };
@@ -4197,7 +5348,7 @@ public class WechatAPI {
         data.put("msgtype", "image");
         data.put("image", imageMap);
 
-        String respStr = HttpUtils.sendPostJsonRequest(apiUrl, gson.toJson(data));
+        String respStr = this.httpPostJson(apiUrl, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     }
@@ -4226,7 +5377,7 @@ public class WechatAPI {
         data.put("msgtype", "wxcard");
         data.put("wxcard", wxcardMap);
 
-        String respStr = HttpUtils.sendPostJsonRequest(apiUrl, gson.toJson(data));
+        String respStr = this.httpPostJson(apiUrl, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     }
@@ -4255,7 +5406,7 @@ public class WechatAPI {
         data.put("msgtype", "voice");
         data.put("voice", voiceMap);
 
-        String respStr = HttpUtils.sendPostJsonRequest(apiUrl, gson.toJson(data));
+        String respStr = this.httpPostJson(apiUrl, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     };
@@ -4286,7 +5437,7 @@ public class WechatAPI {
         data.put("msgtype", "video");
         data.put("video", videoMap);
 
-        String respStr = HttpUtils.sendPostJsonRequest(apiUrl, gson.toJson(data));
+        String respStr = this.httpPostJson(apiUrl, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     };
@@ -4319,7 +5470,7 @@ public class WechatAPI {
         data.put("msgtype", "music");
         data.put("music", music);
 
-        String respStr = HttpUtils.sendPostJsonRequest(apiUrl, gson.toJson(data));
+        String respStr = this.httpPostJson(apiUrl, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     };
@@ -4361,7 +5512,7 @@ public class WechatAPI {
         data.put("msgtype", "news");
         data.put("news", newsMap);
 
-        String respStr = HttpUtils.sendPostJsonRequest(apiUrl, gson.toJson(data));
+        String respStr = this.httpPostJson(apiUrl, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     };
@@ -4390,7 +5541,7 @@ public class WechatAPI {
         data.put("msgtype", "mpnews");
         data.put("mpnews", mpnewsMap);
 
-        String respStr = HttpUtils.sendPostJsonRequest(apiUrl, gson.toJson(data));
+        String respStr = this.httpPostJson(apiUrl, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     };
@@ -4423,11 +5574,44 @@ public class WechatAPI {
         data.put("msgtype", "miniprogrampage");
         data.put("miniprogrampage", miniprogram);
 
-        String respStr = HttpUtils.sendPostJsonRequest(apiUrl, gson.toJson(data));
+        String respStr = this.httpPostJson(apiUrl, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     };
 
+    /**
+     * 客服消息，发送任意类型的消息
+     * 详细细节 http://mp.weixin.qq.com/wiki/index.php?title=发送客服消息
+     * Examples:
+     * ```
+     * Map<String, Object> text = new HashMap<String, Object>();
+     * text.put("content", "Hello world");
+     * api.sendCustomMessage("openid", "text", text);
+     * ```
+     * 请求失败时返回 null。
+     * @param {String} openid 用户的openid
+     * @param {String} msgtype 消息类型，如 text、image、news、miniprogrampage
+     * @param {Object} content 消息内容，作为 msgtype 字段的值
+     */
+    public JsonObject sendCustomMessage (String openid, String msgtype, Object content) {
+
+        AccessToken token = this.ensureAccessToken();
+        String accessToken = token.getAccessToken();
+
+        String apiUrl = this.PREFIX + "message/custom/send?access_token=" + accessToken;
+
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("touser", openid);
+        data.put("msgtype", msgtype);
+        data.put(msgtype, content);
+
+        String respStr = this.httpPostJson(apiUrl, gson.toJson(data));
+        if (respStr == null) {
+            return null;
+        }
+        return (JsonObject) jsonParser.parse(respStr);
+    }
+
     /**
      * 获取自动回复规则
      * 详细请看：<http://mp.weixin.qq.com/wiki/19/ce8afc8ae7470a0d7205322f46a02647.html>
@@ -4514,7 +5698,7 @@ public class WechatAPI {
 
         String apiUrl = this.PREFIX + "get_current_autoreply_info?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendGetRequest(apiUrl);
+        String respStr = this.httpGet(apiUrl);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     }
@@ -4576,7 +5760,7 @@ public class WechatAPI {
         data.put("base_info", poi);
         data.put("business", businessMap);
 
-        String respStr = HttpUtils.sendPostJsonRequest(apiUrl, gson.toJson(data));
+        String respStr = this.httpPostJson(apiUrl, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errCode = resp.get("errcode").getAsInt();
         if(errCode == 0){
@@ -4634,7 +5818,7 @@ public class WechatAPI {
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("poi_id", poiId);
 
-        String respStr = HttpUtils.sendPostJsonRequest(apiUrl, gson.toJson(data));
+        String respStr = this.httpPostJson(apiUrl, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     }
@@ -4689,7 +5873,7 @@ public class WechatAPI {
         data.put("begin", begin);
         data.put("limit", limit);
 
-        String respStr = HttpUtils.sendPostJsonRequest(apiUrl, gson.toJson(data));
+        String respStr = this.httpPostJson(apiUrl, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     }
@@ -4715,7 +5899,7 @@ public class WechatAPI {
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("poi_id", poiId);
 
-        String respStr = HttpUtils.sendPostJsonRequest(apiUrl, gson.toJson(data));
+        String respStr = this.httpPostJson(apiUrl, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     };
@@ -4765,7 +5949,7 @@ public class WechatAPI {
         businessMap.put("base_info", poi);
         data.put("business", businessMap);
 
-        String respStr = HttpUtils.sendPostJsonRequest(apiUrl, gson.toJson(data));
+        String respStr = this.httpPostJson(apiUrl, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errCode = resp.get("errcode").getAsInt();
         if(errCode == 0){
@@ -4811,6 +5995,14 @@ public class WechatAPI {
 
     public JsonObject getUser (String openid, String language) {
 
+        UserProfileCache cache = this.userProfileCache;
+        if (cache != null) {
+            JsonObject cached = cache.get(openid, language);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
@@ -4819,9 +6011,13 @@ public class WechatAPI {
                 + "&lang=" + language
                 + "&access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendGetRequest(url);
+        String respStr = this.httpGet(url);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
+        if (cache != null) {
+            cache.update(openid, language, resp);
+        }
+
         return resp;
     }
 
@@ -4856,13 +6052,100 @@ public class WechatAPI {
      *   }]
      * }
      * ```
-     * @param {Array} openids 用户的openid数组。
+     * @param {Array} openids 用户的openid数组。超过100个时按每100个一组分别请求，设置了 executor 时并发执行
      * @param {String} lang  语言(zh_CN, zh_TW, en),默认简体中文(zh_CN)
      */
     public JsonArray batchGetUsers (List<String> openids) {
         return batchGetUsers(openids, "zh_CN");
     }
-    public JsonArray batchGetUsers (List<String> openids, String language) {
+    public JsonArray batchGetUsers (List<String> openids, final String language) {
+        UserProfileCache cache = this.userProfileCache;
+        if (cache == null) {
+            return batchGetUsersChunked(openids, language);
+        }
+
+        // 只请求未命中缓存的用户，结果按 openids 的顺序返回
+        JsonObject[] users = new JsonObject[openids.size()];
+        Set<String> missing = new LinkedHashSet<String>();
+        for (int i = 0; i < openids.size(); i++) {
+            JsonObject cached = cache.get(openids.get(i), language);
+            if (cached == null) {
+                missing.add(openids.get(i));
+            } else if (!cached.has("errcode")) {
+                users[i] = cached;
+            }
+        }
+        if (!missing.isEmpty()) {
+            JsonArray fetched = batchGetUsersChunked(new ArrayList<String>(missing), language);
+            Map<String, JsonObject> fetchedUsers = new HashMap<String, JsonObject>();
+            if (fetched != null) {
+                for (JsonElement element : fetched) {
+                    JsonObject user = element.getAsJsonObject();
+                    cache.put(user, language);
+                    fetchedUsers.put(user.get("openid").getAsString(), user);
+                }
+            }
+            for (int i = 0; i < users.length; i++) {
+                if (users[i] == null) {
+                    users[i] = fetchedUsers.get(openids.get(i));
+                }
+            }
+        }
+
+        JsonArray userInfoList = new JsonArray();
+        for (JsonObject user : users) {
+            if (user != null) {
+                userInfoList.add(user);
+            }
+        }
+        return userInfoList;
+    };
+
+    private JsonArray batchGetUsersChunked (List<String> openids, final String language) {
+        if (openids.size() <= BATCH_GET_USERS_LIMIT) {
+            return batchGetUsersOnce(openids, language);
+        }
+
+        List<Callable<JsonArray>> tasks = new ArrayList<Callable<JsonArray>>();
+        for (int i = 0; i < openids.size(); i += BATCH_GET_USERS_LIMIT) {
+            final List<String> chunk = openids.subList(i, Math.min(i + BATCH_GET_USERS_LIMIT, openids.size()));
+            tasks.add(new Callable<JsonArray>() {
+                @Override
+                public JsonArray call() {
+                    return batchGetUsersOnce(chunk, language);
+                }
+            });
+        }
+
+        JsonArray userInfoList = new JsonArray();
+        for (JsonArray chunkResult : this.fanOut(tasks)) {
+            if (chunkResult != null) {
+                userInfoList.addAll(chunkResult);
+            }
+        }
+        return userInfoList;
+    };
+
+    /**
+     * batchget 接口单次最多查询的用户数
+     */
+    private static final int BATCH_GET_USERS_LIMIT = 100;
+
+    private JsonArray batchGetUsersOnce (List<String> openids, String language) {
+
+        JsonObject resp = this.batchGetUsersResponse(openids, language);
+        if (resp == null || !resp.has("user_info_list")) {
+            return null;
+        }
+
+        return resp.get("user_info_list").getAsJsonArray();
+    };
+
+    /**
+     * 单次请求 user/info/batchget，返回完整响应，请求失败时返回 null
+     * @param openids 不超过 100 个 openid
+     */
+    JsonObject batchGetUsersResponse (List<String> openids, String language) {
 
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
@@ -4879,13 +6162,13 @@ public class WechatAPI {
             }
         data.put("user_list", user_list);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
-        JsonObject resp = (JsonObject) jsonParser.parse(respStr);
-
-        JsonArray userInfoList = resp.get("user_info_list").getAsJsonArray();
+        String respStr = this.httpPostJson(url, gson.toJson(data));
+        if (respStr == null) {
+            return null;
+        }
 
-        return userInfoList;
-    };
+        return (JsonObject) jsonParser.parse(respStr);
+    }
 
     /**
      * 获取关注者列表
@@ -4914,6 +6197,17 @@ public class WechatAPI {
     }
     public JsonObject getFollowers (String nextOpenid) {
 
+        String respStr = this.fetchFollowers(nextOpenid);
+        JsonObject resp = (JsonObject) jsonParser.parse(respStr);
+
+        return resp;
+    };
+
+    /**
+     * 请求一页关注者，返回未解析的响应
+     */
+    String fetchFollowers (String nextOpenid) {
+
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
@@ -4924,11 +6218,67 @@ public class WechatAPI {
         // https://api.weixin.qq.com/cgi-bin/user/get?access_token=ACCESS_TOKEN&next_openid=NEXT_OPENID
         String url = this.PREFIX + "user/get?next_openid=" + nextOpenid + "&access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendGetRequest(url);
-        JsonObject resp = (JsonObject) jsonParser.parse(respStr);
+        return this.httpGet(url);
+    }
 
-        return resp;
-    };
+    /**
+     * 遍历全部关注者
+     * 自动跟随 next_openid 翻页，逐页流式解析，消费当前页时预取下一页，内存占用与关注者总数无关。
+     * 预取使用 `setExecutor` 设置的线程池，未设置时为每页启动一个守护线程。
+     * Examples:
+     * ```
+     * FollowerIterator it = api.followers();
+     * while (it.hasNext()) {
+     *     String openid = it.next();
+     * }
+     * // 从上次中断处继续
+     * FollowerIterator resumed = api.followers(it.getCheckpoint());
+     * ```
+     * 出错时 `hasNext`/`next` 抛出 `WechatApiException`。
+     * @param {String} nextOpenid 从该openid之后开始，第一次获取时可不填
+     */
+    public FollowerIterator followers () {
+        return followers(null);
+    }
+    public FollowerIterator followers (String nextOpenid) {
+        return new FollowerIterator(this::fetchFollowers, nextOpenid, this.prefetchExecutor());
+    }
+
+    /**
+     * 翻页预取使用的线程池：`setExecutor` 设置的线程池，未设置时为每页启动一个守护线程
+     */
+    private Executor prefetchExecutor () {
+        if (this.executor != null) {
+            return this.executor;
+        }
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                Thread thread = new Thread(command, "wechatapi-prefetch");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        };
+    }
+
+    /**
+     * 以 Stream 遍历全部关注者，见 `followers()`
+     * Examples:
+     * ```
+     * try (Stream<String> openids = api.followerStream()) {
+     *     openids.forEach(openid -> ...);
+     * }
+     * ```
+     */
+    public Stream<String> followerStream () {
+        return followerStream(null);
+    }
+    public Stream<String> followerStream (String nextOpenid) {
+        final FollowerIterator iterator = this.followers(nextOpenid);
+        Spliterator<String> spliterator = Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT);
+        return StreamSupport.stream(spliterator, false).onClose(iterator::close);
+    }
 
     /**
      * 设置用户备注名
@@ -4944,6 +6294,7 @@ public class WechatAPI {
      *  "errmsg":"ok"
      * }
      * ```
+     * 设置成功后使缓存的该用户信息失效。
      * @param {String} openid 用户的openid
      * @param {String} remark 新的备注名，长度必须小于30字符
      */
@@ -4959,10 +6310,12 @@ public class WechatAPI {
         data.put("openid", openid);
         data.put("remark", remark);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errCode = resp.get("errcode").getAsInt();
         if(errCode == 0){
+            // 缓存的用户信息中含 remark
+            this.invalidateUser(openid);
             return true;
         }else{
             return false;
@@ -4998,7 +6351,7 @@ public class WechatAPI {
             tagMap.put("name", name);
         data.put("tag", tagMap);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -5039,7 +6392,7 @@ public class WechatAPI {
         // https://api.weixin.qq.com/cgi-bin/tags/get?access_token=ACCESS_TOKEN
         String url = this.PREFIX + "tags/get?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendGetRequest(url);
+        String respStr = this.httpGet(url);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         JsonArray tags = resp.get("tags").getAsJsonArray();
 
@@ -5077,7 +6430,7 @@ public class WechatAPI {
             tagMap.put("name", name);
         data.put("tag", tagMap);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errCode = resp.get("errcode").getAsInt();
         if(errCode == 0){
@@ -5116,10 +6469,14 @@ public class WechatAPI {
         tagMap.put("id", tagId);
         data.put("tag", tagMap);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errCode = resp.get("errcode").getAsInt();
         if(errCode == 0){
+            TagIndex index = this.tagIndex;
+            if (index != null) {
+                index.removeTag(tagId);
+            }
             return true;
         }else{
             return false;
@@ -5153,6 +6510,16 @@ public class WechatAPI {
 
     public JsonObject getUsersFromTag (String tagId, String nextOpenId){
 
+        String respStr = this.fetchUsersFromTag(tagId, nextOpenId);
+        JsonObject resp = (JsonObject) jsonParser.parse(respStr);
+        return resp;
+    }
+
+    /**
+     * 请求一页标签下粉丝，返回未解析的响应
+     */
+    String fetchUsersFromTag (String tagId, String nextOpenId){
+
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
@@ -5167,9 +6534,32 @@ public class WechatAPI {
         data.put("tagid", tagId);
         data.put("next_openid", nextOpenId);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
-        JsonObject resp = (JsonObject) jsonParser.parse(respStr);
-        return resp;
+        return this.httpPostJson(url, gson.toJson(data));
+    }
+
+    /**
+     * 遍历标签下的全部粉丝，与 `followers()` 相同，自动翻页并预取下一页
+     * Examples:
+     * ```
+     * FollowerIterator it = api.tagMembers(tagId);
+     * while (it.hasNext()) {
+     *     String openid = it.next();
+     * }
+     * ```
+     * 出错时 `hasNext`/`next` 抛出 `WechatApiException`。
+     * @param {String} tagId 标签id
+     * @param {String} nextOpenId 从该openid之后开始，第一次获取时可不填
+     */
+    public FollowerIterator tagMembers (String tagId) {
+        return tagMembers(tagId, null);
+    }
+    public FollowerIterator tagMembers (final String tagId, String nextOpenId) {
+        return new FollowerIterator(new Function<String, String>() {
+            @Override
+            public String apply(String next) {
+                return fetchUsersFromTag(tagId, next);
+            }
+        }, nextOpenId, this.prefetchExecutor());
     }
 
     /**
@@ -5186,17 +6576,30 @@ public class WechatAPI {
      *    "errmsg":"ok"
      *  }
      * ```
+     * 标签接口每次最多处理 50 个用户，超过时自动分批并发提交（见 `BulkTagger`），全部成功时返回 true。
      * @param {Array} openIds openId列表
      * @param {String} tagId 标签id
      */
     public boolean batchTagging (List<String> openIds, String tagId) {
 
-        AccessToken token = this.ensureAccessToken();
-        String accessToken = token.getAccessToken();
-
         if(openIds == null){
             openIds = new ArrayList<String>();
         }
+        if (openIds.size() > BulkTagger.MAX_CHUNK_SIZE) {
+            return new BulkTagger(this).tag(tagId, openIds).isComplete();
+        }
+
+        JsonObject resp = this.batchTaggingResponse(openIds, tagId);
+        return resp != null && resp.get("errcode").getAsInt() == 0;
+    }
+
+    /**
+     * 为一批（不超过 50 个）用户打标签，成功时更新标签索引；请求失败时返回 null
+     */
+    JsonObject batchTaggingResponse (List<String> openIds, String tagId) {
+
+        AccessToken token = this.ensureAccessToken();
+        String accessToken = token.getAccessToken();
 
         // https://api.weixin.qq.com/cgi-bin/tags/members/batchtagging?access_token=ACCESS_TOKEN
         String url = this.PREFIX + "tags/members/batchtagging?access_token=" + accessToken;
@@ -5205,14 +6608,18 @@ public class WechatAPI {
         data.put("tagid", tagId);
         data.put("openid_list", openIds);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
+        if (respStr == null) {
+            return null;
+        }
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
-        int errCode = resp.get("errcode").getAsInt();
-        if(errCode == 0){
-            return true;
-        }else{
-            return false;
+        if (resp.has("errcode") && resp.get("errcode").getAsInt() == 0) {
+            TagIndex index = this.tagIndex;
+            if (index != null) {
+                index.addMembers(tagId, openIds);
+            }
         }
+        return resp;
     }
 
     /**
@@ -5229,17 +6636,30 @@ public class WechatAPI {
      *    "errmsg":"ok"
      *  }
      * ```
+     * 标签接口每次最多处理 50 个用户，超过时自动分批并发提交（见 `BulkTagger`），全部成功时返回 true。
      * @param {Array} openIds openId列表
      * @param {String} tagId 标签id
      */
     public boolean batchUnTagging (List<String> openIds, String tagId) {
 
-        AccessToken token = this.ensureAccessToken();
-        String accessToken = token.getAccessToken();
-
         if(openIds == null){
             openIds = new ArrayList<String>();
         }
+        if (openIds.size() > BulkTagger.MAX_CHUNK_SIZE) {
+            return new BulkTagger(this).untag(tagId, openIds).isComplete();
+        }
+
+        JsonObject resp = this.batchUnTaggingResponse(openIds, tagId);
+        return resp != null && resp.get("errcode").getAsInt() == 0;
+    }
+
+    /**
+     * 为一批（不超过 50 个）用户取消标签，成功时更新标签索引；请求失败时返回 null
+     */
+    JsonObject batchUnTaggingResponse (List<String> openIds, String tagId) {
+
+        AccessToken token = this.ensureAccessToken();
+        String accessToken = token.getAccessToken();
 
         // https://api.weixin.qq.com/cgi-bin/tags/members/batchuntagging?access_token=ACCESS_TOKEN
         String url = this.PREFIX + "tags/members/batchuntagging?access_token=" + accessToken;
@@ -5248,16 +6668,19 @@ public class WechatAPI {
         data.put("tagid", tagId);
         data.put("openid_list", openIds);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
+        if (respStr == null) {
+            return null;
+        }
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
-        int errCode = resp.get("errcode").getAsInt();
-        if(errCode == 0){
-            return true;
-        }else{
-            return false;
+        if (resp.has("errcode") && resp.get("errcode").getAsInt() == 0) {
+            TagIndex index = this.tagIndex;
+            if (index != null) {
+                index.removeMembers(tagId, openIds);
+            }
         }
-
-    };
+        return resp;
+    }
 
     /**
      * 获取用户身上的标签列表
@@ -5284,7 +6707,7 @@ public class WechatAPI {
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("openid", openId);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         JsonArray list = resp.get("tagid_list").getAsJsonArray();
         return list;
@@ -5332,9 +6755,9 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/shakearound/account/register?access_token=" + accessToken;
+        String url = this.API_PREFIX + "shakearound/account/register?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(options));
+        String respStr = this.httpPostJson(url, gson.toJson(options));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -5369,9 +6792,9 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/shakearound/account/auditstatus?access_token=" + accessToken;
+        String url = this.API_PREFIX + "shakearound/account/auditstatus?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendGetRequest(url);
+        String respStr = this.httpGet(url);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -5411,9 +6834,9 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/shakearound/device/applyid?access_token=" + accessToken;
+        String url = this.API_PREFIX + "shakearound/device/applyid?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(options));
+        String respStr = this.httpPostJson(url, gson.toJson(options));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -5458,9 +6881,9 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/shakearound/device/update?access_token=" + accessToken;
+        String url = this.API_PREFIX + "shakearound/device/update?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(options));
+        String respStr = this.httpPostJson(url, gson.toJson(options));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -5504,9 +6927,9 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/shakearound/device/bindlocation?access_token=" + accessToken;
+        String url = this.API_PREFIX + "shakearound/device/bindlocation?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(options));
+        String respStr = this.httpPostJson(url, gson.toJson(options));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -5591,9 +7014,9 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/shakearound/device/search?access_token=" + accessToken;
+        String url = this.API_PREFIX + "shakearound/device/search?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(options));
+        String respStr = this.httpPostJson(url, gson.toJson(options));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -5639,9 +7062,9 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/shakearound/page/add?access_token=" + accessToken;
+        String url = this.API_PREFIX + "shakearound/page/add?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(page));
+        String respStr = this.httpPostJson(url, gson.toJson(page));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -5687,9 +7110,9 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/shakearound/page/update?access_token=" + accessToken;
+        String url = this.API_PREFIX + "shakearound/page/update?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(page));
+        String respStr = this.httpPostJson(url, gson.toJson(page));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -5728,12 +7151,12 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/shakearound/page/delete?access_token=" + accessToken;
+        String url = this.API_PREFIX + "shakearound/page/delete?access_token=" + accessToken;
 
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("page_ids", pageIds);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -5797,9 +7220,9 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/shakearound/page/search?access_token=" + accessToken;
+        String url = this.API_PREFIX + "shakearound/page/search?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(options));
+        String respStr = this.httpPostJson(url, gson.toJson(options));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -5833,14 +7256,14 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/shakearound/material/add?access_token=" + accessToken;
+        String url = this.API_PREFIX + "shakearound/material/add?access_token=" + accessToken;
 
         File file = new File(filepath);
 
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("media", file);
 
-        String respStr = HttpUtils.sendPostFormDataRequest(url, data);
+        String respStr = this.httpPostFormData(url, data);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -5886,9 +7309,9 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/shakearound/device/bindpage?access_token=" + accessToken;
+        String url = this.API_PREFIX + "shakearound/device/bindpage?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(options));
+        String respStr = this.httpPostJson(url, gson.toJson(options));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -5959,9 +7382,9 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/shakearound/relation/search?access_token=" + accessToken;
+        String url = this.API_PREFIX + "shakearound/relation/search?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(options));
+        String respStr = this.httpPostJson(url, gson.toJson(options));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -6000,12 +7423,12 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/shakearound/user/getshakeinfo?access_token=" + accessToken;
+        String url = this.API_PREFIX + "shakearound/user/getshakeinfo?access_token=" + accessToken;
 
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("ticket", ticket);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -6064,9 +7487,9 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/shakearound/statistics/device?access_token=" + accessToken;
+        String url = this.API_PREFIX + "shakearound/statistics/device?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(options));
+        String respStr = this.httpPostJson(url, gson.toJson(options));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -6120,9 +7543,9 @@ public class WechatAPI {
         AccessToken token = this.ensureAccessToken();
         String accessToken = token.getAccessToken();
 
-        String url = "https://api.weixin.qq.com/shakearound/statistics/page?access_token=" + accessToken;
+        String url = this.API_PREFIX + "shakearound/statistics/page?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(options));
+        String respStr = this.httpPostJson(url, gson.toJson(options));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -6226,7 +7649,7 @@ public class WechatAPI {
 
         String url = this.MERCHANT_PREFIX + "express/add?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(express));
+        String respStr = this.httpPostJson(url, gson.toJson(express));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -6258,7 +7681,7 @@ public class WechatAPI {
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("template_id", templateId);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errCode = resp.get("errcode").getAsInt();
         if(errCode == 0){
@@ -6298,7 +7721,7 @@ public class WechatAPI {
 
         String url = this.MERCHANT_PREFIX + "express/del?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(template));
+        String respStr = this.httpPostJson(url, gson.toJson(template));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errCode = resp.get("errcode").getAsInt();
         if(errCode == 0){
@@ -6364,7 +7787,7 @@ public class WechatAPI {
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("template_id", templateId);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     };
@@ -6414,7 +7837,7 @@ public class WechatAPI {
 
         String url = this.MERCHANT_PREFIX + "express/getall?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendGetRequest(url);
+        String respStr = this.httpGet(url);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     }
@@ -6515,7 +7938,7 @@ public class WechatAPI {
 
         String url = this.MERCHANT_PREFIX + "create?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(goods));
+        String respStr = this.httpPostJson(url, gson.toJson(goods));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     };
@@ -6546,7 +7969,7 @@ public class WechatAPI {
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("product_id", productId);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errCode = resp.get("errcode").getAsInt();
         if(errCode == 0){
@@ -6651,7 +8074,7 @@ public class WechatAPI {
 
         String url = this.MERCHANT_PREFIX + "update?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(goods));
+        String respStr = this.httpPostJson(url, gson.toJson(goods));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errCode = resp.get("errcode").getAsInt();
         if(errCode == 0){
@@ -6745,7 +8168,7 @@ public class WechatAPI {
 
         String url = this.MERCHANT_PREFIX + "get?product_id=" + productId + "&access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendGetRequest(url);
+        String respStr = this.httpGet(url);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     }
@@ -6788,7 +8211,7 @@ public class WechatAPI {
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("status", status);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     };
@@ -6821,7 +8244,7 @@ public class WechatAPI {
         data.put("product_id", productId);
         data.put("status", status);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errCode = resp.get("errcode").getAsInt();
         if(errCode == 0){
@@ -6862,7 +8285,7 @@ public class WechatAPI {
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("cate_id", cateId);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     };
@@ -6903,7 +8326,7 @@ public class WechatAPI {
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("cate_id", cateId);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     };
@@ -6951,7 +8374,7 @@ public class WechatAPI {
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("cate_id", cateId);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     }
@@ -6994,7 +8417,7 @@ public class WechatAPI {
         groupDetail.put("product_list", productList);
         data.put("group_detail", groupDetail);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     }
@@ -7025,7 +8448,7 @@ public class WechatAPI {
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("group_id", groupId);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errCode = resp.get("errcode").getAsInt();
         if(errCode == 0){
@@ -7063,7 +8486,7 @@ public class WechatAPI {
         data.put("group_id", groupId);
         data.put("group_name", groupName);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errCode = resp.get("errcode").getAsInt();
         if(errCode == 0){
@@ -7132,7 +8555,7 @@ public class WechatAPI {
         data.put("group_id", groupId);
         data.put("product", productList);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errCode = resp.get("errcode").getAsInt();
         if(errCode == 0){
@@ -7173,7 +8596,7 @@ public class WechatAPI {
 
         String url = this.MERCHANT_PREFIX + "group/getall?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendGetRequest(url);
+        String respStr = this.httpGet(url);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     }
@@ -7213,7 +8636,7 @@ public class WechatAPI {
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("group_id", groupId);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url,gson.toJson(data));
+        String respStr = this.httpPostJson(url,gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     }
@@ -7258,7 +8681,7 @@ public class WechatAPI {
         data.put("sku_info", sku);
         data.put("quantity", Math.abs(number));
 
-        String respStr = HttpUtils.sendPostJsonRequest(url,gson.toJson(data));
+        String respStr = this.httpPostJson(url,gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errCode = resp.get("errcode").getAsInt();
         if(errCode == 0){
@@ -7375,7 +8798,7 @@ public class WechatAPI {
 
         String url = this.MERCHANT_PREFIX + "shelf/add?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(shelf));
+        String respStr = this.httpPostJson(url, gson.toJson(shelf));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         return resp;
     };
@@ -7406,7 +8829,7 @@ public class WechatAPI {
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("shelf_id", shelfId);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errCode = resp.get("errcode").getAsInt();
         if(errCode == 0){
@@ -7448,7 +8871,7 @@ public class WechatAPI {
 
         String url = this.MERCHANT_PREFIX + "shelf/mod?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(shelf));
+        String respStr = this.httpPostJson(url, gson.toJson(shelf));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errCode = resp.get("errcode").getAsInt();
         if(errCode == 0){
@@ -7529,7 +8952,7 @@ public class WechatAPI {
 
         String url = this.MERCHANT_PREFIX + "shelf/getall?access_token=" + accessToken;
 
-        String respStr = HttpUtils.sendGetRequest(url);
+        String respStr = this.httpGet(url);
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -7567,7 +8990,7 @@ public class WechatAPI {
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("shelf_id", shelfId);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -7625,7 +9048,7 @@ public class WechatAPI {
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("order_id", orderId);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -7752,7 +9175,7 @@ public class WechatAPI {
             data.put("endtime", Math.round(endTime.getTime() / 1000));
         }
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
 
         return resp;
@@ -7793,7 +9216,7 @@ public class WechatAPI {
         data.put("delivery_track_no", deliveryTrackNo);
         data.put("is_others", isOthers);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errCode = resp.get("errcode").getAsInt();
         if(errCode == 0){
@@ -7831,7 +9254,7 @@ public class WechatAPI {
         data.put("order_id", orderId);
         data.put("need_delivery", 0);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errCode = resp.get("errcode").getAsInt();
         if(errCode == 0){
@@ -7867,7 +9290,7 @@ public class WechatAPI {
         Map<String, Object> data = new HashMap<String, Object>();
         data.put("order_id", orderId);
 
-        String respStr = HttpUtils.sendPostJsonRequest(url, gson.toJson(data));
+        String respStr = this.httpPostJson(url, gson.toJson(data));
         JsonObject resp = (JsonObject) jsonParser.parse(respStr);
         int errCode = resp.get("errcode").getAsInt();
         if(errCode == 0){
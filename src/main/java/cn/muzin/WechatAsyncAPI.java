@@ -0,0 +1,459 @@
+package cn.muzin;
+
+import cn.muzin.entity.AccessToken;
+import cn.muzin.http.ApacheAsyncHttpTransport;
+import cn.muzin.http.AsyncWechatHttpTransport;
+import cn.muzin.metrics.EndpointMetrics;
+import cn.muzin.util.ThreadUtils;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+/**
+ * 异步版本的微信API
+ *
+ * 所有接口立即返回 `CompletableFuture<JsonObject>`，请求由非阻塞的 HTTP 客户端发出，
+ * 成千上万个在途请求不需要占用同等数量的线程。
+ * access token 与 WechatAPI 共享（同一个 TokenStorageResolver），
+ * token 有效时直接使用，仅在需要刷新时才在 `refreshExecutor` 上执行一次阻塞的刷新；
+ * 未指定时使用本对象持有的 2 个守护线程，不占用 `ForkJoinPool.commonPool()`，`close()` 时关闭。
+ * 请求与同步接口一样计入 `api.getMetrics()` 并通知 `api.getRequestListener()`。
+ *
+ * 与同步接口不同，异步接口统一返回完整的响应 JSON，由调用方检查 `errcode`。
+ * 微信因 access token 无效或过期拒绝请求时，与同步接口一样刷新 token 并重放一次。
+ * 未单独封装的接口可通过 `get(path)`、`post(path, data)` 调用。
+ *
+ * Examples:
+ * ```
+ * WechatAPI api = new WechatAPI(appid, appsecret);
+ * WechatAsyncAPI asyncApi = new WechatAsyncAPI(api);
+ * asyncApi.sendText("openid", "Hello world").thenAccept(resp -> ...);
+ * ```
+ */
+public class WechatAsyncAPI implements Closeable {
+
+    /**
+     * 默认刷新线程数，刷新经单飞合并，少量线程即可
+     */
+    private static final int REFRESH_THREADS = 2;
+
+    private WechatAPI api;
+
+    private AsyncWechatHttpTransport httpTransport;
+
+    private Executor refreshExecutor;
+
+    /**
+     * 由本对象创建的刷新线程池，close() 时关闭；调用方传入的线程池为 null
+     */
+    private ExecutorService ownedRefreshExecutor;
+
+    private JsonParser jsonParser;
+
+    private Gson gson;
+
+    public WechatAsyncAPI(WechatAPI api){
+        this(api, new ApacheAsyncHttpTransport());
+    }
+
+    public WechatAsyncAPI(WechatAPI api, AsyncWechatHttpTransport httpTransport){
+        this(api, httpTransport, ThreadUtils.newDaemonPool("wechatapi-token-refresh-", REFRESH_THREADS));
+        this.ownedRefreshExecutor = (ExecutorService) this.refreshExecutor;
+    }
+
+    /**
+     * @param api 同步API，提供 appid 与 access token 的维护
+     * @param httpTransport 异步HTTP传输层
+     * @param refreshExecutor 刷新 access token 时执行阻塞请求的线程池，生命周期由调用方管理
+     */
+    public WechatAsyncAPI(WechatAPI api, AsyncWechatHttpTransport httpTransport, Executor refreshExecutor){
+        this.api = api;
+        this.httpTransport = httpTransport;
+        this.refreshExecutor = refreshExecutor;
+        this.jsonParser = new JsonParser();
+        this.gson = new Gson();
+    }
+
+    public WechatAPI getSyncAPI() {
+        return api;
+    }
+
+    /**
+     * 获取有效的 access token
+     * 缓存的 token 有效时立即返回，否则在 `refreshExecutor` 上刷新
+     */
+    public CompletableFuture<AccessToken> ensureAccessToken() {
+        AccessToken token = api.peekAccessToken();
+        if (token != null) {
+            return CompletableFuture.completedFuture(token);
+        }
+        return CompletableFuture.supplyAsync(api::ensureAccessToken, refreshExecutor);
+    }
+
+    /**
+     * 调用任意需要 access token 的 GET 接口
+     * Examples:
+     * ```
+     * asyncApi.get("menu/get");
+     * ```
+     * @param path 相对于 `https://api.weixin.qq.com/cgi-bin/` 的接口路径，可带查询参数
+     */
+    public CompletableFuture<JsonObject> get(final String path) {
+        return call("GET", path, null, token -> httpTransport.get(url(path, token), null));
+    }
+
+    /**
+     * 调用任意需要 access token 的 JSON POST 接口
+     * Examples:
+     * ```
+     * asyncApi.post("message/custom/send", data);
+     * ```
+     * @param path 相对于 `https://api.weixin.qq.com/cgi-bin/` 的接口路径，可带查询参数
+     * @param data 请求数据，将序列化为JSON
+     */
+    public CompletableFuture<JsonObject> post(final String path, Object data) {
+        final String body = data instanceof String ? (String) data : gson.toJson(data);
+        return call("POST", path, body, token -> httpTransport.postJson(url(path, token), body));
+    }
+
+    /**
+     * 客服消息，发送文字消息
+     * @param {String} openid 用户的openid
+     * @param {String} text 发送的消息内容
+     */
+    public CompletableFuture<JsonObject> sendText(String openid, String text) {
+        Map<String, Object> textMap = new HashMap<String, Object>();
+        textMap.put("content", text);
+        return sendCustom(openid, "text", textMap);
+    }
+
+    /**
+     * 客服消息，发送图片消息
+     * @param {String} openid 用户的openid
+     * @param {String} mediaId 媒体文件的ID
+     */
+    public CompletableFuture<JsonObject> sendImage(String openid, String mediaId) {
+        Map<String, Object> imageMap = new HashMap<String, Object>();
+        imageMap.put("media_id", mediaId);
+        return sendCustom(openid, "image", imageMap);
+    }
+
+    /**
+     * 客服消息，发送语音消息
+     * @param {String} openid 用户的openid
+     * @param {String} mediaId 媒体文件的ID
+     */
+    public CompletableFuture<JsonObject> sendVoice(String openid, String mediaId) {
+        Map<String, Object> voiceMap = new HashMap<String, Object>();
+        voiceMap.put("media_id", mediaId);
+        return sendCustom(openid, "voice", voiceMap);
+    }
+
+    /**
+     * 客服消息，发送视频消息
+     * @param {String} openid 用户的openid
+     * @param {String} mediaId 媒体文件的ID
+     * @param {String} thumbMediaId 缩略图文件的ID
+     */
+    public CompletableFuture<JsonObject> sendVideo(String openid, String mediaId, String thumbMediaId) {
+        Map<String, Object> videoMap = new HashMap<String, Object>();
+        videoMap.put("media_id", mediaId);
+        videoMap.put("thumb_media_id", thumbMediaId);
+        return sendCustom(openid, "video", videoMap);
+    }
+
+    /**
+     * 客服消息，发送音乐消息
+     * @param {String} openid 用户的openid
+     * @param {Object} music 音乐文件
+     */
+    public CompletableFuture<JsonObject> sendMusic(String openid, Map<String, Object> music) {
+        return sendCustom(openid, "music", music);
+    }
+
+    /**
+     * 客服消息，发送图文消息（点击跳转到外链）
+     * @param {String} openid 用户的openid
+     * @param {Array} articles 图文列表
+     */
+    public CompletableFuture<JsonObject> sendNews(String openid, List<Map<String, Object>> articles) {
+        Map<String, Object> newsMap = new HashMap<String, Object>();
+        newsMap.put("articles", articles);
+        return sendCustom(openid, "news", newsMap);
+    }
+
+    /**
+     * 客服消息，发送图文消息（点击跳转到图文消息页面）
+     * @param {String} openid 用户的openid
+     * @param {String} mediaId 图文消息媒体文件的ID
+     */
+    public CompletableFuture<JsonObject> sendMpNews(String openid, String mediaId) {
+        Map<String, Object> mpnewsMap = new HashMap<String, Object>();
+        mpnewsMap.put("media_id", mediaId);
+        return sendCustom(openid, "mpnews", mpnewsMap);
+    }
+
+    /**
+     * 客服消息，发送卡券
+     * @param {String} openid 用户的openid
+     * @param {String} cardid 卡券的ID
+     */
+    public CompletableFuture<JsonObject> sendCard(String openid, String cardid) {
+        Map<String, Object> wxcardMap = new HashMap<String, Object>();
+        wxcardMap.put("card_id", cardid);
+        return sendCustom(openid, "wxcard", wxcardMap);
+    }
+
+    /**
+     * 客服消息，发送小程序卡片
+     * @param {String} openid 用户的openid
+     * @param {Object} miniprogram 小程序信息
+     */
+    public CompletableFuture<JsonObject> sendMiniProgram(String openid, Map<String, Object> miniprogram) {
+        return sendCustom(openid, "miniprogrampage", miniprogram);
+    }
+
+    private CompletableFuture<JsonObject> sendCustom(String openid, String msgtype, Object content) {
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("touser", openid);
+        data.put("msgtype", msgtype);
+        data.put(msgtype, content);
+        return post("message/custom/send", data);
+    }
+
+    /**
+     * 发送模板消息
+     * @param {String} openid 用户的openid
+     * @param {String} templateId 模板ID
+     * @param {String} url URL置空，则在发送后，点击模板消息会进入一个空白页面（ios），或无法点击（android）
+     * @param {String} topColor 字体颜色
+     * @param {Object} data 渲染模板的数据
+     * @param {Object} miniprogram 跳转小程序所需数据 {appid, pagepath}
+     */
+    public CompletableFuture<JsonObject> sendTemplate(String openid,
+                                                      String templateId,
+                                                      String url,
+                                                      String topColor,
+                                                      Map<String, Object> data,
+                                                      Map<String, Object> miniprogram) {
+        Map<String, Object> template = new HashMap<String, Object>();
+        template.put("touser", openid);
+        template.put("template_id", templateId);
+        template.put("url", url);
+        template.put("miniprogram", miniprogram);
+        template.put("color", topColor);
+        template.put("data", data);
+        return post("message/template/send", template);
+    }
+
+    /**
+     * 获取用户基本信息
+     * @param {String} openid 用户的openid
+     */
+    public CompletableFuture<JsonObject> getUser(String openid) {
+        return getUser(openid, "zh_CN");
+    }
+
+    /**
+     * 获取用户基本信息
+     * @param {String} openid 用户的openid
+     * @param {String} language 语言(zh_CN, zh_TW, en)
+     */
+    public CompletableFuture<JsonObject> getUser(String openid, String language) {
+        return get("user/info?openid=" + openid + "&lang=" + language);
+    }
+
+    /**
+     * 批量获取用户基本信息，结果位于响应的 `user_info_list` 中
+     * @param {Array} openids 用户的openid数组，最多100个
+     */
+    public CompletableFuture<JsonObject> batchGetUsers(List<String> openids) {
+        return batchGetUsers(openids, "zh_CN");
+    }
+
+    /**
+     * 批量获取用户基本信息，结果位于响应的 `user_info_list` 中
+     * @param {Array} openids 用户的openid数组，最多100个
+     * @param {String} language 语言(zh_CN, zh_TW, en)
+     */
+    public CompletableFuture<JsonObject> batchGetUsers(List<String> openids, String language) {
+        List<Map<String, String>> userList = new ArrayList<Map<String, String>>(openids.size());
+        for (String openid : openids) {
+            Map<String, String> openItem = new HashMap<String, String>();
+            openItem.put("openid", openid);
+            openItem.put("lang", language);
+            userList.add(openItem);
+        }
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("user_list", userList);
+        return post("user/info/batchget", data);
+    }
+
+    /**
+     * 获取关注者列表
+     * @param {String} nextOpenid 调用一次之后，传递回来的nextOpenid。第一次获取时可为null
+     */
+    public CompletableFuture<JsonObject> getFollowers(String nextOpenid) {
+        return get("user/get?next_openid=" + (nextOpenid == null ? "" : nextOpenid));
+    }
+
+    /**
+     * 获取标签下粉丝列表
+     * @param {String} tagId 标签id
+     * @param {String} nextOpenId 第一个拉取的OPENID，为null时从头开始拉取
+     */
+    public CompletableFuture<JsonObject> getUsersFromTag(String tagId, String nextOpenId) {
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("tagid", tagId);
+        data.put("next_openid", nextOpenId == null ? "" : nextOpenId);
+        return post("user/tag/get", data);
+    }
+
+    /**
+     * 批量为用户打标签
+     * @param {Array} openIds openId列表，最多50个
+     * @param {String} tagId 标签id
+     */
+    public CompletableFuture<JsonObject> batchTagging(List<String> openIds, String tagId) {
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("tagid", tagId);
+        data.put("openid_list", openIds);
+        return post("tags/members/batchtagging", data);
+    }
+
+    /**
+     * 批量为用户取消标签
+     * @param {Array} openIds openId列表，最多50个
+     * @param {String} tagId 标签id
+     */
+    public CompletableFuture<JsonObject> batchUnTagging(List<String> openIds, String tagId) {
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("tagid", tagId);
+        data.put("openid_list", openIds);
+        return post("tags/members/batchuntagging", data);
+    }
+
+    /**
+     * 群发消息
+     * @param {Object} opts 待发送的数据，如 {"msgtype":"text","text":{"content":"..."}}，不会被修改
+     * @param {String|Array|Boolean} receivers 接收人。一个标签，或者openid列表,或者布尔值是否发送给全部用户
+     */
+    public CompletableFuture<JsonObject> massSend(Map<String, Object> opts, Object receivers) {
+        Map<String, Object> data = new HashMap<String, Object>(opts);
+        if (receivers instanceof List) {
+            data.put("touser", receivers);
+            return post("message/mass/send", data);
+        }
+        Map<String, Object> filter = new HashMap<String, Object>();
+        if (receivers instanceof String) {
+            filter.put("is_to_all", false);
+            filter.put("tag_id", receivers);
+        } else {
+            filter.put("is_to_all", receivers instanceof Boolean ? receivers : true);
+        }
+        data.put("filter", filter);
+        return post("message/mass/sendall", data);
+    }
+
+    /**
+     * 查询群发消息状态
+     * @param {String} messageId 消息ID
+     */
+    public CompletableFuture<JsonObject> getMassMessageStatus(String messageId) {
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("msg_id", messageId);
+        return post("message/mass/get", data);
+    }
+
+    /**
+     * 新增临时素材，分别有图片（image）、语音（voice）、视频（video）和缩略图（thumb）
+     * 文件以流式上传，不在内存中缓冲；传入的 InputStream 在上传结束后关闭
+     * @param {String|File|Path|InputStream} file 文件路径/文件/文件流
+     * @param {String} type 媒体类型，可用值有image、voice、video、thumb
+     */
+    public CompletableFuture<JsonObject> uploadMedia(final Object file, final String type) {
+        final Map<String, Object> data = new HashMap<String, Object>();
+        if (file instanceof String) {
+            data.put("file", new File((String) file));
+        } else if (file instanceof File || file instanceof Path || file instanceof InputStream) {
+            data.put("file", file);
+        }
+        final String path = "media/upload?type=" + type;
+        return call("POST", path, data, token -> httpTransport.postFormData(url(path, token), data),
+                !(file instanceof InputStream));
+    }
+
+    /**
+     * 长链接转短链接
+     * @param {String} longUrl 需要转换的长链接
+     */
+    public CompletableFuture<JsonObject> shortUrl(String longUrl) {
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("action", "long2short");
+        data.put("long_url", longUrl);
+        return post("shorturl", data);
+    }
+
+    private CompletableFuture<JsonObject> call(String method, String path, Object body,
+                                               Function<AccessToken, CompletableFuture<String>> request) {
+        return call(method, path, body, request, true);
+    }
+
+    /**
+     * 携带 access token 发出请求，微信因 token 无效或过期拒绝时刷新 token 并重放一次
+     * 完成后计入同步接口的指标并通知监听器
+     * @param body 请求体，仅用于统计字节数
+     * @param replayable 请求体能否重新发送（InputStream 只能读取一次）
+     */
+    private CompletableFuture<JsonObject> call(final String method, final String path, final Object body,
+                                               final Function<AccessToken, CompletableFuture<String>> request,
+                                               final boolean replayable) {
+        final String url = api.getPrefix() + path;
+        final EndpointMetrics endpoint = api.beginRequest(url);
+        final long start = System.nanoTime();
+        final int[] retries = new int[1];
+        return ensureAccessToken().thenCompose(token -> request.apply(token).thenCompose(respStr -> {
+            if (!replayable || !WechatAPI.isTokenError(WechatAPI.peekErrcode(respStr))) {
+                return CompletableFuture.completedFuture(respStr);
+            }
+            retries[0] = 1;
+            return CompletableFuture.supplyAsync(() -> api.renewAccessToken(token.getAccessToken()), refreshExecutor)
+                    .thenCompose(request);
+        })).whenComplete((respStr, e) -> api.endRequest(endpoint, method, url, start, body, respStr, retries[0]))
+                .thenApply(this::parse);
+    }
+
+    private String url(String path, AccessToken token) {
+        return api.getPrefix() + path + (path.indexOf('?') >= 0 ? "&" : "?")
+                + "access_token=" + token.getAccessToken();
+    }
+
+    private JsonObject parse(String respStr) {
+        return (JsonObject) jsonParser.parse(respStr);
+    }
+
+    /**
+     * 释放异步HTTP传输层与默认的刷新线程池
+     */
+    @Override
+    public void close() {
+        this.httpTransport.close();
+        if (this.ownedRefreshExecutor != null) {
+            this.ownedRefreshExecutor.shutdown();
+        }
+    }
+
+}
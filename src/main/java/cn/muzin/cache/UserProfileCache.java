@@ -0,0 +1,253 @@
+package cn.muzin.cache;
+
+import com.google.gson.JsonObject;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 用户基本信息缓存
+ *
+ * 按近似最近使用淘汰（CLOCK 算法：被读取过的条目获得一次保留机会），约保存 `maxSize` 个用户，
+ * 每个用户信息在 `ttlMillis` 后过期；
+ * 不存在的 openid（errcode 40003）同样缓存 `negativeTtlMillis`，避免反复请求。
+ * 缓存按 openid 保存，语言不同时视为未命中。读取时返回副本，调用方可以随意修改。
+ *
+ * 基于 `ConcurrentHashMap`，读取不加锁、不修改映射，只设置条目的访问标记；
+ * 淘汰由写入的线程顺带完成，同一时刻只有一个线程淘汰，其他线程不等待，因此并发写入时大小可能短暂超过 `maxSize`。
+ *
+ * 用户取消关注、修改备注等事件到来时应调用 `WechatAPI.invalidateUser(openid)`。
+ *
+ * Examples:
+ * ```
+ * api.setUserProfileCache(new UserProfileCache()
+ *         .setMaxSize(50000)
+ *         .setTtlMillis(10 * 60 * 1000)
+ *         .setNegativeTtlMillis(60 * 1000));
+ *
+ * api.getUser(openid);          // 命中缓存时不请求微信
+ * api.invalidateUser(openid);   // 取消关注事件
+ * ```
+ */
+public class UserProfileCache {
+
+    /**
+     * 不存在的 openid
+     */
+    public static final int INVALID_OPENID = 40003;
+
+    private int maxSize = 10000;
+
+    private long ttlMillis = 10 * 60 * 1000;
+
+    private long negativeTtlMillis = 60 * 1000;
+
+    private final ConcurrentHashMap<String, CacheEntry> entries = new ConcurrentHashMap<String, CacheEntry>();
+
+    /**
+     * 按写入顺序排列的条目，淘汰时从队头取出；被替换、移除的条目在取出时丢弃
+     */
+    private final ConcurrentLinkedQueue<CacheEntry> clock = new ConcurrentLinkedQueue<CacheEntry>();
+
+    private final AtomicInteger clockSize = new AtomicInteger();
+
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder negativeHits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    public UserProfileCache setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        return this;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public UserProfileCache setTtlMillis(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        return this;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public UserProfileCache setNegativeTtlMillis(long negativeTtlMillis) {
+        this.negativeTtlMillis = negativeTtlMillis;
+        return this;
+    }
+
+    public long getNegativeTtlMillis() {
+        return negativeTtlMillis;
+    }
+
+    private static class CacheEntry {
+        final String openid;
+        final String language;
+        final JsonObject profile;
+        final long expireTime;
+        /**
+         * 上次淘汰检查后是否被读取过
+         */
+        volatile boolean referenced;
+
+        CacheEntry(String openid, String language, JsonObject profile, long expireTime) {
+            this.openid = openid;
+            this.language = language;
+            this.profile = profile;
+            this.expireTime = expireTime;
+        }
+    }
+
+    /**
+     * 查询缓存
+     * @return 用户信息的副本；openid 不存在时为 errcode 40003 的响应；未命中返回 null
+     */
+    public JsonObject get(String openid, String language) {
+        CacheEntry entry = entries.get(openid);
+        if (entry != null && entry.expireTime <= System.currentTimeMillis()) {
+            entries.remove(openid, entry);
+            entry = null;
+        }
+        if (entry == null || !equals(entry.language, language)) {
+            misses.increment();
+            return null;
+        }
+        if (entry.profile == null) {
+            negativeHits.increment();
+            JsonObject resp = new JsonObject();
+            resp.addProperty("errcode", INVALID_OPENID);
+            resp.addProperty("errmsg", "invalid openid");
+            return resp;
+        }
+        if (!entry.referenced) {
+            // 已标记时不再写入，避免多个线程反复写同一缓存行
+            entry.referenced = true;
+        }
+        hits.increment();
+        return entry.profile.deepCopy();
+    }
+
+    /**
+     * 保存用户信息，profile 中须含 openid
+     */
+    public void put(JsonObject profile, String language) {
+        String openid = profile.get("openid").getAsString();
+        store(new CacheEntry(openid, language, profile.deepCopy(), System.currentTimeMillis() + ttlMillis));
+    }
+
+    /**
+     * 记录不存在的 openid
+     */
+    public void putInvalid(String openid, String language) {
+        store(new CacheEntry(openid, language, null, System.currentTimeMillis() + negativeTtlMillis));
+    }
+
+    private void store(CacheEntry entry) {
+        entries.put(entry.openid, entry);
+        clock.offer(entry);
+        clockSize.incrementAndGet();
+        if (needsEviction()) {
+            evict();
+        }
+    }
+
+    /**
+     * 超过 maxSize，或队列中被替换、移除的条目过多
+     */
+    private boolean needsEviction() {
+        int size = entries.size();
+        return size > maxSize || clockSize.get() > 2 * Math.max(size, 16);
+    }
+
+    /**
+     * 从队头依次检查：被替换、移除的丢弃，已过期的移除；超过 maxSize 时，被读取过的清除标记后移到队尾（第二次机会），
+     * 其余移除；未超过时仍有效的条目移到队尾。最多检查两轮，保证每次淘汰的工作量有上限
+     */
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            int budget = 2 * clockSize.get() + 1;
+            while (budget-- > 0 && needsEviction()) {
+                CacheEntry entry = clock.poll();
+                if (entry == null) {
+                    break;
+                }
+                clockSize.decrementAndGet();
+                if (entries.get(entry.openid) != entry) {
+                    continue;
+                }
+                boolean full = entries.size() > maxSize;
+                if (entry.expireTime > now && (!full || entry.referenced)) {
+                    if (full) {
+                        entry.referenced = false;
+                    }
+                    clock.offer(entry);
+                    clockSize.incrementAndGet();
+                    continue;
+                }
+                entries.remove(entry.openid, entry);
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * 根据微信的响应更新缓存：成功的用户信息缓存 ttlMillis，40003 缓存 negativeTtlMillis，其他错误不缓存
+     */
+    public void update(String openid, String language, JsonObject resp) {
+        if (resp == null) {
+            return;
+        }
+        int errcode = resp.has("errcode") ? resp.get("errcode").getAsInt() : 0;
+        if (errcode == 0 && resp.has("openid")) {
+            put(resp, language);
+        } else if (errcode == INVALID_OPENID) {
+            putInvalid(openid, language);
+        }
+    }
+
+    /**
+     * 移除指定用户
+     */
+    public void invalidate(String openid) {
+        entries.remove(openid);
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getNegativeHitCount() {
+        return negativeHits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+}
@@ -0,0 +1,122 @@
+package cn.muzin.dispatch;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一条客服消息，提交给 `CustomMessageDispatcher` 发送
+ *
+ * 创建后不可修改；`withAttachment` 返回携带业务数据（如订单号）的副本，在回调中取回。
+ *
+ * Examples:
+ * ```
+ * CustomMessage.text(openid, "您的订单已发货");
+ * CustomMessage.image(openid, mediaId).withAttachment(orderId);
+ * CustomMessage.of(openid, "msgmenu", menu);
+ * ```
+ */
+public class CustomMessage {
+
+    private final String openid;
+
+    private final String msgtype;
+
+    private final Object content;
+
+    private final Object attachment;
+
+    private CustomMessage(String openid, String msgtype, Object content, Object attachment) {
+        if (openid == null || msgtype == null) {
+            throw new IllegalArgumentException("openid and msgtype are required");
+        }
+        this.openid = openid;
+        this.msgtype = msgtype;
+        this.content = content;
+        this.attachment = attachment;
+    }
+
+    /**
+     * 任意类型的消息
+     * @param openid 用户的openid
+     * @param msgtype 消息类型
+     * @param content 消息内容，作为 msgtype 字段的值
+     */
+    public static CustomMessage of(String openid, String msgtype, Object content) {
+        return new CustomMessage(openid, msgtype, content, null);
+    }
+
+    public static CustomMessage text(String openid, String text) {
+        return of(openid, "text", singleton("content", text));
+    }
+
+    public static CustomMessage image(String openid, String mediaId) {
+        return of(openid, "image", singleton("media_id", mediaId));
+    }
+
+    public static CustomMessage voice(String openid, String mediaId) {
+        return of(openid, "voice", singleton("media_id", mediaId));
+    }
+
+    public static CustomMessage video(String openid, String mediaId, String thumbMediaId) {
+        Map<String, Object> video = new HashMap<String, Object>();
+        video.put("media_id", mediaId);
+        video.put("thumb_media_id", thumbMediaId);
+        return of(openid, "video", Collections.unmodifiableMap(video));
+    }
+
+    public static CustomMessage music(String openid, Map<String, Object> music) {
+        return of(openid, "music", music);
+    }
+
+    public static CustomMessage news(String openid, List<Map<String, Object>> articles) {
+        return of(openid, "news", singleton("articles", articles));
+    }
+
+    public static CustomMessage mpNews(String openid, String mediaId) {
+        return of(openid, "mpnews", singleton("media_id", mediaId));
+    }
+
+    public static CustomMessage card(String openid, String cardId) {
+        return of(openid, "wxcard", singleton("card_id", cardId));
+    }
+
+    public static CustomMessage miniProgram(String openid, Map<String, Object> miniprogram) {
+        return of(openid, "miniprogrampage", miniprogram);
+    }
+
+    public String getOpenid() {
+        return openid;
+    }
+
+    public String getMsgtype() {
+        return msgtype;
+    }
+
+    public Object getContent() {
+        return content;
+    }
+
+    public Object getAttachment() {
+        return attachment;
+    }
+
+    /**
+     * 附加业务数据，不会发送给微信
+     * @return 携带该数据的新消息，原消息不变
+     */
+    public CustomMessage withAttachment(Object attachment) {
+        return new CustomMessage(openid, msgtype, content, attachment);
+    }
+
+    @Override
+    public String toString() {
+        return "CustomMessage{openid='" + openid + "', msgtype='" + msgtype + "'}";
+    }
+
+    private static Map<String, Object> singleton(String key, Object value) {
+        return Collections.<String, Object>singletonMap(key, value);
+    }
+
+}
@@ -0,0 +1,530 @@
+package cn.muzin.dispatch;
+
+import cn.muzin.WechatAPI;
+import cn.muzin.util.RateLimiter;
+import com.google.gson.JsonObject;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 客服消息发送队列
+ *
+ * 消息先进入容量为 `queueCapacity` 的队列，队列满时 `submit` 阻塞（`trySubmit`、`offer` 立即或超时返回 false），
+ * 由 `workers` 个工作线程以不超过 `rateLimit` 条/秒的速率发送。
+ * 同一用户的消息严格按提交顺序逐条发送，前一条完成（成功、失败或重试用尽）之前不会发送下一条；不同用户之间并发。
+ *
+ * 请求失败或返回可重试的错误码（默认 -1 系统繁忙、45011 调用频率超限）时按指数退避重试，最多尝试 `maxAttempts` 次。
+ * 退避期间不占用工作线程，但该用户后续的消息继续等待，以保证顺序。结果通过 `DispatchCallback` 通知。
+ *
+ * Examples:
+ * ```
+ * CustomMessageDispatcher dispatcher = new CustomMessageDispatcher(api)
+ *         .setWorkers(32)
+ *         .setRateLimit(400)
+ *         .setQueueCapacity(50000)
+ *         .setCallback(new DispatchCallback() {
+ *             public void onSuccess(CustomMessage message, JsonObject resp) { ... }
+ *             public void onFailure(CustomMessage message, int errcode, String errmsg, int attempts) { ... }
+ *         });
+ *
+ * dispatcher.submit(CustomMessage.text(openid, "您的订单已发货").withAttachment(orderId));
+ *
+ * dispatcher.close();   // 发送完队列中的消息后停止
+ * ```
+ */
+public class CustomMessageDispatcher implements Closeable {
+
+    private final WechatAPI api;
+
+    private int workers = 16;
+
+    private int queueCapacity = 10000;
+
+    /**
+     * 每秒最多发送的消息数，0 表示不限制
+     */
+    private double rateLimit = 0;
+
+    private int maxAttempts = 3;
+
+    private long initialBackoffMillis = 500;
+
+    private long maxBackoffMillis = 10000;
+
+    private final Set<Integer> retryableErrcodes = new HashSet<Integer>();
+
+    private volatile DispatchCallback callback;
+
+    private ExecutorService pool;
+
+    private ScheduledExecutorService scheduler;
+
+    private RateLimiter limiter;
+
+    private Semaphore capacity;
+
+    /**
+     * 有待发送消息的用户，保护 UserQueue 的读写
+     */
+    private final Map<String, UserQueue> queues = new HashMap<String, UserQueue>();
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final Object idleLock = new Object();
+
+    private volatile boolean started;
+
+    private volatile boolean closed;
+
+    private final LongAdder submitted = new LongAdder();
+
+    private final LongAdder succeeded = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder retried = new LongAdder();
+
+    public CustomMessageDispatcher(WechatAPI api){
+        this.api = api;
+        this.retryableErrcodes.add(45011);
+    }
+
+    /**
+     * @param workers 工作线程数，即同时在途的请求数
+     */
+    public CustomMessageDispatcher setWorkers(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be positive");
+        }
+        checkNotStarted();
+        this.workers = workers;
+        return this;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * @param queueCapacity 最多排队（含发送中、等待重试）的消息数
+     */
+    public CustomMessageDispatcher setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be positive");
+        }
+        checkNotStarted();
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @param rateLimit 每秒最多发送的消息数（含重试），0 表示不限制
+     */
+    public CustomMessageDispatcher setRateLimit(double rateLimit) {
+        checkNotStarted();
+        this.rateLimit = rateLimit;
+        return this;
+    }
+
+    public double getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * @param maxAttempts 每条消息最多尝试的次数，1 表示不重试
+     */
+    public CustomMessageDispatcher setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be positive");
+        }
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * 重试的等待时间从 initialBackoffMillis 开始逐次翻倍，不超过 maxBackoffMillis
+     */
+    public CustomMessageDispatcher setBackoff(long initialBackoffMillis, long maxBackoffMillis) {
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        return this;
+    }
+
+    /**
+     * 设置可重试的错误码，替换默认的 45011；请求失败（无响应）与 -1 系统繁忙总是重试
+     */
+    public CustomMessageDispatcher setRetryableErrcodes(int... errcodes) {
+        synchronized (retryableErrcodes) {
+            retryableErrcodes.clear();
+            for (int errcode : errcodes) {
+                retryableErrcodes.add(errcode);
+            }
+        }
+        return this;
+    }
+
+    public CustomMessageDispatcher setCallback(DispatchCallback callback) {
+        this.callback = callback;
+        return this;
+    }
+
+    /**
+     * 提交消息，队列已满时阻塞等待
+     * @throws IllegalStateException 已关闭，或等待期间被关闭
+     */
+    public void submit(CustomMessage message) throws InterruptedException {
+        ensureStarted();
+        capacity.acquire();
+        enqueue(message);
+    }
+
+    /**
+     * 提交消息，队列已满时立即返回 false
+     */
+    public boolean trySubmit(CustomMessage message) {
+        ensureStarted();
+        if (!capacity.tryAcquire()) {
+            return false;
+        }
+        enqueue(message);
+        return true;
+    }
+
+    /**
+     * 提交消息，队列已满时最多等待 timeout
+     * @return 超时未能进入队列时返回 false
+     */
+    public boolean offer(CustomMessage message, long timeout, TimeUnit unit) throws InterruptedException {
+        ensureStarted();
+        if (!capacity.tryAcquire(timeout, unit)) {
+            return false;
+        }
+        enqueue(message);
+        return true;
+    }
+
+    /**
+     * 等待队列中的消息全部完成
+     * @return 超时仍有未完成的消息时返回 false
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long timeoutNanos = unit.toNanos(timeout);
+        long start = System.nanoTime();
+        synchronized (idleLock) {
+            while (pending.get() > 0) {
+                long remaining = timeoutNanos - (System.nanoTime() - start);
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(idleLock, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 不再接受新消息（正在等待队列容量的提交被拒绝），发送完队列中的消息后停止工作线程
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            if (!started) {
+                return;
+            }
+        }
+        try {
+            awaitIdle(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pool.shutdown();
+        scheduler.shutdown();
+    }
+
+    /**
+     * 立即停止，返回尚未完成的消息（包括等待重试的消息）
+     */
+    public List<CustomMessage> shutdownNow() {
+        List<CustomMessage> unsent = new ArrayList<CustomMessage>();
+        synchronized (this) {
+            closed = true;
+            if (!started) {
+                return unsent;
+            }
+        }
+        pool.shutdownNow();
+        scheduler.shutdownNow();
+        synchronized (queues) {
+            for (UserQueue queue : queues.values()) {
+                for (Job job : queue.jobs) {
+                    unsent.add(job.message);
+                }
+            }
+            queues.clear();
+        }
+        return unsent;
+    }
+
+    public long getSubmittedCount() {
+        return submitted.sum();
+    }
+
+    public long getSucceededCount() {
+        return succeeded.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * 重试的次数（不含首次发送）
+     */
+    public long getRetriedCount() {
+        return retried.sum();
+    }
+
+    /**
+     * 排队、发送中与等待重试的消息数
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    private static class Job {
+        final CustomMessage message;
+        int attempts;
+
+        Job(CustomMessage message) {
+            this.message = message;
+        }
+    }
+
+    /**
+     * 一个用户待发送的消息，同一时刻最多只有一个任务在处理队首
+     */
+    private static class UserQueue {
+        final String openid;
+        final ArrayDeque<Job> jobs = new ArrayDeque<Job>();
+
+        UserQueue(String openid) {
+            this.openid = openid;
+        }
+    }
+
+    private void checkNotStarted() {
+        if (started) {
+            throw new IllegalStateException("dispatcher already started");
+        }
+    }
+
+    private synchronized void ensureStarted() {
+        if (closed) {
+            throw new IllegalStateException("dispatcher closed");
+        }
+        if (started) {
+            return;
+        }
+        pool = Executors.newFixedThreadPool(workers, threadFactory("wechatapi-dispatcher-"));
+        scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory("wechatapi-dispatcher-retry-"));
+        limiter = rateLimit > 0 ? new RateLimiter(rateLimit) : null;
+        capacity = new Semaphore(queueCapacity);
+        started = true;
+    }
+
+    /**
+     * 与 close、shutdownNow 设置 closed 互斥：在此之前进入的消息已计入 pending，close 会等待其完成后才关闭线程池，
+     * shutdownNow 会从队列中返回它；在此之后提交的消息被拒绝
+     * @throws IllegalStateException 已关闭，归还占用的队列容量
+     */
+    private void enqueue(CustomMessage message) {
+        UserQueue queue;
+        boolean idle;
+        synchronized (this) {
+            if (closed) {
+                capacity.release();
+                throw new IllegalStateException("dispatcher closed");
+            }
+            submitted.increment();
+            pending.incrementAndGet();
+            synchronized (queues) {
+                queue = queues.get(message.getOpenid());
+                idle = queue == null;
+                if (idle) {
+                    queue = new UserQueue(message.getOpenid());
+                    queues.put(message.getOpenid(), queue);
+                }
+                queue.jobs.add(new Job(message));
+            }
+        }
+        if (idle) {
+            execute(queue);
+        }
+    }
+
+    private void execute(final UserQueue queue) {
+        try {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    sendHead(queue);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 只在 shutdownNow 之后发生（close 等待 pending 归零后才关闭线程池），消息由 shutdownNow 返回
+        }
+    }
+
+    private void sendHead(final UserQueue queue) {
+        Job job;
+        synchronized (queues) {
+            job = queue.jobs.peek();
+        }
+        if (job == null) {
+            return;
+        }
+        if (limiter != null) {
+            limiter.acquire();
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            return;
+        }
+        job.attempts++;
+
+        CustomMessage message = job.message;
+        JsonObject resp = null;
+        int errcode;
+        String errmsg;
+        try {
+            resp = api.sendCustomMessage(message.getOpenid(), message.getMsgtype(), message.getContent());
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+        if (resp == null) {
+            errcode = -1;
+            errmsg = "request failed";
+        } else {
+            errcode = resp.has("errcode") ? resp.get("errcode").getAsInt() : 0;
+            errmsg = resp.has("errmsg") ? resp.get("errmsg").getAsString() : null;
+        }
+
+        if (errcode == 0) {
+            succeeded.increment();
+            notifySuccess(message, resp);
+        } else if (job.attempts < maxAttempts && isRetryable(errcode)) {
+            retried.increment();
+            try {
+                scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        execute(queue);
+                    }
+                }, backoffMillis(job.attempts), TimeUnit.MILLISECONDS);
+                return;
+            } catch (RejectedExecutionException e) {
+                // 已停止，不再重试
+                return;
+            }
+        } else {
+            failed.increment();
+            notifyFailure(message, errcode, errmsg, job.attempts);
+        }
+        finish(queue);
+    }
+
+    private void finish(UserQueue queue) {
+        boolean more;
+        synchronized (queues) {
+            queue.jobs.poll();
+            more = !queue.jobs.isEmpty();
+            if (!more) {
+                queues.remove(queue.openid);
+            }
+        }
+        capacity.release();
+        if (pending.decrementAndGet() == 0) {
+            synchronized (idleLock) {
+                idleLock.notifyAll();
+            }
+        }
+        if (more) {
+            execute(queue);
+        }
+    }
+
+    private boolean isRetryable(int errcode) {
+        synchronized (retryableErrcodes) {
+            return errcode == -1 || retryableErrcodes.contains(errcode);
+        }
+    }
+
+    private long backoffMillis(int attempts) {
+        long backoff = initialBackoffMillis;
+        for (int i = 1; i < attempts && backoff < maxBackoffMillis; i++) {
+            backoff *= 2;
+        }
+        return Math.min(backoff, maxBackoffMillis);
+    }
+
+    private void notifySuccess(CustomMessage message, JsonObject resp) {
+        DispatchCallback callback = this.callback;
+        if (callback == null) {
+            return;
+        }
+        try {
+            callback.onSuccess(message, resp);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void notifyFailure(CustomMessage message, int errcode, String errmsg, int attempts) {
+        DispatchCallback callback = this.callback;
+        if (callback == null) {
+            return;
+        }
+        try {
+            callback.onFailure(message, errcode, errmsg, attempts);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static ThreadFactory threadFactory(final String prefix) {
+        final AtomicInteger index = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, prefix + index.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+}
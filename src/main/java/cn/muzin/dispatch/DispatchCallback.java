@@ -0,0 +1,26 @@
+package cn.muzin.dispatch;
+
+import com.google.gson.JsonObject;
+
+/**
+ * `CustomMessageDispatcher` 的发送结果回调，在工作线程中执行，不应长时间阻塞
+ */
+public interface DispatchCallback {
+
+    /**
+     * 发送成功
+     * @param message 消息
+     * @param resp 微信的响应
+     */
+    void onSuccess(CustomMessage message, JsonObject resp);
+
+    /**
+     * 发送失败：不可重试的错误码，或重试次数用尽
+     * @param message 消息
+     * @param errcode 最后一次的错误码，请求失败时为 -1
+     * @param errmsg 最后一次的错误信息
+     * @param attempts 已尝试的次数
+     */
+    void onFailure(CustomMessage message, int errcode, String errmsg, int attempts);
+
+}
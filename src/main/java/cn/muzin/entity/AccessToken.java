@@ -10,6 +10,11 @@ public class AccessToken {
 
     private Long expireTime;
 
+    /**
+     * 存储版本号，每次保存到 TokenStorageResolver 时递增，用于 compareAndSaveToken
+     */
+    private long version;
+
     public AccessToken(String accessToken, Long expireTime){
         this.accessToken = accessToken;
         this.expireTime = expireTime;
@@ -67,6 +72,31 @@ public class AccessToken {
         return this;
     }
 
+    /**
+     * 获取存储版本号
+     * Examples:
+     * ```
+     * long version = token.getVersion();
+     * ```
+     * @return long
+     */
+    public long getVersion(){
+        return this.version;
+    }
+
+    /**
+     * 设置存储版本号
+     * Examples:
+     * ```
+     * token.setVersion(1);
+     * ```
+     * @param version 版本号
+     * @return AccessToken
+     */
+    public AccessToken setVersion(long version){
+        this.version = version;
+        return this;
+    }
 
     /**
      * 检查AccessToken是否有效，检查规则为当前时间和过期时间进行对比
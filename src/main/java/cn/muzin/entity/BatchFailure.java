@@ -0,0 +1,44 @@
+package cn.muzin.entity;
+
+import java.util.List;
+
+/**
+ * 批量操作中失败的一批请求
+ *
+ * 请求失败（无响应）时 errcode 为 -1。
+ */
+public class BatchFailure {
+
+    private List<String> openids;
+
+    private int errcode;
+
+    private String errmsg;
+
+    public BatchFailure(List<String> openids, int errcode, String errmsg){
+        this.openids = openids;
+        this.errcode = errcode;
+        this.errmsg = errmsg;
+    }
+
+    /**
+     * 该批请求包含的 openid
+     */
+    public List<String> getOpenids() {
+        return openids;
+    }
+
+    public int getErrcode() {
+        return errcode;
+    }
+
+    public String getErrmsg() {
+        return errmsg;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchFailure{openids=" + openids.size() + ", errcode=" + errcode + ", errmsg='" + errmsg + "'}";
+    }
+
+}
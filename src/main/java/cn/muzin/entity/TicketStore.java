@@ -1,5 +1,8 @@
 package cn.muzin.entity;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
-public class TicketStore extends HashMap<String, Ticket> { }
+/**
+ * 按类型（jsapi、wx_card）保存的 ticket，可被多个请求线程并发读写
+ */
+public class TicketStore extends ConcurrentHashMap<String, Ticket> { }
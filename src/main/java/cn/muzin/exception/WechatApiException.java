@@ -0,0 +1,37 @@
+package cn.muzin.exception;
+
+/**
+ * 微信接口返回错误码或请求失败
+ *
+ * 多数接口直接返回带 errcode 的响应，只有无法返回响应的场景（如迭代器、Stream）才抛出该异常。
+ * 请求失败（无响应）时 errcode 为 -1。
+ */
+public class WechatApiException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int errcode;
+
+    private final String errmsg;
+
+    public WechatApiException(int errcode, String errmsg){
+        super(errcode + " " + errmsg);
+        this.errcode = errcode;
+        this.errmsg = errmsg;
+    }
+
+    public WechatApiException(String message, Throwable cause){
+        super(message, cause);
+        this.errcode = -1;
+        this.errmsg = message;
+    }
+
+    public int getErrcode() {
+        return errcode;
+    }
+
+    public String getErrmsg() {
+        return errmsg;
+    }
+
+}
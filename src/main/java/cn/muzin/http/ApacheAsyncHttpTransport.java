@@ -0,0 +1,134 @@
+package cn.muzin.http;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+
+/**
+ * 基于 Apache HttpAsyncClient（NIO）的异步 HTTP 传输层
+ *
+ * 少量 IO 线程即可承载成千上万个并发请求，调用线程不会阻塞等待响应。
+ * 实例是线程安全的，应长期持有，不再使用时调用 `close()` 释放。
+ */
+public class ApacheAsyncHttpTransport implements AsyncWechatHttpTransport {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final CloseableHttpAsyncClient httpClient;
+
+    public ApacheAsyncHttpTransport(){
+        this(new HttpPoolConfig());
+    }
+
+    public ApacheAsyncHttpTransport(HttpPoolConfig config){
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(config.getConnectTimeout())
+                .setConnectionRequestTimeout(config.getConnectionRequestTimeout())
+                .setSocketTimeout(config.getSocketTimeout())
+                .build();
+
+        final long keepAliveMillis = config.getKeepAliveMillis();
+
+        this.httpClient = HttpAsyncClients.custom()
+                .setMaxConnTotal(config.getMaxTotal())
+                .setMaxConnPerRoute(config.getMaxPerRoute())
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+                    @Override
+                    public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                        long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                        return duration > 0 ? duration : keepAliveMillis;
+                    }
+                })
+                .build();
+        this.httpClient.start();
+    }
+
+    @Override
+    public CompletableFuture<String> get(String url, Map<String, String> headers) {
+        HttpGet httpGet = new HttpGet(url);
+        if(headers != null){
+            Set<String> headerSetKeys = headers.keySet();
+            for(String key : headerSetKeys){
+                httpGet.addHeader(key, headers.get(key));
+            }
+        }
+        return execute(httpGet);
+    }
+
+    @Override
+    public CompletableFuture<String> postJson(String url, String body) {
+        HttpPost httpPost = new HttpPost(url);
+        httpPost.setHeader("content-type", "application/json;charset=utf-8");
+        httpPost.setEntity(new StringEntity(body == null ? "" : body, UTF_8));
+        return execute(httpPost);
+    }
+
+    /**
+     * 表单以 `MultipartBody` 流式编码，NIO 客户端经 `getContent` 逐段读取，文件在读到时才打开，不在内存中缓冲。
+     * 请求完成后关闭表单中的 InputStream。
+     */
+    @Override
+    public CompletableFuture<String> postFormData(String url, Map<String, Object> param) {
+        MultipartBody body = MultipartBody.of(param);
+        HttpPost httpPost = new HttpPost(url);
+        httpPost.setEntity(new MultipartEntity(body));
+        return execute(httpPost).whenComplete((resp, e) -> body.close());
+    }
+
+    private CompletableFuture<String> execute(HttpUriRequest request) {
+        final CompletableFuture<String> future = new CompletableFuture<String>();
+        httpClient.execute(request, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                try{
+                    HttpEntity entity = response.getEntity();
+                    future.complete(entity == null ? null : EntityUtils.toString(entity, UTF_8));
+                }catch(Exception e){
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                future.completeExceptionally(new CancellationException());
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public void close() {
+        try {
+            this.httpClient.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
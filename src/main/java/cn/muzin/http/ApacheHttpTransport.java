@@ -0,0 +1,277 @@
+package cn.muzin.http;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.ParseException;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.FileEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 Apache HttpClient 连接池的 HTTP 传输层
+ *
+ * 连接在所有接口调用间复用（Keep-Alive），避免每次请求都重新进行 TCP 与 TLS 握手。
+ * 实例是线程安全的，应长期持有，不再使用时调用 `close()` 释放连接池。
+ */
+public class ApacheHttpTransport implements WechatHttpTransport {
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    private final CloseableHttpClient httpClient;
+
+    public ApacheHttpTransport(){
+        this(new HttpPoolConfig());
+    }
+
+    public ApacheHttpTransport(HttpPoolConfig config){
+        this.connectionManager = new PoolingHttpClientConnectionManager();
+        this.connectionManager.setMaxTotal(config.getMaxTotal());
+        this.connectionManager.setDefaultMaxPerRoute(config.getMaxPerRoute());
+        this.connectionManager.setValidateAfterInactivity(config.getValidateAfterInactivityMillis());
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(config.getConnectTimeout())
+                .setConnectionRequestTimeout(config.getConnectionRequestTimeout())
+                .setSocketTimeout(config.getSocketTimeout())
+                .build();
+
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(this.connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(keepAliveStrategy(config.getKeepAliveMillis()))
+                .evictExpiredConnections()
+                .evictIdleConnections(config.getIdleEvictSeconds(), TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 服务端返回 Keep-Alive 头时以其为准，否则使用配置的保持时间
+     */
+    private static ConnectionKeepAliveStrategy keepAliveStrategy(final long keepAliveMillis){
+        return new ConnectionKeepAliveStrategy() {
+            @Override
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                return duration > 0 ? duration : keepAliveMillis;
+            }
+        };
+    }
+
+    public CloseableHttpClient getHttpClient(){
+        return this.httpClient;
+    }
+
+    public PoolingHttpClientConnectionManager getConnectionManager(){
+        return this.connectionManager;
+    }
+
+    /**
+     * 发送HTTP_GET请求
+     * @param url    请求地址(含参数)
+     * @param headers 请求头，可为null
+     * @return 远程主机响应正文
+     */
+    @Override
+    public String get(String url, Map<String, String> headers){
+        HttpGet httpGet = new HttpGet(url);
+        if(headers != null){
+            Set<String> headerSetKeys = headers.keySet();
+            for(String key : headerSetKeys){
+                httpGet.addHeader(key, headers.get(key));
+            }
+        }
+        return execute(httpGet, "UTF-8");
+    }
+
+    /**
+     * 发送JSON格式的HTTP_POST请求
+     * @param url    请求地址(含参数)
+     * @param body   JSON请求体
+     * @return 远程主机响应正文
+     */
+    @Override
+    public String postJson(String url, String body){
+        HttpPost httpPost = new HttpPost(url);
+        httpPost.setHeader("content-type", "application/json;charset=utf-8");
+        httpPost.setEntity(new StringEntity(body == null ? "" : body, Charset.forName("UTF-8")));
+        return execute(httpPost, "UTF-8");
+    }
+
+    /**
+     * 发送已编码为 UTF-8 的JSON请求体，直接写出字节
+     * @param url    请求地址(含参数)
+     * @param body   UTF-8 编码的JSON请求体
+     * @return 远程主机响应正文
+     */
+    @Override
+    public String postJson(String url, byte[] body){
+        HttpPost httpPost = new HttpPost(url);
+        httpPost.setHeader("content-type", "application/json;charset=utf-8");
+        httpPost.setEntity(new ByteArrayEntity(body));
+        return execute(httpPost, "UTF-8");
+    }
+
+    /**
+     * 发送 ByteBuffer 中的JSON请求体，直接写出，不复制
+     * @param url    请求地址(含参数)
+     * @param body   UTF-8 编码的JSON请求体
+     * @return 远程主机响应正文
+     */
+    @Override
+    public String postJson(String url, ByteBuffer body){
+        HttpPost httpPost = new HttpPost(url);
+        httpPost.setHeader("content-type", "application/json;charset=utf-8");
+        httpPost.setEntity(new ByteBufferEntity(body));
+        return execute(httpPost, "UTF-8");
+    }
+
+    /**
+     * 发送multipart/form-data格式的HTTP_POST请求
+     * @param url    请求地址(含参数)
+     * @param param  表单数据，值可为 String、File、Path、ByteBuffer、byte[]、InputStream
+     * @return 远程主机响应正文
+     */
+    @Override
+    public String postFormData(String url, Map<String, Object> param){
+        MultipartBody body = MultipartBody.of(param);
+        try{
+            return postMultipart(url, body);
+        }finally{
+            body.close();
+        }
+    }
+
+    /**
+     * 发送流式编码的multipart/form-data请求体，长度已知时使用 Content-Length，否则使用分块传输
+     * @param url    请求地址(含参数)
+     * @param body   请求体
+     * @return 远程主机响应正文
+     */
+    @Override
+    public String postMultipart(String url, MultipartBody body){
+        HttpPost httpPost = new HttpPost(url);
+        httpPost.setEntity(new MultipartEntity(body));
+        return execute(httpPost, "UTF-8");
+    }
+
+    /**
+     * 以文件内容作为请求体发送HTTP_POST请求
+     * @param url    请求地址(含参数)
+     * @param file   文件
+     * @return 远程主机响应正文
+     */
+    @Override
+    public String postFile(String url, File file){
+        HttpPost httpPost = new HttpPost(url);
+        httpPost.setEntity(new FileEntity(file));
+        return execute(httpPost, "UTF-8");
+    }
+
+    /**
+     * 下载二进制内容，响应体为流式读取，不在内存中缓冲
+     * @param url    请求地址(含参数)
+     * @param jsonBody JSON请求体，为null时发送GET请求
+     * @return 响应，网络异常时返回null
+     */
+    @Override
+    public BinaryResponse download(String url, String jsonBody){
+        HttpUriRequest request;
+        if(jsonBody == null){
+            request = new HttpGet(url);
+        }else{
+            HttpPost httpPost = new HttpPost(url);
+            httpPost.setHeader("content-type", "application/json;charset=utf-8");
+            httpPost.setEntity(new StringEntity(jsonBody, Charset.forName("UTF-8")));
+            request = httpPost;
+        }
+        try{
+            CloseableHttpResponse response = httpClient.execute(request);
+            HttpEntity entity = response.getEntity();
+            if(entity == null){
+                return new BinaryResponse(response.getStatusLine().getStatusCode(), null, 0,
+                        new ByteArrayInputStream(new byte[0]), response);
+            }
+            String contentType = entity.getContentType() != null ? entity.getContentType().getValue() : null;
+            return new BinaryResponse(response.getStatusLine().getStatusCode(), contentType,
+                    entity.getContentLength(), entity.getContent(), response);
+        }catch(IOException e){
+            System.out.println("该异常通常是网络原因引起的,如HTTP服务器未启动等,堆栈信息如下");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 执行请求并读取响应正文
+     * 响应实体读取完毕后连接归还连接池，供后续请求复用
+     * @param request 请求
+     * @param decodeCharset 解码字符集,解析响应数据时用之,其为null时默认采用UTF-8解码
+     * @return 远程主机响应正文
+     */
+    public String execute(HttpUriRequest request, String decodeCharset){
+        String responseContent = null; //响应内容
+        CloseableHttpResponse response = null;
+        try{
+            response = httpClient.execute(request);
+            HttpEntity entity = response.getEntity();            //获取响应实体
+            if(null != entity){
+                responseContent = EntityUtils.toString(entity, decodeCharset==null ? "UTF-8" : decodeCharset);
+                EntityUtils.consume(entity); //Consume response content
+            }
+        }catch(ClientProtocolException e){
+            System.out.println("该异常通常是协议错误导致,比如构造HttpGet对象时传入的协议不对(将'http'写成'htp')或者服务器端返回的内容不符合HTTP协议要求等,堆栈信息如下");
+            e.printStackTrace();
+        }catch(ParseException e){
+            e.printStackTrace();
+        }catch(IOException e){
+            System.out.println("该异常通常是网络原因引起的,如HTTP服务器未启动等,堆栈信息如下");
+            e.printStackTrace();
+        }finally{
+            if(response != null){
+                try {
+                    response.close(); //实体已读取完毕，连接归还连接池
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return responseContent;
+    }
+
+    /**
+     * 关闭连接池，释放所有连接
+     */
+    @Override
+    public void close() {
+        try {
+            this.httpClient.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
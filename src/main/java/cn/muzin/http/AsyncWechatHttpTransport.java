@@ -0,0 +1,45 @@
+package cn.muzin.http;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 微信接口的异步 HTTP 传输层
+ *
+ * 请求发出后立即返回 CompletableFuture，不占用调用线程等待响应。
+ * 网络异常时 future 以异常结束。实现必须是线程安全的。
+ */
+public interface AsyncWechatHttpTransport extends Closeable {
+
+    /**
+     * 发送HTTP_GET请求
+     * @param url    请求地址(含参数)
+     * @param headers 请求头，可为null
+     * @return 远程主机响应正文
+     */
+    CompletableFuture<String> get(String url, Map<String, String> headers);
+
+    /**
+     * 发送JSON格式的HTTP_POST请求
+     * @param url    请求地址(含参数)
+     * @param body   JSON请求体
+     * @return 远程主机响应正文
+     */
+    CompletableFuture<String> postJson(String url, String body);
+
+    /**
+     * 发送multipart/form-data格式的HTTP_POST请求
+     * @param url    请求地址(含参数)
+     * @param param  表单数据，值可为 String、File、InputStream
+     * @return 远程主机响应正文
+     */
+    CompletableFuture<String> postFormData(String url, Map<String, Object> param);
+
+    /**
+     * 释放传输层持有的连接、IO线程等资源
+     */
+    @Override
+    void close();
+
+}
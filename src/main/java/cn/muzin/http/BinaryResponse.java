@@ -0,0 +1,180 @@
+package cn.muzin.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 二进制下载的响应
+ *
+ * 响应体为流式读取，使用完毕后须调用 `close()` 释放底层连接。
+ */
+public class BinaryResponse implements Closeable {
+
+    /**
+     * 写入 FileChannel 时每次 transferFrom 的最大字节数
+     */
+    private static final long TRANSFER_CHUNK = 1 << 20;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private int statusCode;
+
+    private String contentType;
+
+    private long contentLength;
+
+    private InputStream body;
+
+    private Closeable releaser;
+
+    public BinaryResponse(int statusCode, String contentType, long contentLength,
+                          InputStream body, Closeable releaser){
+        this.statusCode = statusCode;
+        this.contentType = contentType;
+        this.contentLength = contentLength;
+        this.body = body;
+        this.releaser = releaser;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * 响应的 Content-Type，可能为null
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * 响应长度，未知时为 -1
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    public InputStream getBody() {
+        return body;
+    }
+
+    /**
+     * 响应是否为JSON（微信接口出错时以JSON返回错误信息）
+     */
+    public boolean isJson() {
+        return contentType != null
+                && (contentType.startsWith("application/json") || contentType.startsWith("text/plain"));
+    }
+
+    /**
+     * 读取全部响应体并关闭响应
+     * @return 响应体字节
+     */
+    public byte[] readAllBytes() throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(
+                    contentLength > 0 && contentLength < Integer.MAX_VALUE ? (int) contentLength : 8192);
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = body.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+            }
+            return out.toByteArray();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * 将响应体写入通道并关闭响应，内存占用与响应大小无关
+     * 目标为 FileChannel 时使用 `transferFrom` 由 JDK 完成复制，否则经由固定大小的缓冲区复制
+     * @param target 目标通道，不会被关闭
+     * @return 写入的字节数
+     */
+    public long transferTo(WritableByteChannel target) throws IOException {
+        try {
+            ReadableByteChannel source = Channels.newChannel(body);
+            long total = 0;
+            if (target instanceof FileChannel) {
+                FileChannel file = (FileChannel) target;
+                long position = file.position();
+                long n;
+                while ((n = file.transferFrom(source, position + total, TRANSFER_CHUNK)) > 0) {
+                    total += n;
+                }
+                file.position(position + total);
+            } else {
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                while (source.read(buffer) != -1) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        total += target.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            }
+            return total;
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * 将响应体写入文件并关闭响应
+     * 先写入同目录下的临时文件（`<文件名>.<随机数>.download`），完成后原子替换目标文件，下载中断不会留下不完整的文件
+     * @param target 目标文件，已存在时覆盖
+     * @return 写入的字节数
+     */
+    public long transferTo(Path target) throws IOException {
+        Path file = target.toAbsolutePath();
+        Path temp = null;
+        boolean moved = false;
+        try {
+            // 每次下载使用唯一的临时文件，同时下载到同一目标时互不干扰
+            temp = Files.createTempFile(file.getParent(), file.getFileName() + ".", ".download");
+            long total;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                total = transferTo(channel);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+            return total;
+        } finally {
+            close();
+            if (!moved && temp != null) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (body != null) {
+                body.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (releaser != null) {
+                try {
+                    releaser.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+package cn.muzin.http;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 以 ByteBuffer 的 position 到 limit 之间的字节作为请求实体，不复制、不改变传入的 ByteBuffer，
+ * 可用于只读的 ByteBuffer（如 `MassMessage.getBody()`）
+ */
+class ByteBufferEntity extends AbstractHttpEntity {
+
+    private final ByteBuffer content;
+
+    ByteBufferEntity(ByteBuffer content) {
+        this.content = content.duplicate();
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return content.remaining();
+    }
+
+    @Override
+    public InputStream getContent() {
+        final ByteBuffer buffer = content.duplicate();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!buffer.hasRemaining()) {
+                    return -1;
+                }
+                int n = Math.min(len, buffer.remaining());
+                buffer.get(b, off, n);
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return buffer.remaining();
+            }
+        };
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        write(content.duplicate(), out);
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * 写出 buffer 中剩余的字节
+     */
+    static void write(ByteBuffer buffer, OutputStream out) throws IOException {
+        WritableByteChannel channel = Channels.newChannel(out);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+package cn.muzin.http;
+
+/**
+ * HTTP 连接池配置
+ *
+ * 微信接口几乎全部请求同一个主机（api.weixin.qq.com），
+ * 因此每路由最大连接数通常与最大连接总数接近。
+ *
+ * Examples:
+ * ```
+ * HttpPoolConfig config = new HttpPoolConfig()
+ *      .setMaxTotal(200)
+ *      .setMaxPerRoute(100)
+ *      .setIdleEvictSeconds(30);
+ * WechatAPI api = new WechatAPI(appid, appsecret, tokenStorageResolver, ticketStorageResolver, config);
+ * ```
+ */
+public class HttpPoolConfig {
+
+    /**
+     * 连接池最大连接数
+     */
+    private int maxTotal = 200;
+
+    /**
+     * 每个路由（主机）最大连接数
+     */
+    private int maxPerRoute = 100;
+
+    /**
+     * 空闲连接回收时间（秒），空闲超过该时间的连接将被后台线程关闭
+     */
+    private int idleEvictSeconds = 30;
+
+    /**
+     * 连接空闲超过该时间（毫秒）后，再次使用前先校验连接是否可用
+     */
+    private int validateAfterInactivityMillis = 2000;
+
+    /**
+     * 服务端未返回 Keep-Alive 头时，连接保持的时间（毫秒）
+     */
+    private long keepAliveMillis = 30000;
+
+    /**
+     * 建立连接超时时间（毫秒）
+     */
+    private int connectTimeout = 10000;
+
+    /**
+     * 从连接池获取连接的超时时间（毫秒）
+     */
+    private int connectionRequestTimeout = 30000;
+
+    /**
+     * 读取数据超时时间（毫秒），0 为不限制
+     */
+    private int socketTimeout = 0;
+
+    public HttpPoolConfig(){
+
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public HttpPoolConfig setMaxTotal(int maxTotal) {
+        this.maxTotal = maxTotal;
+        return this;
+    }
+
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    public HttpPoolConfig setMaxPerRoute(int maxPerRoute) {
+        this.maxPerRoute = maxPerRoute;
+        return this;
+    }
+
+    public int getIdleEvictSeconds() {
+        return idleEvictSeconds;
+    }
+
+    public HttpPoolConfig setIdleEvictSeconds(int idleEvictSeconds) {
+        this.idleEvictSeconds = idleEvictSeconds;
+        return this;
+    }
+
+    public int getValidateAfterInactivityMillis() {
+        return validateAfterInactivityMillis;
+    }
+
+    public HttpPoolConfig setValidateAfterInactivityMillis(int validateAfterInactivityMillis) {
+        this.validateAfterInactivityMillis = validateAfterInactivityMillis;
+        return this;
+    }
+
+    public long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    public HttpPoolConfig setKeepAliveMillis(long keepAliveMillis) {
+        this.keepAliveMillis = keepAliveMillis;
+        return this;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public HttpPoolConfig setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+        return this;
+    }
+
+    public int getConnectionRequestTimeout() {
+        return connectionRequestTimeout;
+    }
+
+    public HttpPoolConfig setConnectionRequestTimeout(int connectionRequestTimeout) {
+        this.connectionRequestTimeout = connectionRequestTimeout;
+        return this;
+    }
+
+    public int getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    public HttpPoolConfig setSocketTimeout(int socketTimeout) {
+        this.socketTimeout = socketTimeout;
+        return this;
+    }
+
+}
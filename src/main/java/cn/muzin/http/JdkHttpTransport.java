@@ -0,0 +1,253 @@
+package cn.muzin.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 基于 JDK HttpURLConnection 的 HTTP 传输层，无第三方依赖
+ *
+ * JDK 在响应体读取完毕并关闭后会将连接放回其内部的 Keep-Alive 缓存，
+ * 缓存大小由系统属性 `http.maxConnections` 控制（默认 5）。
+ */
+public class JdkHttpTransport implements WechatHttpTransport {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int CHUNK_LENGTH = 8192;
+
+    private final HttpPoolConfig config;
+
+    public JdkHttpTransport(){
+        this(new HttpPoolConfig());
+    }
+
+    /**
+     * @param config 仅使用其中的超时配置
+     */
+    public JdkHttpTransport(HttpPoolConfig config){
+        this.config = config;
+    }
+
+    @Override
+    public String get(String url, Map<String, String> headers){
+        try{
+            HttpURLConnection conn = open(url, "GET");
+            if(headers != null){
+                Set<String> headerSetKeys = headers.keySet();
+                for(String key : headerSetKeys){
+                    conn.setRequestProperty(key, headers.get(key));
+                }
+            }
+            return readString(conn);
+        }catch(IOException e){
+            System.out.println("该异常通常是网络原因引起的,如HTTP服务器未启动等,堆栈信息如下");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public String postJson(String url, String body){
+        return postJson(url, (body == null ? "" : body).getBytes(UTF_8));
+    }
+
+    @Override
+    public String postJson(String url, byte[] bytes){
+        try{
+            HttpURLConnection conn = open(url, "POST");
+            conn.setRequestProperty("content-type", "application/json;charset=utf-8");
+            conn.setDoOutput(true);
+            conn.setFixedLengthStreamingMode(bytes.length);
+            OutputStream out = conn.getOutputStream();
+            try{
+                out.write(bytes);
+            }finally{
+                out.close();
+            }
+            return readString(conn);
+        }catch(IOException e){
+            System.out.println("该异常通常是网络原因引起的,如HTTP服务器未启动等,堆栈信息如下");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 直接写出 ByteBuffer 中的字节，不复制
+     */
+    @Override
+    public String postJson(String url, ByteBuffer body){
+        try{
+            ByteBuffer buffer = body.duplicate();
+            HttpURLConnection conn = open(url, "POST");
+            conn.setRequestProperty("content-type", "application/json;charset=utf-8");
+            conn.setDoOutput(true);
+            conn.setFixedLengthStreamingMode(buffer.remaining());
+            OutputStream out = conn.getOutputStream();
+            try{
+                WritableByteChannel channel = Channels.newChannel(out);
+                while(buffer.hasRemaining()){
+                    channel.write(buffer);
+                }
+            }finally{
+                out.close();
+            }
+            return readString(conn);
+        }catch(IOException e){
+            System.out.println("该异常通常是网络原因引起的,如HTTP服务器未启动等,堆栈信息如下");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public String postFormData(String url, Map<String, Object> param){
+        MultipartBody body = MultipartBody.of(param);
+        try{
+            return postMultipart(url, body);
+        }finally{
+            body.close();
+        }
+    }
+
+    /**
+     * 长度已知时使用定长传输，含未知长度的流时使用分块传输
+     */
+    @Override
+    public String postMultipart(String url, MultipartBody body){
+        try{
+            HttpURLConnection conn = open(url, "POST");
+            conn.setRequestProperty("content-type", body.getContentType());
+            conn.setDoOutput(true);
+            long length = body.getContentLength();
+            if(length >= 0){
+                conn.setFixedLengthStreamingMode(length);
+            }else{
+                conn.setChunkedStreamingMode(CHUNK_LENGTH);
+            }
+            OutputStream out = conn.getOutputStream();
+            try{
+                body.writeTo(out);
+            }finally{
+                out.close();
+            }
+            return readString(conn);
+        }catch(IOException e){
+            System.out.println("该异常通常是网络原因引起的,如HTTP服务器未启动等,堆栈信息如下");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public String postFile(String url, File file){
+        try{
+            HttpURLConnection conn = open(url, "POST");
+            conn.setDoOutput(true);
+            conn.setFixedLengthStreamingMode(file.length());
+            OutputStream out = conn.getOutputStream();
+            InputStream is = new FileInputStream(file);
+            try{
+                copy(is, out);
+            }finally{
+                is.close();
+                out.close();
+            }
+            return readString(conn);
+        }catch(IOException e){
+            System.out.println("该异常通常是网络原因引起的,如HTTP服务器未启动等,堆栈信息如下");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public BinaryResponse download(String url, String jsonBody){
+        try{
+            HttpURLConnection conn;
+            if(jsonBody == null){
+                conn = open(url, "GET");
+            }else{
+                byte[] bytes = jsonBody.getBytes(UTF_8);
+                conn = open(url, "POST");
+                conn.setRequestProperty("content-type", "application/json;charset=utf-8");
+                conn.setDoOutput(true);
+                conn.setFixedLengthStreamingMode(bytes.length);
+                OutputStream out = conn.getOutputStream();
+                try{
+                    out.write(bytes);
+                }finally{
+                    out.close();
+                }
+            }
+            int status = conn.getResponseCode();
+            InputStream body = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            if(body == null){
+                body = new ByteArrayInputStream(new byte[0]);
+            }
+            return new BinaryResponse(status, conn.getContentType(), conn.getContentLengthLong(), body, (Closeable) null);
+        }catch(IOException e){
+            System.out.println("该异常通常是网络原因引起的,如HTTP服务器未启动等,堆栈信息如下");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * JDK 的 Keep-Alive 缓存为全局共享，无需释放
+     */
+    @Override
+    public void close() {
+
+    }
+
+    private HttpURLConnection open(String url, String method) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setRequestMethod(method);
+        conn.setConnectTimeout(config.getConnectTimeout());
+        conn.setReadTimeout(config.getSocketTimeout());
+        conn.setUseCaches(false);
+        return conn;
+    }
+
+    /**
+     * 读取全部响应正文并关闭流，使连接可被复用
+     */
+    private static String readString(HttpURLConnection conn) throws IOException {
+        int status = conn.getResponseCode();
+        InputStream is = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+        if(is == null){
+            return null;
+        }
+        try{
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            copy(is, out);
+            return new String(out.toByteArray(), UTF_8);
+        }finally{
+            is.close();
+        }
+    }
+
+    private static void copy(InputStream is, OutputStream out) throws IOException {
+        byte[] buffer = new byte[CHUNK_LENGTH];
+        int len;
+        while((len = is.read(buffer)) != -1){
+            out.write(buffer, 0, len);
+        }
+    }
+
+}
@@ -0,0 +1,515 @@
+package cn.muzin.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 流式的 multipart/form-data 请求体
+ *
+ * 各部分的头部在添加时编码，文件内容在写出时才读取：文件以 `FileChannel.transferTo` 写出
+ * （目标为 SocketChannel、FileChannel 时由操作系统直接复制），ByteBuffer 直接写出，InputStream 经固定大小的缓冲区复制，
+ * 内存占用与文件大小无关。不含未知长度的 InputStream 时，`getContentLength()` 在发送前即可得到总长度，
+ * 传输层可以使用定长而非分块传输。
+ *
+ * 文件只在写出期间打开，写出结束即关闭；通过 `addStream` 添加的流由本对象负责关闭，调用 `close()` 释放。
+ *
+ * Examples:
+ * ```
+ * try (MultipartBody body = new MultipartBody()
+ *         .addFile("media", Paths.get("/data/video.mp4"))
+ *         .addText("description", "{\"title\":\"标题\",\"introduction\":\"简介\"}")) {
+ *     body.getContentLength();
+ *     body.writeTo(socketChannel);
+ * }
+ * ```
+ */
+public class MultipartBody implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String boundary;
+
+    private final List<Part> parts = new ArrayList<Part>();
+
+    public MultipartBody() {
+        this("----WechatAPIBoundary" + Long.toHexString(System.nanoTime())
+                + Long.toHexString(ThreadLocalRandom.current().nextLong()));
+    }
+
+    /**
+     * @param boundary 分隔符，不能出现在各部分的内容中
+     */
+    public MultipartBody(String boundary) {
+        this.boundary = boundary;
+    }
+
+    /**
+     * 由表单数据创建，值可为 String、File、Path、ByteBuffer、byte[]、InputStream，其他类型忽略
+     */
+    public static MultipartBody of(Map<String, Object> param) {
+        MultipartBody body = new MultipartBody();
+        for (Map.Entry<String, Object> entry : param.entrySet()) {
+            String name = entry.getKey();
+            Object val = entry.getValue();
+            if (val instanceof String) {
+                body.addText(name, (String) val);
+            } else if (val instanceof File) {
+                body.addFile(name, ((File) val).toPath());
+            } else if (val instanceof Path) {
+                body.addFile(name, (Path) val);
+            } else if (val instanceof ByteBuffer) {
+                body.addBytes(name, null, (ByteBuffer) val);
+            } else if (val instanceof byte[]) {
+                body.addBytes(name, null, ByteBuffer.wrap((byte[]) val));
+            } else if (val instanceof InputStream) {
+                body.addStream(name, null, (InputStream) val);
+            }
+        }
+        return body;
+    }
+
+    public MultipartBody addText(String name, String value) {
+        byte[] content = value.getBytes(UTF_8);
+        parts.add(new BytesPart(header(name, null, "text/plain; charset=UTF-8"), name, value, ByteBuffer.wrap(content)));
+        return this;
+    }
+
+    /**
+     * 添加文件，文件名作为 filename
+     */
+    public MultipartBody addFile(String name, Path file) {
+        return addFile(name, file.getFileName().toString(), file);
+    }
+
+    /**
+     * 添加文件，长度在添加时确定，写出时文件变短则写出失败
+     * @param filename 上传的文件名，微信根据扩展名判断文件格式
+     */
+    public MultipartBody addFile(String name, String filename, Path file) {
+        parts.add(new FilePart(header(name, filename, null), name, file, file.toFile().length()));
+        return this;
+    }
+
+    /**
+     * 添加内存中的内容，写出时读取 position 到 limit 之间的字节，不改变传入的 ByteBuffer
+     * @param filename 上传的文件名，为 null 时自动生成
+     */
+    public MultipartBody addBytes(String name, String filename, ByteBuffer content) {
+        parts.add(new BytesPart(header(name, filename(filename), null), name, null, content.slice()));
+        return this;
+    }
+
+    /**
+     * 添加长度未知的流，此时无法预先计算总长度，只能写出一次
+     * @param filename 上传的文件名，为 null 时自动生成
+     */
+    public MultipartBody addStream(String name, String filename, InputStream content) {
+        return addStream(name, filename, content, -1);
+    }
+
+    /**
+     * 添加流
+     * @param length 流的字节数，未知时为 -1；已知时写出的字节数与之不符则写出失败
+     */
+    public MultipartBody addStream(String name, String filename, InputStream content, long length) {
+        parts.add(new StreamPart(header(name, filename(filename), null), name, content, length));
+        return this;
+    }
+
+    public String getBoundary() {
+        return boundary;
+    }
+
+    public String getContentType() {
+        return "multipart/form-data; boundary=" + boundary;
+    }
+
+    /**
+     * 请求体的总字节数，含未知长度的流时为 -1
+     */
+    public long getContentLength() {
+        long length = 0;
+        for (Part part : parts) {
+            if (part.length() < 0) {
+                return -1;
+            }
+            length += part.header.length + part.length() + CRLF.length;
+        }
+        return length + trailer().length;
+    }
+
+    /**
+     * 是否可以重复写出（不含 InputStream），用于 access token 失效时重放请求
+     */
+    public boolean isRepeatable() {
+        for (Part part : parts) {
+            if (part instanceof StreamPart) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 写出请求体
+     * @param target 目标通道，不会被关闭
+     * @return 写出的字节数
+     */
+    public long writeTo(WritableByteChannel target) throws IOException {
+        long total = 0;
+        for (Part part : parts) {
+            total += write(ByteBuffer.wrap(part.header), target);
+            total += part.writeContent(target);
+            total += write(ByteBuffer.wrap(CRLF), target);
+        }
+        total += write(ByteBuffer.wrap(trailer()), target);
+        return total;
+    }
+
+    /**
+     * 写出请求体
+     * @param out 目标流，不会被关闭
+     * @return 写出的字节数
+     */
+    public long writeTo(OutputStream out) throws IOException {
+        long total = writeTo(Channels.newChannel(out));
+        out.flush();
+        return total;
+    }
+
+    /**
+     * 以输入流的形式读取请求体，供只能从 InputStream 读取请求体的传输层使用；文件在读到时才打开
+     */
+    public InputStream openStream() {
+        return new PartsInputStream();
+    }
+
+    /**
+     * 转换为 `WechatHttpTransport.postFormData` 的表单数据，用于未实现 `postMultipart` 的传输层
+     */
+    Map<String, Object> toFormData() {
+        Map<String, Object> param = new LinkedHashMap<String, Object>();
+        for (Part part : parts) {
+            param.put(part.name, part.toFormValue());
+        }
+        return param;
+    }
+
+    /**
+     * 关闭通过 `addStream` 添加的流
+     */
+    @Override
+    public void close() {
+        for (Part part : parts) {
+            if (part instanceof StreamPart) {
+                try {
+                    ((StreamPart) part).content.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private byte[] header(String name, String filename, String contentType) {
+        StringBuilder sb = new StringBuilder(128)
+                .append("--").append(boundary).append("\r\n")
+                .append("Content-Disposition: form-data; name=\"").append(name).append('"');
+        if (filename != null) {
+            sb.append("; filename=\"").append(filename).append('"');
+        }
+        sb.append("\r\nContent-Type: ").append(contentType != null ? contentType : "application/octet-stream")
+                .append("\r\n\r\n");
+        return sb.toString().getBytes(UTF_8);
+    }
+
+    private byte[] trailer() {
+        return ("--" + boundary + "--\r\n").getBytes(UTF_8);
+    }
+
+    private static String filename(String filename) {
+        return filename != null ? filename : new Date().getTime() + "" + ((int) Math.floor(Math.random() * 10000));
+    }
+
+    private static long write(ByteBuffer buffer, WritableByteChannel target) throws IOException {
+        long total = 0;
+        while (buffer.hasRemaining()) {
+            total += target.write(buffer);
+        }
+        return total;
+    }
+
+    private abstract static class Part {
+        final byte[] header;
+        final String name;
+
+        Part(byte[] header, String name) {
+            this.header = header;
+            this.name = name;
+        }
+
+        /**
+         * 内容的字节数，未知时为 -1
+         */
+        abstract long length();
+
+        abstract long writeContent(WritableByteChannel target) throws IOException;
+
+        abstract InputStream openContent() throws IOException;
+
+        abstract Object toFormValue();
+    }
+
+    private static class BytesPart extends Part {
+        final String text;
+        final ByteBuffer content;
+
+        BytesPart(byte[] header, String name, String text, ByteBuffer content) {
+            super(header, name);
+            this.text = text;
+            this.content = content;
+        }
+
+        @Override
+        long length() {
+            return content.remaining();
+        }
+
+        @Override
+        long writeContent(WritableByteChannel target) throws IOException {
+            return write(content.duplicate(), target);
+        }
+
+        @Override
+        InputStream openContent() {
+            ByteBuffer copy = content.duplicate();
+            if (copy.hasArray()) {
+                return new ByteArrayInputStream(copy.array(), copy.arrayOffset() + copy.position(), copy.remaining());
+            }
+            byte[] bytes = new byte[copy.remaining()];
+            copy.get(bytes);
+            return new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        Object toFormValue() {
+            return text != null ? text : openContent();
+        }
+    }
+
+    private static class FilePart extends Part {
+        final Path file;
+        final long length;
+
+        FilePart(byte[] header, String name, Path file, long length) {
+            super(header, name);
+            this.file = file;
+            this.length = length;
+        }
+
+        @Override
+        long length() {
+            return length;
+        }
+
+        @Override
+        long writeContent(WritableByteChannel target) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long position = 0;
+                while (position < length) {
+                    long n = channel.transferTo(position, length - position, target);
+                    if (n <= 0 && channel.size() <= position) {
+                        throw new IOException("file " + file + " is shorter than " + length + " bytes");
+                    }
+                    position += n;
+                }
+                return position;
+            }
+        }
+
+        @Override
+        InputStream openContent() throws IOException {
+            return new BoundedInputStream(Files.newInputStream(file), length, file.toString());
+        }
+
+        @Override
+        Object toFormValue() {
+            return file.toFile();
+        }
+    }
+
+    private static class StreamPart extends Part {
+        final InputStream content;
+        final long length;
+
+        StreamPart(byte[] header, String name, InputStream content, long length) {
+            super(header, name);
+            this.content = content;
+            this.length = length;
+        }
+
+        @Override
+        long length() {
+            return length;
+        }
+
+        @Override
+        long writeContent(WritableByteChannel target) throws IOException {
+            ReadableByteChannel source = Channels.newChannel(content);
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            long total = 0;
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+                total += write(buffer, target);
+                buffer.clear();
+            }
+            if (length >= 0 && total != length) {
+                throw new IOException("stream " + name + " has " + total + " bytes, expected " + length);
+            }
+            return total;
+        }
+
+        @Override
+        InputStream openContent() {
+            return length >= 0 ? new BoundedInputStream(content, length, name) : content;
+        }
+
+        @Override
+        Object toFormValue() {
+            return content;
+        }
+    }
+
+    /**
+     * 只读取前 length 个字节，不足时抛出异常，保证与 Content-Length 一致
+     */
+    private static class BoundedInputStream extends InputStream {
+        private final InputStream in;
+        private final String source;
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long length, String source) {
+            this.in = in;
+            this.remaining = length;
+            this.source = source;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n == -1) {
+                throw new IOException(source + " ended " + remaining + " bytes early");
+            }
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * 依次读取各部分的头部、内容与结尾，当前部分读完即关闭
+     */
+    private class PartsInputStream extends InputStream {
+        /**
+         * 下一个要打开的片段：每个部分依次为头部、内容、换行，最后为结尾
+         */
+        private int segment;
+        private InputStream current;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n;
+            while ((n = read(one, 0, 1)) == 0) {
+                // 继续读取
+            }
+            return n == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                if (current == null) {
+                    current = next();
+                    if (current == null) {
+                        return -1;
+                    }
+                }
+                int n = current.read(b, off, len);
+                if (n != -1) {
+                    return n;
+                }
+                current.close();
+                current = null;
+            }
+        }
+
+        private InputStream next() throws IOException {
+            int index = segment / 3;
+            if (index > parts.size()) {
+                return null;
+            }
+            int kind = segment % 3;
+            segment++;
+            if (index == parts.size()) {
+                segment = (parts.size() + 1) * 3;
+                return new ByteArrayInputStream(trailer());
+            }
+            Part part = parts.get(index);
+            if (kind == 0) {
+                return new ByteArrayInputStream(part.header);
+            } else if (kind == 1) {
+                return part.openContent();
+            }
+            return new ByteArrayInputStream(CRLF);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+package cn.muzin.http;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 将 `MultipartBody` 适配为 Apache HttpClient 的请求实体
+ * 同步客户端经 `writeTo` 直接写出，异步客户端经 `getContent` 逐段读取，均不在内存中缓冲整个请求体
+ */
+class MultipartEntity extends AbstractHttpEntity {
+
+    private final MultipartBody body;
+
+    MultipartEntity(MultipartBody body) {
+        this.body = body;
+        setContentType(body.getContentType());
+        setChunked(body.getContentLength() < 0);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return body.isRepeatable();
+    }
+
+    @Override
+    public long getContentLength() {
+        return body.getContentLength();
+    }
+
+    @Override
+    public InputStream getContent() {
+        return body.openStream();
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        body.writeTo(out);
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return !body.isRepeatable();
+    }
+
+}
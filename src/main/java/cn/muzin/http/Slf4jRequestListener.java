@@ -0,0 +1,62 @@
+package cn.muzin.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 通过 SLF4J 输出请求日志的监听器
+ *
+ * 成功的请求按 `sampleRate` 采样后以 DEBUG 级别输出，失败（网络异常或 errcode 非 0）的请求总是以 WARN 级别输出。
+ * 日志中的请求地址已脱敏，不输出请求体与响应体。
+ * 需要在项目中自行引入 slf4j-api。
+ *
+ * Examples:
+ * ```
+ * api.setRequestListener(new Slf4jRequestListener(0.01));
+ * ```
+ */
+public class Slf4jRequestListener implements WechatRequestListener {
+
+    private final Logger logger;
+
+    private final double sampleRate;
+
+    public Slf4jRequestListener(){
+        this(1.0);
+    }
+
+    /**
+     * @param sampleRate 成功请求的采样率，0 到 1 之间
+     */
+    public Slf4jRequestListener(double sampleRate){
+        this(LoggerFactory.getLogger("cn.muzin.WechatAPI"), sampleRate);
+    }
+
+    public Slf4jRequestListener(Logger logger, double sampleRate){
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("sampleRate must be between 0 and 1");
+        }
+        this.logger = logger;
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public void onRequest(WechatRequestEvent event) {
+        if (!event.isSuccess()) {
+            if (logger.isWarnEnabled()) {
+                logger.warn("wechat request {}", event);
+            }
+            return;
+        }
+        if (!logger.isDebugEnabled()) {
+            return;
+        }
+        if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        logger.debug("wechat request {}", event);
+    }
+
+}
@@ -0,0 +1,108 @@
+package cn.muzin.http;
+
+import java.io.Closeable;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+/**
+ * 微信接口的 HTTP 传输层
+ *
+ * WechatAPI 的所有网络请求都经由此接口发出，可通过构造函数注入不同的实现：
+ * - `ApacheHttpTransport` 基于 Apache HttpClient 连接池（默认）
+ * - `JdkHttpTransport` 基于 JDK 自带的 HttpURLConnection，无第三方依赖
+ * - 测试中可注入内存实现，无需访问网络
+ *
+ * 实现必须是线程安全的。网络异常时与 HttpUtils 保持一致，返回 null。
+ *
+ * Examples:
+ * ```
+ * WechatHttpTransport transport = new JdkHttpTransport();
+ * WechatAPI api = new WechatAPI(appid, appsecret, tokenStorageResolver, ticketStorageResolver, transport);
+ * ```
+ */
+public interface WechatHttpTransport extends Closeable {
+
+    /**
+     * 发送HTTP_GET请求
+     * @param url    请求地址(含参数)
+     * @param headers 请求头，可为null
+     * @return 远程主机响应正文
+     */
+    String get(String url, Map<String, String> headers);
+
+    /**
+     * 发送JSON格式的HTTP_POST请求
+     * @param url    请求地址(含参数)
+     * @param body   JSON请求体
+     * @return 远程主机响应正文
+     */
+    String postJson(String url, String body);
+
+    /**
+     * 发送已编码为 UTF-8 的JSON请求体，用于预先序列化的请求（如 `TemplateMessageBatch`）
+     * 默认实现解码后调用 `postJson(String, String)`，实现类可直接写出字节避免重复编码
+     * @param url    请求地址(含参数)
+     * @param body   UTF-8 编码的JSON请求体
+     * @return 远程主机响应正文
+     */
+    default String postJson(String url, byte[] body) {
+        return postJson(url, new String(body, Charset.forName("UTF-8")));
+    }
+
+    /**
+     * 发送 ByteBuffer 中 position 到 limit 之间的 UTF-8 JSON请求体，不改变传入的 ByteBuffer，
+     * 用于可重复发送的只读请求体（如 `MassMessage`）
+     * 默认实现解码后调用 `postJson(String, String)`，实现类可直接写出字节避免复制
+     * @param url    请求地址(含参数)
+     * @param body   UTF-8 编码的JSON请求体
+     * @return 远程主机响应正文
+     */
+    default String postJson(String url, ByteBuffer body) {
+        return postJson(url, Charset.forName("UTF-8").decode(body.duplicate()).toString());
+    }
+
+    /**
+     * 发送multipart/form-data格式的HTTP_POST请求
+     * @param url    请求地址(含参数)
+     * @param param  表单数据，值可为 String、File、InputStream
+     * @return 远程主机响应正文
+     */
+    String postFormData(String url, Map<String, Object> param);
+
+    /**
+     * 发送流式编码的multipart/form-data请求体，不关闭 body
+     * 默认实现转换为表单数据后调用 `postFormData`，实现类可直接写出以使用定长传输、避免缓冲
+     * @param url    请求地址(含参数)
+     * @param body   请求体
+     * @return 远程主机响应正文
+     */
+    default String postMultipart(String url, MultipartBody body) {
+        return postFormData(url, body.toFormData());
+    }
+
+    /**
+     * 以文件内容作为请求体发送HTTP_POST请求
+     * @param url    请求地址(含参数)
+     * @param file   文件
+     * @return 远程主机响应正文
+     */
+    String postFile(String url, File file);
+
+    /**
+     * 下载二进制内容
+     * 返回的响应体为流式读取，调用方读取完毕后须关闭响应以释放连接
+     * @param url    请求地址(含参数)
+     * @param jsonBody JSON请求体，为null时发送GET请求，否则发送POST请求
+     * @return 响应，网络异常时返回null
+     */
+    BinaryResponse download(String url, String jsonBody);
+
+    /**
+     * 释放传输层持有的连接等资源
+     */
+    @Override
+    void close();
+
+}
@@ -0,0 +1,166 @@
+package cn.muzin.http;
+
+/**
+ * 一次接口请求的信息
+ *
+ * 请求地址中的 access_token、secret 等凭证只能通过 `getRedactedUrl()` 以脱敏形式获取。
+ */
+public class WechatRequestEvent {
+
+    private static final String[] SECRET_PARAMS = {"access_token=", "secret=", "appsecret="};
+
+    private final String method;
+
+    private final String url;
+
+    private final long latencyNanos;
+
+    private final long bytesOut;
+
+    private final long bytesIn;
+
+    private final int errcode;
+
+    private final int retries;
+
+    private final boolean failed;
+
+    /**
+     * @param method HTTP 方法
+     * @param url 请求地址（含凭证，不对外暴露）
+     * @param latencyNanos 耗时（纳秒），包含重放
+     * @param bytesOut 请求体字节数
+     * @param bytesIn 响应体字节数
+     * @param errcode 响应中的 errcode，没有时为 0
+     * @param retries 重放次数
+     * @param failed 是否因网络异常等未得到响应
+     */
+    public WechatRequestEvent(String method, String url, long latencyNanos, long bytesOut, long bytesIn,
+                              int errcode, int retries, boolean failed){
+        this.method = method;
+        this.url = url;
+        this.latencyNanos = latencyNanos;
+        this.bytesOut = bytesOut;
+        this.bytesIn = bytesIn;
+        this.errcode = errcode;
+        this.retries = retries;
+        this.failed = failed;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * 接口路径，不含域名与查询参数，如 `cgi-bin/message/custom/send`
+     */
+    public String getEndpoint() {
+        return endpoint(url);
+    }
+
+    /**
+     * 凭证参数替换为 `***` 的请求地址
+     */
+    public String getRedactedUrl() {
+        return redact(url);
+    }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    public long getLatencyMillis() {
+        return latencyNanos / 1000000;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public int getErrcode() {
+        return errcode;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * 请求是否成功：得到了响应且 errcode 为 0
+     */
+    public boolean isSuccess() {
+        return !failed && errcode == 0;
+    }
+
+    /**
+     * 取得请求地址中的接口路径
+     * Examples:
+     * ```
+     * WechatRequestEvent.endpoint("https://api.weixin.qq.com/cgi-bin/user/get?access_token=X"); // cgi-bin/user/get
+     * ```
+     */
+    public static String endpoint(String url) {
+        int hostStart = url.indexOf("://");
+        int pathStart = url.indexOf('/', hostStart < 0 ? 0 : hostStart + 3);
+        if (pathStart < 0) {
+            return "";
+        }
+        int query = url.indexOf('?', pathStart);
+        return url.substring(pathStart + 1, query < 0 ? url.length() : query);
+    }
+
+    /**
+     * 将请求地址中的 access_token、secret 参数值替换为 `***`
+     */
+    public static String redact(String url) {
+        int query = url.indexOf('?');
+        if (query < 0) {
+            return url;
+        }
+        StringBuilder sb = new StringBuilder(url.length());
+        sb.append(url, 0, query + 1);
+        int i = query + 1;
+        while (i < url.length()) {
+            int end = url.indexOf('&', i);
+            if (end < 0) {
+                end = url.length();
+            }
+            String param = url.substring(i, end);
+            boolean secret = false;
+            for (String name : SECRET_PARAMS) {
+                if (param.startsWith(name)) {
+                    sb.append(name).append("***");
+                    secret = true;
+                    break;
+                }
+            }
+            if (!secret) {
+                sb.append(param);
+            }
+            if (end < url.length()) {
+                sb.append('&');
+            }
+            i = end + 1;
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + getRedactedUrl()
+                + " latency=" + getLatencyMillis() + "ms"
+                + " out=" + bytesOut + "B in=" + bytesIn + "B"
+                + " errcode=" + errcode
+                + " retries=" + retries
+                + (failed ? " failed" : "");
+    }
+
+}
@@ -0,0 +1,36 @@
+package cn.muzin.http;
+
+/**
+ * 接口请求的监听器，每个请求完成后（含 access token 失效重放）回调一次
+ *
+ * 回调在请求线程中同步执行，实现应尽量轻量且线程安全。
+ * 默认使用 `NOOP`，不做任何处理；`Slf4jRequestListener` 可按采样率输出日志。
+ *
+ * Examples:
+ * ```
+ * api.setRequestListener(new WechatRequestListener() {
+ *     public void onRequest(WechatRequestEvent event) {
+ *         System.out.println(event.getEndpoint() + " " + event.getLatencyMillis() + "ms");
+ *     }
+ * });
+ * ```
+ */
+public interface WechatRequestListener {
+
+    /**
+     * 不做任何处理的监听器
+     */
+    WechatRequestListener NOOP = new WechatRequestListener() {
+        @Override
+        public void onRequest(WechatRequestEvent event) {
+
+        }
+    };
+
+    /**
+     * 请求完成
+     * @param event 请求信息
+     */
+    void onRequest(WechatRequestEvent event);
+
+}
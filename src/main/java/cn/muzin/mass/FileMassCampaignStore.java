@@ -0,0 +1,91 @@
+package cn.muzin.mass;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于文件的群发活动记录
+ *
+ * 每个批次一行 `clientmsgid msg_id`，追加写入并立即刷盘，进程在群发过程中退出也不会丢失已提交的批次。
+ * 首次读取时载入整个文件，多个活动可以共用一个文件。
+ */
+public class FileMassCampaignStore implements MassCampaignStore {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Path file;
+
+    private volatile Map<String, String> msgIds;
+
+    /**
+     * 文件末尾是否有不完整的行，下次写入前先换行
+     */
+    private boolean truncated;
+
+    public FileMassCampaignStore(Path file) {
+        this.file = file.toAbsolutePath();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public String getMsgId(String clientMsgId) throws IOException {
+        return load().get(clientMsgId);
+    }
+
+    @Override
+    public synchronized void saveMsgId(String clientMsgId, String msgId) throws IOException {
+        Map<String, String> loaded = load();
+        byte[] line = ((truncated ? "\n" : "") + clientMsgId + " " + msgId + "\n").getBytes(UTF_8);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        truncated = false;
+        loaded.put(clientMsgId, msgId);
+    }
+
+    private Map<String, String> load() throws IOException {
+        Map<String, String> loaded = this.msgIds;
+        if (loaded != null) {
+            return loaded;
+        }
+        synchronized (this) {
+            if (this.msgIds != null) {
+                return this.msgIds;
+            }
+            loaded = new ConcurrentHashMap<String, String>();
+            if (Files.exists(file)) {
+                String content = new String(Files.readAllBytes(file), UTF_8);
+                int start = 0;
+                int end;
+                // 没有换行结尾的最后一行是写入中途退出留下的，忽略
+                while ((end = content.indexOf('\n', start)) >= 0) {
+                    String line = content.substring(start, end).trim();
+                    int space = line.indexOf(' ');
+                    if (space > 0) {
+                        loaded.put(line.substring(0, space), line.substring(space + 1).trim());
+                    }
+                    start = end + 1;
+                }
+                this.truncated = start < content.length();
+            }
+            this.msgIds = loaded;
+            return loaded;
+        }
+    }
+
+}
@@ -0,0 +1,526 @@
+package cn.muzin.mass;
+
+import cn.muzin.WechatAPI;
+import cn.muzin.entity.BatchFailure;
+import cn.muzin.util.ChunkedExecutor;
+import com.google.gson.JsonObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 向任意数量的用户群发同一条消息
+ *
+ * `message/mass/send` 单次最多 10000 个 openid。群发活动将接收者按 `shardSize` 切分，
+ * 第 n 批（从 0 开始）以 `campaignId + "-" + n` 作为 clientmsgid，以 `parallelism` 个并发请求提交。
+ * 同时在途的批次不超过 2 * parallelism，接收者可以来自列表、Stream、`OpenidSet` 或标签，内存占用与总数无关。
+ * 接口要求每批至少 2 个 openid，接收者只有 1 个时不提交，以 `INVALID_OPENID_LIST_SIZE` 记为失败。
+ *
+ * 每批提交成功后将 msg_id 保存到 `MassCampaignStore`。活动中断后以相同的 campaignId、
+ * 相同顺序的接收者重新运行，已保存 msg_id 的批次直接跳过；本地记录丢失时，
+ * 接口对重复的 clientmsgid 返回 45065，同样视为已提交，不会重复群发。
+ *
+ * 提交完成后在后台按 `pollInterval` 轮询各批次的 `getMassMessageStatus`，直到全部发送结束，
+ * 发送状态汇总在 `MassCampaignResult.getDeliveryStats` 中。查询返回 errcode（系统繁忙除外）
+ * 或连续 3 次查询失败的批次记为 `UNKNOWN`，不再查询。
+ *
+ * Examples:
+ * ```
+ * Map<String, Object> text = new HashMap<String, Object>();
+ * text.put("content", "双十一活动开始啦");
+ * Map<String, Object> message = new HashMap<String, Object>();
+ * message.put("msgtype", "text");
+ * message.put("text", text);
+ *
+ * MassCampaign campaign = new MassCampaign(api, "double11-2024", message)
+ *         .setStore(new FileMassCampaignStore(Paths.get("/var/lib/wechat/mass-campaigns")))
+ *         .setParallelism(2)
+ *         .setPollInterval(60000);
+ *
+ * MassCampaignResult result = campaign.run(api.followers());
+ * // 或使用 MassMessage，接收人由活动决定
+ * new MassCampaign(api, "news-2024", MassMessage.mpNews(mediaId).toAll().build()).runForTag(tagId);
+ * result.getFailedOpenids();
+ * result.awaitDelivery(1, TimeUnit.HOURS);
+ * result.getDeliveryStats();
+ * campaign.close();
+ * ```
+ */
+public class MassCampaign implements Closeable {
+
+    /**
+     * `message/mass/send` 单次最多的 openid 数
+     */
+    public static final int MAX_SHARD_SIZE = 10000;
+
+    /**
+     * 相同 clientmsgid 已有群发记录
+     */
+    public static final int CLIENT_MSG_ID_EXISTS = 45065;
+
+    /**
+     * 接收者少于 2 个
+     */
+    public static final int INVALID_OPENID_LIST_SIZE = 40130;
+
+    /**
+     * 连续查询失败多少次后将批次状态记为 UNKNOWN
+     */
+    private static final int MAX_POLL_FAILURES = 3;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * clientmsgid 最长 64 字节，留出 "-" 与批次序号的长度
+     */
+    private static final int MAX_CAMPAIGN_ID_BYTES = 53;
+
+    private final WechatAPI api;
+
+    private final String campaignId;
+
+    private final Map<String, Object> message;
+
+    private int shardSize = MAX_SHARD_SIZE;
+
+    private int parallelism = 2;
+
+    /**
+     * 每秒最多提交的批次数，0 表示不限制
+     */
+    private double rateLimit = 0;
+
+    private Integer sendIgnoreReprint;
+
+    private long pollInterval = 60000;
+
+    private ExecutorService executor;
+
+    private MassCampaignStore store = new MemoryStore();
+
+    private ScheduledExecutorService poller;
+
+    /**
+     * @param api WechatAPI
+     * @param campaignId 活动标识，作为各批次 clientmsgid 的前缀，不超过 53 字节
+     * @param message 群发的消息，含 msgtype 及对应的消息内容，与 `massSend` 的 opts 相同；不会被修改
+     */
+    public MassCampaign(WechatAPI api, String campaignId, Map<String, Object> message){
+        if (campaignId == null || campaignId.isEmpty()
+                || campaignId.getBytes(UTF_8).length > MAX_CAMPAIGN_ID_BYTES) {
+            throw new IllegalArgumentException("campaignId must be 1 to " + MAX_CAMPAIGN_ID_BYTES + " bytes");
+        }
+        if (message == null || !message.containsKey("msgtype")) {
+            throw new IllegalArgumentException("message must contain msgtype");
+        }
+        this.api = api;
+        this.campaignId = campaignId;
+        this.message = new HashMap<String, Object>(message);
+        this.message.remove("touser");
+        this.message.remove("filter");
+        this.message.remove("clientmsgid");
+        Object sendIgnoreReprint = this.message.remove("send_ignore_reprint");
+        if (sendIgnoreReprint instanceof Number) {
+            this.sendIgnoreReprint = ((Number) sendIgnoreReprint).intValue();
+        }
+    }
+
+    /**
+     * @param api WechatAPI
+     * @param campaignId 活动标识，作为各批次 clientmsgid 的前缀，不超过 53 字节
+     * @param message 群发的消息，只使用其消息内容与 send_ignore_reprint，接收人与 clientmsgid 由群发活动决定
+     */
+    public MassCampaign(WechatAPI api, String campaignId, MassMessage message){
+        this(api, campaignId, message.toOpts());
+    }
+
+    public String getCampaignId() {
+        return campaignId;
+    }
+
+    /**
+     * @param shardSize 每批的接收者数，2 至 10000；重新运行时须与之前一致
+     */
+    public MassCampaign setShardSize(int shardSize) {
+        if (shardSize < 2 || shardSize > MAX_SHARD_SIZE) {
+            throw new IllegalArgumentException("shardSize must be between 2 and " + MAX_SHARD_SIZE);
+        }
+        this.shardSize = shardSize;
+        return this;
+    }
+
+    public int getShardSize() {
+        return shardSize;
+    }
+
+    public MassCampaign setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param rateLimit 每秒最多提交的批次数，0 表示不限制
+     */
+    public MassCampaign setRateLimit(double rateLimit) {
+        this.rateLimit = rateLimit;
+        return this;
+    }
+
+    public double getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * @param sendIgnoreReprint 图文消息被判定为转载时，是否继续群发。1为继续群发（转载），0为停止群发
+     */
+    public MassCampaign setSendIgnoreReprint(Integer sendIgnoreReprint) {
+        this.sendIgnoreReprint = sendIgnoreReprint;
+        return this;
+    }
+
+    /**
+     * @param pollInterval 查询发送状态的间隔毫秒数，0 表示不查询
+     */
+    public MassCampaign setPollInterval(long pollInterval) {
+        if (pollInterval < 0) {
+            throw new IllegalArgumentException("pollInterval must not be negative");
+        }
+        this.pollInterval = pollInterval;
+        return this;
+    }
+
+    public long getPollInterval() {
+        return pollInterval;
+    }
+
+    /**
+     * 使用外部线程池，其生命周期由调用方管理；未设置时优先使用 `api.getExecutor()`，
+     * 均未设置则每次运行时创建 parallelism 个线程，提交结束后关闭
+     */
+    public MassCampaign setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * 保存已提交批次的 msg_id，默认保存在内存中，只能在同一个进程内续传
+     */
+    public MassCampaign setStore(MassCampaignStore store) {
+        this.store = store;
+        return this;
+    }
+
+    public MassCampaignStore getStore() {
+        return store;
+    }
+
+    /**
+     * 群发给全部接收者，在调用线程中等待全部批次提交
+     * @param openids 接收者，重新运行时须保持相同的顺序
+     */
+    public MassCampaignResult run(Iterable<String> openids) {
+        return run(openids.iterator());
+    }
+
+    public MassCampaignResult run(Stream<String> openids) {
+        return run(openids.iterator());
+    }
+
+    /**
+     * 群发给标签下的全部用户，逐页拉取标签成员；拉取失败时抛出 `WechatApiException`，已提交的批次不受影响
+     * @param tagId 标签id
+     */
+    public MassCampaignResult runForTag(String tagId) {
+        return run(api.tagMembers(tagId));
+    }
+
+    public MassCampaignResult run(Iterator<String> openids) {
+        ExecutorService pool = this.executor != null ? this.executor : api.getExecutor();
+        final ShardReader reader = new ShardReader(openids, shardSize);
+        final int[] submitted = new int[1];
+        final int[] resumed = new int[1];
+        final List<BatchFailure> failures = new ArrayList<BatchFailure>();
+        final List<MassCampaignResult.Shard> shards = new ArrayList<MassCampaignResult.Shard>();
+        new ChunkedExecutor(pool, parallelism, rateLimit, "wechatapi-mass-send-").run(
+                reader,
+                new ChunkedExecutor.Task<Batch, Outcome>() {
+                    @Override
+                    public Outcome call(Batch batch) {
+                        return send(batch.clientMsgId, batch.openids);
+                    }
+
+                    @Override
+                    public Outcome resume(Batch batch) {
+                        String msgId = loadMsgId(batch.clientMsgId);
+                        return msgId == null ? null : new Outcome(msgId, true, null);
+                    }
+                },
+                new ChunkedExecutor.Handler<Batch, Outcome>() {
+                    @Override
+                    public void onResult(Batch batch, Outcome outcome) {
+                        if (outcome.failure != null) {
+                            failures.add(outcome.failure);
+                            return;
+                        }
+                        if (outcome.resumed) {
+                            resumed[0]++;
+                        } else {
+                            submitted[0]++;
+                        }
+                        shards.add(new MassCampaignResult.Shard(batch.clientMsgId, outcome.msgId, batch.openids.size()));
+                    }
+
+                    @Override
+                    public void onFailure(Batch batch, String errmsg) {
+                        failures.add(new BatchFailure(batch.openids, -1, errmsg));
+                    }
+                });
+        if (reader.rejected != null) {
+            failures.add(reader.rejected);
+        }
+        MassCampaignResult result = new MassCampaignResult(campaignId, reader.shardCount, reader.receivers,
+                submitted[0], resumed[0], failures, shards);
+        if (pollInterval > 0 && !shards.isEmpty()) {
+            startPolling(result);
+        } else if (shards.isEmpty()) {
+            result.markDelivered();
+        }
+        return result;
+    }
+
+    /**
+     * 停止查询发送状态
+     */
+    @Override
+    public synchronized void close() {
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+    }
+
+    /**
+     * 按顺序切分接收者，第 n 批以 campaignId-n 作为 clientmsgid；
+     * 最后只剩 1 个用户时从上一批移出一个，避免出现只有 1 个 openid 的批次（接口要求至少 2 个）。
+     * 接收者总共只有 1 个时无法切分出合法的批次，不提交，记在 rejected 中
+     */
+    private class ShardReader implements Iterator<Batch> {
+        private final Iterator<String> openids;
+        private final int size;
+        private final List<String> carry = new ArrayList<String>(2);
+        private Batch next;
+        int shardCount;
+        long receivers;
+        BatchFailure rejected;
+
+        ShardReader(Iterator<String> openids, int size) {
+            this.openids = openids;
+            this.size = size;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && (!carry.isEmpty() || openids.hasNext())) {
+                next = read();
+            }
+            return next != null;
+        }
+
+        @Override
+        public Batch next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Batch batch = next;
+            next = null;
+            return batch;
+        }
+
+        private Batch read() {
+            List<String> shard = new ArrayList<String>(Math.min(size, 1024));
+            shard.addAll(carry);
+            carry.clear();
+            while (shard.size() < size && openids.hasNext()) {
+                shard.add(openids.next());
+            }
+            if (shard.size() == size && openids.hasNext()) {
+                String next = openids.next();
+                if (!openids.hasNext()) {
+                    carry.add(shard.remove(shard.size() - 1));
+                }
+                carry.add(next);
+            }
+            receivers += shard.size();
+            if (shard.size() < 2) {
+                rejected = new BatchFailure(shard, INVALID_OPENID_LIST_SIZE, "invalid openid list size, at least two openid");
+                return null;
+            }
+            return new Batch(campaignId + "-" + shardCount++, shard);
+        }
+    }
+
+    /**
+     * 一批接收者
+     */
+    private static class Batch {
+        final String clientMsgId;
+        final List<String> openids;
+
+        Batch(String clientMsgId, List<String> openids) {
+            this.clientMsgId = clientMsgId;
+            this.openids = openids;
+        }
+    }
+
+    /**
+     * 一批的提交结果：成功时 msgId 不为 null，失败时 failure 不为 null
+     */
+    private static class Outcome {
+        final String msgId;
+        final boolean resumed;
+        final BatchFailure failure;
+
+        Outcome(String msgId, boolean resumed, BatchFailure failure) {
+            this.msgId = msgId;
+            this.resumed = resumed;
+            this.failure = failure;
+        }
+    }
+
+    private Outcome send(String clientMsgId, List<String> openids) {
+        JsonObject resp = api.massSendToUsers(message, openids, clientMsgId, sendIgnoreReprint);
+        if (resp == null) {
+            return new Outcome(null, false, new BatchFailure(openids, -1, "request failed"));
+        }
+        int errcode = resp.has("errcode") ? resp.get("errcode").getAsInt() : -1;
+        if ((errcode == 0 || errcode == CLIENT_MSG_ID_EXISTS) && resp.has("msg_id")) {
+            String msgId = resp.get("msg_id").getAsString();
+            saveMsgId(clientMsgId, msgId);
+            return new Outcome(msgId, errcode == CLIENT_MSG_ID_EXISTS, null);
+        }
+        String errmsg = resp.has("errmsg") ? resp.get("errmsg").getAsString() : resp.toString();
+        return new Outcome(null, false, new BatchFailure(openids, errcode, errmsg));
+    }
+
+    private String loadMsgId(String clientMsgId) {
+        try {
+            return store.getMsgId(clientMsgId);
+        } catch (IOException e) {
+            // 读取失败时照常提交，重复的 clientmsgid 由接口以 45065 拒绝
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private void saveMsgId(String clientMsgId, String msgId) {
+        try {
+            store.saveMsgId(clientMsgId, msgId);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private synchronized void startPolling(MassCampaignResult result) {
+        if (poller == null) {
+            poller = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "wechatapi-mass-poll-" + campaignId);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        StatusPoller task = new StatusPoller(result);
+        task.future = poller.scheduleWithFixedDelay(task, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 查询尚未结束的批次的发送状态，全部结束后停止
+     */
+    private class StatusPoller implements Runnable {
+        private final MassCampaignResult result;
+        volatile ScheduledFuture<?> future;
+
+        StatusPoller(MassCampaignResult result) {
+            this.result = result;
+        }
+
+        @Override
+        public void run() {
+            boolean finished = true;
+            for (MassCampaignResult.Shard shard : result.shards()) {
+                if (shard.isFinished()) {
+                    continue;
+                }
+                JsonObject resp;
+                try {
+                    resp = api.getMassMessageStatus(shard.msgId);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    resp = null;
+                }
+                if (resp != null && resp.has("msg_status")) {
+                    shard.status = resp.get("msg_status").getAsString();
+                    shard.pollFailures = 0;
+                } else {
+                    int errcode = resp != null && resp.has("errcode") ? resp.get("errcode").getAsInt() : -1;
+                    // 系统繁忙或请求失败时下次再查，其他 errcode（如 msg_id 无效）不会自行恢复
+                    if (errcode != -1 || ++shard.pollFailures >= MAX_POLL_FAILURES) {
+                        shard.status = MassCampaignResult.UNKNOWN;
+                    }
+                }
+                if (!shard.isFinished()) {
+                    finished = false;
+                }
+            }
+            if (finished) {
+                result.markDelivered();
+                ScheduledFuture<?> self = future;
+                if (self != null) {
+                    self.cancel(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * 进程内的记录
+     */
+    private static class MemoryStore implements MassCampaignStore {
+        private final Map<String, String> msgIds = new ConcurrentHashMap<String, String>();
+
+        @Override
+        public String getMsgId(String clientMsgId) {
+            return msgIds.get(clientMsgId);
+        }
+
+        @Override
+        public void saveMsgId(String clientMsgId, String msgId) {
+            msgIds.put(clientMsgId, msgId);
+        }
+    }
+
+}
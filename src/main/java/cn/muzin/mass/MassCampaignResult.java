@@ -0,0 +1,208 @@
+package cn.muzin.mass;
+
+import cn.muzin.entity.BatchFailure;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * `MassCampaign.run` 的结果
+ *
+ * 提交结果在 `run` 返回时已确定；各批次的发送状态由后台轮询 `getMassMessageStatus` 持续更新，
+ * 可通过 `getDeliveryStats` 查看，或以 `awaitDelivery` 等待全部批次发送结束。
+ */
+public class MassCampaignResult {
+
+    /**
+     * 群发任务仍在发送中
+     */
+    public static final String SENDING = "SENDING";
+
+    /**
+     * 无法查询到发送状态，不再轮询
+     */
+    public static final String UNKNOWN = "UNKNOWN";
+
+    private final String campaignId;
+
+    private final int shardCount;
+
+    private final long receivers;
+
+    private final int submitted;
+
+    private final int resumed;
+
+    private final List<BatchFailure> failures;
+
+    /**
+     * clientmsgid -> 已提交的批次，按批次顺序排列
+     */
+    private final Map<String, Shard> shards;
+
+    private final CountDownLatch delivered = new CountDownLatch(1);
+
+    /**
+     * 已提交的一个批次及其最近一次查询到的状态
+     */
+    static class Shard {
+        final String clientMsgId;
+        final String msgId;
+        final int size;
+        volatile String status = SENDING;
+        /**
+         * 连续查询失败的次数，只由轮询线程访问
+         */
+        int pollFailures;
+
+        Shard(String clientMsgId, String msgId, int size) {
+            this.clientMsgId = clientMsgId;
+            this.msgId = msgId;
+            this.size = size;
+        }
+
+        boolean isFinished() {
+            return !SENDING.equals(status);
+        }
+    }
+
+    MassCampaignResult(String campaignId, int shardCount, long receivers, int submitted, int resumed,
+                       List<BatchFailure> failures, List<Shard> shards){
+        this.campaignId = campaignId;
+        this.shardCount = shardCount;
+        this.receivers = receivers;
+        this.submitted = submitted;
+        this.resumed = resumed;
+        this.failures = failures;
+        Map<String, Shard> byId = new LinkedHashMap<String, Shard>();
+        for (Shard shard : shards) {
+            byId.put(shard.clientMsgId, shard);
+        }
+        this.shards = Collections.unmodifiableMap(byId);
+    }
+
+    Iterable<Shard> shards() {
+        return shards.values();
+    }
+
+    /**
+     * 全部批次都已发送结束时由轮询线程调用
+     */
+    void markDelivered() {
+        delivered.countDown();
+    }
+
+    public String getCampaignId() {
+        return campaignId;
+    }
+
+    /**
+     * 接收者切分成的批次数
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * 接收者总数
+     */
+    public long getReceivers() {
+        return receivers;
+    }
+
+    /**
+     * 本次运行提交的批次数
+     */
+    public int getSubmittedShards() {
+        return submitted;
+    }
+
+    /**
+     * 之前已提交、本次跳过的批次数（本地记录或接口返回 45065）
+     */
+    public int getResumedShards() {
+        return resumed;
+    }
+
+    /**
+     * 提交失败的批次，重新运行活动时会再次提交
+     */
+    public List<BatchFailure> getFailures() {
+        return failures;
+    }
+
+    public List<String> getFailedOpenids() {
+        List<String> openids = new ArrayList<String>();
+        for (BatchFailure failure : failures) {
+            openids.addAll(failure.getOpenids());
+        }
+        return openids;
+    }
+
+    /**
+     * 全部批次均已提交（含之前运行提交的批次）
+     */
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+
+    /**
+     * clientmsgid -> msg_id
+     */
+    public Map<String, String> getMsgIds() {
+        Map<String, String> msgIds = new LinkedHashMap<String, String>();
+        for (Shard shard : shards.values()) {
+            msgIds.put(shard.clientMsgId, shard.msgId);
+        }
+        return msgIds;
+    }
+
+    /**
+     * 最近一次查询到的发送状态
+     * @param clientMsgId 批次的 clientmsgid
+     * @return SENDING、SEND_SUCCESS、SEND_FAIL、DELETE，无法查询时为 UNKNOWN，不存在的批次返回 null
+     */
+    public String getStatus(String clientMsgId) {
+        Shard shard = shards.get(clientMsgId);
+        return shard == null ? null : shard.status;
+    }
+
+    /**
+     * 按发送状态汇总的接收者数，如 `{SEND_SUCCESS=180000, SENDING=20000}`
+     */
+    public Map<String, Long> getDeliveryStats() {
+        Map<String, Long> stats = new HashMap<String, Long>();
+        for (Shard shard : shards.values()) {
+            Long count = stats.get(shard.status);
+            stats.put(shard.status, (count == null ? 0 : count) + shard.size);
+        }
+        return stats;
+    }
+
+    /**
+     * 已提交的批次是否都已发送结束
+     */
+    public boolean isDelivered() {
+        for (Shard shard : shards.values()) {
+            if (!shard.isFinished()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 等待已提交的批次全部发送结束，需要开启状态轮询
+     * @return 超时前全部结束返回 true
+     */
+    public boolean awaitDelivery(long timeout, TimeUnit unit) throws InterruptedException {
+        return isDelivered() || delivered.await(timeout, unit);
+    }
+
+}
@@ -0,0 +1,25 @@
+package cn.muzin.mass;
+
+import java.io.IOException;
+
+/**
+ * 保存群发活动中已提交批次的 msg_id，以 clientmsgid 为键
+ *
+ * 活动中断后以相同的 campaignId 重新运行时，已有 msg_id 的批次不再提交。
+ * 可基于文件、redis、数据库实现，参考 `FileMassCampaignStore`。
+ */
+public interface MassCampaignStore {
+
+    /**
+     * 读取已提交批次的 msg_id
+     * @param clientMsgId 批次的 clientmsgid
+     * @return 未提交过时返回 null
+     */
+    String getMsgId(String clientMsgId) throws IOException;
+
+    /**
+     * 批次提交成功后保存 msg_id，可能被多个线程同时调用
+     */
+    void saveMsgId(String clientMsgId, String msgId) throws IOException;
+
+}
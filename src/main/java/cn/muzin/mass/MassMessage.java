@@ -0,0 +1,315 @@
+package cn.muzin.mass;
+
+import com.google.gson.Gson;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一条群发消息：消息内容、接收人（全部用户、标签或 openid 列表）与群发选项
+ *
+ * 由 `Builder` 创建，创建时完成校验并序列化为 UTF-8 编码的 JSON，之后不可修改，
+ * 可在多个线程间共享，重试时直接重发同一份请求体，不再构建 Map、执行 Gson 序列化。
+ * 消息类型有图文（mpnews）、文本（text）、语音（voice）、图片（image）、视频（mpvideo）和卡券（wxcard）。
+ *
+ * Examples:
+ * ```
+ * MassMessage message = MassMessage.mpNews(mediaId)
+ *         .toTag("2")
+ *         .setSendIgnoreReprint(1)
+ *         .setClientMsgId("news-20240101")
+ *         .build();
+ * api.massSend(message);
+ *
+ * api.massSend(MassMessage.text("hello").toUsers(openids).build());
+ * api.massSend(MassMessage.image(mediaId).toAll().build());
+ * ```
+ */
+public class MassMessage {
+
+    /**
+     * openid 列表群发单次最多的用户数
+     */
+    public static final int MAX_USERS = 10000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Gson GSON = new Gson();
+
+    private final String msgtype;
+
+    private final Map<String, Object> content;
+
+    private final boolean toAll;
+
+    private final String tagId;
+
+    private final List<String> openids;
+
+    private final String clientMsgId;
+
+    private final Integer sendIgnoreReprint;
+
+    private final byte[] body;
+
+    private MassMessage(Builder builder) {
+        this.msgtype = builder.msgtype;
+        this.content = Collections.unmodifiableMap(new LinkedHashMap<String, Object>(builder.content));
+        this.toAll = builder.toAll;
+        this.tagId = builder.tagId;
+        this.openids = builder.openids == null ? null : Collections.unmodifiableList(builder.openids);
+        this.clientMsgId = builder.clientMsgId;
+        this.sendIgnoreReprint = builder.sendIgnoreReprint;
+        this.body = GSON.toJson(toOpts()).getBytes(UTF_8);
+    }
+
+    /**
+     * 文本消息
+     */
+    public static Builder text(String content) {
+        return new Builder("text", "content", content);
+    }
+
+    /**
+     * 图片消息
+     * @param mediaId 图片的media_id
+     */
+    public static Builder image(String mediaId) {
+        return new Builder("image", "media_id", mediaId);
+    }
+
+    /**
+     * 语音消息
+     * @param mediaId 语音的media_id
+     */
+    public static Builder voice(String mediaId) {
+        return new Builder("voice", "media_id", mediaId);
+    }
+
+    /**
+     * 图文消息
+     * @param mediaId 图文素材的media_id
+     */
+    public static Builder mpNews(String mediaId) {
+        return new Builder("mpnews", "media_id", mediaId);
+    }
+
+    /**
+     * 视频消息
+     * @param mediaId `uploadMPVideo` 返回的media_id
+     */
+    public static Builder mpVideo(String mediaId) {
+        return new Builder("mpvideo", "media_id", mediaId);
+    }
+
+    /**
+     * 卡券消息
+     * @param cardId 卡券id
+     */
+    public static Builder card(String cardId) {
+        return new Builder("wxcard", "card_id", cardId);
+    }
+
+    public String getMsgtype() {
+        return msgtype;
+    }
+
+    /**
+     * 消息内容，即 msgtype 字段的值，如 `{"media_id":"..."}`
+     */
+    public Map<String, Object> getContent() {
+        return content;
+    }
+
+    /**
+     * 是否群发给全部用户
+     */
+    public boolean isToAll() {
+        return toAll;
+    }
+
+    /**
+     * 接收人标签，未按标签群发时为 null
+     */
+    public String getTagId() {
+        return tagId;
+    }
+
+    /**
+     * 接收人openid列表，未按openid群发时为 null
+     */
+    public List<String> getOpenids() {
+        return openids;
+    }
+
+    public String getClientMsgId() {
+        return clientMsgId;
+    }
+
+    public Integer getSendIgnoreReprint() {
+        return sendIgnoreReprint;
+    }
+
+    /**
+     * 群发接口：按openid列表为 `message/mass/send`，否则为 `message/mass/sendall`
+     */
+    public String getEndpoint() {
+        return openids != null ? "message/mass/send" : "message/mass/sendall";
+    }
+
+    /**
+     * UTF-8 编码的请求体，返回只读的视图，可重复读取
+     */
+    public ByteBuffer getBody() {
+        return ByteBuffer.wrap(body).asReadOnlyBuffer();
+    }
+
+    /**
+     * 请求体的字节数
+     */
+    public int getBodyLength() {
+        return body.length;
+    }
+
+    /**
+     * 请求体中的字段，与 `massSend(opts, ...)` 的 opts 相同
+     */
+    public Map<String, Object> toOpts() {
+        Map<String, Object> opts = new LinkedHashMap<String, Object>();
+        if (openids != null) {
+            opts.put("touser", openids);
+        } else {
+            Map<String, Object> filter = new LinkedHashMap<String, Object>();
+            filter.put("is_to_all", toAll);
+            if (tagId != null) {
+                filter.put("tag_id", tagId);
+            }
+            opts.put("filter", filter);
+        }
+        opts.put(msgtype, content);
+        opts.put("msgtype", msgtype);
+        if (sendIgnoreReprint != null) {
+            opts.put("send_ignore_reprint", sendIgnoreReprint);
+        }
+        if (clientMsgId != null) {
+            opts.put("clientmsgid", clientMsgId);
+        }
+        return opts;
+    }
+
+    @Override
+    public String toString() {
+        return new String(body, UTF_8);
+    }
+
+    /**
+     * 群发消息的构建器，`build()` 时校验，不可在多个线程间共享
+     */
+    public static class Builder {
+
+        private final String msgtype;
+
+        private final Map<String, Object> content = new LinkedHashMap<String, Object>();
+
+        private boolean toAll;
+
+        private String tagId;
+
+        private List<String> openids;
+
+        private String clientMsgId;
+
+        private Integer sendIgnoreReprint;
+
+        private Builder(String msgtype, String key, String value) {
+            if (value == null || value.isEmpty()) {
+                throw new IllegalArgumentException(key + " is required");
+            }
+            this.msgtype = msgtype;
+            this.content.put(key, value);
+        }
+
+        /**
+         * 群发给全部用户
+         */
+        public Builder toAll() {
+            this.toAll = true;
+            this.tagId = null;
+            this.openids = null;
+            return this;
+        }
+
+        /**
+         * 群发给标签下的用户
+         * @param tagId 标签id
+         */
+        public Builder toTag(String tagId) {
+            if (tagId == null || tagId.isEmpty()) {
+                throw new IllegalArgumentException("tagId is required");
+            }
+            this.toAll = false;
+            this.tagId = tagId;
+            this.openids = null;
+            return this;
+        }
+
+        /**
+         * 群发给openid列表中的用户，2 至 10000 个，超过时使用 `MassCampaign`
+         * @param openids openid列表
+         */
+        public Builder toUsers(Collection<String> openids) {
+            if (openids.size() < 2 || openids.size() > MAX_USERS) {
+                throw new IllegalArgumentException("openids must contain 2 to " + MAX_USERS + " users, got " + openids.size());
+            }
+            List<String> copy = new ArrayList<String>(openids);
+            if (copy.contains(null)) {
+                throw new IllegalArgumentException("openids must not contain null");
+            }
+            this.toAll = false;
+            this.tagId = null;
+            this.openids = copy;
+            return this;
+        }
+
+        /**
+         * @param clientMsgId 开发者侧群发msgid，长度限制64字节，相同的 clientmsgid 不会重复群发
+         */
+        public Builder setClientMsgId(String clientMsgId) {
+            if (clientMsgId != null && clientMsgId.getBytes(UTF_8).length > 64) {
+                throw new IllegalArgumentException("clientMsgId must not exceed 64 bytes");
+            }
+            this.clientMsgId = clientMsgId;
+            return this;
+        }
+
+        /**
+         * @param sendIgnoreReprint 图文消息被判定为转载时，是否继续群发。1为继续群发（转载），0为停止群发
+         */
+        public Builder setSendIgnoreReprint(Integer sendIgnoreReprint) {
+            if (sendIgnoreReprint != null && sendIgnoreReprint != 0 && sendIgnoreReprint != 1) {
+                throw new IllegalArgumentException("sendIgnoreReprint must be 0 or 1");
+            }
+            this.sendIgnoreReprint = sendIgnoreReprint;
+            return this;
+        }
+
+        /**
+         * 校验并序列化
+         * @throws IllegalStateException 未指定接收人
+         */
+        public MassMessage build() {
+            if (!toAll && tagId == null && openids == null) {
+                throw new IllegalStateException("receivers are required: toAll, toTag or toUsers");
+            }
+            return new MassMessage(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,158 @@
+package cn.muzin.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个接口（如 `cgi-bin/message/custom/send`）的指标
+ *
+ * 计数使用 LongAdder，多线程并发记录时不互相竞争。
+ */
+public class EndpointMetrics {
+
+    private final String endpoint;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LongAdder retries = new LongAdder();
+
+    private final LongAdder bytesOut = new LongAdder();
+
+    private final LongAdder bytesIn = new LongAdder();
+
+    private final LongAdder inFlight = new LongAdder();
+
+    private final ConcurrentMap<Integer, LongAdder> errcodes = new ConcurrentHashMap<Integer, LongAdder>();
+
+    EndpointMetrics(String endpoint){
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * 请求开始
+     */
+    public void begin() {
+        inFlight.increment();
+    }
+
+    /**
+     * 请求结束
+     * @param latencyNanos 耗时（纳秒）
+     * @param out 请求体字节数
+     * @param in 响应体字节数
+     * @param errcode 响应中的 errcode，没有时为 0
+     * @param retryCount 重放次数
+     * @param failed 是否因网络异常等未得到响应
+     */
+    public void end(long latencyNanos, long out, long in, int errcode, int retryCount, boolean failed) {
+        inFlight.decrement();
+        requests.increment();
+        latency.record(latencyNanos / 1000);
+        bytesOut.add(out);
+        bytesIn.add(in);
+        if (retryCount > 0) {
+            retries.add(retryCount);
+        }
+        if (failed) {
+            failures.increment();
+        } else if (errcode != 0) {
+            errors.increment();
+            LongAdder counter = errcodes.get(errcode);
+            if (counter == null) {
+                errcodes.putIfAbsent(errcode, new LongAdder());
+                counter = errcodes.get(errcode);
+            }
+            counter.increment();
+        }
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * 已完成的请求数
+     */
+    public long getCount() {
+        return requests.sum();
+    }
+
+    /**
+     * 网络异常等未得到响应的请求数
+     */
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    /**
+     * errcode 非 0 的请求数
+     */
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    /**
+     * 进行中的请求数
+     */
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    /**
+     * 各 errcode 出现的次数
+     */
+    public Map<Integer, Long> getErrcodeCounts() {
+        Map<Integer, Long> counts = new HashMap<Integer, Long>();
+        for (Map.Entry<Integer, LongAdder> entry : errcodes.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return counts;
+    }
+
+    /**
+     * 百分位耗时（毫秒）
+     * @param percentile 0 到 1 之间，如 0.99
+     */
+    public double getLatencyMillis(double percentile) {
+        return latency.getPercentileMicros(percentile) / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+        return endpoint
+                + " count=" + getCount()
+                + " errors=" + getErrorCount()
+                + " failures=" + getFailureCount()
+                + " inFlight=" + getInFlight()
+                + " p50=" + getLatencyMillis(0.5) + "ms"
+                + " p99=" + getLatencyMillis(0.99) + "ms"
+                + " max=" + latency.getMaxMicros() / 1000.0 + "ms"
+                + " out=" + getBytesOut() + "B in=" + getBytesIn() + "B";
+    }
+
+}
@@ -0,0 +1,109 @@
+package cn.muzin.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 对数-线性分桶的延迟直方图（HDR 风格），以微秒记录
+ *
+ * 每个 2 的幂区间再等分为 8 个子桶，相对误差不超过 12.5%，固定 512 个桶覆盖全部 long 范围。
+ * 记录只做一次数组下标计算与原子加，不分配对象。
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一次耗时
+     * @param micros 耗时（微秒）
+     */
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        buckets.incrementAndGet(index(micros));
+        count.increment();
+        sum.add(micros);
+        long current = max.get();
+        while (micros > current && !max.compareAndSet(current, micros)) {
+            current = max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMeanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    public long getMaxMicros() {
+        return max.get();
+    }
+
+    /**
+     * 取得百分位耗时
+     * Examples:
+     * ```
+     * long p99 = histogram.getPercentileMicros(0.99);
+     * ```
+     * @param percentile 0 到 1 之间
+     * @return 该百分位所在桶的上界（微秒），没有记录时返回 0
+     */
+    public long getPercentileMicros(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[buckets.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    static int index(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long lowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int magnitude = index / SUB_BUCKETS - 1 + SUB_BUCKET_BITS;
+        long sub = index % SUB_BUCKETS;
+        return (1L << magnitude) | (sub << (magnitude - SUB_BUCKET_BITS));
+    }
+
+    static long upperBound(int index) {
+        return index + 1 < 64 * SUB_BUCKETS ? lowerBound(index + 1) - 1 : Long.MAX_VALUE;
+    }
+
+}
@@ -0,0 +1,69 @@
+package cn.muzin.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * 将 WechatMetrics 注册到 Micrometer
+ *
+ * 每个接口注册以 `endpoint` 为标签的计数器与仪表，新出现的接口自动注册。
+ * 需要在项目中自行引入 micrometer-core。
+ *
+ * Examples:
+ * ```
+ * new MicrometerMetricsBinder(api.getMetrics()).bindTo(meterRegistry);
+ * ```
+ */
+public class MicrometerMetricsBinder implements MeterBinder {
+
+    private final WechatMetrics metrics;
+
+    public MicrometerMetricsBinder(WechatMetrics metrics){
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        FunctionCounter.builder("wechat.token.refreshes", metrics, m -> m.getTokenRefreshCount())
+                .description("access token requests sent to WeChat")
+                .register(registry);
+        FunctionCounter.builder("wechat.ticket.refreshes", metrics, m -> m.getTicketRefreshCount())
+                .description("ticket requests sent to WeChat")
+                .register(registry);
+
+        metrics.addEndpointListener(new WechatMetrics.EndpointListener() {
+            @Override
+            public void onEndpoint(EndpointMetrics endpoint) {
+                bindEndpoint(registry, endpoint);
+            }
+        });
+    }
+
+    private static void bindEndpoint(MeterRegistry registry, EndpointMetrics endpoint) {
+        String name = endpoint.getEndpoint();
+        FunctionCounter.builder("wechat.requests", endpoint, e -> e.getCount())
+                .tag("endpoint", name).register(registry);
+        FunctionCounter.builder("wechat.requests.errors", endpoint, e -> e.getErrorCount())
+                .tag("endpoint", name).register(registry);
+        FunctionCounter.builder("wechat.requests.failures", endpoint, e -> e.getFailureCount())
+                .tag("endpoint", name).register(registry);
+        FunctionCounter.builder("wechat.requests.retries", endpoint, e -> e.getRetryCount())
+                .tag("endpoint", name).register(registry);
+        FunctionCounter.builder("wechat.bytes.out", endpoint, e -> e.getBytesOut())
+                .tag("endpoint", name).baseUnit("bytes").register(registry);
+        FunctionCounter.builder("wechat.bytes.in", endpoint, e -> e.getBytesIn())
+                .tag("endpoint", name).baseUnit("bytes").register(registry);
+        Gauge.builder("wechat.requests.inflight", endpoint, e -> e.getInFlight())
+                .tag("endpoint", name).register(registry);
+        for (final double percentile : new double[]{0.5, 0.9, 0.99}) {
+            Gauge.builder("wechat.latency", endpoint, e -> e.getLatencyMillis(percentile))
+                    .tag("endpoint", name).tag("quantile", String.valueOf(percentile))
+                    .baseUnit("milliseconds").register(registry);
+        }
+        Gauge.builder("wechat.latency.max", endpoint, e -> e.getLatency().getMaxMicros() / 1000.0)
+                .tag("endpoint", name).baseUnit("milliseconds").register(registry);
+    }
+
+}
@@ -0,0 +1,170 @@
+package cn.muzin.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * WechatAPI 的指标：按接口统计的耗时直方图、字节数、errcode 次数、进行中的请求数，
+ * 以及 access token、ticket 的刷新次数
+ *
+ * 按请求地址查找接口指标时直接比较地址中的路径片段，不截取字符串，
+ * 接口首次出现之后的记录不分配对象。
+ *
+ * Examples:
+ * ```
+ * WechatMetrics metrics = api.getMetrics();
+ * EndpointMetrics send = metrics.getEndpoint("cgi-bin/message/custom/send");
+ * double p99 = send.getLatencyMillis(0.99);
+ * ```
+ */
+public class WechatMetrics {
+
+    /**
+     * 新接口出现时的回调，用于向外部监控系统注册
+     */
+    public interface EndpointListener {
+        void onEndpoint(EndpointMetrics endpoint);
+    }
+
+    private final ConcurrentHashMap<Key, EndpointMetrics> endpoints = new ConcurrentHashMap<Key, EndpointMetrics>();
+
+    private final List<EndpointListener> listeners = new CopyOnWriteArrayList<EndpointListener>();
+
+    private final LongAdder tokenRefreshes = new LongAdder();
+
+    private final LongAdder ticketRefreshes = new LongAdder();
+
+    /**
+     * 查找键，复用以避免每次查找分配对象
+     */
+    private final ThreadLocal<Key> probes = new ThreadLocal<Key>() {
+        @Override
+        protected Key initialValue() {
+            return new Key();
+        }
+    };
+
+    /**
+     * 取得请求地址对应的接口指标，不存在时创建
+     * @param url 请求地址
+     */
+    public EndpointMetrics forUrl(String url) {
+        Key probe = probes.get().of(url);
+        EndpointMetrics metrics = endpoints.get(probe);
+        if (metrics != null) {
+            probe.url = null;
+            return metrics;
+        }
+        String name = url.substring(probe.start, probe.end);
+        probe.url = null;
+        EndpointMetrics created = new EndpointMetrics(name);
+        EndpointMetrics existing = endpoints.putIfAbsent(new Key().of(name), created);
+        if (existing != null) {
+            return existing;
+        }
+        for (EndpointListener listener : listeners) {
+            listener.onEndpoint(created);
+        }
+        return created;
+    }
+
+    /**
+     * 取得接口指标，没有请求过时返回 null
+     * @param endpoint 接口路径，如 `cgi-bin/message/custom/send`
+     */
+    public EndpointMetrics getEndpoint(String endpoint) {
+        return endpoints.get(new Key().of(endpoint));
+    }
+
+    /**
+     * 所有请求过的接口
+     */
+    public List<EndpointMetrics> getEndpoints() {
+        return new ArrayList<EndpointMetrics>(endpoints.values());
+    }
+
+    /**
+     * 注册新接口出现时的回调，已存在的接口会立即回调一次
+     */
+    public void addEndpointListener(EndpointListener listener) {
+        listeners.add(listener);
+        for (EndpointMetrics metrics : endpoints.values()) {
+            listener.onEndpoint(metrics);
+        }
+    }
+
+    public void recordTokenRefresh() {
+        tokenRefreshes.increment();
+    }
+
+    public void recordTicketRefresh() {
+        ticketRefreshes.increment();
+    }
+
+    /**
+     * 向微信请求 access token 的次数
+     */
+    public long getTokenRefreshCount() {
+        return tokenRefreshes.sum();
+    }
+
+    /**
+     * 向微信请求 ticket 的次数
+     */
+    public long getTicketRefreshCount() {
+        return ticketRefreshes.sum();
+    }
+
+    /**
+     * 以请求地址中路径片段（不含域名与查询参数）的内容作为键
+     */
+    private static final class Key {
+
+        private String url;
+
+        private int start;
+
+        private int end;
+
+        private int hash;
+
+        Key of(String url) {
+            int hostStart = url.indexOf("://");
+            int pathStart = url.indexOf('/', hostStart < 0 ? 0 : hostStart + 3);
+            if (hostStart < 0 && pathStart != 0) {
+                // 不含域名的接口路径
+                pathStart = -1;
+            }
+            int query = url.indexOf('?', pathStart + 1);
+            this.url = url;
+            this.start = pathStart + 1;
+            this.end = query < 0 ? url.length() : query;
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + url.charAt(i);
+            }
+            this.hash = h;
+            return this;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            int length = end - start;
+            return hash == other.hash && length == other.end - other.start
+                    && url.regionMatches(start, other.url, other.start, length);
+        }
+    }
+
+}
@@ -0,0 +1,232 @@
+package cn.muzin.resolver;
+
+import cn.muzin.entity.AccessToken;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 基于文件锁的 token 存储，实现刷新租约与版本号比较保存
+ *
+ * token 与租约保存在同一个 JSON 文件中，每次读写都持有该文件的排他锁（FileChannel.lock），
+ * 因此同一台机器上的多个 JVM 共享同一个文件即可协调刷新。
+ * 可作为基于 redis、数据库实现分布式租约的参考。
+ *
+ * Examples:
+ * ```
+ * WechatAPI api = new WechatAPI(appid, appsecret,
+ *         new FileTokenStorageResolver(new File("/var/run/wechat/token.json")));
+ * ```
+ */
+public class FileTokenStorageResolver extends TokenStorageResolver {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * 文件锁由整个 JVM 持有，同一 JVM 内对同一文件重复加锁会抛出 OverlappingFileLockException，
+     * 因此同一 JVM 内先以该锁互斥
+     */
+    private static final ConcurrentMap<String, ReentrantLock> JVM_LOCKS = new ConcurrentHashMap<String, ReentrantLock>();
+
+    private final File file;
+
+    private final ReentrantLock jvmLock;
+
+    private final JsonParser jsonParser = new JsonParser();
+
+    public FileTokenStorageResolver(File file){
+        this.file = file.getAbsoluteFile();
+        String key = this.file.getPath();
+        JVM_LOCKS.putIfAbsent(key, new ReentrantLock());
+        this.jvmLock = JVM_LOCKS.get(key);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public AccessToken getToken() {
+        try {
+            return toToken(this.read());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 直接保存，版本号在存储中的版本号基础上递增
+     */
+    @Override
+    public void saveToken(final AccessToken accessToken) {
+        this.update(new Update() {
+            @Override
+            public boolean apply(JsonObject data) {
+                AccessToken current = toToken(data);
+                accessToken.setVersion((current == null ? 0 : current.getVersion()) + 1);
+                putToken(data, accessToken);
+                return true;
+            }
+        });
+    }
+
+    @Override
+    public boolean compareAndSaveToken(final long expectedVersion, final AccessToken accessToken) {
+        return this.update(new Update() {
+            @Override
+            public boolean apply(JsonObject data) {
+                AccessToken current = toToken(data);
+                if ((current == null ? 0 : current.getVersion()) != expectedVersion) {
+                    return false;
+                }
+                accessToken.setVersion(expectedVersion + 1);
+                putToken(data, accessToken);
+                return true;
+            }
+        });
+    }
+
+    @Override
+    public boolean tryAcquireRefreshLease(final String owner, final long leaseMillis) {
+        return this.update(new Update() {
+            @Override
+            public boolean apply(JsonObject data) {
+                long now = System.currentTimeMillis();
+                if (data.has("lease_owner") && data.get("lease_until").getAsLong() > now
+                        && !owner.equals(data.get("lease_owner").getAsString())) {
+                    return false;
+                }
+                data.addProperty("lease_owner", owner);
+                data.addProperty("lease_until", now + leaseMillis);
+                return true;
+            }
+        });
+    }
+
+    @Override
+    public void releaseRefreshLease(final String owner) {
+        this.update(new Update() {
+            @Override
+            public boolean apply(JsonObject data) {
+                if (!data.has("lease_owner") || !owner.equals(data.get("lease_owner").getAsString())) {
+                    return false;
+                }
+                data.remove("lease_owner");
+                data.remove("lease_until");
+                return true;
+            }
+        });
+    }
+
+    private interface Update {
+        /**
+         * 修改文件内容
+         * @return 是否需要写回
+         */
+        boolean apply(JsonObject data);
+    }
+
+    private JsonObject read() throws IOException {
+        jvmLock.lock();
+        try {
+            RandomAccessFile raf = open();
+            try {
+                FileChannel channel = raf.getChannel();
+                FileLock lock = channel.lock();
+                try {
+                    return readJson(channel);
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                raf.close();
+            }
+        } finally {
+            jvmLock.unlock();
+        }
+    }
+
+    /**
+     * 在文件锁内读取、修改并写回
+     */
+    private boolean update(Update update) {
+        jvmLock.lock();
+        try {
+            RandomAccessFile raf = open();
+            try {
+                FileChannel channel = raf.getChannel();
+                FileLock lock = channel.lock();
+                try {
+                    JsonObject data = readJson(channel);
+                    if (!update.apply(data)) {
+                        return false;
+                    }
+                    byte[] bytes = data.toString().getBytes(UTF_8);
+                    channel.truncate(0);
+                    channel.position(0);
+                    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(false);
+                    return true;
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            jvmLock.unlock();
+        }
+    }
+
+    private RandomAccessFile open() throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        return new RandomAccessFile(file, "rw");
+    }
+
+    private JsonObject readJson(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return new JsonObject();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        channel.position(0);
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+        }
+        return (JsonObject) jsonParser.parse(new String(buffer.array(), 0, buffer.position(), UTF_8));
+    }
+
+    private static AccessToken toToken(JsonObject data) {
+        if (!data.has("access_token")) {
+            return null;
+        }
+        return new AccessToken(data.get("access_token").getAsString(), data.get("expire_time").getAsLong())
+                .setVersion(data.get("version").getAsLong());
+    }
+
+    private static void putToken(JsonObject data, AccessToken token) {
+        data.addProperty("access_token", token.getAccessToken());
+        data.addProperty("expire_time", token.getExpireTime());
+        data.addProperty("version", token.getVersion());
+    }
+
+}
@@ -5,7 +5,7 @@ import cn.muzin.entity.TicketStore;
 
 public abstract class TicketStorageResolver {
 
-    private TicketStore ticketStore;
+    private volatile TicketStore ticketStore;
 
     public TicketStorageResolver(){
         this.ticketStore = new TicketStore();
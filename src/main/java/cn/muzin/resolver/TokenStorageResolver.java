@@ -18,6 +18,21 @@ public abstract class TokenStorageResolver {
      */
     private Boolean useCache = false;
 
+    /**
+     * 刷新租约的有效期（毫秒），持有者异常退出时租约到期后自动释放
+     */
+    private long refreshLeaseMillis = 10000;
+
+    /**
+     * 未取得租约的节点等待新 token 的最长时间（毫秒），超时后自行刷新
+     */
+    private long refreshWaitMillis = 15000;
+
+    /**
+     * 等待新 token 时轮询 getToken 的间隔（毫秒）
+     */
+    private long refreshPollMillis = 100;
+
     /**
      *
      * 获取 AccessToken
@@ -65,4 +80,114 @@ public abstract class TokenStorageResolver {
         }
     }
 
+    public TokenStorageResolver setRefreshLeaseMillis(long refreshLeaseMillis){
+        this.refreshLeaseMillis = refreshLeaseMillis;
+        return this;
+    }
+
+    public long getRefreshLeaseMillis(){
+        return this.refreshLeaseMillis;
+    }
+
+    public TokenStorageResolver setRefreshWaitMillis(long refreshWaitMillis){
+        this.refreshWaitMillis = refreshWaitMillis;
+        return this;
+    }
+
+    public long getRefreshWaitMillis(){
+        return this.refreshWaitMillis;
+    }
+
+    public TokenStorageResolver setRefreshPollMillis(long refreshPollMillis){
+        this.refreshPollMillis = refreshPollMillis;
+        return this;
+    }
+
+    public long getRefreshPollMillis(){
+        return this.refreshPollMillis;
+    }
+
+    /**
+     *
+     * 尝试获取刷新 token 的租约
+     *
+     * 多节点部署时，只有取得租约的节点向微信请求新 token，其余节点通过 `awaitNewToken` 等待其保存的结果，
+     * 避免各节点互相使对方的 token 失效并耗尽每日 2000 次的 token 调用额度。
+     *
+     * 默认实现不做协调，总是返回 true。分布式存储（redis、数据库、文件等）应以原子操作实现，
+     * 参考 `FileTokenStorageResolver`。
+     *
+     * @param owner 租约持有者标识，每个 WechatAPI 实例唯一
+     * @param leaseMillis 租约有效期（毫秒）
+     * @return 是否取得租约
+     */
+    public boolean tryAcquireRefreshLease(String owner, long leaseMillis){
+        return true;
+    }
+
+    /**
+     *
+     * 释放刷新 token 的租约，仅当 owner 为当前持有者时生效
+     *
+     * @param owner 租约持有者标识
+     */
+    public void releaseRefreshLease(String owner){
+
+    }
+
+    /**
+     *
+     * 带版本号的比较并保存
+     *
+     * 仅当存储中 token 的版本号等于 `expectedVersion`（尚未保存过时为 0）时保存，
+     * 保存的 token 版本号置为 `expectedVersion + 1`。
+     *
+     * 默认实现先读后写，不是原子的，仅适用于单进程；分布式存储应以原子操作覆盖该方法。
+     *
+     * @param expectedVersion 读取时看到的版本号
+     * @param accessToken 新 token
+     * @return 是否保存成功，版本号不一致时返回 false
+     */
+    public boolean compareAndSaveToken(long expectedVersion, AccessToken accessToken){
+        AccessToken current = this.getToken();
+        long version = current == null ? 0 : current.getVersion();
+        if(version != expectedVersion){
+            return false;
+        }
+        accessToken.setVersion(expectedVersion + 1);
+        this.saveToken(accessToken);
+        return true;
+    }
+
+    /**
+     *
+     * 等待其他节点保存新的 token
+     *
+     * 默认实现每隔 `refreshPollMillis` 调用一次 `getToken`，支持发布订阅的存储可覆盖该方法。
+     *
+     * @param stale 需要被替换的 token，可为 null
+     * @param timeoutMillis 最长等待时间（毫秒）
+     * @return 与 stale 不同的有效 token，超时返回 null
+     */
+    public AccessToken awaitNewToken(AccessToken stale, long timeoutMillis){
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while(true){
+            AccessToken token = this.getToken();
+            if(token != null && token.isValid()
+                    && (stale == null || !token.getAccessToken().equals(stale.getAccessToken()))){
+                return token;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if(remaining <= 0){
+                return null;
+            }
+            try {
+                Thread.sleep(Math.min(this.refreshPollMillis, remaining));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
 }
@@ -0,0 +1,37 @@
+package cn.muzin.sync;
+
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 将用户信息放入阻塞队列，由其他线程消费
+ *
+ * 队列已满时同步线程阻塞等待，有界队列即可对同步形成背压。
+ * 队列中的数据不会持久化，从检查点恢复时尚未消费的用户信息需要重新同步。
+ */
+public class BlockingQueueSink implements ProfileSink {
+
+    private final BlockingQueue<JsonObject> queue;
+
+    public BlockingQueueSink(BlockingQueue<JsonObject> queue) {
+        this.queue = queue;
+    }
+
+    public BlockingQueue<JsonObject> getQueue() {
+        return queue;
+    }
+
+    @Override
+    public void accept(JsonObject profile) throws IOException {
+        try {
+            queue.put(profile);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for queue space");
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+package cn.muzin.sync;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 基于文件的同步检查点
+ *
+ * 先写入临时文件再原子替换，进程在写入过程中退出也不会留下损坏的检查点。
+ */
+public class FileSyncCheckpoint implements SyncCheckpoint {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Path file;
+
+    public FileSyncCheckpoint(Path file) {
+        this.file = file.toAbsolutePath();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public String load() throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        String openid = new String(Files.readAllBytes(file), UTF_8).trim();
+        return openid.isEmpty() ? null : openid;
+    }
+
+    @Override
+    public void save(String openid) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, openid.getBytes(UTF_8));
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void clear() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+}
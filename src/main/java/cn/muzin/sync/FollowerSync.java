@@ -0,0 +1,195 @@
+package cn.muzin.sync;
+
+import cn.muzin.BulkUserFetcher;
+import cn.muzin.FollowerIterator;
+import cn.muzin.WechatAPI;
+import cn.muzin.entity.BatchFailure;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 同步全部关注者的基本信息
+ *
+ * 以 `api.followers()` 翻页读取 openid，交给 `BulkUserFetcher` 按每批 100 个并发获取用户信息，
+ * 按关注者顺序写入 `ProfileSink`。读取 openid 与获取用户信息流水线进行：
+ * 处理第 N 页 openid 的用户信息时，第 N+1 页已在后台下载。
+ *
+ * 每处理 `checkpointInterval` 个 openid，先 `flush` sink，再将最后一个已处理的 openid 保存到 `SyncCheckpoint`；
+ * 同步异常中断时同样保存检查点，下次 `run` 从检查点继续，完成后清除检查点。
+ * 从检查点恢复时，上次最后一次保存检查点之后写入 sink 的数据会再写一次（至少一次）。
+ * 检查点不会越过第一个获取失败的批次：出现失败后检查点停留在该批次之前，同步结束时也不清除，
+ * 下次 `run` 从该批次重新获取，失败的用户不会因进程中断而被跳过。
+ *
+ * Examples:
+ * ```
+ * FollowerSync sync = new FollowerSync(api)
+ *         .setFetcher(new BulkUserFetcher(api).setParallelism(8).setRateLimit(100))
+ *         .setCheckpoint(new FileSyncCheckpoint(Paths.get("followers.checkpoint")));
+ *
+ * try (JsonLinesSink sink = new JsonLinesSink(Paths.get("followers.jsonl"))) {
+ *     SyncResult result = sync.run(sink);
+ *     result.getFailedOpenids();
+ * }
+ * ```
+ */
+public class FollowerSync {
+
+    private final WechatAPI api;
+
+    private BulkUserFetcher fetcher;
+
+    private SyncCheckpoint checkpoint;
+
+    /**
+     * 保存检查点的间隔（openid 数）
+     */
+    private int checkpointInterval = 10000;
+
+    private Consumer<BatchFailure> failureHandler;
+
+    public FollowerSync(WechatAPI api){
+        this.api = api;
+        this.fetcher = new BulkUserFetcher(api);
+    }
+
+    public FollowerSync setFetcher(BulkUserFetcher fetcher) {
+        this.fetcher = fetcher;
+        return this;
+    }
+
+    public BulkUserFetcher getFetcher() {
+        return fetcher;
+    }
+
+    /**
+     * @param checkpoint 检查点存储，为 null 时每次从头同步
+     */
+    public FollowerSync setCheckpoint(SyncCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+        return this;
+    }
+
+    public SyncCheckpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    public FollowerSync setCheckpointInterval(int checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+        return this;
+    }
+
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * 失败的批次按顺序交付给 failureHandler，同时记录在 `SyncResult` 中
+     */
+    public FollowerSync setFailureHandler(Consumer<BatchFailure> failureHandler) {
+        this.failureHandler = failureHandler;
+        return this;
+    }
+
+    /**
+     * 执行同步，sink 由调用方关闭
+     * @return 同步结果
+     * @throws IOException sink 或检查点读写失败
+     * @throws cn.muzin.exception.WechatApiException 读取关注者列表失败
+     */
+    public SyncResult run(final ProfileSink sink) throws IOException {
+        final String start = checkpoint == null ? null : checkpoint.load();
+        final Progress progress = new Progress(start);
+        final List<BatchFailure> failures = new ArrayList<BatchFailure>();
+        FollowerIterator followers = api.followers(start);
+        boolean completed = false;
+        try {
+            fetcher.fetch(followers, new Consumer<JsonObject>() {
+                @Override
+                public void accept(JsonObject profile) {
+                    try {
+                        sink.accept(profile);
+                        progress.profiles++;
+                        progress.processed(profile.get("openid").getAsString(), 1, sink);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }, new Consumer<BatchFailure>() {
+                @Override
+                public void accept(BatchFailure failure) {
+                    failures.add(failure);
+                    if (failureHandler != null) {
+                        failureHandler.accept(failure);
+                    }
+                    progress.failed();
+                }
+            });
+            sink.flush();
+            if (checkpoint != null) {
+                if (progress.hasFailure && progress.safeOpenid != null) {
+                    checkpoint.save(progress.safeOpenid);
+                } else {
+                    // 没有失败，或第一批即失败（下次从头开始）
+                    checkpoint.clear();
+                }
+            }
+            completed = true;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            followers.close();
+            if (!completed && checkpoint != null && progress.safeOpenid != null) {
+                try {
+                    sink.flush();
+                    checkpoint.save(progress.safeOpenid);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return new SyncResult(start, progress.profiles, followers.getTotal(), failures);
+    }
+
+    /**
+     * 同步进度，只在同步线程中访问
+     */
+    private class Progress {
+        long profiles;
+        /**
+         * 可以保存为检查点的 openid：第一个失败批次之前最后一个已处理的 openid
+         */
+        String safeOpenid;
+        boolean hasFailure;
+        int sinceCheckpoint;
+
+        Progress(String start) {
+            this.safeOpenid = start;
+        }
+
+        void processed(String openid, int count, ProfileSink sink) throws IOException {
+            if (hasFailure) {
+                return;
+            }
+            safeOpenid = openid;
+            sinceCheckpoint += count;
+            if (checkpoint != null && sinceCheckpoint >= checkpointInterval) {
+                sink.flush();
+                checkpoint.save(openid);
+                sinceCheckpoint = 0;
+            }
+        }
+
+        /**
+         * 批次获取失败，此后检查点不再前进
+         */
+        void failed() {
+            hasFailure = true;
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+package cn.muzin.sync;
+
+import com.google.gson.JsonObject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 以 JSON Lines 格式（每行一个 JSON 对象）写入文件
+ *
+ * 以追加方式打开文件，从检查点恢复同步时接着写入；`flush()` 将缓冲写入磁盘并 fsync。
+ */
+public class JsonLinesSink implements ProfileSink {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final FileChannel channel;
+
+    private final Writer writer;
+
+    public JsonLinesSink(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), UTF_8), 64 * 1024);
+    }
+
+    @Override
+    public void accept(JsonObject profile) throws IOException {
+        writer.write(profile.toString());
+        writer.write('\n');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            writer.close();
+        }
+    }
+
+}
@@ -0,0 +1,37 @@
+package cn.muzin.sync;
+
+import com.google.gson.JsonObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 接收同步得到的用户信息
+ *
+ * 用户信息按关注者顺序在同步线程中逐个交付。保存检查点之前会调用 `flush()`，
+ * 实现应在 `flush()` 返回前将已接收的数据持久化，以保证从检查点恢复时不丢数据。
+ *
+ * Examples:
+ * ```
+ * // 回调
+ * ProfileSink sink = profile -> save(profile);
+ * // JSON Lines 文件
+ * ProfileSink sink = new JsonLinesSink(Paths.get("profiles.jsonl"));
+ * // 阻塞队列，由其他线程消费
+ * ProfileSink sink = new BlockingQueueSink(queue);
+ * ```
+ */
+public interface ProfileSink extends Closeable {
+
+    void accept(JsonObject profile) throws IOException;
+
+    default void flush() throws IOException {
+
+    }
+
+    @Override
+    default void close() throws IOException {
+
+    }
+
+}
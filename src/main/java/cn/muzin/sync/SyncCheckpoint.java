@@ -0,0 +1,28 @@
+package cn.muzin.sync;
+
+import java.io.IOException;
+
+/**
+ * 保存同步进度：最后一个已处理的 openid，即下次同步的 next_openid
+ *
+ * 可基于文件、redis、数据库实现，参考 `FileSyncCheckpoint`。
+ */
+public interface SyncCheckpoint {
+
+    /**
+     * 读取检查点
+     * @return 最后一个已处理的 openid，没有检查点时返回 null
+     */
+    String load() throws IOException;
+
+    /**
+     * 保存检查点
+     */
+    void save(String openid) throws IOException;
+
+    /**
+     * 同步完成后清除检查点，下次从头开始
+     */
+    void clear() throws IOException;
+
+}
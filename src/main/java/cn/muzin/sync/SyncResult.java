@@ -0,0 +1,64 @@
+package cn.muzin.sync;
+
+import cn.muzin.entity.BatchFailure;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一次关注者同步的结果
+ */
+public class SyncResult {
+
+    private final String resumedFrom;
+
+    private final long profileCount;
+
+    private final int total;
+
+    private final List<BatchFailure> failures;
+
+    SyncResult(String resumedFrom, long profileCount, int total, List<BatchFailure> failures){
+        this.resumedFrom = resumedFrom;
+        this.profileCount = profileCount;
+        this.total = total;
+        this.failures = failures;
+    }
+
+    /**
+     * 本次同步开始时的检查点，从头开始时为 null
+     */
+    public String getResumedFrom() {
+        return resumedFrom;
+    }
+
+    /**
+     * 本次同步写入 sink 的用户信息数量
+     */
+    public long getProfileCount() {
+        return profileCount;
+    }
+
+    /**
+     * 微信返回的关注者总数
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    public List<BatchFailure> getFailures() {
+        return failures;
+    }
+
+    /**
+     * 获取失败的 openid，可通过 `BulkUserFetcher` 重试
+     */
+    public List<String> getFailedOpenids() {
+        List<String> openids = new ArrayList<String>();
+        for (BatchFailure failure : failures) {
+            openids.addAll(failure.getOpenids());
+        }
+        return openids;
+    }
+
+}
@@ -0,0 +1,58 @@
+package cn.muzin.tag;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * openid 与从 0 开始的连续整数编号的双向映射
+ *
+ * 每个 openid 只保存一次，各标签以编号组成的位图表示成员，多个标签之间的集合运算即位运算。
+ * 编号只增不减。每个 openid 约占 150 字节，是 `TagIndex` 的主要内存开销。
+ */
+class OpenidDictionary {
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
+    private volatile String[] openids = new String[1024];
+
+    private int size;
+
+    /**
+     * 取得 openid 的编号，不存在时分配新编号
+     */
+    int idOf(String openid) {
+        Integer id = ids.get(openid);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(openid);
+            if (id != null) {
+                return id;
+            }
+            if (size == openids.length) {
+                openids = Arrays.copyOf(openids, size * 2);
+            }
+            openids[size] = openid;
+            ids.put(openid, size);
+            return size++;
+        }
+    }
+
+    /**
+     * 取得 openid 的编号，不存在时返回 -1
+     */
+    int find(String openid) {
+        Integer id = ids.get(openid);
+        return id == null ? -1 : id;
+    }
+
+    String openidOf(int id) {
+        return openids[id];
+    }
+
+    int size() {
+        return ids.size();
+    }
+
+}
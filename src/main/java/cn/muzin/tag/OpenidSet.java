@@ -0,0 +1,141 @@
+package cn.muzin.tag;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 不可变的 openid 集合，以位图保存，支持集合运算
+ *
+ * 由 `TagIndex.getMembers(tagId)` 得到，是取得时刻的快照，之后的标签变动不影响已取得的集合。
+ * 只能与同一个 `TagIndex` 得到的集合进行运算。
+ *
+ * Examples:
+ * ```
+ * OpenidSet receivers = index.getMembers("100")
+ *         .and(index.getMembers("101"))
+ *         .andNot(index.getMembers("102"));
+ * for (List<String> chunk : receivers.partition(10000)) {
+ *     api.massSendText("hello", chunk, null);
+ * }
+ * ```
+ */
+public class OpenidSet implements Iterable<String> {
+
+    private final OpenidDictionary dictionary;
+
+    private final BitSet bits;
+
+    OpenidSet(OpenidDictionary dictionary, BitSet bits) {
+        this.dictionary = dictionary;
+        this.bits = bits;
+    }
+
+    public boolean contains(String openid) {
+        int id = dictionary.find(openid);
+        return id >= 0 && bits.get(id);
+    }
+
+    public int size() {
+        return bits.cardinality();
+    }
+
+    public boolean isEmpty() {
+        return bits.isEmpty();
+    }
+
+    /**
+     * 交集
+     */
+    public OpenidSet and(OpenidSet other) {
+        BitSet result = (BitSet) bits.clone();
+        result.and(checked(other).bits);
+        return new OpenidSet(dictionary, result);
+    }
+
+    /**
+     * 并集
+     */
+    public OpenidSet or(OpenidSet other) {
+        BitSet result = (BitSet) bits.clone();
+        result.or(checked(other).bits);
+        return new OpenidSet(dictionary, result);
+    }
+
+    /**
+     * 差集：在本集合中而不在 other 中
+     */
+    public OpenidSet andNot(OpenidSet other) {
+        BitSet result = (BitSet) bits.clone();
+        result.andNot(checked(other).bits);
+        return new OpenidSet(dictionary, result);
+    }
+
+    /**
+     * 对称差：只在其中一个集合中
+     */
+    public OpenidSet xor(OpenidSet other) {
+        BitSet result = (BitSet) bits.clone();
+        result.xor(checked(other).bits);
+        return new OpenidSet(dictionary, result);
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private int next = bits.nextSetBit(0);
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public String next() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                String openid = dictionary.openidOf(next);
+                next = bits.nextSetBit(next + 1);
+                return openid;
+            }
+        };
+    }
+
+    public List<String> toList() {
+        List<String> list = new ArrayList<String>(size());
+        for (String openid : this) {
+            list.add(openid);
+        }
+        return list;
+    }
+
+    /**
+     * 按指定大小切分，如群发每次最多 10000 个 openid
+     */
+    public List<List<String>> partition(int size) {
+        List<List<String>> chunks = new ArrayList<List<String>>();
+        List<String> chunk = new ArrayList<String>(size);
+        for (String openid : this) {
+            chunk.add(openid);
+            if (chunk.size() == size) {
+                chunks.add(chunk);
+                chunk = new ArrayList<String>(size);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    private OpenidSet checked(OpenidSet other) {
+        if (other.dictionary != dictionary) {
+            throw new IllegalArgumentException("sets come from different TagIndex");
+        }
+        return other;
+    }
+
+}
@@ -0,0 +1,249 @@
+package cn.muzin.tag;
+
+import cn.muzin.FollowerIterator;
+import cn.muzin.WechatAPI;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本地的标签成员索引
+ *
+ * 通过 `load(tagId)` 流式读取 `user/tag/get` 建立索引，之后在本地判断用户是否属于某标签，
+ * 并以 `OpenidSet` 对多个标签进行交、并、差运算，用于生成群发的接收人列表。
+ * 每个 openid 只保存一次并分配一个整数编号，每个标签是一个以编号为下标的位图。
+ * 内存主要由 openid 字典占用：每个 openid 约 150 字节（字符串、ConcurrentHashMap 节点、编号与数组槽位），
+ * 200 万用户约 300MB，由所有标签共享；每个标签的位图另占约 250KB（200 万位）。
+ *
+ * 设置到 `WechatAPI` 后，通过该 api 成功调用 `batchTagging`、`batchUnTagging`、`deleteTag` 时同步更新索引；
+ * 只维护已加载的标签。在其他地方（如公众平台后台）修改的标签需要重新 `load`。
+ *
+ * Examples:
+ * ```
+ * TagIndex index = new TagIndex(api);
+ * api.setTagIndex(index);
+ * index.load("100");
+ * index.load("101");
+ *
+ * index.contains("100", openid);
+ * OpenidSet receivers = index.getMembers("100").and(index.getMembers("101"));
+ * ```
+ */
+public class TagIndex {
+
+    private final WechatAPI api;
+
+    private final OpenidDictionary dictionary = new OpenidDictionary();
+
+    private final ConcurrentHashMap<String, TagEntry> tags = new ConcurrentHashMap<String, TagEntry>();
+
+    public TagIndex(WechatAPI api){
+        this.api = api;
+    }
+
+    /**
+     * 一个标签的成员
+     *
+     * 加载过程中发生的增删同时记录在 pendingAdds / pendingRemoves 中，加载完成后合并到新位图上。
+     */
+    private static class TagEntry {
+        final Object loadLock = new Object();
+        BitSet bits;
+        boolean loading;
+        final BitSet pendingAdds = new BitSet();
+        final BitSet pendingRemoves = new BitSet();
+    }
+
+    private TagEntry entry(String tagId) {
+        TagEntry entry = tags.get(tagId);
+        if (entry == null) {
+            TagEntry created = new TagEntry();
+            entry = tags.putIfAbsent(tagId, created);
+            if (entry == null) {
+                entry = created;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * 从微信读取标签的全部成员，替换索引中该标签的成员
+     * @param tagId 标签id
+     * @return 成员数量
+     * @throws cn.muzin.exception.WechatApiException 读取失败，索引中该标签保持不变
+     */
+    public int load(String tagId) {
+        TagEntry entry = entry(tagId);
+        synchronized (entry.loadLock) {
+            synchronized (entry) {
+                entry.loading = true;
+                entry.pendingAdds.clear();
+                entry.pendingRemoves.clear();
+            }
+            BitSet loaded = new BitSet(dictionary.size());
+            FollowerIterator members = api.tagMembers(tagId);
+            try {
+                while (members.hasNext()) {
+                    loaded.set(dictionary.idOf(members.next()));
+                }
+            } finally {
+                members.close();
+                synchronized (entry) {
+                    entry.loading = false;
+                }
+            }
+            synchronized (entry) {
+                loaded.or(entry.pendingAdds);
+                loaded.andNot(entry.pendingRemoves);
+                entry.pendingAdds.clear();
+                entry.pendingRemoves.clear();
+                entry.bits = loaded;
+                return loaded.cardinality();
+            }
+        }
+    }
+
+    public boolean isLoaded(String tagId) {
+        TagEntry entry = tags.get(tagId);
+        if (entry == null) {
+            return false;
+        }
+        synchronized (entry) {
+            return entry.bits != null;
+        }
+    }
+
+    /**
+     * 已加载的标签
+     */
+    public Set<String> getTagIds() {
+        Set<String> tagIds = new HashSet<String>();
+        for (Map.Entry<String, TagEntry> tag : tags.entrySet()) {
+            if (isLoaded(tag.getKey())) {
+                tagIds.add(tag.getKey());
+            }
+        }
+        return tagIds;
+    }
+
+    /**
+     * 用户是否属于该标签，标签未加载时返回 false
+     */
+    public boolean contains(String tagId, String openid) {
+        TagEntry entry = tags.get(tagId);
+        int id = dictionary.find(openid);
+        if (entry == null || id < 0) {
+            return false;
+        }
+        synchronized (entry) {
+            return entry.bits != null && entry.bits.get(id);
+        }
+    }
+
+    /**
+     * 标签成员的快照
+     * @return 标签未加载时返回 null
+     */
+    public OpenidSet getMembers(String tagId) {
+        TagEntry entry = tags.get(tagId);
+        if (entry == null) {
+            return null;
+        }
+        synchronized (entry) {
+            return entry.bits == null ? null : new OpenidSet(dictionary, (BitSet) entry.bits.clone());
+        }
+    }
+
+    /**
+     * 用户所属的已加载标签，相当于本地的 `getUserTagList`
+     */
+    public List<String> getTagsOf(String openid) {
+        List<String> tagIds = new ArrayList<String>();
+        int id = dictionary.find(openid);
+        if (id < 0) {
+            return tagIds;
+        }
+        for (Map.Entry<String, TagEntry> tag : tags.entrySet()) {
+            TagEntry entry = tag.getValue();
+            synchronized (entry) {
+                if (entry.bits != null && entry.bits.get(id)) {
+                    tagIds.add(tag.getKey());
+                }
+            }
+        }
+        return tagIds;
+    }
+
+    /**
+     * 记录用户被打上标签，`batchTagging` 成功后调用
+     */
+    public void addMembers(String tagId, Collection<String> openids) {
+        TagEntry entry = tags.get(tagId);
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            for (String openid : openids) {
+                int id = dictionary.idOf(openid);
+                if (entry.bits != null) {
+                    entry.bits.set(id);
+                }
+                if (entry.loading) {
+                    entry.pendingAdds.set(id);
+                    entry.pendingRemoves.clear(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * 记录用户被取消标签，`batchUnTagging` 成功后调用
+     */
+    public void removeMembers(String tagId, Collection<String> openids) {
+        TagEntry entry = tags.get(tagId);
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            for (String openid : openids) {
+                // 加载中时该用户可能在已读取、尚未写入位图的页中，须分配编号以记录删除
+                int id = entry.loading ? dictionary.idOf(openid) : dictionary.find(openid);
+                if (id < 0) {
+                    continue;
+                }
+                if (entry.bits != null) {
+                    entry.bits.clear(id);
+                }
+                if (entry.loading) {
+                    entry.pendingRemoves.set(id);
+                    entry.pendingAdds.clear(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * 移除标签，`deleteTag` 成功后调用
+     */
+    public void removeTag(String tagId) {
+        tags.remove(tagId);
+    }
+
+    /**
+     * 从所有标签中移除用户，如取消关注时
+     */
+    public void removeUser(String openid) {
+        List<String> openids = new ArrayList<String>(1);
+        openids.add(openid);
+        for (String tagId : tags.keySet()) {
+            removeMembers(tagId, openids);
+        }
+    }
+
+}
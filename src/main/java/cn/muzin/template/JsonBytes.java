@@ -0,0 +1,128 @@
+package cn.muzin.template;
+
+/**
+ * 将字符串按 JSON 字符串的规则转义并直接编码为 UTF-8 字节
+ *
+ * 先以 `escapedLength` 计算长度，再以 `writeEscaped` 写入预先分配的数组，避免中间的 String 与扩容复制。
+ * 不成对的代理字符与 `String.getBytes` 一致写为 '?'。
+ */
+final class JsonBytes {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private JsonBytes() {
+    }
+
+    /**
+     * 转义并编码后的字节数，null 为 0
+     */
+    static int escapedLength(String value) {
+        if (value == null) {
+            return 0;
+        }
+        int length = 0;
+        int n = value.length();
+        for (int i = 0; i < n; i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\' || c == '\n' || c == '\r' || c == '\t' || c == '\b' || c == '\f') {
+                length += 2;
+            } else if (c < 0x20) {
+                length += 6;
+            } else if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 写入转义并编码后的字节
+     * @return 写入后的位置
+     */
+    static int writeEscaped(String value, byte[] out, int pos) {
+        if (value == null) {
+            return pos;
+        }
+        int n = value.length();
+        for (int i = 0; i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                switch (c) {
+                    case '"':
+                    case '\\':
+                        out[pos++] = '\\';
+                        out[pos++] = (byte) c;
+                        break;
+                    case '\n':
+                        out[pos++] = '\\';
+                        out[pos++] = 'n';
+                        break;
+                    case '\r':
+                        out[pos++] = '\\';
+                        out[pos++] = 'r';
+                        break;
+                    case '\t':
+                        out[pos++] = '\\';
+                        out[pos++] = 't';
+                        break;
+                    case '\b':
+                        out[pos++] = '\\';
+                        out[pos++] = 'b';
+                        break;
+                    case '\f':
+                        out[pos++] = '\\';
+                        out[pos++] = 'f';
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            out[pos++] = '\\';
+                            out[pos++] = 'u';
+                            out[pos++] = '0';
+                            out[pos++] = '0';
+                            out[pos++] = HEX[c >> 4];
+                            out[pos++] = HEX[c & 0xF];
+                        } else {
+                            out[pos++] = (byte) c;
+                        }
+                }
+            } else if (c < 0x800) {
+                out[pos++] = (byte) (0xC0 | (c >> 6));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                out[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                out[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                out[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                out[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                out[pos++] = '?';
+            } else {
+                out[pos++] = (byte) (0xE0 | (c >> 12));
+                out[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * 转义后加上引号，用于生成固定部分
+     */
+    static byte[] quoted(String value) {
+        byte[] out = new byte[escapedLength(value) + 2];
+        out[0] = '"';
+        int pos = writeEscaped(value, out, 1);
+        out[pos] = '"';
+        return out;
+    }
+
+}
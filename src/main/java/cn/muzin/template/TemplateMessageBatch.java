@@ -0,0 +1,319 @@
+package cn.muzin.template;
+
+import cn.muzin.WechatAPI;
+import cn.muzin.entity.BatchFailure;
+import cn.muzin.util.ChunkedExecutor;
+import com.google.gson.JsonObject;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Stream;
+
+/**
+ * 批量发送同一模板的模板消息
+ *
+ * 模板id、url、miniprogram 与固定的 data 只定义一次，`compile()` 预先序列化为带空位的字节模板（`TemplatePayload`），
+ * 每个接收者只需填入 touser 与变化的 data 值，不再为每条消息构建 HashMap、执行 `gson.toJson`。
+ * 发送时以 `parallelism` 个并发请求、不超过 `rateLimit` 条/秒的速率进行，接收者可以来自迭代器或 Stream，
+ * 同时在途的消息不超过 2 * parallelism，内存占用与接收者总数无关。
+ *
+ * 单条消息失败不影响其他消息，失败的接收者以 `BatchFailure` 记录在结果中。
+ *
+ * Examples:
+ * ```
+ * TemplateMessageBatch batch = new TemplateMessageBatch(api)
+ *         .setTemplateId("ngqIpbwh8bUfcSsECmogfXcV14J0tQlEpBO27izEYtY")
+ *         .setUrl("http://weixin.qq.com/download")
+ *         .addData("first", "您的订单状态已更新", "#173177")
+ *         .addField("keyword1")               // 订单状态，逐个用户填入
+ *         .addField("keyword2", "#173177")    // 物流单号
+ *         .addData("remark", "感谢您的惠顾")
+ *         .setParallelism(16)
+ *         .setRateLimit(500);
+ *
+ * TemplateSendResult result = batch.send(orders.stream()
+ *         .map(order -> TemplateRecipient.of(order.getOpenid(), order.getStatus(), order.getTrackingNo())));
+ * result.getFailedOpenids();
+ * ```
+ */
+public class TemplateMessageBatch {
+
+    private final WechatAPI api;
+
+    private String templateId;
+
+    private String url;
+
+    private String miniprogramAppid;
+
+    private String miniprogramPagepath;
+
+    private String color;
+
+    private final List<DataItem> data = new ArrayList<DataItem>();
+
+    private int parallelism = 16;
+
+    /**
+     * 每秒最多发送的消息数，0 表示不限制
+     */
+    private double rateLimit = 0;
+
+    private ExecutorService executor;
+
+    private volatile TemplatePayload payload;
+
+    public TemplateMessageBatch(WechatAPI api){
+        this.api = api;
+    }
+
+    /**
+     * data 中的一项；value 为 null 时为逐个用户填入的变量字段
+     */
+    private static class DataItem {
+        final String name;
+        final String value;
+        final String color;
+
+        DataItem(String name, String value, String color) {
+            this.name = name;
+            this.value = value;
+            this.color = color;
+        }
+    }
+
+    public TemplateMessageBatch setTemplateId(String templateId) {
+        this.templateId = templateId;
+        this.payload = null;
+        return this;
+    }
+
+    /**
+     * @param url 点击模板消息跳转的链接，可不填
+     */
+    public TemplateMessageBatch setUrl(String url) {
+        this.url = url;
+        this.payload = null;
+        return this;
+    }
+
+    /**
+     * @param appid 跳转的小程序appid
+     * @param pagepath 小程序页面路径
+     */
+    public TemplateMessageBatch setMiniprogram(String appid, String pagepath) {
+        this.miniprogramAppid = appid;
+        this.miniprogramPagepath = pagepath;
+        this.payload = null;
+        return this;
+    }
+
+    /**
+     * @param color 字体颜色
+     */
+    public TemplateMessageBatch setColor(String color) {
+        this.color = color;
+        this.payload = null;
+        return this;
+    }
+
+    /**
+     * 添加所有用户相同的 data 字段
+     */
+    public TemplateMessageBatch addData(String name, String value) {
+        return addData(name, value, null);
+    }
+
+    public TemplateMessageBatch addData(String name, String value, String color) {
+        if (value == null) {
+            throw new IllegalArgumentException("value is required, use addField for per-recipient values");
+        }
+        data.add(new DataItem(name, value, color));
+        this.payload = null;
+        return this;
+    }
+
+    /**
+     * 添加逐个用户填入的 data 字段，值按添加顺序由 `TemplateRecipient.of(openid, values...)` 提供
+     */
+    public TemplateMessageBatch addField(String name) {
+        return addField(name, null);
+    }
+
+    public TemplateMessageBatch addField(String name, String color) {
+        data.add(new DataItem(name, null, color));
+        this.payload = null;
+        return this;
+    }
+
+    public TemplateMessageBatch setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param rateLimit 每秒最多发送的消息数，0 表示不限制
+     */
+    public TemplateMessageBatch setRateLimit(double rateLimit) {
+        this.rateLimit = rateLimit;
+        return this;
+    }
+
+    public double getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * 使用外部线程池，其生命周期由调用方管理；未设置时优先使用 `api.getExecutor()`，
+     * 均未设置则每次发送时创建 parallelism 个线程，结束后关闭
+     */
+    public TemplateMessageBatch setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * 生成字节模板，之后修改模板定义会重新生成
+     */
+    public TemplatePayload compile() {
+        TemplatePayload compiled = this.payload;
+        if (compiled != null) {
+            return compiled;
+        }
+        if (templateId == null) {
+            throw new IllegalStateException("templateId is required");
+        }
+        List<byte[]> literals = new ArrayList<byte[]>();
+        List<String> fieldNames = new ArrayList<String>();
+        ByteArrayOutputStream literal = new ByteArrayOutputStream(256);
+
+        write(literal, "{\"touser\":\"");
+        literals.add(literal.toByteArray());
+        literal.reset();
+
+        write(literal, "\",\"template_id\":");
+        write(literal, JsonBytes.quoted(templateId));
+        if (url != null) {
+            write(literal, ",\"url\":");
+            write(literal, JsonBytes.quoted(url));
+        }
+        if (miniprogramAppid != null) {
+            write(literal, ",\"miniprogram\":{\"appid\":");
+            write(literal, JsonBytes.quoted(miniprogramAppid));
+            if (miniprogramPagepath != null) {
+                write(literal, ",\"pagepath\":");
+                write(literal, JsonBytes.quoted(miniprogramPagepath));
+            }
+            write(literal, "}");
+        }
+        if (color != null) {
+            write(literal, ",\"color\":");
+            write(literal, JsonBytes.quoted(color));
+        }
+        write(literal, ",\"data\":{");
+        for (int i = 0; i < data.size(); i++) {
+            DataItem item = data.get(i);
+            if (i > 0) {
+                write(literal, ",");
+            }
+            write(literal, JsonBytes.quoted(item.name));
+            write(literal, ":{\"value\":");
+            if (item.value != null) {
+                write(literal, JsonBytes.quoted(item.value));
+            } else {
+                write(literal, "\"");
+                literals.add(literal.toByteArray());
+                literal.reset();
+                fieldNames.add(item.name);
+                write(literal, "\"");
+            }
+            if (item.color != null) {
+                write(literal, ",\"color\":");
+                write(literal, JsonBytes.quoted(item.color));
+            }
+            write(literal, "}");
+        }
+        write(literal, "}}");
+        literals.add(literal.toByteArray());
+
+        compiled = new TemplatePayload(literals.toArray(new byte[literals.size()][]), fieldNames);
+        this.payload = compiled;
+        return compiled;
+    }
+
+    /**
+     * 发送给全部接收者，在调用线程中等待全部完成
+     * @param recipients 接收者
+     */
+    public TemplateSendResult send(Iterable<TemplateRecipient> recipients) {
+        return send(recipients.iterator());
+    }
+
+    public TemplateSendResult send(Stream<TemplateRecipient> recipients) {
+        return send(recipients.iterator());
+    }
+
+    public TemplateSendResult send(Iterator<TemplateRecipient> recipients) {
+        final TemplatePayload payload = compile();
+        ExecutorService pool = this.executor != null ? this.executor : api.getExecutor();
+        final long[] succeeded = new long[1];
+        final List<BatchFailure> failures = new ArrayList<BatchFailure>();
+        // 按完成顺序交付，个别慢请求不阻塞后续接收者
+        new ChunkedExecutor(pool, parallelism, rateLimit, "wechatapi-template-").setOrdered(false).run(
+                recipients,
+                new ChunkedExecutor.Task<TemplateRecipient, JsonObject>() {
+                    @Override
+                    public JsonObject call(TemplateRecipient recipient) {
+                        return api.sendTemplate(payload.render(recipient));
+                    }
+                },
+                new ChunkedExecutor.Handler<TemplateRecipient, JsonObject>() {
+                    @Override
+                    public void onResult(TemplateRecipient recipient, JsonObject resp) {
+                        if (resp == null) {
+                            failures.add(failure(recipient, -1, "request failed"));
+                            return;
+                        }
+                        int errcode = resp.has("errcode") ? resp.get("errcode").getAsInt() : 0;
+                        if (errcode == 0) {
+                            succeeded[0]++;
+                        } else {
+                            String errmsg = resp.has("errmsg") ? resp.get("errmsg").getAsString() : resp.toString();
+                            failures.add(failure(recipient, errcode, errmsg));
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(TemplateRecipient recipient, String errmsg) {
+                        failures.add(failure(recipient, -1, errmsg));
+                    }
+                });
+        return new TemplateSendResult(succeeded[0], failures);
+    }
+
+    private static BatchFailure failure(TemplateRecipient recipient, int errcode, String errmsg) {
+        return new BatchFailure(Collections.singletonList(recipient.getOpenid()), errcode, errmsg);
+    }
+
+    private static void write(ByteArrayOutputStream out, String ascii) {
+        for (int i = 0; i < ascii.length(); i++) {
+            out.write(ascii.charAt(i));
+        }
+    }
+
+    private static void write(ByteArrayOutputStream out, byte[] bytes) {
+        out.write(bytes, 0, bytes.length);
+    }
+
+}
@@ -0,0 +1,84 @@
+package cn.muzin.template;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 预先序列化的模板消息请求体
+ *
+ * 由 `TemplateMessageBatch.compile()` 生成：固定部分（template_id、url、miniprogram、固定的 data）
+ * 在生成时编码为 UTF-8 字节，touser 与逐个用户变化的 data 值为空位。
+ * `render` 只复制固定字节并写入转义后的变量，不构建 Map、不经过 Gson。
+ *
+ * 不可变，可在多个线程间共享。
+ *
+ * Examples:
+ * ```
+ * TemplatePayload payload = batch.compile();
+ * byte[] body = payload.render(openid, "已发货", "顺丰 SF1234567890");
+ * api.sendTemplate(body);
+ * ```
+ */
+public class TemplatePayload {
+
+    /**
+     * 空位之间的固定字节，比空位多一个
+     */
+    private final byte[][] literals;
+
+    private final int literalLength;
+
+    private final List<String> fieldNames;
+
+    TemplatePayload(byte[][] literals, List<String> fieldNames) {
+        this.literals = literals;
+        this.fieldNames = Collections.unmodifiableList(fieldNames);
+        int length = 0;
+        for (byte[] literal : literals) {
+            length += literal.length;
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * 逐个用户变化的 data 字段，顺序与 `render` 的 values 一致
+     */
+    public List<String> getFieldNames() {
+        return fieldNames;
+    }
+
+    /**
+     * 生成一个用户的请求体
+     * @param openid 接收者的openid
+     * @param values 各变量字段的值，顺序与 `getFieldNames()` 一致，null 视为空字符串
+     * @return UTF-8 编码的 JSON
+     */
+    public byte[] render(String openid, String... values) {
+        if (values.length != fieldNames.size()) {
+            throw new IllegalArgumentException("expected " + fieldNames.size() + " values, got " + values.length);
+        }
+        int length = literalLength + JsonBytes.escapedLength(openid);
+        for (String value : values) {
+            length += JsonBytes.escapedLength(value);
+        }
+        byte[] out = new byte[length];
+        int pos = copy(literals[0], out, 0);
+        pos = JsonBytes.writeEscaped(openid, out, pos);
+        for (int i = 0; i < values.length; i++) {
+            pos = copy(literals[i + 1], out, pos);
+            pos = JsonBytes.writeEscaped(values[i], out, pos);
+        }
+        copy(literals[literals.length - 1], out, pos);
+        return out;
+    }
+
+    public byte[] render(TemplateRecipient recipient) {
+        return render(recipient.getOpenid(), recipient.getValues());
+    }
+
+    private static int copy(byte[] literal, byte[] out, int pos) {
+        System.arraycopy(literal, 0, out, pos, literal.length);
+        return pos + literal.length;
+    }
+
+}
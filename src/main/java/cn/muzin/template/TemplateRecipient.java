@@ -0,0 +1,33 @@
+package cn.muzin.template;
+
+/**
+ * 模板消息的一个接收者及其变量字段的值
+ */
+public class TemplateRecipient {
+
+    private final String openid;
+
+    private final String[] values;
+
+    private TemplateRecipient(String openid, String[] values) {
+        this.openid = openid;
+        this.values = values;
+    }
+
+    /**
+     * @param openid 接收者的openid
+     * @param values 各变量字段的值，顺序与 `TemplateMessageBatch.addField` 的顺序一致
+     */
+    public static TemplateRecipient of(String openid, String... values) {
+        return new TemplateRecipient(openid, values);
+    }
+
+    public String getOpenid() {
+        return openid;
+    }
+
+    public String[] getValues() {
+        return values;
+    }
+
+}
@@ -0,0 +1,48 @@
+package cn.muzin.template;
+
+import cn.muzin.entity.BatchFailure;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * `TemplateMessageBatch.send` 的结果：成功发送的消息数与失败的接收者，每个 `BatchFailure` 对应一个接收者
+ */
+public class TemplateSendResult {
+
+    private final long succeeded;
+
+    private final List<BatchFailure> failures;
+
+    TemplateSendResult(long succeeded, List<BatchFailure> failures){
+        this.succeeded = succeeded;
+        this.failures = failures;
+    }
+
+    /**
+     * 成功发送的消息数
+     */
+    public long getSucceeded() {
+        return succeeded;
+    }
+
+    public List<BatchFailure> getFailures() {
+        return failures;
+    }
+
+    /**
+     * 发送失败的 openid，可用于重试
+     */
+    public List<String> getFailedOpenids() {
+        List<String> openids = new ArrayList<String>(failures.size());
+        for (BatchFailure failure : failures) {
+            openids.addAll(failure.getOpenids());
+        }
+        return openids;
+    }
+
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+
+}
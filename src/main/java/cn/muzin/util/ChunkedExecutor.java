@@ -0,0 +1,259 @@
+package cn.muzin.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 以有限的并发与速率依次执行一系列任务，供批量接口（批量获取用户信息、批量打标签、模板消息、群发活动）共用
+ *
+ * 任务从迭代器按需读取，同时在途的任务不超过 2 * parallelism，内存占用与任务总数无关。
+ * 每个任务在获得并发许可（外部线程池可能被其他任务共享，另以 parallelism 限制并发请求数）
+ * 与 `rateLimit` 的速率配额后执行。结果均在调用 `run` 的线程中交付给 `Handler`：
+ * `ordered` 为 true 时按任务顺序，否则按完成顺序，慢任务不会阻塞后续任务。
+ *
+ * 未指定线程池时每次 `run` 创建 parallelism 个守护线程，结束后关闭。
+ * 调用线程被中断时不再读取新任务，尚未完成的任务以 "interrupted" 交付给 `Handler.onFailure`，并保留中断状态。
+ *
+ * Examples:
+ * ```
+ * new ChunkedExecutor(executor, 4, 50, "wechatapi-bulk-tags-")
+ *         .run(ChunkedExecutor.chunks(openids, 50), chunk -> api.batchTaggingResponse(chunk, tagId), handler);
+ * ```
+ */
+public class ChunkedExecutor {
+
+    /**
+     * 一个任务
+     */
+    public interface Task<T, R> {
+
+        /**
+         * 在获得并发许可与速率配额后执行
+         */
+        R call(T item) throws Exception;
+
+        /**
+         * 无需请求即可得到结果时（如断点续传中已完成的任务）返回该结果，不占用许可与配额；默认返回 null
+         */
+        default R resume(T item) throws Exception {
+            return null;
+        }
+
+    }
+
+    /**
+     * 接收任务结果，在调用 `run` 的线程中执行，无需考虑线程安全
+     */
+    public interface Handler<T, R> {
+
+        void onResult(T item, R result);
+
+        /**
+         * 任务抛出异常、被线程池拒绝或被中断
+         * @param errmsg 异常信息，中断时为 "interrupted"
+         */
+        void onFailure(T item, String errmsg);
+
+    }
+
+    private final ExecutorService executor;
+
+    private final int parallelism;
+
+    private final double rateLimit;
+
+    private final String threadPrefix;
+
+    private boolean ordered = true;
+
+    /**
+     * @param executor 线程池，其生命周期由调用方管理；为 null 时每次 `run` 创建守护线程
+     * @param parallelism 并发执行的任务数
+     * @param rateLimit 每秒最多开始的任务数，0 表示不限制
+     * @param threadPrefix 自建线程的名称前缀
+     */
+    public ChunkedExecutor(ExecutorService executor, int parallelism, double rateLimit, String threadPrefix) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.rateLimit = rateLimit;
+        this.threadPrefix = threadPrefix;
+    }
+
+    /**
+     * @param ordered 是否按任务顺序交付结果，默认为 true
+     */
+    public ChunkedExecutor setOrdered(boolean ordered) {
+        this.ordered = ordered;
+        return this;
+    }
+
+    /**
+     * 按顺序将元素切分为每组不超过 size 个，按需读取
+     */
+    public static <T> Iterator<List<T>> chunks(final Iterator<T> items, final int size) {
+        return new Iterator<List<T>>() {
+            @Override
+            public boolean hasNext() {
+                return items.hasNext();
+            }
+
+            @Override
+            public List<T> next() {
+                if (!items.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                List<T> chunk = new ArrayList<T>(size);
+                while (chunk.size() < size && items.hasNext()) {
+                    chunk.add(items.next());
+                }
+                return chunk;
+            }
+        };
+    }
+
+    /**
+     * 执行全部任务，在调用线程中等待全部完成
+     * @param items 任务的输入，按需读取
+     * @param task 对每个输入执行的任务
+     * @param handler 接收结果
+     */
+    public <T, R> void run(Iterator<T> items, final Task<T, R> task, Handler<T, R> handler) {
+        ExecutorService pool = this.executor;
+        boolean ownPool = pool == null;
+        if (ownPool) {
+            pool = ThreadUtils.newDaemonPool(threadPrefix, parallelism);
+        }
+        final RateLimiter limiter = rateLimit > 0 ? new RateLimiter(rateLimit) : null;
+        final Semaphore permits = new Semaphore(parallelism);
+        BlockingQueue<Pending<T, R>> completed = ordered ? null : new LinkedBlockingQueue<Pending<T, R>>();
+        Deque<Pending<T, R>> window = new ArrayDeque<Pending<T, R>>();
+        boolean interrupted = false;
+        try {
+            while (true) {
+                while (window.size() < parallelism * 2 && items.hasNext()) {
+                    final T item = items.next();
+                    Pending<T, R> pending = new Pending<T, R>(item, new Callable<R>() {
+                        @Override
+                        public R call() throws Exception {
+                            R resumed = task.resume(item);
+                            if (resumed != null) {
+                                return resumed;
+                            }
+                            permits.acquire();
+                            try {
+                                if (limiter != null) {
+                                    limiter.acquire();
+                                }
+                                return task.call(item);
+                            } finally {
+                                permits.release();
+                            }
+                        }
+                    }, completed);
+                    window.add(pending);
+                    try {
+                        pool.execute(pending);
+                    } catch (RejectedExecutionException e) {
+                        pending.reject(e);
+                    }
+                }
+                Pending<T, R> next;
+                if (window.isEmpty()) {
+                    break;
+                } else if (ordered) {
+                    next = window.poll();
+                } else {
+                    try {
+                        next = completed.take();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        break;
+                    }
+                    window.remove(next);
+                }
+                if (!deliver(next, handler)) {
+                    interrupted = true;
+                    break;
+                }
+            }
+            if (interrupted) {
+                for (Pending<T, R> pending : window) {
+                    pending.cancel(true);
+                    handler.onFailure(pending.item, "interrupted");
+                }
+                window.clear();
+            }
+        } finally {
+            for (Pending<T, R> pending : window) {
+                pending.cancel(true);
+            }
+            if (ownPool) {
+                pool.shutdownNow();
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 交付一个任务的结果
+     * @return 调用线程被中断时返回 false
+     */
+    private static <T, R> boolean deliver(Pending<T, R> pending, Handler<T, R> handler) {
+        R result;
+        try {
+            result = pending.get();
+        } catch (InterruptedException e) {
+            handler.onFailure(pending.item, "interrupted");
+            return false;
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+            handler.onFailure(pending.item, String.valueOf(e.getCause()));
+            return true;
+        }
+        handler.onResult(pending.item, result);
+        return true;
+    }
+
+    /**
+     * 在途的任务，完成后（按完成顺序交付时）放入 completed 队列
+     */
+    private static class Pending<T, R> extends FutureTask<R> {
+        final T item;
+        final BlockingQueue<Pending<T, R>> completed;
+
+        Pending(T item, Callable<R> callable, BlockingQueue<Pending<T, R>> completed) {
+            super(callable);
+            this.item = item;
+            this.completed = completed;
+        }
+
+        void reject(RejectedExecutionException e) {
+            setException(e);
+        }
+
+        @Override
+        protected void done() {
+            if (completed != null) {
+                completed.add(this);
+            }
+        }
+    }
+
+}
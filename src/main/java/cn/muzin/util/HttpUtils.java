@@ -1,15 +1,11 @@
 package cn.muzin.util;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.Charset;
 import java.util.*;
 
-import com.mashape.unirest.http.Unirest;
-import com.mashape.unirest.request.HttpRequestWithBody;
-import org.apache.http.HttpEntity;
+import cn.muzin.http.ApacheHttpTransport;
 import org.apache.http.HttpResponse;
 import org.apache.http.ParseException;
 import org.apache.http.client.ClientProtocolException;
@@ -17,23 +13,26 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.utils.URLEncodedUtils;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.FileEntity;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.entity.mime.HttpMultipartMode;
-import org.apache.http.entity.mime.MultipartEntityBuilder;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.protocol.HTTP;
-import org.apache.http.util.EntityUtils;
 
 
 public class HttpUtils {
 
-    private static HttpClient httpClient = new DefaultHttpClient(); //创建默认的httpClient实例
+    /**
+     * 共享的连接池传输层，所有静态方法复用其中的连接
+     */
+    private static class DefaultTransportHolder {
+        private static final ApacheHttpTransport TRANSPORT = new ApacheHttpTransport();
+    }
+
+    public static ApacheHttpTransport getDefaultTransport(){
+        return DefaultTransportHolder.TRANSPORT;
+    }
 
     public HttpClient getHttpClient(){
-        return this.httpClient;
+        return getDefaultTransport().getHttpClient();
     }
 
     private HttpUtils(){}
@@ -56,54 +55,33 @@ public class HttpUtils {
 
     /**
      * 发送HTTP_GET请求
-     * 该方法会自动关闭连接,释放资源
+     * 该方法使用共享连接池,响应读取完毕后连接归还连接池
      * @param url    请求地址(含参数)
      * @param decodeCharset 解码字符集,解析响应数据时用之,其为null时默认采用UTF-8解码
      * @return 远程主机响应正文
      */
     public static String sendGetRequest(String url, Map<String, Object> opts, String decodeCharset){
-        long responseLength = 0;       //响应长度
-        String responseContent = null; //响应内容
-        HttpClient httpClient = new DefaultHttpClient(); //创建默认的httpClient实例
         HttpGet httpGet = new HttpGet(url);           //创建org.apache.http.client.methods.HttpGet
-        try{
 
-            if(opts != null){
-                if(opts.containsKey("headers")){
-                    Map<String, String> headers = (Map<String, String>) opts.get("headers");
-                    Set<String> headerSetKeys = headers.keySet();
-                    for(String key : headerSetKeys){
-                        httpGet.addHeader(key, headers.get(key).toString());
-                    }
+        if(opts != null){
+            if(opts.containsKey("headers")){
+                Map<String, String> headers = (Map<String, String>) opts.get("headers");
+                Set<String> headerSetKeys = headers.keySet();
+                for(String key : headerSetKeys){
+                    httpGet.addHeader(key, headers.get(key).toString());
                 }
             }
-
-
-            HttpResponse response = httpClient.execute(httpGet); //执行GET请求
-            HttpEntity entity = response.getEntity();            //获取响应实体
-            if(null != entity){
-                responseLength = entity.getContentLength();
-                responseContent = EntityUtils.toString(entity, decodeCharset==null ? "UTF-8" : decodeCharset);
-                EntityUtils.consume(entity); //Consume response content
-            }
-            System.out.println("请求地址: " + httpGet.getURI());
-            System.out.println("响应状态: " + response.getStatusLine());
-            System.out.println("响应长度: " + responseLength);
-            System.out.println("响应内容: " + responseContent);
-        }catch(ClientProtocolException e){
-            System.out.println("该异常通常是协议错误导致,比如构造HttpGet对象时传入的协议不对(将'http'写成'htp')或者服务器端返回的内容不符合HTTP协议要求等,堆栈信息如下");
-            e.printStackTrace();
-        }catch(ParseException e){
-            e.printStackTrace();
-        }catch(IOException e){
-            System.out.println("该异常通常是网络原因引起的,如HTTP服务器未启动等,堆栈信息如下");
-            e.printStackTrace();
-        }finally{
-            httpClient.getConnectionManager().shutdown(); //关闭连接,释放资源
         }
-        return responseContent;
+
+        return getDefaultTransport().execute(httpGet, decodeCharset);
     }
 
+    /**
+     * 发送HTTP_GET请求并返回响应对象
+     * 调用方需读取完响应实体（如 EntityUtils.consume），连接才会归还连接池
+     * @param url    请求地址(含参数)
+     * @return 响应对象
+     */
     public static HttpResponse sendGetRequestReturnResponse(String url, Map<String, Object> opts, String decodeCharset){
 
         HttpGet httpGet = new HttpGet(url);           //创建org.apache.http.client.methods.HttpGet
@@ -120,11 +98,7 @@ public class HttpUtils {
                 }
             }
 
-            response = httpClient.execute(httpGet); //执行GET请求
-            HttpEntity entity = response.getEntity();            //获取响应实体
-
-            System.out.println("请求地址: " + httpGet.getURI());
-            System.out.println("响应状态: " + response.getStatusLine());
+            response = getDefaultTransport().getHttpClient().execute(httpGet); //执行GET请求
         }catch(ClientProtocolException e){
             System.out.println("该异常通常是协议错误导致,比如构造HttpGet对象时传入的协议不对(将'http'写成'htp')或者服务器端返回的内容不符合HTTP协议要求等,堆栈信息如下");
             e.printStackTrace();
@@ -133,15 +107,13 @@ public class HttpUtils {
         }catch(IOException e){
             System.out.println("该异常通常是网络原因引起的,如HTTP服务器未启动等,堆栈信息如下");
             e.printStackTrace();
-        }finally{
-//            httpClient.getConnectionManager().shutdown(); //关闭连接,释放资源
         }
         return response;
     }
 
     /**
      * 发送HTTP_GET请求
-     * 该方法会自动关闭连接,释放资源
+     * 该方法使用共享连接池,响应读取完毕后连接归还连接池
      * @param url    请求地址(含参数)
      * @return 远程主机响应正文
      */
@@ -150,193 +122,23 @@ public class HttpUtils {
     }
 
     public static String sendPostJsonRequest(String url, String param){
-        long responseLength = 0;       //响应长度
-        String responseContent = null; //响应内容
-        HttpClient httpClient = new DefaultHttpClient(); //创建默认的httpClient实例
-        HttpPost httpPost = new HttpPost(url);           //创建org.apache.http.client.methods.HttpGet
-        try{
-
-            httpPost.setHeader("content-type", "application/json;charset=utf-8");
-
-            StringEntity strEntity = new StringEntity(param.toString(), Charset.forName("UTF-8"));
-            httpPost.setEntity(strEntity);
-
-            HttpResponse response = httpClient.execute(httpPost); //执行GET请求
-            HttpEntity entity = response.getEntity();            //获取响应实体
-            if(null != entity){
-                responseLength = entity.getContentLength();
-                responseContent = EntityUtils.toString(entity, "UTF-8");
-                EntityUtils.consume(entity); //Consume response content
-            }
-            System.out.println("请求地址: " + httpPost.getURI());
-            System.out.println("响应状态: " + response.getStatusLine());
-            System.out.println("响应长度: " + responseLength);
-            System.out.println("响应内容: " + responseContent);
-        }catch(ClientProtocolException e){
-            System.out.println("该异常通常是协议错误导致,比如构造HttpGet对象时传入的协议不对(将'http'写成'htp')或者服务器端返回的内容不符合HTTP协议要求等,堆栈信息如下");
-            e.printStackTrace();
-        }catch(ParseException e){
-            e.printStackTrace();
-        }catch(IOException e){
-            System.out.println("该异常通常是网络原因引起的,如HTTP服务器未启动等,堆栈信息如下");
-            e.printStackTrace();
-        }finally{
-            httpClient.getConnectionManager().shutdown(); //关闭连接,释放资源
-        }
-        return responseContent;
+        return getDefaultTransport().postJson(url, param);
     }
 
-
-
-
     public static String sendPostFormDataRequest(String url, Map<String, Object> param){
-        long responseLength = 0;       //响应长度
-        String responseContent = null; //响应内容
-        HttpClient httpClient = new DefaultHttpClient(); //创建默认的httpClient实例
-        HttpPost httpPost = new HttpPost(url);           //创建org.apache.http.client.methods.HttpGet
-        try{
-
-            MultipartEntityBuilder builder = MultipartEntityBuilder.create();
-            builder.setCharset(Charset.forName("UTF-8"));
-            builder.setMode(HttpMultipartMode.BROWSER_COMPATIBLE);
-
-            Set<String> formDataKeys = param.keySet();
-
-            for (String key : formDataKeys) {
-
-                Object val = param.get(key);
-
-                if(val instanceof String){
-                    // 解决中文乱码
-                    ContentType contentType = ContentType.create(HTTP.PLAIN_TEXT_TYPE, HTTP.UTF_8);
-                    builder.addTextBody(key, val.toString(), contentType);
-                }
-
-                if(val instanceof File){
-                    File valFile = (File) val;
-                    FileInputStream fis = new FileInputStream(valFile);
-                    String fileName = valFile.getName();
-                    builder.addBinaryBody(
-                            key,
-                            fis,
-                            ContentType.MULTIPART_FORM_DATA,
-                            fileName);// 文件流
-                }
-
-                if(val instanceof InputStream){
-                    InputStream is = (InputStream) val;
-                    builder.addBinaryBody(
-                            key,
-                            is,
-                            ContentType.MULTIPART_FORM_DATA,
-                            new Date().getTime() + "" + Math.floor(Math.random() * 10000));// 文件流
-                }
-
-            }
-
-            HttpEntity formDataEntity = builder.build();
-            httpPost.setEntity(formDataEntity);
-
-            HttpResponse response = httpClient.execute(httpPost); //执行GET请求
-            HttpEntity entity = response.getEntity();            //获取响应实体
-            if(null != entity){
-                responseLength = entity.getContentLength();
-                responseContent = EntityUtils.toString(entity, "UTF-8");
-                EntityUtils.consume(entity); //Consume response content
-            }
-            System.out.println("请求地址: " + httpPost.getURI());
-            System.out.println("响应状态: " + response.getStatusLine());
-            System.out.println("响应长度: " + responseLength);
-            System.out.println("响应内容: " + responseContent);
-        }catch(ClientProtocolException e){
-            System.out.println("该异常通常是协议错误导致,比如构造HttpGet对象时传入的协议不对(将'http'写成'htp')或者服务器端返回的内容不符合HTTP协议要求等,堆栈信息如下");
-            e.printStackTrace();
-        }catch(ParseException e){
-            e.printStackTrace();
-        }catch(IOException e){
-            System.out.println("该异常通常是网络原因引起的,如HTTP服务器未启动等,堆栈信息如下");
-            e.printStackTrace();
-        }finally{
-            httpClient.getConnectionManager().shutdown(); //关闭连接,释放资源
-        }
-        return responseContent;
+        return getDefaultTransport().postFormData(url, param);
     }
 
+    /**
+     * 与 sendPostFormDataRequest 相同，使用共享连接池发送
+     * 原先基于 Unirest 实现，每次调用都会修改其全局超时配置
+     */
     public static String sendHttpsPostFormDataRequest(String url, Map<String, Object> param){
-        Unirest.setTimeouts(0, 0);
-
-        try {
-            HttpRequestWithBody postRequest = Unirest.post(url);
-
-            Set<String> formDataKeys = param.keySet();
-
-            for (String key : formDataKeys) {
-
-                Object val = param.get(key);
-
-                if(val instanceof String){
-                    postRequest.field(key, val.toString());
-                }
-
-                if(val instanceof File){
-                    File file = (File) val;
-                    postRequest.field(key, file);
-                }
-
-                if(val instanceof InputStream){
-                    InputStream is = (InputStream) val;
-                    postRequest.field(key, is,
-                            new Date().getTime() + "" + ((int)Math.floor(Math.random() * 10000)));
-                }
-
-            }
-
-            com.mashape.unirest.http.HttpResponse<String> stringHttpResponse = postRequest.asString();
-
-            String resp = stringHttpResponse.getBody();
-
-            return resp;
-
-        }catch(Exception e){
-            e.printStackTrace();
-            return null;
-        }
-
+        return getDefaultTransport().postFormData(url, param);
     }
 
     public static String sendPostFileRequest(String url, File file){
-        long responseLength = 0;       //响应长度
-        String responseContent = null; //响应内容
-        HttpClient httpClient = new DefaultHttpClient(); //创建默认的httpClient实例
-        HttpPost httpPost = new HttpPost(url);           //创建org.apache.http.client.methods.HttpGet
-        try{
-
-            FileEntity fileEntity = new FileEntity(file);
-            httpPost.setEntity(fileEntity);
-
-            HttpResponse response = httpClient.execute(httpPost); //执行POST请求
-            HttpEntity entity = response.getEntity();            //获取响应实体
-            if(null != entity){
-                responseLength = entity.getContentLength();
-                responseContent = EntityUtils.toString(entity, "UTF-8");
-                EntityUtils.consume(entity); //Consume response content
-            }
-            System.out.println("请求地址: " + httpPost.getURI());
-            System.out.println("响应状态: " + response.getStatusLine());
-            System.out.println("响应长度: " + responseLength);
-            System.out.println("响应内容: " + responseContent);
-        }catch(ClientProtocolException e){
-            System.out.println("该异常通常是协议错误导致,比如构造HttpGet对象时传入的协议不对(将'http'写成'htp')或者服务器端返回的内容不符合HTTP协议要求等,堆栈信息如下");
-            e.printStackTrace();
-        }catch(ParseException e){
-            e.printStackTrace();
-        }catch(IOException e){
-            System.out.println("该异常通常是网络原因引起的,如HTTP服务器未启动等,堆栈信息如下");
-            e.printStackTrace();
-        }finally{
-            httpClient.getConnectionManager().shutdown(); //关闭连接,释放资源
-        }
-        return responseContent;
+        return getDefaultTransport().postFile(url, file);
     }
 
     /**
@@ -355,7 +157,7 @@ public class HttpUtils {
 
     /**
      * 发送HTTP_POST请求
-     * 该方法会自动关闭连接,释放资源
+     * 该方法使用共享连接池,响应读取完毕后连接归还连接池
      * 当<code>isEncoder=true</code>时,其会自动对<code>sendData</code>中的[中文][|][ ]等特殊字符进行<code>URLEncoder.encode(string,encodeCharset)</code>
      * @param url        请求地址
      * @param sendData      请求参数,若有多个参数则应拼接成param11=value11&22=value22&33=value33的形式后,传入该参数中
@@ -366,7 +168,6 @@ public class HttpUtils {
      */
     public static String sendPostRequest(String url, String sendData, boolean isEncoder, String encodeCharset, String decodeCharset){
         String responseContent = null;
-        HttpClient httpClient = new DefaultHttpClient();
 
         HttpPost httpPost = new HttpPost(url);
         //httpPost.setHeader(HTTP.CONTENT_TYPE, "application/x-www-form-urlencoded; charset=UTF-8");
@@ -382,17 +183,10 @@ public class HttpUtils {
                 httpPost.setEntity(new StringEntity(sendData));
             }
 
-            HttpResponse response = httpClient.execute(httpPost);
-            HttpEntity entity = response.getEntity();
-            if (null != entity) {
-                responseContent = EntityUtils.toString(entity, decodeCharset==null ? "UTF-8" : decodeCharset);
-                EntityUtils.consume(entity);
-            }
+            responseContent = getDefaultTransport().execute(httpPost, decodeCharset);
         }catch(Exception e){
             System.out.println("与[" + url + "]通信过程中发生异常,堆栈信息如下");
             e.printStackTrace();
-        }finally{
-            httpClient.getConnectionManager().shutdown();
         }
         return responseContent;
     }
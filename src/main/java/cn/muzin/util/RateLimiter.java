@@ -0,0 +1,79 @@
+package cn.muzin.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 平滑限流，按固定间隔发放许可
+ *
+ * 每个许可占用 1 / permitsPerSecond 秒，空闲时不积累许可，因此不会出现突发流量。
+ * 可在多个线程间共享，用于把批量任务的请求速率控制在微信接口的频率限制之内。
+ *
+ * Examples:
+ * ```
+ * RateLimiter limiter = new RateLimiter(50);   // 每秒 50 个请求
+ * limiter.acquire();
+ * ```
+ */
+public class RateLimiter {
+
+    private final double permitsPerSecond;
+
+    private final long intervalNanos;
+
+    private long nextFreeNanos = System.nanoTime();
+
+    public RateLimiter(double permitsPerSecond) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    /**
+     * 获取一个许可，必要时阻塞等待
+     */
+    public void acquire() {
+        acquire(1);
+    }
+
+    /**
+     * 获取多个许可，必要时阻塞等待；等待时被中断则保留中断状态并立即返回
+     */
+    public void acquire(int permits) {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (nextFreeNanos < now) {
+                nextFreeNanos = now;
+            }
+            waitNanos = nextFreeNanos - now;
+            nextFreeNanos += intervalNanos * permits;
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 不等待地获取一个许可
+     * @return 是否获取成功
+     */
+    public synchronized boolean tryAcquire() {
+        long now = System.nanoTime();
+        if (nextFreeNanos > now) {
+            return false;
+        }
+        nextFreeNanos = now + intervalNanos;
+        return true;
+    }
+
+}
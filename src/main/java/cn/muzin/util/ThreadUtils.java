@@ -0,0 +1,74 @@
+package cn.muzin.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ThreadUtils {
+
+    private ThreadUtils(){}
+
+    /**
+     * JDK 21+ 的 `Executors.newVirtualThreadPerTaskExecutor`，低版本 JDK 上为 null
+     * 项目以 Java 8 为编译目标，因此通过反射调用
+     */
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findVirtualThreadFactory();
+
+    private static Method findVirtualThreadFactory(){
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 当前 JDK 是否支持虚拟线程
+     */
+    public static boolean isVirtualThreadSupported(){
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * 创建每个任务一个虚拟线程的线程池
+     * Examples:
+     * ```
+     * ExecutorService executor = ThreadUtils.newVirtualThreadPerTaskExecutor();
+     * ```
+     * @throws UnsupportedOperationException JDK 低于 21 时
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(){
+        if(NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null){
+            throw new UnsupportedOperationException("virtual threads require JDK 21+");
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        } catch (Exception e) {
+            throw new UnsupportedOperationException("virtual threads are not available", e);
+        }
+    }
+
+    /**
+     * 创建固定大小、由守护线程组成的线程池，进程退出时无需等待其关闭
+     * Examples:
+     * ```
+     * ExecutorService pool = ThreadUtils.newDaemonPool("wechatapi-bulk-users-", 16);
+     * ```
+     * @param namePrefix 线程名前缀，后接从 1 开始的序号
+     * @param threads 线程数
+     */
+    public static ExecutorService newDaemonPool(final String namePrefix, int threads){
+        final AtomicInteger index = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, namePrefix + index.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+}
@@ -0,0 +1,116 @@
+package wechatapi;
+
+import cn.muzin.WechatAPI;
+import cn.muzin.WechatAsyncAPI;
+import cn.muzin.http.AsyncWechatHttpTransport;
+import cn.muzin.http.WechatRequestEvent;
+import cn.muzin.http.WechatRequestListener;
+import cn.muzin.metrics.EndpointMetrics;
+import com.google.gson.JsonObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+public class APIAsyncTest {
+
+    /**
+     * 将同步的内存传输层包装为异步传输层
+     */
+    private static AsyncWechatHttpTransport async(final MemoryTransport transport){
+        return new AsyncWechatHttpTransport() {
+            @Override
+            public CompletableFuture<String> get(String url, Map<String, String> headers) {
+                return CompletableFuture.completedFuture(transport.get(url, headers));
+            }
+
+            @Override
+            public CompletableFuture<String> postJson(String url, String body) {
+                return CompletableFuture.completedFuture(transport.postJson(url, body));
+            }
+
+            @Override
+            public CompletableFuture<String> postFormData(String url, Map<String, Object> param) {
+                return CompletableFuture.completedFuture(transport.postFormData(url, param));
+            }
+
+            @Override
+            public void close() {
+
+            }
+        };
+    }
+
+    @Test
+    public void sendTextAsyncTest(){
+        MemoryTransport transport = new MemoryTransport();
+        WechatAPI wechatAPI = new WechatAPI("appid", "appsecret", transport);
+        WechatAsyncAPI asyncAPI = new WechatAsyncAPI(wechatAPI, async(transport));
+
+        List<CompletableFuture<JsonObject>> futures = new ArrayList<CompletableFuture<JsonObject>>();
+        for(int i = 0; i < 10; i++){
+            futures.add(asyncAPI.sendText("OPENID", "hello " + i));
+        }
+        for(CompletableFuture<JsonObject> future : futures){
+            Assert.assertEquals(0, future.join().get("errcode").getAsInt());
+        }
+
+        Assert.assertEquals(10, transport.count("cgi-bin/message/custom/send"));
+        Assert.assertTrue(transport.getRequests().get(1).contains("access_token=TOKEN"));
+        asyncAPI.close();
+    }
+
+    @Test
+    public void metricsAndListenerAsyncTest(){
+        MemoryTransport transport = new MemoryTransport();
+        final List<WechatRequestEvent> events = new ArrayList<WechatRequestEvent>();
+        WechatAPI wechatAPI = new WechatAPI("appid", "appsecret", transport).setRequestListener(new WechatRequestListener() {
+            @Override
+            public void onRequest(WechatRequestEvent event) {
+                synchronized (events) {
+                    events.add(event);
+                }
+            }
+        });
+        WechatAsyncAPI asyncAPI = new WechatAsyncAPI(wechatAPI, async(transport));
+        for(int i = 0; i < 3; i++){
+            asyncAPI.sendText("OPENID", "hello " + i).join();
+        }
+        asyncAPI.close();
+
+        EndpointMetrics send = wechatAPI.getMetrics().getEndpoint("cgi-bin/message/custom/send");
+        Assert.assertEquals(3, send.getCount());
+        Assert.assertEquals(0, send.getInFlight());
+        Assert.assertTrue(send.getBytesOut() > 0);
+        int sends = 0;
+        for(WechatRequestEvent event : events){
+            if("cgi-bin/message/custom/send".equals(event.getEndpoint())){
+                Assert.assertEquals("POST", event.getMethod());
+                sends++;
+            }
+        }
+        Assert.assertEquals(3, sends);
+    }
+
+    @Test
+    public void massSendFilterAsyncTest(){
+        MemoryTransport transport = new MemoryTransport();
+        WechatAPI wechatAPI = new WechatAPI("appid", "appsecret", transport);
+        WechatAsyncAPI asyncAPI = new WechatAsyncAPI(wechatAPI, async(transport));
+
+        Map<String, Object> opts = new HashMap<String, Object>();
+        opts.put("msgtype", "mpnews");
+        asyncAPI.massSend(opts, "2").join();
+        asyncAPI.massSend(opts, Arrays.asList("OPENID")).join();
+
+        Assert.assertEquals(1, opts.size());
+        Assert.assertTrue(transport.getBodies().get(1).contains("\"tag_id\":\"2\""));
+        Assert.assertEquals(1, transport.count("cgi-bin/message/mass/send"));
+    }
+
+}
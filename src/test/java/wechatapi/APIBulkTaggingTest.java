@@ -0,0 +1,111 @@
+package wechatapi;
+
+import cn.muzin.BulkTagResult;
+import cn.muzin.BulkTagger;
+import cn.muzin.WechatAPI;
+import cn.muzin.simulator.WechatSimulator;
+import cn.muzin.tag.TagIndex;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+public class APIBulkTaggingTest {
+
+    private WechatSimulator simulator;
+
+    private WechatAPI api;
+
+    private int tagId;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new WechatSimulator().setFollowerCount(5000).start();
+        api = new WechatAPI(simulator.getAppid(), simulator.getAppsecret()).setBaseUrl(simulator.getBaseUrl());
+        tagId = simulator.createTag();
+    }
+
+    @After
+    public void tearDown() {
+        api.close();
+        simulator.close();
+    }
+
+    @Test
+    public void tagInChunksTest() {
+        BulkTagResult result = new BulkTagger(api).setParallelism(8).tag(String.valueOf(tagId), openids(0, 1234));
+        Assert.assertTrue(result.isComplete());
+        Assert.assertEquals(1234, result.getSucceeded());
+        Assert.assertEquals(1234, simulator.getTagMemberCount(tagId));
+        Assert.assertEquals(25, simulator.getRequestCount("cgi-bin/tags/members/batchtagging"));
+
+        result = new BulkTagger(api).untag(String.valueOf(tagId), openids(0, 1000).stream());
+        Assert.assertEquals(1000, result.getSucceeded());
+        Assert.assertEquals(234, simulator.getTagMemberCount(tagId));
+    }
+
+    @Test
+    public void batchTaggingOverLimitTest() {
+        Assert.assertTrue(api.batchTagging(openids(0, 120), String.valueOf(tagId)));
+        Assert.assertEquals(120, simulator.getTagMemberCount(tagId));
+        Assert.assertEquals(3, simulator.getRequestCount("cgi-bin/tags/members/batchtagging"));
+
+        Assert.assertTrue(api.batchUnTagging(openids(0, 120), String.valueOf(tagId)));
+        Assert.assertEquals(0, simulator.getTagMemberCount(tagId));
+    }
+
+    @Test
+    public void failedChunkTest() {
+        List<String> openids = openids(0, 200);
+        openids.set(75, "unknown");
+        BulkTagResult result = new BulkTagger(api).tag(String.valueOf(tagId), openids);
+        Assert.assertFalse(result.isComplete());
+        Assert.assertEquals(150, result.getSucceeded());
+        Assert.assertEquals(1, result.getFailures().size());
+        Assert.assertEquals(40003, result.getFailures().get(0).getErrcode());
+        Assert.assertEquals(openids.subList(50, 100), result.getFailedOpenids());
+        Assert.assertFalse(api.batchTagging(openids, String.valueOf(tagId)));
+    }
+
+    @Test
+    public void rateLimitTest() {
+        long start = System.nanoTime();
+        BulkTagResult result = new BulkTagger(api).setRateLimit(20).tag(String.valueOf(tagId), openids(0, 500));
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        Assert.assertTrue(result.isComplete());
+        // 10 个请求，每秒 20 个，至少 450ms
+        Assert.assertTrue(elapsedMillis >= 400);
+    }
+
+    @Test
+    public void tagIndexUpdatedTest() {
+        TagIndex index = new TagIndex(api);
+        api.setTagIndex(index);
+        index.load(String.valueOf(tagId));
+        new BulkTagger(api).tag(String.valueOf(tagId), openids(0, 300));
+        Assert.assertEquals(300, index.getMembers(String.valueOf(tagId)).size());
+    }
+
+    @Test
+    public void moveUsersToGroupTest() {
+        Assert.assertTrue(api.moveUsersToGroup(openids(0, 130), "108"));
+        Assert.assertEquals(3, simulator.getRequestCount("cgi-bin/groups/members/batchupdate"));
+
+        BulkTagResult result = new BulkTagger(api).moveToGroup("108",
+                IntStream.range(0, 1000).mapToObj(WechatSimulator::openid));
+        Assert.assertEquals(1000, result.getSucceeded());
+    }
+
+    private static List<String> openids(int from, int to) {
+        List<String> openids = new ArrayList<String>();
+        for (int i = from; i < to; i++) {
+            openids.add(WechatSimulator.openid(i));
+        }
+        return openids;
+    }
+
+}
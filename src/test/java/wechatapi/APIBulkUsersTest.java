@@ -0,0 +1,95 @@
+package wechatapi;
+
+import cn.muzin.BulkUserFetcher;
+import cn.muzin.BulkUserResult;
+import cn.muzin.WechatAPI;
+import cn.muzin.entity.BatchFailure;
+import cn.muzin.simulator.WechatSimulator;
+import com.google.gson.JsonObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+public class APIBulkUsersTest {
+
+    private WechatSimulator simulator;
+
+    private WechatAPI api;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new WechatSimulator().setFollowerCount(25000).setLatency(5, 0).start();
+        api = new WechatAPI(simulator.getAppid(), simulator.getAppsecret()).setBaseUrl(simulator.getBaseUrl());
+    }
+
+    @After
+    public void tearDown() {
+        api.close();
+        simulator.close();
+    }
+
+    private static List<String> openids(int count) {
+        List<String> openids = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            openids.add(WechatSimulator.openid(i));
+        }
+        return openids;
+    }
+
+    @Test
+    public void fetchAllInOrderTest() {
+        BulkUserResult result = new BulkUserFetcher(api).setParallelism(8).fetchAll(openids(1050));
+
+        Assert.assertTrue(result.isComplete());
+        Assert.assertEquals(1050, result.getUsers().size());
+        for (int i = 0; i < 1050; i++) {
+            Assert.assertEquals(WechatSimulator.openid(i), result.getUsers().get(i).get("openid").getAsString());
+        }
+        Assert.assertEquals("user777", result.getUser(WechatSimulator.openid(777)).get("nickname").getAsString());
+        Assert.assertEquals(11, simulator.getRequestCount("cgi-bin/user/info/batchget"));
+    }
+
+    @Test
+    public void partialFailureTest() {
+        simulator.failNext("cgi-bin/user/info/batchget", 45009, "reach max api daily quota limit");
+        List<String> openids = openids(500);
+        openids.set(250, "INVALID");
+
+        BulkUserResult result = new BulkUserFetcher(api).setParallelism(1).fetchAll(openids);
+
+        Assert.assertEquals(2, result.getFailures().size());
+        Assert.assertEquals(45009, result.getFailures().get(0).getErrcode());
+        Assert.assertEquals(40003, result.getFailures().get(1).getErrcode());
+        Assert.assertEquals(300, result.getUsers().size());
+        Assert.assertEquals(200, result.getFailedOpenids().size());
+        Assert.assertTrue(result.getFailedOpenids().contains("INVALID"));
+    }
+
+    @Test
+    public void streamFollowersWithRateLimitTest() {
+        final AtomicInteger count = new AtomicInteger();
+        long start = System.currentTimeMillis();
+        List<BatchFailure> failures = new BulkUserFetcher(api)
+                .setParallelism(16)
+                .setRateLimit(100)
+                .fetch(api.followers(), new Consumer<JsonObject>() {
+                    @Override
+                    public void accept(JsonObject user) {
+                        Assert.assertEquals(WechatSimulator.openid(count.getAndIncrement()), user.get("openid").getAsString());
+                    }
+                });
+        long elapsed = System.currentTimeMillis() - start;
+
+        Assert.assertTrue(failures.isEmpty());
+        Assert.assertEquals(25000, count.get());
+        // 250 个请求，每秒不超过 100 个
+        Assert.assertTrue(elapsed >= 2400);
+    }
+
+}
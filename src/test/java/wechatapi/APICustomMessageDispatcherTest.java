@@ -0,0 +1,194 @@
+package wechatapi;
+
+import cn.muzin.WechatAPI;
+import cn.muzin.dispatch.CustomMessage;
+import cn.muzin.dispatch.CustomMessageDispatcher;
+import cn.muzin.dispatch.DispatchCallback;
+import cn.muzin.simulator.WechatSimulator;
+import com.google.gson.JsonObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class APICustomMessageDispatcherTest {
+
+    private WechatSimulator simulator;
+
+    private WechatAPI api;
+
+    private final AtomicInteger successes = new AtomicInteger();
+
+    private final Queue<String> failures = new ConcurrentLinkedQueue<String>();
+
+    private final DispatchCallback callback = new DispatchCallback() {
+        @Override
+        public void onSuccess(CustomMessage message, JsonObject resp) {
+            successes.incrementAndGet();
+        }
+
+        @Override
+        public void onFailure(CustomMessage message, int errcode, String errmsg, int attempts) {
+            failures.add(message.getAttachment() + ":" + errcode + ":" + attempts);
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new WechatSimulator().setFollowerCount(1000).start();
+        api = new WechatAPI(simulator.getAppid(), simulator.getAppsecret()).setBaseUrl(simulator.getBaseUrl());
+    }
+
+    @After
+    public void tearDown() {
+        api.close();
+        simulator.close();
+    }
+
+    @Test
+    public void perUserOrderingTest() throws Exception {
+        simulator.setLatency(1, 3);
+        CustomMessageDispatcher dispatcher = new CustomMessageDispatcher(api)
+                .setWorkers(16)
+                .setQueueCapacity(500)
+                .setCallback(callback);
+        for (int i = 0; i < 20; i++) {
+            for (int user = 0; user < 100; user++) {
+                dispatcher.submit(CustomMessage.text(WechatSimulator.openid(user), String.valueOf(i)));
+            }
+        }
+        dispatcher.close();
+
+        Assert.assertEquals(2000, successes.get());
+        Assert.assertEquals(2000, dispatcher.getSucceededCount());
+        Assert.assertEquals(0, dispatcher.getPendingCount());
+        for (int user = 0; user < 100; user++) {
+            List<JsonObject> messages = simulator.getCustomMessages(WechatSimulator.openid(user));
+            Assert.assertEquals(20, messages.size());
+            for (int i = 0; i < 20; i++) {
+                Assert.assertEquals(String.valueOf(i),
+                        messages.get(i).getAsJsonObject("text").get("content").getAsString());
+            }
+        }
+    }
+
+    @Test
+    public void retryTransientErrorTest() throws Exception {
+        simulator.failNext("cgi-bin/message/custom/send", -1, "system error", 2);
+        CustomMessageDispatcher dispatcher = new CustomMessageDispatcher(api)
+                .setBackoff(10, 50)
+                .setCallback(callback);
+        String openid = WechatSimulator.openid(1);
+        dispatcher.submit(CustomMessage.text(openid, "first"));
+        dispatcher.submit(CustomMessage.text(openid, "second"));
+        dispatcher.close();
+
+        Assert.assertEquals(2, successes.get());
+        Assert.assertEquals(2, dispatcher.getRetriedCount());
+        List<JsonObject> messages = simulator.getCustomMessages(openid);
+        // 重试期间同一用户的后续消息等待
+        Assert.assertEquals("first", messages.get(0).getAsJsonObject("text").get("content").getAsString());
+        Assert.assertEquals("second", messages.get(1).getAsJsonObject("text").get("content").getAsString());
+    }
+
+    @Test
+    public void retryExhaustedTest() throws Exception {
+        simulator.failNext("cgi-bin/message/custom/send", 45011, "api minute-quota reach limit", 5);
+        CustomMessageDispatcher dispatcher = new CustomMessageDispatcher(api)
+                .setMaxAttempts(3)
+                .setBackoff(1, 5)
+                .setCallback(callback);
+        dispatcher.submit(CustomMessage.text(WechatSimulator.openid(1), "hello").withAttachment("order-1"));
+        dispatcher.close();
+
+        Assert.assertEquals(0, successes.get());
+        Assert.assertEquals("order-1:45011:3", failures.poll());
+    }
+
+    @Test
+    public void nonRetryableErrorTest() throws Exception {
+        CustomMessageDispatcher dispatcher = new CustomMessageDispatcher(api).setCallback(callback);
+        dispatcher.submit(CustomMessage.text("unknown", "hello").withAttachment("order-2"));
+        dispatcher.submit(CustomMessage.image(WechatSimulator.openid(2), "media_id"));
+        dispatcher.close();
+
+        Assert.assertEquals(1, successes.get());
+        Assert.assertEquals("order-2:40003:1", failures.poll());
+        Assert.assertEquals(0, dispatcher.getRetriedCount());
+    }
+
+    @Test
+    public void backpressureTest() throws Exception {
+        simulator.setLatency(200, 0);
+        CustomMessageDispatcher dispatcher = new CustomMessageDispatcher(api)
+                .setWorkers(1)
+                .setQueueCapacity(3);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(dispatcher.trySubmit(CustomMessage.text(WechatSimulator.openid(i), "hello")));
+        }
+        Assert.assertFalse(dispatcher.trySubmit(CustomMessage.text(WechatSimulator.openid(3), "hello")));
+        Assert.assertFalse(dispatcher.offer(CustomMessage.text(WechatSimulator.openid(3), "hello"), 10, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(dispatcher.awaitIdle(5, TimeUnit.SECONDS));
+        Assert.assertTrue(dispatcher.trySubmit(CustomMessage.text(WechatSimulator.openid(3), "hello")));
+        dispatcher.close();
+        Assert.assertEquals(4, dispatcher.getSucceededCount());
+    }
+
+    @Test
+    public void rateLimitTest() throws Exception {
+        CustomMessageDispatcher dispatcher = new CustomMessageDispatcher(api).setRateLimit(50);
+        long start = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            dispatcher.submit(CustomMessage.text(WechatSimulator.openid(i), "hello"));
+        }
+        dispatcher.close();
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        // 20 条，每秒 50 条，至少 380ms
+        Assert.assertTrue(elapsedMillis >= 350);
+        Assert.assertEquals(20, dispatcher.getSucceededCount());
+    }
+
+    @Test
+    public void submitBlockedDuringCloseTest() throws Exception {
+        simulator.setLatency(300, 0);
+        final CustomMessageDispatcher dispatcher = new CustomMessageDispatcher(api)
+                .setQueueCapacity(1)
+                .setCallback(callback);
+        dispatcher.submit(CustomMessage.text(WechatSimulator.openid(0), "first"));
+        final AtomicReference<Throwable> result = new AtomicReference<Throwable>();
+        Thread submitter = new Thread(() -> {
+            try {
+                // 队列已满，等待容量时 close 开始
+                dispatcher.submit(CustomMessage.text(WechatSimulator.openid(1), "second"));
+            } catch (Throwable e) {
+                result.set(e);
+            }
+        });
+        submitter.start();
+        while (submitter.getState() != Thread.State.WAITING) {
+            Thread.sleep(5);
+        }
+        dispatcher.close();
+        submitter.join();
+
+        // 未进入队列的消息被拒绝，不会在线程池关闭后丢失
+        Assert.assertTrue(result.get() instanceof IllegalStateException);
+        Assert.assertEquals(1, successes.get());
+        Assert.assertEquals(0, dispatcher.getPendingCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void submitAfterCloseTest() throws Exception {
+        CustomMessageDispatcher dispatcher = new CustomMessageDispatcher(api);
+        dispatcher.close();
+        dispatcher.submit(CustomMessage.text(WechatSimulator.openid(0), "hello"));
+    }
+
+}
@@ -0,0 +1,218 @@
+package wechatapi;
+
+import cn.muzin.BulkUserFetcher;
+import cn.muzin.WechatAPI;
+import cn.muzin.simulator.WechatSimulator;
+import cn.muzin.sync.BlockingQueueSink;
+import cn.muzin.sync.FileSyncCheckpoint;
+import cn.muzin.sync.FollowerSync;
+import cn.muzin.sync.JsonLinesSink;
+import cn.muzin.sync.SyncResult;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+public class APIFollowerSyncTest {
+
+    private WechatSimulator simulator;
+
+    private WechatAPI api;
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new WechatSimulator().setFollowerCount(25000).start();
+        api = new WechatAPI(simulator.getAppid(), simulator.getAppsecret()).setBaseUrl(simulator.getBaseUrl());
+        dir = Files.createTempDirectory("follower-sync");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        api.close();
+        simulator.close();
+        for (Path file : Files.newDirectoryStream(dir)) {
+            Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+
+    private static void assertInOrder(List<String> lines, int count) {
+        Assert.assertEquals(count, lines.size());
+        JsonParser parser = new JsonParser();
+        for (int i = 0; i < count; i++) {
+            JsonObject profile = parser.parse(lines.get(i)).getAsJsonObject();
+            Assert.assertEquals(WechatSimulator.openid(i), profile.get("openid").getAsString());
+        }
+    }
+
+    @Test
+    public void syncToJsonLinesTest() throws Exception {
+        Path output = dir.resolve("followers.jsonl");
+        FileSyncCheckpoint checkpoint = new FileSyncCheckpoint(dir.resolve("followers.checkpoint"));
+        FollowerSync sync = new FollowerSync(api)
+                .setFetcher(new BulkUserFetcher(api).setParallelism(8))
+                .setCheckpoint(checkpoint);
+
+        JsonLinesSink sink = new JsonLinesSink(output);
+        SyncResult result;
+        try {
+            result = sync.run(sink);
+        } finally {
+            sink.close();
+        }
+
+        Assert.assertEquals(25000, result.getProfileCount());
+        Assert.assertEquals(25000, result.getTotal());
+        Assert.assertTrue(result.getFailures().isEmpty());
+        Assert.assertNull(checkpoint.load());
+        assertInOrder(Files.readAllLines(output, Charset.forName("UTF-8")), 25000);
+        Assert.assertEquals(250, simulator.getRequestCount("cgi-bin/user/info/batchget"));
+    }
+
+    @Test
+    public void resumeAfterCrashTest() throws Exception {
+        Path output = dir.resolve("followers.jsonl");
+        FileSyncCheckpoint checkpoint = new FileSyncCheckpoint(dir.resolve("followers.checkpoint"));
+        FollowerSync sync = new FollowerSync(api).setCheckpoint(checkpoint).setCheckpointInterval(1000);
+
+        // 写入 12345 个用户后进程异常
+        JsonLinesSink crashing = new JsonLinesSink(output) {
+            int written;
+
+            @Override
+            public void accept(JsonObject profile) throws IOException {
+                if (written++ == 12345) {
+                    throw new IOException("disk full");
+                }
+                super.accept(profile);
+            }
+        };
+        try {
+            sync.run(crashing);
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals("disk full", e.getMessage());
+        } finally {
+            crashing.close();
+        }
+        Assert.assertEquals(WechatSimulator.openid(12344), checkpoint.load());
+
+        JsonLinesSink sink = new JsonLinesSink(output);
+        SyncResult result;
+        try {
+            result = sync.run(sink);
+        } finally {
+            sink.close();
+        }
+        Assert.assertEquals(WechatSimulator.openid(12344), result.getResumedFrom());
+        Assert.assertEquals(25000 - 12345, result.getProfileCount());
+        assertInOrder(Files.readAllLines(output, Charset.forName("UTF-8")), 25000);
+    }
+
+    @Test
+    public void resumeFailedBatchTest() throws Exception {
+        Path output = dir.resolve("followers.jsonl");
+        FileSyncCheckpoint checkpoint = new FileSyncCheckpoint(dir.resolve("followers.checkpoint"));
+        final List<String> failed = new ArrayList<String>();
+        FollowerSync sync = new FollowerSync(api)
+                .setFetcher(new BulkUserFetcher(api).setParallelism(1))
+                .setCheckpoint(checkpoint)
+                .setCheckpointInterval(1000)
+                .setFailureHandler(failure -> failed.addAll(failure.getOpenids()));
+
+        // 写入 3000 个用户后一批获取失败，写入 6000 个用户后进程异常
+        JsonLinesSink crashing = new JsonLinesSink(output) {
+            int written;
+
+            @Override
+            public void accept(JsonObject profile) throws IOException {
+                if (written == 3000) {
+                    simulator.failNext("cgi-bin/user/info/batchget", 45009, "reach max api daily quota limit");
+                } else if (written == 6000) {
+                    throw new IOException("disk full");
+                }
+                written++;
+                super.accept(profile);
+            }
+        };
+        try {
+            sync.run(crashing);
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals("disk full", e.getMessage());
+        } finally {
+            crashing.close();
+        }
+        Assert.assertEquals(100, failed.size());
+        // 检查点停留在失败的批次之前
+        int first = Integer.parseInt(failed.get(0).substring("oSIM".length()));
+        Assert.assertEquals(WechatSimulator.openid(first - 1), checkpoint.load());
+
+        LinkedBlockingQueue<JsonObject> queue = new LinkedBlockingQueue<JsonObject>();
+        SyncResult result = sync.setFailureHandler(null).run(new BlockingQueueSink(queue));
+        Assert.assertTrue(result.getFailures().isEmpty());
+        Assert.assertEquals(25000 - first, result.getProfileCount());
+        Assert.assertEquals(failed.get(0), queue.peek().get("openid").getAsString());
+        Assert.assertNull(checkpoint.load());
+    }
+
+    @Test
+    public void completedWithFailuresKeepsCheckpointTest() throws Exception {
+        simulator.setFollowerCount(1000);
+        FileSyncCheckpoint checkpoint = new FileSyncCheckpoint(dir.resolve("followers.checkpoint"));
+        FollowerSync sync = new FollowerSync(api)
+                .setFetcher(new BulkUserFetcher(api).setParallelism(1))
+                .setCheckpoint(checkpoint);
+        final LinkedBlockingQueue<JsonObject> queue = new LinkedBlockingQueue<JsonObject>();
+        BlockingQueueSink sink = new BlockingQueueSink(queue) {
+            @Override
+            public void accept(JsonObject profile) throws IOException {
+                if (queue.size() == 300) {
+                    simulator.failNext("cgi-bin/user/info/batchget", 45009, "reach max api daily quota limit");
+                }
+                super.accept(profile);
+            }
+        };
+        SyncResult result = sync.run(sink);
+        Assert.assertEquals(1, result.getFailures().size());
+        // 同步结束时不清除检查点，下次从失败的批次继续
+        String failedFrom = result.getFailedOpenids().get(0);
+        String saved = checkpoint.load();
+        Assert.assertNotNull(saved);
+
+        queue.clear();
+        result = new FollowerSync(api).setCheckpoint(checkpoint).run(new BlockingQueueSink(queue));
+        Assert.assertEquals(saved, result.getResumedFrom());
+        Assert.assertEquals(failedFrom, queue.peek().get("openid").getAsString());
+        Assert.assertNull(checkpoint.load());
+    }
+
+    @Test
+    public void blockingQueueSinkWithFailuresTest() throws Exception {
+        simulator.setFollowerCount(1000);
+        simulator.failNext("cgi-bin/user/info/batchget", 45009, "reach max api daily quota limit");
+        LinkedBlockingQueue<JsonObject> queue = new LinkedBlockingQueue<JsonObject>();
+
+        SyncResult result = new FollowerSync(api)
+                .setFetcher(new BulkUserFetcher(api).setParallelism(1))
+                .run(new BlockingQueueSink(queue));
+
+        Assert.assertEquals(900, queue.size());
+        Assert.assertEquals(1, result.getFailures().size());
+        Assert.assertEquals(100, result.getFailedOpenids().size());
+        Assert.assertEquals(WechatSimulator.openid(100), queue.peek().get("openid").getAsString());
+    }
+
+}
@@ -0,0 +1,87 @@
+package wechatapi;
+
+import cn.muzin.FollowerIterator;
+import cn.muzin.WechatAPI;
+import cn.muzin.exception.WechatApiException;
+import cn.muzin.simulator.WechatSimulator;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.stream.Stream;
+
+public class APIFollowersTest {
+
+    private WechatSimulator simulator;
+
+    private WechatAPI api;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new WechatSimulator().setFollowerCount(25000).start();
+        api = new WechatAPI(simulator.getAppid(), simulator.getAppsecret()).setBaseUrl(simulator.getBaseUrl());
+    }
+
+    @After
+    public void tearDown() {
+        api.close();
+        simulator.close();
+    }
+
+    @Test
+    public void iterateAllFollowersTest() {
+        FollowerIterator it = api.followers();
+        int count = 0;
+        while (it.hasNext()) {
+            Assert.assertEquals(WechatSimulator.openid(count), it.next());
+            count++;
+        }
+        Assert.assertEquals(25000, count);
+        Assert.assertEquals(25000, it.getTotal());
+        // 最后一页不足 10000 个，无需再请求空页
+        Assert.assertEquals(3, simulator.getRequestCount("cgi-bin/user/get"));
+    }
+
+    @Test
+    public void streamTest() {
+        Stream<String> openids = api.followerStream();
+        try {
+            Assert.assertEquals(25000, openids.distinct().count());
+        } finally {
+            openids.close();
+        }
+    }
+
+    @Test
+    public void resumeFromCheckpointTest() {
+        FollowerIterator it = api.followers();
+        for (int i = 0; i < 12345; i++) {
+            it.next();
+        }
+        String checkpoint = it.getCheckpoint();
+        it.close();
+
+        FollowerIterator resumed = api.followers(checkpoint);
+        Assert.assertEquals(WechatSimulator.openid(12345), resumed.next());
+        int count = 1;
+        while (resumed.hasNext()) {
+            resumed.next();
+            count++;
+        }
+        Assert.assertEquals(25000 - 12345, count);
+    }
+
+    @Test
+    public void errorOnPageTest() {
+        simulator.failNext("cgi-bin/user/get", 45009, "reach max api daily quota limit");
+        FollowerIterator it = api.followers();
+        try {
+            it.hasNext();
+            Assert.fail();
+        } catch (WechatApiException e) {
+            Assert.assertEquals(45009, e.getErrcode());
+        }
+    }
+
+}
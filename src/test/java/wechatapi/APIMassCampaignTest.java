@@ -0,0 +1,195 @@
+package wechatapi;
+
+import cn.muzin.WechatAPI;
+import cn.muzin.mass.FileMassCampaignStore;
+import cn.muzin.mass.MassCampaign;
+import cn.muzin.mass.MassCampaignResult;
+import cn.muzin.simulator.WechatSimulator;
+import com.google.gson.JsonObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class APIMassCampaignTest {
+
+    private WechatSimulator simulator;
+
+    private WechatAPI api;
+
+    private Map<String, Object> message;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new WechatSimulator().setFollowerCount(5000).start();
+        api = new WechatAPI(simulator.getAppid(), simulator.getAppsecret()).setBaseUrl(simulator.getBaseUrl());
+
+        Map<String, Object> text = new HashMap<String, Object>();
+        text.put("content", "群发消息");
+        message = new HashMap<String, Object>();
+        message.put("msgtype", "text");
+        message.put("text", text);
+    }
+
+    @After
+    public void tearDown() {
+        api.close();
+        simulator.close();
+    }
+
+    private static List<String> openids(int from, int to) {
+        return IntStream.range(from, to).mapToObj(WechatSimulator::openid).collect(Collectors.toList());
+    }
+
+    @Test
+    public void shardTest() {
+        MassCampaign campaign = new MassCampaign(api, "shard", message).setShardSize(1000).setPollInterval(0);
+        MassCampaignResult result = campaign.run(openids(0, 2001).stream());
+        Assert.assertTrue(result.isComplete());
+        Assert.assertEquals(3, result.getShardCount());
+        Assert.assertEquals(2001, result.getReceivers());
+        Assert.assertEquals(3, result.getSubmittedShards());
+
+        List<JsonObject> messages = simulator.getMassMessages();
+        Assert.assertEquals(3, messages.size());
+        // 最后剩下 1 个用户时从上一批移出一个，每批至少 2 个 openid
+        Map<String, Integer> sizes = new HashMap<String, Integer>();
+        for (JsonObject mass : messages) {
+            sizes.put(mass.get("clientmsgid").getAsString(), mass.getAsJsonArray("touser").size());
+            Assert.assertEquals("群发消息", mass.getAsJsonObject("text").get("content").getAsString());
+        }
+        Assert.assertEquals(Integer.valueOf(1000), sizes.get("shard-0"));
+        Assert.assertEquals(Integer.valueOf(999), sizes.get("shard-1"));
+        Assert.assertEquals(Integer.valueOf(2), sizes.get("shard-2"));
+        Assert.assertEquals(3, result.getMsgIds().size());
+        // 传入的消息未被修改
+        Assert.assertFalse(message.containsKey("touser"));
+    }
+
+    @Test
+    public void singleReceiverTest() {
+        MassCampaignResult result = new MassCampaign(api, "single", message).setPollInterval(0)
+                .run(openids(0, 1));
+        Assert.assertFalse(result.isComplete());
+        Assert.assertEquals(0, result.getShardCount());
+        Assert.assertEquals(MassCampaign.INVALID_OPENID_LIST_SIZE, result.getFailures().get(0).getErrcode());
+        Assert.assertEquals(openids(0, 1), result.getFailedOpenids());
+        // 不发起请求
+        Assert.assertTrue(simulator.getMassMessages().isEmpty());
+        Assert.assertTrue(result.isDelivered());
+    }
+
+    @Test
+    public void resumeTest() throws Exception {
+        Path file = Files.createTempFile("mass-campaign", ".log");
+        try {
+            simulator.failNext("cgi-bin/message/mass/send", 45028, "has no masssend quota");
+            MassCampaignResult first = new MassCampaign(api, "resume", message)
+                    .setShardSize(500)
+                    .setParallelism(1)
+                    .setPollInterval(0)
+                    .setStore(new FileMassCampaignStore(file))
+                    .run(openids(0, 2000));
+            Assert.assertFalse(first.isComplete());
+            Assert.assertEquals(3, first.getSubmittedShards());
+            Assert.assertEquals(45028, first.getFailures().get(0).getErrcode());
+            Assert.assertEquals(openids(0, 500), first.getFailedOpenids());
+
+            // 新进程从文件记录续传，只提交失败的批次
+            MassCampaignResult second = new MassCampaign(api, "resume", message)
+                    .setShardSize(500)
+                    .setPollInterval(0)
+                    .setStore(new FileMassCampaignStore(file))
+                    .run(openids(0, 2000));
+            Assert.assertTrue(second.isComplete());
+            Assert.assertEquals(1, second.getSubmittedShards());
+            Assert.assertEquals(3, second.getResumedShards());
+            Assert.assertEquals(4, simulator.getMassMessages().size());
+            Assert.assertEquals(first.getMsgIds().get("resume-1"), second.getMsgIds().get("resume-1"));
+
+            // 本地记录丢失时由接口的 45065 去重
+            MassCampaignResult third = new MassCampaign(api, "resume", message)
+                    .setShardSize(500)
+                    .setPollInterval(0)
+                    .run(openids(0, 2000));
+            Assert.assertTrue(third.isComplete());
+            Assert.assertEquals(0, third.getSubmittedShards());
+            Assert.assertEquals(4, third.getResumedShards());
+            Assert.assertEquals(4, simulator.getMassMessages().size());
+            Assert.assertEquals(second.getMsgIds(), third.getMsgIds());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void deliveryTest() throws Exception {
+        MassCampaign campaign = new MassCampaign(api, "delivery", message).setShardSize(1000).setPollInterval(20);
+        try {
+            MassCampaignResult result = campaign.run(openids(0, 3500));
+            Assert.assertEquals(4, result.getShardCount());
+            Assert.assertTrue(result.awaitDelivery(5, TimeUnit.SECONDS));
+            Assert.assertTrue(result.isDelivered());
+            Map<String, Long> stats = result.getDeliveryStats();
+            Assert.assertEquals(Long.valueOf(3500), stats.get("SEND_SUCCESS"));
+            Assert.assertEquals("SEND_SUCCESS", result.getStatus("delivery-3"));
+        } finally {
+            campaign.close();
+        }
+    }
+
+    @Test
+    public void deliveryStatusUnavailableTest() throws Exception {
+        MassCampaign campaign = new MassCampaign(api, "unknown", message).setShardSize(1000).setPollInterval(20);
+        try {
+            // 查询持续返回 errcode 的批次不会一直处于 SENDING
+            simulator.failNext("cgi-bin/message/mass/get", 40007, "invalid msg_id", 1000);
+            MassCampaignResult result = campaign.run(openids(0, 1500));
+            Assert.assertTrue(result.awaitDelivery(5, TimeUnit.SECONDS));
+            Assert.assertEquals(Long.valueOf(1500), result.getDeliveryStats().get(MassCampaignResult.UNKNOWN));
+        } finally {
+            campaign.close();
+        }
+    }
+
+    @Test
+    public void deliveryStatusBusyTest() throws Exception {
+        MassCampaign campaign = new MassCampaign(api, "busy", message).setPollInterval(20);
+        try {
+            // 系统繁忙时继续查询，连续失败 3 次后记为 UNKNOWN
+            simulator.failNext("cgi-bin/message/mass/get", -1, "system error", 1000);
+            MassCampaignResult result = campaign.run(openids(0, 10));
+            Assert.assertFalse(result.awaitDelivery(30, TimeUnit.MILLISECONDS));
+            Assert.assertTrue(result.awaitDelivery(5, TimeUnit.SECONDS));
+            Assert.assertEquals(MassCampaignResult.UNKNOWN, result.getStatus("busy-0"));
+        } finally {
+            campaign.close();
+        }
+    }
+
+    @Test
+    public void tagTest() {
+        int tagId = simulator.createTag();
+        simulator.tagUsers(tagId, 100, 2600);
+        MassCampaignResult result = new MassCampaign(api, "tag", message).setPollInterval(0)
+                .runForTag(String.valueOf(tagId));
+        Assert.assertTrue(result.isComplete());
+        Assert.assertEquals(1, result.getShardCount());
+        Assert.assertEquals(2500, result.getReceivers());
+
+        List<String> touser = new ArrayList<String>();
+        simulator.getMassMessages().get(0).getAsJsonArray("touser").forEach(e -> touser.add(e.getAsString()));
+        Assert.assertEquals(openids(100, 2600), touser);
+    }
+
+}
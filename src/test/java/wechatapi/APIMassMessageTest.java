@@ -0,0 +1,175 @@
+package wechatapi;
+
+import cn.muzin.WechatAPI;
+import cn.muzin.http.JdkHttpTransport;
+import cn.muzin.mass.MassCampaign;
+import cn.muzin.mass.MassCampaignResult;
+import cn.muzin.mass.MassMessage;
+import cn.muzin.simulator.WechatSimulator;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class APIMassMessageTest {
+
+    private WechatSimulator simulator;
+
+    private WechatAPI api;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new WechatSimulator().setFollowerCount(3000).start();
+        api = new WechatAPI(simulator.getAppid(), simulator.getAppsecret()).setBaseUrl(simulator.getBaseUrl());
+    }
+
+    @After
+    public void tearDown() {
+        api.close();
+        simulator.close();
+    }
+
+    private static List<String> openids(int from, int to) {
+        return IntStream.range(from, to).mapToObj(WechatSimulator::openid).collect(Collectors.toList());
+    }
+
+    @Test
+    public void massSendToTagTest() {
+        int tagId = simulator.createTag();
+        Map<String, Object> text = new HashMap<String, Object>();
+        text.put("content", "hello");
+        Map<String, Object> opts = new HashMap<String, Object>();
+        opts.put("msgtype", "text");
+        opts.put("text", text);
+
+        JsonObject resp = api.massSend(opts, String.valueOf(tagId));
+        Assert.assertEquals(0, resp.get("errcode").getAsInt());
+        JsonObject filter = simulator.getMassMessages().get(0).getAsJsonObject("filter");
+        Assert.assertFalse(filter.get("is_to_all").getAsBoolean());
+        Assert.assertEquals(String.valueOf(tagId), filter.get("tag_id").getAsString());
+        // 调用方的 opts 未被修改，可以再次用于其他接收人
+        Assert.assertEquals(2, opts.size());
+
+        resp = api.massSend(opts, openids(0, 10));
+        Assert.assertEquals(0, resp.get("errcode").getAsInt());
+        Assert.assertFalse(simulator.getMassMessages().get(1).has("filter"));
+
+        resp = api.massSend(opts, true);
+        Assert.assertEquals(0, resp.get("errcode").getAsInt());
+        Assert.assertTrue(simulator.getMassMessages().get(2).getAsJsonObject("filter").get("is_to_all").getAsBoolean());
+        Assert.assertEquals(2, opts.size());
+    }
+
+    @Test
+    public void builderTest() {
+        MassMessage message = MassMessage.mpNews("MEDIA_ID")
+                .toTag("2")
+                .setSendIgnoreReprint(1)
+                .setClientMsgId("news-1")
+                .build();
+        Assert.assertEquals("message/mass/sendall", message.getEndpoint());
+
+        ByteBuffer body = message.getBody();
+        byte[] bytes = new byte[body.remaining()];
+        body.get(bytes);
+        JsonObject json = new JsonParser().parse(new String(bytes, Charset.forName("UTF-8"))).getAsJsonObject();
+        Assert.assertEquals("mpnews", json.get("msgtype").getAsString());
+        Assert.assertEquals("MEDIA_ID", json.getAsJsonObject("mpnews").get("media_id").getAsString());
+        Assert.assertEquals("2", json.getAsJsonObject("filter").get("tag_id").getAsString());
+        Assert.assertEquals(1, json.get("send_ignore_reprint").getAsInt());
+        Assert.assertEquals("news-1", json.get("clientmsgid").getAsString());
+        // 每次返回独立的视图
+        Assert.assertEquals(bytes.length, message.getBody().remaining());
+
+        MassMessage card = MassMessage.card("CARD_ID").toUsers(openids(0, 2)).build();
+        Assert.assertEquals("message/mass/send", card.getEndpoint());
+        Assert.assertEquals("CARD_ID", card.getContent().get("card_id"));
+        Assert.assertEquals("wxcard", card.getMsgtype());
+
+        try {
+            MassMessage.text("hello").build();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // 未指定接收人
+        }
+        try {
+            MassMessage.text("hello").toUsers(Collections.singletonList("oSIM"));
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // 至少 2 个 openid
+        }
+        try {
+            MassMessage.image("").toAll();
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // 缺少 media_id
+        }
+    }
+
+    @Test
+    public void massSendMessageTest() {
+        MassMessage message = MassMessage.text("你好")
+                .toUsers(openids(0, 100))
+                .setClientMsgId("text-1")
+                .build();
+        JsonObject first = api.massSend(message);
+        Assert.assertEquals(0, first.get("errcode").getAsInt());
+
+        // 重试时直接重发同一份请求体，接口按 clientmsgid 去重
+        JsonObject retry = api.massSend(message);
+        Assert.assertEquals(MassCampaign.CLIENT_MSG_ID_EXISTS, retry.get("errcode").getAsInt());
+        Assert.assertEquals(first.get("msg_id").getAsLong(), retry.get("msg_id").getAsLong());
+        Assert.assertEquals(1, simulator.getMassMessages().size());
+        Assert.assertEquals("你好", simulator.getMassMessages().get(0).getAsJsonObject("text").get("content").getAsString());
+
+        JsonObject resp = api.massSend(MassMessage.voice("MEDIA_ID").toTag("99999").build());
+        Assert.assertEquals(45159, resp.get("errcode").getAsInt());
+    }
+
+    @Test
+    public void massSendJdkTransportTest() {
+        WechatAPI jdkApi = new WechatAPI(simulator.getAppid(), simulator.getAppsecret(), new JdkHttpTransport())
+                .setBaseUrl(simulator.getBaseUrl());
+        try {
+            MassMessage message = MassMessage.text("你好").toUsers(openids(0, 10)).build();
+            ByteBuffer body = message.getBody();
+            Assert.assertEquals(0, jdkApi.massSend(message).get("errcode").getAsInt());
+            Assert.assertEquals(0, jdkApi.massSend(message).get("errcode").getAsInt());
+            Assert.assertEquals(2, simulator.getMassMessages().size());
+            Assert.assertEquals(10, simulator.getMassMessages().get(1).getAsJsonArray("touser").size());
+            // 请求体直接写出，未改变消息中的内容
+            Assert.assertEquals(message.getBodyLength(), body.remaining());
+            Assert.assertEquals(body, message.getBody());
+        } finally {
+            jdkApi.close();
+        }
+    }
+
+    @Test
+    public void campaignWithMessageTest() {
+        MassMessage message = MassMessage.mpNews("MEDIA_ID").toAll().setSendIgnoreReprint(1).build();
+        MassCampaignResult result = new MassCampaign(api, "news", message)
+                .setShardSize(1000)
+                .setPollInterval(0)
+                .run(openids(0, 2500));
+        Assert.assertTrue(result.isComplete());
+        Assert.assertEquals(3, result.getShardCount());
+        for (JsonObject mass : simulator.getMassMessages()) {
+            Assert.assertFalse(mass.has("filter"));
+            Assert.assertEquals(1, mass.get("send_ignore_reprint").getAsInt());
+            Assert.assertEquals("MEDIA_ID", mass.getAsJsonObject("mpnews").get("media_id").getAsString());
+        }
+    }
+
+}
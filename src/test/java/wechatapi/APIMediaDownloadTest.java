@@ -0,0 +1,136 @@
+package wechatapi;
+
+import cn.muzin.WechatAPI;
+import cn.muzin.http.JdkHttpTransport;
+import cn.muzin.simulator.WechatSimulator;
+import com.google.gson.JsonObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class APIMediaDownloadTest {
+
+    private WechatSimulator simulator;
+
+    private WechatAPI api;
+
+    private Path dir;
+
+    private byte[] video;
+
+    @Before
+    public void setUp() throws Exception {
+        video = new byte[12 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(video);
+        simulator = new WechatSimulator()
+                .addMedia("VIDEO", "video/mp4", video)
+                .addMedia("IMAGE", "image/jpeg", new byte[]{(byte) 0xFF, (byte) 0xD8, 1, 2, 3})
+                .addMedia("VIDEO_URL", "application/json", "{\"video_url\":\"http://example.com/v.mp4\"}".getBytes(Charset.forName("UTF-8")))
+                .start();
+        api = new WechatAPI(simulator.getAppid(), simulator.getAppsecret()).setBaseUrl(simulator.getBaseUrl());
+        dir = Files.createTempDirectory("wechat-media");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        api.close();
+        simulator.close();
+        for (Path file : Files.newDirectoryStream(dir)) {
+            Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void downloadToPathTest() throws Exception {
+        Path target = dir.resolve("video.mp4");
+        JsonObject resp = api.getMedia("VIDEO", target);
+        Assert.assertEquals(0, resp.get("errcode").getAsInt());
+        Assert.assertEquals(video.length, resp.get("size").getAsLong());
+        Assert.assertEquals("video/mp4", resp.get("content_type").getAsString());
+        Assert.assertTrue(Arrays.equals(video, Files.readAllBytes(target)));
+
+        WechatAPI jdkApi = new WechatAPI(simulator.getAppid(), simulator.getAppsecret(), new JdkHttpTransport())
+                .setBaseUrl(simulator.getBaseUrl());
+        try {
+            Path material = dir.resolve("material.mp4");
+            resp = jdkApi.getMaterial("VIDEO", material);
+            Assert.assertEquals(video.length, resp.get("size").getAsLong());
+            Assert.assertTrue(Arrays.equals(video, Files.readAllBytes(material)));
+        } finally {
+            jdkApi.close();
+        }
+    }
+
+    @Test
+    public void concurrentDownloadToPathTest() throws Exception {
+        final Path target = dir.resolve("video.mp4");
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<JsonObject>> futures = new ArrayList<Future<JsonObject>>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(pool.submit(() -> api.getMedia("VIDEO", target)));
+            }
+            for (Future<JsonObject> future : futures) {
+                Assert.assertEquals(0, future.get().get("errcode").getAsInt());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        Assert.assertTrue(Arrays.equals(video, Files.readAllBytes(target)));
+        // 各自的临时文件均已替换为目标文件
+        int files = 0;
+        for (Path file : Files.newDirectoryStream(dir)) {
+            files++;
+        }
+        Assert.assertEquals(1, files);
+    }
+
+    @Test
+    public void downloadToChannelTest() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonObject resp = api.getMaterial("IMAGE", Channels.newChannel(out));
+        Assert.assertEquals(5, resp.get("size").getAsLong());
+        Assert.assertEquals("image/jpeg", resp.get("content_type").getAsString());
+        Assert.assertArrayEquals(new byte[]{(byte) 0xFF, (byte) 0xD8, 1, 2, 3}, out.toByteArray());
+    }
+
+    @Test
+    public void jsonResponseTest() throws Exception {
+        Path target = dir.resolve("missing");
+        JsonObject resp = api.getMedia("UNKNOWN", target);
+        Assert.assertEquals(40007, resp.get("errcode").getAsInt());
+        Assert.assertFalse(Files.exists(target));
+
+        resp = api.getMedia("VIDEO_URL", target);
+        Assert.assertEquals("http://example.com/v.mp4", resp.get("video_url").getAsString());
+        Assert.assertFalse(Files.exists(target));
+        // 没有留下临时文件
+        Assert.assertFalse(Files.newDirectoryStream(dir).iterator().hasNext());
+    }
+
+    @Test
+    public void getMaterialJsonTest() {
+        Assert.assertEquals("http://example.com/v.mp4", api.getMaterial("VIDEO_URL").get("video_url").getAsString());
+        Assert.assertEquals(40007, api.getMaterial("UNKNOWN").get("errcode").getAsInt());
+        // 二进制素材不按JSON解析，返回错误信息
+        JsonObject binary = api.getMaterial("IMAGE");
+        Assert.assertEquals(-1, binary.get("errcode").getAsInt());
+        Assert.assertEquals("image/jpeg", binary.get("content_type").getAsString());
+    }
+
+}
@@ -0,0 +1,51 @@
+package wechatapi;
+
+import cn.muzin.WechatAPI;
+import cn.muzin.metrics.EndpointMetrics;
+import cn.muzin.metrics.LatencyHistogram;
+import cn.muzin.metrics.WechatMetrics;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class APIMetricsTest {
+
+    @Test
+    public void endpointMetricsTest(){
+        MemoryTransport transport = new MemoryTransport();
+        transport.respondOnce("cgi-bin/message/custom/send", "{\"errcode\":45015,\"errmsg\":\"response out of time limit\"}");
+        WechatAPI wechatAPI = new WechatAPI("appid", "appsecret", transport);
+
+        wechatAPI.sendText("OPENID", "1");
+        wechatAPI.sendText("OPENID", "2");
+        wechatAPI.sendText("OPENID", "3");
+
+        WechatMetrics metrics = wechatAPI.getMetrics();
+        EndpointMetrics send = metrics.getEndpoint("cgi-bin/message/custom/send");
+        Assert.assertEquals(3, send.getCount());
+        Assert.assertEquals(1, send.getErrorCount());
+        Assert.assertEquals(Long.valueOf(1), send.getErrcodeCounts().get(45015));
+        Assert.assertEquals(0, send.getInFlight());
+        Assert.assertTrue(send.getBytesOut() > 0);
+        Assert.assertTrue(send.getBytesIn() > 0);
+        Assert.assertEquals(1, metrics.getTokenRefreshCount());
+        Assert.assertEquals(2, metrics.getEndpoints().size());
+        Assert.assertSame(send, metrics.forUrl("https://api.weixin.qq.com/cgi-bin/message/custom/send?access_token=X"));
+    }
+
+    @Test
+    public void histogramPercentileTest(){
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(int i = 1; i <= 1000; i++){
+            histogram.record(i * 1000L);
+        }
+        Assert.assertEquals(1000, histogram.getCount());
+        Assert.assertEquals(1000000, histogram.getMaxMicros());
+
+        // 分桶相对误差不超过 12.5%
+        long p50 = histogram.getPercentileMicros(0.5);
+        long p99 = histogram.getPercentileMicros(0.99);
+        Assert.assertTrue(p50 >= 500000 && p50 <= 500000 * 1.125);
+        Assert.assertTrue(p99 >= 990000 && p99 <= 1000000);
+    }
+
+}
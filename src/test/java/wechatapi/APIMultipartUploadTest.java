@@ -0,0 +1,194 @@
+package wechatapi;
+
+import cn.muzin.WechatAPI;
+import cn.muzin.WechatAsyncAPI;
+import cn.muzin.entity.MaterialType;
+import cn.muzin.http.JdkHttpTransport;
+import cn.muzin.http.MultipartBody;
+import cn.muzin.simulator.WechatSimulator;
+import com.google.gson.JsonObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class APIMultipartUploadTest {
+
+    private WechatSimulator simulator;
+
+    private WechatAPI api;
+
+    private Path dir;
+
+    private Path video;
+
+    private byte[] videoBytes;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new WechatSimulator().start();
+        api = new WechatAPI(simulator.getAppid(), simulator.getAppsecret()).setBaseUrl(simulator.getBaseUrl());
+        dir = Files.createTempDirectory("wechat-upload");
+        videoBytes = new byte[3 * 1024 * 1024 + 5];
+        new Random(7).nextBytes(videoBytes);
+        video = Files.write(dir.resolve("video.mp4"), videoBytes);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        api.close();
+        simulator.close();
+        for (Path file : Files.newDirectoryStream(dir)) {
+            Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+
+    private byte[] download(String mediaId) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonObject resp = api.getMedia(mediaId, Channels.newChannel(out));
+        Assert.assertEquals(0, resp.get("errcode").getAsInt());
+        return out.toByteArray();
+    }
+
+    @Test
+    public void contentLengthTest() throws Exception {
+        ByteBuffer image = ByteBuffer.wrap(new byte[]{9, 1, 2, 3, 4, 9});
+        image.position(1).limit(5);
+        MultipartBody body = new MultipartBody()
+                .addText("description", "{\"title\":\"标题\"}")
+                .addFile("media", video)
+                .addBytes("image", "a.jpg", image)
+                .addStream("stream", "b.bin", new ByteArrayInputStream(new byte[100]), 100);
+        Assert.assertFalse(body.isRepeatable());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = body.writeTo(out);
+        Assert.assertEquals(body.getContentLength(), written);
+        Assert.assertEquals(written, out.size());
+        // 传入的 ByteBuffer 未被读取
+        Assert.assertEquals(1, image.position());
+
+        MultipartBody repeatable = new MultipartBody().addFile("media", video).addBytes("image", "a.jpg", image);
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        repeatable.writeTo(Channels.newChannel(first));
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        InputStream in = repeatable.openStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            second.write(buffer, 0, n);
+        }
+        in.close();
+        Assert.assertEquals(repeatable.getContentLength(), first.size());
+        Assert.assertTrue(Arrays.equals(first.toByteArray(), second.toByteArray()));
+
+        Assert.assertEquals(-1, new MultipartBody().addStream("media", null, new ByteArrayInputStream(new byte[1])).getContentLength());
+    }
+
+    @Test
+    public void shortStreamTest() {
+        MultipartBody body = new MultipartBody().addStream("media", "a.bin", new ByteArrayInputStream(new byte[10]), 20);
+        try {
+            body.writeTo(new ByteArrayOutputStream());
+            Assert.fail();
+        } catch (IOException e) {
+            // 与 Content-Length 不符
+        }
+    }
+
+    @Test
+    public void uploadPathTest() throws Exception {
+        JsonObject resp = api.uploadMedia(video, "video");
+        String mediaId = resp.get("media_id").getAsString();
+        Assert.assertTrue(Arrays.equals(videoBytes, download(mediaId)));
+
+        WechatAPI jdkApi = new WechatAPI(simulator.getAppid(), simulator.getAppsecret(), new JdkHttpTransport())
+                .setBaseUrl(simulator.getBaseUrl());
+        try {
+            resp = jdkApi.uploadMedia(video.toString(), "video");
+            Assert.assertTrue(Arrays.equals(videoBytes, download(resp.get("media_id").getAsString())));
+        } finally {
+            jdkApi.close();
+        }
+
+        // 两种传输层都以定长发送
+        for (JsonObject upload : simulator.getUploads()) {
+            Assert.assertEquals("video.mp4", upload.get("filename").getAsString());
+            Assert.assertEquals(videoBytes.length, upload.get("size").getAsInt());
+            Assert.assertTrue(upload.get("content_length").getAsLong() > videoBytes.length);
+        }
+    }
+
+    @Test
+    public void uploadByteBufferTest() {
+        byte[] jpeg = {(byte) 0xFF, (byte) 0xD8, 1, 2, 3};
+        JsonObject resp = api.uploadMedia(ByteBuffer.wrap(jpeg), "qrcode.jpg", "image");
+        Assert.assertEquals("image", resp.get("type").getAsString());
+        Assert.assertArrayEquals(jpeg, download(resp.get("media_id").getAsString()));
+        Assert.assertEquals("qrcode.jpg", simulator.getUploads().get(0).get("filename").getAsString());
+    }
+
+    @Test
+    public void uploadStreamTest() throws Exception {
+        final boolean[] closed = new boolean[1];
+        InputStream in = new FilterInputStream(Files.newInputStream(video)) {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+                super.close();
+            }
+        };
+        JsonObject resp = api.uploadMedia(in, "video");
+        Assert.assertTrue(closed[0]);
+        Assert.assertTrue(Arrays.equals(videoBytes, download(resp.get("media_id").getAsString())));
+        // 长度未知，使用分块传输
+        Assert.assertEquals(-1, simulator.getUploads().get(0).get("content_length").getAsLong());
+    }
+
+    @Test
+    public void uploadMaterialTest() throws Exception {
+        Path image = Files.write(dir.resolve("logo.png"), new byte[]{1, 2, 3});
+        JsonObject resp = api.uploadMaterial(image, MaterialType.image);
+        Assert.assertTrue(resp.get("url").getAsString().contains(resp.get("media_id").getAsString()));
+
+        Map<String, Object> description = new HashMap<String, Object>();
+        description.put("title", "标题");
+        description.put("introduction", "简介");
+        resp = api.uploadVideoMaterial(video.toString(), description);
+        Assert.assertTrue(resp.has("media_id"));
+
+        List<JsonObject> uploads = simulator.getUploads();
+        Assert.assertEquals(2, uploads.size());
+        Assert.assertEquals("logo.png", uploads.get(0).get("filename").getAsString());
+        Assert.assertEquals(videoBytes.length, uploads.get(1).get("size").getAsInt());
+    }
+
+    @Test
+    public void asyncUploadTest() throws Exception {
+        WechatAsyncAPI async = new WechatAsyncAPI(api);
+        try {
+            JsonObject resp = async.uploadMedia(video, "video").get();
+            Assert.assertTrue(Arrays.equals(videoBytes, download(resp.get("media_id").getAsString())));
+            Assert.assertTrue(simulator.getUploads().get(0).get("content_length").getAsLong() > videoBytes.length);
+        } finally {
+            async.close();
+        }
+    }
+
+}
@@ -0,0 +1,40 @@
+package wechatapi;
+
+import cn.muzin.RefreshAheadScheduler;
+import cn.muzin.WechatAPI;
+import cn.muzin.entity.AccessToken;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class APIRefreshAheadTest {
+
+    @Test
+    public void refreshBeforeExpireTest() throws Exception {
+        MemoryTransport transport = new MemoryTransport();
+        // 实际有效期提前10秒，即约4秒后过期
+        transport.respond("cgi-bin/token", "{\"access_token\":\"TOKEN\",\"expires_in\":14}");
+        transport.respond("cgi-bin/ticket/getticket", "{\"ticket\":\"TICKET\",\"expires_in\":14}");
+        WechatAPI wechatAPI = new WechatAPI("appid", "appsecret", transport);
+
+        RefreshAheadScheduler scheduler = new RefreshAheadScheduler(wechatAPI)
+                .setRefreshFraction(0.5)
+                .setJitterFraction(0)
+                .setMinDelayMillis(100)
+                .start();
+        try {
+            Thread.sleep(300);
+            AccessToken first = wechatAPI.ensureAccessToken();
+            Assert.assertEquals(1, transport.count("cgi-bin/token"));
+            Assert.assertEquals(1, transport.count("cgi-bin/ticket/getticket"));
+
+            Thread.sleep(2700);
+            AccessToken second = wechatAPI.ensureAccessToken();
+            Assert.assertTrue(second.getExpireTime() > first.getExpireTime());
+            Assert.assertEquals(2, transport.count("cgi-bin/token"));
+            Assert.assertEquals(2, transport.count("cgi-bin/ticket/getticket"));
+        } finally {
+            scheduler.stop();
+        }
+    }
+
+}
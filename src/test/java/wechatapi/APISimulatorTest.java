@@ -0,0 +1,123 @@
+package wechatapi;
+
+import cn.muzin.WechatAPI;
+import cn.muzin.entity.DatacubeType;
+import cn.muzin.simulator.WechatSimulator;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class APISimulatorTest {
+
+    private WechatSimulator simulator;
+
+    private WechatAPI api;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new WechatSimulator().setFollowerCount(25000).start();
+        api = new WechatAPI(simulator.getAppid(), simulator.getAppsecret()).setBaseUrl(simulator.getBaseUrl());
+    }
+
+    @After
+    public void tearDown() {
+        api.close();
+        simulator.close();
+    }
+
+    @Test
+    public void sendTextTest() {
+        JsonObject resp = api.sendText(WechatSimulator.openid(1), "hello");
+
+        Assert.assertEquals(0, resp.get("errcode").getAsInt());
+        Assert.assertEquals(1, simulator.getRequestCount("cgi-bin/token"));
+        Assert.assertEquals(1, simulator.getRequestCount("cgi-bin/message/custom/send"));
+        Assert.assertEquals(40003, api.sendText("UNKNOWN", "hello").get("errcode").getAsInt());
+    }
+
+    @Test
+    public void followersAndBatchGetUsersTest() {
+        JsonObject page = api.getFollowers();
+        Assert.assertEquals(25000, page.get("total").getAsInt());
+        Assert.assertEquals(WechatSimulator.FOLLOWERS_PAGE_SIZE, page.get("count").getAsInt());
+
+        int count = page.get("count").getAsInt();
+        while (page.get("count").getAsInt() > 0) {
+            page = api.getFollowers(page.get("next_openid").getAsString());
+            count += page.get("count").getAsInt();
+        }
+        Assert.assertEquals(25000, count);
+
+        List<String> openids = new ArrayList<String>();
+        for (int i = 0; i < 250; i++) {
+            openids.add(WechatSimulator.openid(i));
+        }
+        JsonArray users = api.batchGetUsers(openids);
+        Assert.assertEquals(3, simulator.getRequestCount("cgi-bin/user/info/batchget"));
+        Assert.assertEquals(250, users.size());
+        Assert.assertEquals(WechatSimulator.openid(249), users.get(249).getAsJsonObject().get("openid").getAsString());
+    }
+
+    @Test
+    public void injectedTokenErrorIsReplayedTest() {
+        api.ensureAccessToken();
+        simulator.failNext("cgi-bin/message/custom/send", 40001, "invalid credential");
+
+        JsonObject resp = api.sendText(WechatSimulator.openid(1), "hello");
+
+        Assert.assertEquals(0, resp.get("errcode").getAsInt());
+        Assert.assertEquals(2, simulator.getRequestCount("cgi-bin/token"));
+        Assert.assertEquals(2, simulator.getRequestCount("cgi-bin/message/custom/send"));
+    }
+
+    @Test
+    public void expiredTokenIsRefreshedTest() {
+        api.ensureAccessToken();
+        simulator.expireAccessTokens();
+
+        Assert.assertEquals(0, api.sendText(WechatSimulator.openid(1), "hello").get("errcode").getAsInt());
+        Assert.assertEquals(2, simulator.getRequestCount("cgi-bin/token"));
+    }
+
+    @Test
+    public void quotaTest() {
+        simulator.setQuota("cgi-bin/message/custom/send", 2);
+
+        Assert.assertEquals(0, api.sendText(WechatSimulator.openid(1), "1").get("errcode").getAsInt());
+        Assert.assertEquals(0, api.sendText(WechatSimulator.openid(1), "2").get("errcode").getAsInt());
+        Assert.assertEquals(45009, api.sendText(WechatSimulator.openid(1), "3").get("errcode").getAsInt());
+
+        simulator.resetQuotas();
+        Assert.assertEquals(0, api.sendText(WechatSimulator.openid(1), "4").get("errcode").getAsInt());
+    }
+
+    @Test
+    public void datacubeMerchantAndMediaTest() throws Exception {
+        JsonArray list = api.datacube(DatacubeType.getUserSummary, "2019-01-01", "2019-01-07");
+        Assert.assertEquals(7, list.size());
+
+        Map<String, Object> goods = new HashMap<String, Object>();
+        goods.put("product_base", new HashMap<String, Object>());
+        Assert.assertTrue(api.createGoods(goods).get("product_id").getAsString().startsWith("pSIM_"));
+
+        File file = File.createTempFile("simulator", ".jpg");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[1024]);
+        out.close();
+        JsonObject media = api.uploadMedia(file.getAbsolutePath(), "image");
+        Assert.assertEquals("image", media.get("type").getAsString());
+        Assert.assertTrue(media.has("media_id"));
+    }
+
+}
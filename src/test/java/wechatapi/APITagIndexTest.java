@@ -0,0 +1,165 @@
+package wechatapi;
+
+import cn.muzin.WechatAPI;
+import cn.muzin.exception.WechatApiException;
+import cn.muzin.simulator.WechatSimulator;
+import cn.muzin.tag.OpenidSet;
+import cn.muzin.tag.TagIndex;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class APITagIndexTest {
+
+    private WechatSimulator simulator;
+
+    private WechatAPI api;
+
+    private TagIndex index;
+
+    private String tagA;
+
+    private String tagB;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new WechatSimulator().setFollowerCount(30000).start();
+        api = new WechatAPI(simulator.getAppid(), simulator.getAppsecret()).setBaseUrl(simulator.getBaseUrl());
+        tagA = String.valueOf(simulator.createTag());
+        tagB = String.valueOf(simulator.createTag());
+        // A: [0, 25000)，B: [20000, 30000)
+        simulator.tagUsers(Integer.parseInt(tagA), 0, 25000);
+        simulator.tagUsers(Integer.parseInt(tagB), 20000, 30000);
+        index = new TagIndex(api);
+        api.setTagIndex(index);
+    }
+
+    @After
+    public void tearDown() {
+        api.close();
+        simulator.close();
+    }
+
+    @Test
+    public void loadTest() {
+        Assert.assertFalse(index.isLoaded(tagA));
+        Assert.assertEquals(25000, index.load(tagA));
+        Assert.assertEquals(10000, index.load(tagB));
+        Assert.assertTrue(index.isLoaded(tagA));
+        // A 三页；B 恰好一整页，需再请求一次空页
+        Assert.assertEquals(5, simulator.getRequestCount("cgi-bin/user/tag/get"));
+
+        Assert.assertTrue(index.contains(tagA, WechatSimulator.openid(0)));
+        Assert.assertFalse(index.contains(tagA, WechatSimulator.openid(25000)));
+        Assert.assertTrue(index.contains(tagB, WechatSimulator.openid(25000)));
+        Assert.assertFalse(index.contains(tagB, "unknown"));
+        Assert.assertEquals(Arrays.asList(tagA, tagB), sorted(index.getTagsOf(WechatSimulator.openid(22000))));
+    }
+
+    @Test
+    public void setAlgebraTest() {
+        index.load(tagA);
+        index.load(tagB);
+        OpenidSet a = index.getMembers(tagA);
+        OpenidSet b = index.getMembers(tagB);
+
+        Assert.assertEquals(5000, a.and(b).size());
+        Assert.assertEquals(30000, a.or(b).size());
+        Assert.assertEquals(20000, a.andNot(b).size());
+        Assert.assertEquals(25000, a.xor(b).size());
+        Assert.assertTrue(a.and(b).contains(WechatSimulator.openid(20000)));
+        Assert.assertFalse(a.and(b).contains(WechatSimulator.openid(19999)));
+
+        List<List<String>> chunks = a.or(b).partition(10000);
+        Assert.assertEquals(3, chunks.size());
+        Assert.assertEquals(WechatSimulator.openid(0), chunks.get(0).get(0));
+        Assert.assertEquals(WechatSimulator.openid(29999), chunks.get(2).get(9999));
+    }
+
+    @Test
+    public void updateOnTaggingTest() {
+        index.load(tagB);
+        OpenidSet before = index.getMembers(tagB);
+
+        List<String> openids = Arrays.asList(WechatSimulator.openid(1), WechatSimulator.openid(2));
+        Assert.assertTrue(api.batchTagging(openids, tagB));
+        Assert.assertTrue(index.contains(tagB, WechatSimulator.openid(1)));
+        Assert.assertEquals(10002, index.getMembers(tagB).size());
+        // 已取得的集合是快照
+        Assert.assertEquals(10000, before.size());
+
+        Assert.assertTrue(api.batchUnTagging(Arrays.asList(WechatSimulator.openid(1), WechatSimulator.openid(20000)), tagB));
+        Assert.assertFalse(index.contains(tagB, WechatSimulator.openid(1)));
+        Assert.assertFalse(index.contains(tagB, WechatSimulator.openid(20000)));
+        Assert.assertEquals(10000, index.getMembers(tagB).size());
+        Assert.assertEquals(10000, simulator.getTagMemberCount(Integer.parseInt(tagB)));
+
+        // 未加载的标签不维护
+        Assert.assertTrue(api.batchTagging(openids, tagA));
+        Assert.assertFalse(index.isLoaded(tagA));
+        Assert.assertNull(index.getMembers(tagA));
+
+        Assert.assertTrue(api.deleteTag(tagB));
+        Assert.assertFalse(index.isLoaded(tagB));
+    }
+
+    @Test
+    public void failedTaggingDoesNotUpdateTest() {
+        index.load(tagB);
+        Assert.assertFalse(api.batchTagging(Arrays.asList(WechatSimulator.openid(1), "unknown"), tagB));
+        Assert.assertFalse(index.contains(tagB, WechatSimulator.openid(1)));
+    }
+
+    @Test
+    public void removeUserTest() {
+        index.load(tagA);
+        index.load(tagB);
+        index.removeUser(WechatSimulator.openid(22000));
+        Assert.assertTrue(index.getTagsOf(WechatSimulator.openid(22000)).isEmpty());
+        Assert.assertEquals(24999, index.getMembers(tagA).size());
+    }
+
+    @Test
+    public void loadErrorTest() {
+        index.load(tagA);
+        simulator.failNext("cgi-bin/user/tag/get", 45009, "reach max api daily quota limit");
+        try {
+            index.load(tagA);
+            Assert.fail();
+        } catch (WechatApiException e) {
+            Assert.assertEquals(45009, e.getErrcode());
+        }
+        // 加载失败时保留原有成员
+        Assert.assertEquals(25000, index.getMembers(tagA).size());
+    }
+
+    @Test
+    public void untagDuringLoadTest() throws Exception {
+        simulator.setLatency("cgi-bin/user/tag/get", 300);
+        final String removed = WechatSimulator.openid(5);
+        final int[] count = new int[1];
+        Thread loader = new Thread(() -> count[0] = index.load(tagA));
+        loader.start();
+        while (simulator.getRequestCount("cgi-bin/user/tag/get") == 0) {
+            Thread.sleep(5);
+        }
+        // 第一页已在请求中，其中仍包含该用户；此时取消标签成功，该用户尚未进入 openid 字典
+        index.removeMembers(tagA, Collections.singletonList(removed));
+        loader.join();
+
+        Assert.assertEquals(24999, count[0]);
+        Assert.assertFalse(index.contains(tagA, removed));
+        Assert.assertTrue(index.contains(tagA, WechatSimulator.openid(6)));
+    }
+
+    private static List<String> sorted(List<String> list) {
+        Collections.sort(list);
+        return list;
+    }
+
+}
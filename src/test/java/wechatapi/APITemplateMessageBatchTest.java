@@ -0,0 +1,122 @@
+package wechatapi;
+
+import cn.muzin.WechatAPI;
+import cn.muzin.simulator.WechatSimulator;
+import cn.muzin.template.TemplateMessageBatch;
+import cn.muzin.template.TemplatePayload;
+import cn.muzin.template.TemplateRecipient;
+import cn.muzin.template.TemplateSendResult;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class APITemplateMessageBatchTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private WechatSimulator simulator;
+
+    private WechatAPI api;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new WechatSimulator().setFollowerCount(3000).start();
+        api = new WechatAPI(simulator.getAppid(), simulator.getAppsecret()).setBaseUrl(simulator.getBaseUrl());
+    }
+
+    @After
+    public void tearDown() {
+        api.close();
+        simulator.close();
+    }
+
+    private TemplateMessageBatch batch() {
+        return new TemplateMessageBatch(api)
+                .setTemplateId("TEMPLATE_ID")
+                .setUrl("http://weixin.qq.com/download")
+                .setMiniprogram("wx0001", "index?foo=bar")
+                .addData("first", "订单状态更新", "#173177")
+                .addField("keyword1")
+                .addField("keyword2", "#FF0000")
+                .addData("remark", "感谢您的惠顾");
+    }
+
+    @Test
+    public void renderTest() {
+        TemplatePayload payload = batch().compile();
+        Assert.assertEquals(2, payload.getFieldNames().size());
+
+        byte[] body = payload.render("OPENID", "已发货", "SF1234567890");
+        JsonObject json = new JsonParser().parse(new String(body, UTF8)).getAsJsonObject();
+        Assert.assertEquals("OPENID", json.get("touser").getAsString());
+        Assert.assertEquals("TEMPLATE_ID", json.get("template_id").getAsString());
+        Assert.assertEquals("http://weixin.qq.com/download", json.get("url").getAsString());
+        Assert.assertEquals("index?foo=bar", json.getAsJsonObject("miniprogram").get("pagepath").getAsString());
+        JsonObject data = json.getAsJsonObject("data");
+        Assert.assertEquals("订单状态更新", data.getAsJsonObject("first").get("value").getAsString());
+        Assert.assertEquals("#173177", data.getAsJsonObject("first").get("color").getAsString());
+        Assert.assertEquals("已发货", data.getAsJsonObject("keyword1").get("value").getAsString());
+        Assert.assertFalse(data.getAsJsonObject("keyword1").has("color"));
+        Assert.assertEquals("SF1234567890", data.getAsJsonObject("keyword2").get("value").getAsString());
+        Assert.assertEquals("#FF0000", data.getAsJsonObject("keyword2").get("color").getAsString());
+        Assert.assertEquals("感谢您的惠顾", data.getAsJsonObject("remark").get("value").getAsString());
+    }
+
+    @Test
+    public void escapeTest() {
+        TemplatePayload payload = batch().compile();
+        String tricky = "引号\"反斜杠\\换行\n回车\r制表\t控制\u0001表情😀</script>";
+        byte[] body = payload.render("OPENID", tricky, "");
+        JsonObject json = new JsonParser().parse(new String(body, UTF8)).getAsJsonObject();
+        JsonObject data = json.getAsJsonObject("data");
+        Assert.assertEquals(tricky, data.getAsJsonObject("keyword1").get("value").getAsString());
+        Assert.assertEquals("", data.getAsJsonObject("keyword2").get("value").getAsString());
+
+        try {
+            payload.render("OPENID", "only one");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // 变量个数与字段不一致
+        }
+    }
+
+    @Test
+    public void sendTest() {
+        List<TemplateRecipient> recipients = IntStream.range(0, 2000)
+                .mapToObj(i -> TemplateRecipient.of(WechatSimulator.openid(i), "状态" + i, "单号" + i))
+                .collect(Collectors.toList());
+        recipients.set(1234, TemplateRecipient.of("unknown", "x", "y"));
+
+        TemplateSendResult result = batch().setParallelism(8).send(recipients.stream());
+        Assert.assertFalse(result.isComplete());
+        Assert.assertEquals(1999, result.getSucceeded());
+        Assert.assertEquals(1, result.getFailures().size());
+        Assert.assertEquals(40003, result.getFailures().get(0).getErrcode());
+        Assert.assertEquals("unknown", result.getFailedOpenids().get(0));
+        Assert.assertEquals(2000, simulator.getRequestCount("cgi-bin/message/template/send"));
+
+        List<JsonObject> messages = simulator.getTemplateMessages(WechatSimulator.openid(42));
+        Assert.assertEquals(1, messages.size());
+        JsonObject data = messages.get(0).getAsJsonObject("data");
+        Assert.assertEquals("状态42", data.getAsJsonObject("keyword1").get("value").getAsString());
+        Assert.assertEquals("单号42", data.getAsJsonObject("keyword2").get("value").getAsString());
+    }
+
+    @Test
+    public void sendTemplateBytesTest() {
+        byte[] body = batch().compile().render(WechatSimulator.openid(7), "a", "b");
+        JsonObject resp = api.sendTemplate(body);
+        Assert.assertEquals(0, resp.get("errcode").getAsInt());
+        Assert.assertTrue(resp.has("msgid"));
+        Assert.assertEquals(1, simulator.getTemplateMessages(WechatSimulator.openid(7)).size());
+    }
+
+}
@@ -0,0 +1,134 @@
+package wechatapi;
+
+import cn.muzin.WechatAPI;
+import cn.muzin.entity.AccessToken;
+import cn.muzin.resolver.FileTokenStorageResolver;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class APITokenLeaseTest {
+
+    @Test
+    public void compareAndSaveTokenTest() throws IOException {
+        File file = File.createTempFile("wechat-token", ".json");
+        file.deleteOnExit();
+        FileTokenStorageResolver resolver = new FileTokenStorageResolver(file);
+
+        long expireTime = System.currentTimeMillis() + 60000;
+        Assert.assertTrue(resolver.compareAndSaveToken(0, new AccessToken("A", expireTime)));
+        Assert.assertFalse(resolver.compareAndSaveToken(0, new AccessToken("B", expireTime)));
+        Assert.assertTrue(resolver.compareAndSaveToken(1, new AccessToken("C", expireTime)));
+
+        AccessToken token = resolver.getToken();
+        Assert.assertEquals("C", token.getAccessToken());
+        Assert.assertEquals(2, token.getVersion());
+    }
+
+    @Test
+    public void refreshLeaseTest() throws IOException {
+        File file = File.createTempFile("wechat-token", ".json");
+        file.deleteOnExit();
+        FileTokenStorageResolver node1 = new FileTokenStorageResolver(file);
+        FileTokenStorageResolver node2 = new FileTokenStorageResolver(file);
+
+        Assert.assertTrue(node1.tryAcquireRefreshLease("node1", 60000));
+        Assert.assertFalse(node2.tryAcquireRefreshLease("node2", 60000));
+        node2.releaseRefreshLease("node2");
+        Assert.assertFalse(node2.tryAcquireRefreshLease("node2", 60000));
+        node1.releaseRefreshLease("node1");
+        Assert.assertTrue(node2.tryAcquireRefreshLease("node2", 60000));
+    }
+
+    @Test
+    public void singleRefreshAcrossInstancesTest() throws Exception {
+        File file = File.createTempFile("wechat-token", ".json");
+        file.deleteOnExit();
+        MemoryTransport transport = new MemoryTransport() {
+            @Override
+            public String get(String url, Map<String, String> headers) {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.get(url, headers);
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<AccessToken>> futures = new ArrayList<Future<AccessToken>>();
+        for(int i = 0; i < 8; i++){
+            // 每个实例模拟一个节点
+            final WechatAPI api = new WechatAPI("appid", "appsecret",
+                    new FileTokenStorageResolver(file), null, transport);
+            futures.add(executor.submit(new Callable<AccessToken>() {
+                @Override
+                public AccessToken call() {
+                    return api.ensureAccessToken();
+                }
+            }));
+        }
+        for(Future<AccessToken> future : futures){
+            Assert.assertEquals("TOKEN", future.get().getAccessToken());
+        }
+        executor.shutdown();
+
+        Assert.assertEquals(1, transport.count("cgi-bin/token"));
+    }
+
+    @Test
+    public void singleRefreshAcrossJvmsTest() throws Exception {
+        File tokenFile = File.createTempFile("wechat-token", ".json");
+        File countFile = File.createTempFile("wechat-token-count", ".txt");
+        tokenFile.deleteOnExit();
+        countFile.deleteOnExit();
+
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<Process> processes = new ArrayList<Process>();
+        List<File> resultFiles = new ArrayList<File>();
+        for(int i = 0; i < 3; i++){
+            File resultFile = File.createTempFile("wechat-token-result", ".txt");
+            resultFile.deleteOnExit();
+            resultFiles.add(resultFile);
+            processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    FileTokenNode.class.getName(), tokenFile.getPath(), countFile.getPath(), resultFile.getPath())
+                    .inheritIO().start());
+        }
+        for(Process process : processes){
+            Assert.assertEquals(0, process.waitFor());
+        }
+        // 所有节点得到同一个 token
+        for(File resultFile : resultFiles){
+            BufferedReader result = new BufferedReader(new FileReader(resultFile));
+            try {
+                Assert.assertEquals("TOKEN", result.readLine());
+            } finally {
+                result.close();
+            }
+        }
+
+        int lines = 0;
+        BufferedReader reader = new BufferedReader(new FileReader(countFile));
+        try {
+            while(reader.readLine() != null){
+                lines++;
+            }
+        } finally {
+            reader.close();
+        }
+        Assert.assertEquals(1, lines);
+    }
+
+}
@@ -0,0 +1,216 @@
+package wechatapi;
+
+import cn.muzin.WechatAPI;
+import cn.muzin.entity.AccessToken;
+import cn.muzin.entity.Ticket;
+import cn.muzin.http.WechatRequestEvent;
+import cn.muzin.http.WechatRequestListener;
+import cn.muzin.util.ThreadUtils;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class APITransportTest {
+
+    @Test
+    public void sendTextThroughTransportTest(){
+        MemoryTransport transport = new MemoryTransport();
+        WechatAPI wechatAPI = new WechatAPI("appid", "appsecret", transport);
+
+        JsonObject resp = wechatAPI.sendText("OPENID", "hello");
+
+        Assert.assertEquals(0, resp.get("errcode").getAsInt());
+        Assert.assertEquals(1, transport.count("cgi-bin/token"));
+        Assert.assertEquals(1, transport.count("cgi-bin/message/custom/send"));
+        Assert.assertTrue(transport.getRequests().get(1).contains("access_token=TOKEN"));
+        Assert.assertTrue(transport.getBodies().get(1).contains("\"touser\":\"OPENID\""));
+    }
+
+    @Test
+    public void tokenReusedAcrossCallsTest(){
+        MemoryTransport transport = new MemoryTransport();
+        WechatAPI wechatAPI = new WechatAPI("appid", "appsecret", transport);
+
+        wechatAPI.sendText("OPENID", "1");
+        wechatAPI.sendText("OPENID", "2");
+
+        Assert.assertEquals(1, transport.count("cgi-bin/token"));
+        Assert.assertEquals(2, transport.count("cgi-bin/message/custom/send"));
+    }
+
+    @Test
+    public void batchGetUsersChunkedTest(){
+        MemoryTransport transport = new MemoryTransport();
+        transport.respond("cgi-bin/user/info/batchget", "{\"user_info_list\":[{\"openid\":\"OPENID\"}]}");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        WechatAPI wechatAPI = new WechatAPI("appid", "appsecret", transport).setExecutor(executor);
+
+        List<String> openids = new ArrayList<String>();
+        for(int i = 0; i < 250; i++){
+            openids.add("OPENID" + i);
+        }
+        JsonArray users = wechatAPI.batchGetUsers(openids);
+        executor.shutdown();
+
+        Assert.assertEquals(3, transport.count("cgi-bin/user/info/batchget"));
+        Assert.assertEquals(3, users.size());
+        Assert.assertEquals(1, transport.count("cgi-bin/token"));
+    }
+
+    @Test
+    public void concurrentRefreshSingleFlightTest() throws Exception {
+        MemoryTransport transport = new MemoryTransport() {
+            @Override
+            public String get(String url, Map<String, String> headers) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.get(url, headers);
+            }
+        };
+        final WechatAPI wechatAPI = new WechatAPI("appid", "appsecret", transport);
+
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        List<Future<AccessToken>> futures = new ArrayList<Future<AccessToken>>();
+        for(int i = 0; i < 64; i++){
+            futures.add(executor.submit(new Callable<AccessToken>() {
+                @Override
+                public AccessToken call() {
+                    return wechatAPI.ensureAccessToken();
+                }
+            }));
+        }
+        for(Future<AccessToken> future : futures){
+            Assert.assertEquals("TOKEN", future.get().getAccessToken());
+        }
+        executor.shutdown();
+
+        Assert.assertEquals(1, transport.count("cgi-bin/token"));
+    }
+
+    @Test
+    public void replayOnTokenErrorTest(){
+        MemoryTransport transport = new MemoryTransport();
+        WechatAPI wechatAPI = new WechatAPI("appid", "appsecret", transport);
+        wechatAPI.ensureAccessToken();
+
+        // 其他节点刷新了 token，当前 token 被拒绝
+        transport.respondOnce("cgi-bin/message/custom/send", "{\"errcode\":40001,\"errmsg\":\"invalid credential\"}");
+        transport.respondOnce("cgi-bin/token", "{\"access_token\":\"TOKEN2\",\"expires_in\":7200}");
+
+        JsonObject resp = wechatAPI.sendText("OPENID", "hello");
+
+        Assert.assertEquals(0, resp.get("errcode").getAsInt());
+        Assert.assertEquals(2, transport.count("cgi-bin/token"));
+        Assert.assertEquals(2, transport.count("cgi-bin/message/custom/send"));
+        List<String> requests = transport.getRequests();
+        Assert.assertTrue(requests.get(requests.size() - 1).contains("access_token=TOKEN2"));
+        Assert.assertEquals("TOKEN2", wechatAPI.ensureAccessToken().getAccessToken());
+    }
+
+    @Test
+    public void replayOnlyOnceTest(){
+        MemoryTransport transport = new MemoryTransport();
+        transport.respond("cgi-bin/message/custom/send", "{\"errcode\":42001,\"errmsg\":\"access_token expired\"}");
+        WechatAPI wechatAPI = new WechatAPI("appid", "appsecret", transport);
+
+        JsonObject resp = wechatAPI.sendText("OPENID", "hello");
+
+        Assert.assertEquals(42001, resp.get("errcode").getAsInt());
+        Assert.assertEquals(2, transport.count("cgi-bin/message/custom/send"));
+    }
+
+    @Test
+    public void concurrentTicketRefreshPerTypeTest() throws Exception {
+        MemoryTransport transport = new MemoryTransport() {
+            @Override
+            public String get(String url, Map<String, String> headers) {
+                if (url.contains("getticket")) {
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.get(url, headers);
+            }
+        };
+        transport.respond("cgi-bin/ticket/getticket", "{\"ticket\":\"TICKET\",\"expires_in\":7200}");
+        final WechatAPI wechatAPI = new WechatAPI("appid", "appsecret", transport);
+
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        List<Future<Ticket>> futures = new ArrayList<Future<Ticket>>();
+        for(int i = 0; i < 64; i++){
+            final String type = i % 2 == 0 ? "jsapi" : "wx_card";
+            futures.add(executor.submit(new Callable<Ticket>() {
+                @Override
+                public Ticket call() {
+                    return wechatAPI.ensureTicket(type);
+                }
+            }));
+        }
+        for(Future<Ticket> future : futures){
+            Assert.assertEquals("TICKET", future.get().getTicket());
+        }
+        executor.shutdown();
+
+        Assert.assertEquals(2, transport.count("cgi-bin/ticket/getticket"));
+    }
+
+    @Test
+    public void requestListenerTest(){
+        MemoryTransport transport = new MemoryTransport();
+        transport.respondOnce("cgi-bin/message/custom/send", "{\"errcode\":40001,\"errmsg\":\"invalid credential\"}");
+        final List<WechatRequestEvent> events = new ArrayList<WechatRequestEvent>();
+        WechatAPI wechatAPI = new WechatAPI("appid", "appsecret", transport)
+                .setRequestListener(new WechatRequestListener() {
+                    @Override
+                    public void onRequest(WechatRequestEvent event) {
+                        events.add(event);
+                    }
+                });
+
+        wechatAPI.sendText("OPENID", "你好");
+
+        // token、发送失败后刷新的 token、重放的发送
+        Assert.assertEquals(3, events.size());
+        WechatRequestEvent send = events.get(2);
+        Assert.assertEquals("cgi-bin/message/custom/send", send.getEndpoint());
+        Assert.assertEquals(1, send.getRetries());
+        Assert.assertEquals(0, send.getErrcode());
+        Assert.assertTrue(send.isSuccess());
+        Assert.assertEquals(transport.getBodies().get(3).getBytes(Charset.forName("UTF-8")).length, send.getBytesOut());
+        Assert.assertFalse(send.getRedactedUrl().contains("TOKEN"));
+        Assert.assertFalse(events.get(0).getRedactedUrl().contains("appsecret"));
+    }
+
+    @Test
+    public void closeShutsDownOwnedExecutorTest(){
+        ExecutorService callerPool = Executors.newFixedThreadPool(2);
+        WechatAPI wechatAPI = new WechatAPI("appid", "appsecret", new MemoryTransport()).setExecutor(callerPool);
+        wechatAPI.close();
+        // 调用方传入的线程池由调用方管理
+        Assert.assertFalse(callerPool.isShutdown());
+        callerPool.shutdown();
+
+        Assume.assumeTrue(ThreadUtils.isVirtualThreadSupported());
+        wechatAPI = new WechatAPI("appid", "appsecret", new MemoryTransport()).useVirtualThreads();
+        ExecutorService virtual = wechatAPI.getExecutor();
+        wechatAPI.close();
+        Assert.assertTrue(virtual.isShutdown());
+    }
+
+}
@@ -0,0 +1,198 @@
+package wechatapi;
+
+import cn.muzin.WechatAPI;
+import cn.muzin.cache.UserProfileCache;
+import cn.muzin.simulator.WechatSimulator;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class APIUserCacheTest {
+
+    private WechatSimulator simulator;
+
+    private WechatAPI api;
+
+    private UserProfileCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new WechatSimulator().start();
+        cache = new UserProfileCache().setMaxSize(300);
+        api = new WechatAPI(simulator.getAppid(), simulator.getAppsecret())
+                .setBaseUrl(simulator.getBaseUrl())
+                .setUserProfileCache(cache);
+    }
+
+    @After
+    public void tearDown() {
+        api.close();
+        simulator.close();
+    }
+
+    @Test
+    public void getUserHitsCacheTest() {
+        String openid = WechatSimulator.openid(1);
+        JsonObject first = api.getUser(openid);
+        first.addProperty("nickname", "changed by caller");
+        JsonObject second = api.getUser(openid);
+
+        Assert.assertEquals("user1", second.get("nickname").getAsString());
+        Assert.assertEquals(1, simulator.getRequestCount("cgi-bin/user/info"));
+        Assert.assertEquals(1, cache.getHitCount());
+
+        // 其他语言未命中
+        api.getUser(openid, "en");
+        Assert.assertEquals(2, simulator.getRequestCount("cgi-bin/user/info"));
+
+        api.invalidateUser(openid);
+        api.getUser(openid, "en");
+        Assert.assertEquals(3, simulator.getRequestCount("cgi-bin/user/info"));
+    }
+
+    @Test
+    public void negativeCacheTest() {
+        Assert.assertEquals(40003, api.getUser("INVALID").get("errcode").getAsInt());
+        Assert.assertEquals(40003, api.getUser("INVALID").get("errcode").getAsInt());
+
+        Assert.assertEquals(1, simulator.getRequestCount("cgi-bin/user/info"));
+        Assert.assertEquals(1, cache.getNegativeHitCount());
+    }
+
+    @Test
+    public void otherErrorsAreNotCachedTest() {
+        simulator.failNext("cgi-bin/user/info", 45009, "reach max api daily quota limit");
+        Assert.assertEquals(45009, api.getUser(WechatSimulator.openid(1)).get("errcode").getAsInt());
+        Assert.assertEquals("user1", api.getUser(WechatSimulator.openid(1)).get("nickname").getAsString());
+        Assert.assertEquals(2, simulator.getRequestCount("cgi-bin/user/info"));
+    }
+
+    @Test
+    public void batchGetUsersFetchesOnlyMissesTest() {
+        List<String> openids = new ArrayList<String>();
+        for (int i = 0; i < 150; i++) {
+            openids.add(WechatSimulator.openid(i));
+        }
+        api.batchGetUsers(openids.subList(0, 100));
+        Assert.assertEquals(1, simulator.getRequestCount("cgi-bin/user/info/batchget"));
+
+        // 前 100 个命中缓存，只请求后 50 个
+        JsonArray users = api.batchGetUsers(openids);
+        Assert.assertEquals(2, simulator.getRequestCount("cgi-bin/user/info/batchget"));
+        Assert.assertEquals(150, users.size());
+        for (int i = 0; i < 150; i++) {
+            Assert.assertEquals(openids.get(i), users.get(i).getAsJsonObject().get("openid").getAsString());
+        }
+
+        api.getUser(WechatSimulator.openid(120));
+        Assert.assertEquals(0, simulator.getRequestCount("cgi-bin/user/info"));
+
+        api.batchGetUsers(Arrays.asList(WechatSimulator.openid(1), WechatSimulator.openid(2)));
+        Assert.assertEquals(2, simulator.getRequestCount("cgi-bin/user/info/batchget"));
+    }
+
+    @Test
+    public void ttlAndSizeBoundTest() throws Exception {
+        cache.setTtlMillis(100);
+        api.getUser(WechatSimulator.openid(1));
+        Thread.sleep(150);
+        api.getUser(WechatSimulator.openid(1));
+        Assert.assertEquals(2, simulator.getRequestCount("cgi-bin/user/info"));
+
+        cache.setTtlMillis(60000);
+        List<String> openids = new ArrayList<String>();
+        for (int i = 0; i < 500; i++) {
+            openids.add(WechatSimulator.openid(i));
+        }
+        api.batchGetUsers(openids);
+        Assert.assertEquals(300, cache.size());
+    }
+
+    @Test
+    public void updateRemarkInvalidatesTest() {
+        String openid = WechatSimulator.openid(1);
+        Assert.assertEquals("", api.getUser(openid).get("remark").getAsString());
+        Assert.assertTrue(api.updateRemark(openid, "老客户"));
+        Assert.assertEquals("老客户", api.getUser(openid).get("remark").getAsString());
+        Assert.assertEquals(2, simulator.getRequestCount("cgi-bin/user/info"));
+    }
+
+    @Test
+    public void recentlyReadEntriesSurviveEvictionTest() {
+        UserProfileCache small = new UserProfileCache().setMaxSize(100);
+        for (int i = 0; i < 100; i++) {
+            small.put(profile(i), null);
+        }
+        // 读取过的用户获得保留机会
+        for (int i = 0; i < 10; i++) {
+            Assert.assertNotNull(small.get(WechatSimulator.openid(i), null));
+        }
+        for (int i = 100; i < 150; i++) {
+            small.put(profile(i), null);
+        }
+        Assert.assertEquals(100, small.size());
+        for (int i = 0; i < 10; i++) {
+            Assert.assertNotNull(small.get(WechatSimulator.openid(i), null));
+        }
+        Assert.assertNull(small.get(WechatSimulator.openid(10), null));
+        Assert.assertNotNull(small.get(WechatSimulator.openid(149), null));
+
+        // 反复更新同一用户，队列不会无限增长
+        for (int i = 0; i < 10000; i++) {
+            small.put(profile(149), null);
+        }
+        Assert.assertEquals(100, small.size());
+    }
+
+    @Test
+    public void concurrentReadsTest() throws Exception {
+        final UserProfileCache shared = new UserProfileCache().setMaxSize(1000);
+        for (int i = 0; i < 1000; i++) {
+            shared.put(profile(i), null);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+        for (int t = 0; t < 8; t++) {
+            final int offset = t;
+            futures.add(pool.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    int found = 0;
+                    for (int i = 0; i < 20000; i++) {
+                        if (shared.get(WechatSimulator.openid((i + offset) % 1000), null) != null) {
+                            found++;
+                        }
+                        if (i % 100 == 0) {
+                            shared.put(profile(1000 + offset * 20000 + i), null);
+                        }
+                    }
+                    return found;
+                }
+            }));
+        }
+        for (Future<Integer> future : futures) {
+            Assert.assertTrue(future.get() > 0);
+        }
+        pool.shutdown();
+        Assert.assertTrue(shared.size() <= 1000 + 8);
+    }
+
+    private static JsonObject profile(int index) {
+        JsonObject profile = new JsonObject();
+        profile.addProperty("openid", WechatSimulator.openid(index));
+        profile.addProperty("nickname", "user" + index);
+        return profile;
+    }
+
+}
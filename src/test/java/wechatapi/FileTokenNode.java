@@ -0,0 +1,52 @@
+package wechatapi;
+
+import cn.muzin.WechatAPI;
+import cn.muzin.resolver.FileTokenStorageResolver;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * 多 JVM 租约测试中的一个节点：共享同一个 token 文件获取 access token，
+ * 每次向“微信”请求 token 时在计数文件中追加一行，得到的 token 写入结果文件（不输出到控制台）
+ *
+ * 运行：java wechatapi.FileTokenNode tokenFile countFile resultFile
+ */
+public class FileTokenNode {
+
+    public static void main(String[] args) throws IOException {
+        final File countFile = new File(args[1]);
+        MemoryTransport transport = new MemoryTransport() {
+            @Override
+            public String get(String url, Map<String, String> headers) {
+                if (url.contains("cgi-bin/token")) {
+                    try {
+                        Thread.sleep(300);
+                        FileWriter writer = new FileWriter(countFile, true);
+                        try {
+                            writer.write("token\n");
+                        } finally {
+                            writer.close();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+                return super.get(url, headers);
+            }
+        };
+        WechatAPI api = new WechatAPI("appid", "appsecret",
+                new FileTokenStorageResolver(new File(args[0])), null, transport);
+        FileWriter result = new FileWriter(new File(args[2]));
+        try {
+            result.write(api.ensureAccessToken().getAccessToken());
+        } finally {
+            result.close();
+        }
+    }
+
+}
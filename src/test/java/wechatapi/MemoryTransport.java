@@ -0,0 +1,123 @@
+package wechatapi;
+
+import cn.muzin.http.BinaryResponse;
+import cn.muzin.http.WechatHttpTransport;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 内存中的传输层，按接口路径返回预设的响应，并记录所有请求，供离线测试使用
+ */
+public class MemoryTransport implements WechatHttpTransport {
+
+    private Map<String, String> responses = new ConcurrentHashMap<String, String>();
+
+    private Map<String, Queue<String>> onceResponses = new ConcurrentHashMap<String, Queue<String>>();
+
+    private List<String> requests = new CopyOnWriteArrayList<String>();
+
+    private List<String> bodies = new CopyOnWriteArrayList<String>();
+
+    public MemoryTransport(){
+        respond("cgi-bin/token", "{\"access_token\":\"TOKEN\",\"expires_in\":7200}");
+    }
+
+    /**
+     * 设置接口的响应
+     * @param path 接口路径，如 `cgi-bin/message/custom/send`
+     * @param response 响应正文
+     */
+    public MemoryTransport respond(String path, String response){
+        responses.put(path, response);
+        return this;
+    }
+
+    /**
+     * 设置接口的下一次响应，只使用一次，之后恢复为 respond 设置的响应
+     */
+    public MemoryTransport respondOnce(String path, String response){
+        Queue<String> queue = onceResponses.get(path);
+        if(queue == null){
+            onceResponses.putIfAbsent(path, new ConcurrentLinkedQueue<String>());
+            queue = onceResponses.get(path);
+        }
+        queue.add(response);
+        return this;
+    }
+
+    public List<String> getRequests(){
+        return requests;
+    }
+
+    public List<String> getBodies(){
+        return bodies;
+    }
+
+    public int count(String path){
+        int count = 0;
+        for(String url : requests){
+            if(path(url).equals(path)){
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private String handle(String url, String body){
+        requests.add(url);
+        bodies.add(body == null ? "" : body);
+        Queue<String> queue = onceResponses.get(path(url));
+        String response = queue != null ? queue.poll() : null;
+        if(response == null){
+            response = responses.get(path(url));
+        }
+        return response != null ? response : "{\"errcode\":0,\"errmsg\":\"ok\"}";
+    }
+
+    private static String path(String url){
+        String path = url.substring(url.indexOf("/", url.indexOf("://") + 3) + 1);
+        int query = path.indexOf('?');
+        return query >= 0 ? path.substring(0, query) : path;
+    }
+
+    @Override
+    public String get(String url, Map<String, String> headers) {
+        return handle(url, null);
+    }
+
+    @Override
+    public String postJson(String url, String body) {
+        return handle(url, body);
+    }
+
+    @Override
+    public String postFormData(String url, Map<String, Object> param) {
+        return handle(url, param.keySet().toString());
+    }
+
+    @Override
+    public String postFile(String url, File file) {
+        return handle(url, file.getName());
+    }
+
+    @Override
+    public BinaryResponse download(String url, String jsonBody) {
+        byte[] bytes = handle(url, jsonBody).getBytes(Charset.forName("UTF-8"));
+        return new BinaryResponse(200, "application/octet-stream", bytes.length,
+                new ByteArrayInputStream(bytes), null);
+    }
+
+    @Override
+    public void close() {
+
+    }
+
+}
@@ -0,0 +1,82 @@
+package wechatapi;
+
+import cn.muzin.WechatAPI;
+import cn.muzin.util.ThreadUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 10000 个并发的阻塞调用，对比平台线程池与虚拟线程的吞吐量
+ *
+ * 传输层对每个请求休眠固定时间模拟网络延迟，不访问网络。
+ * 虚拟线程需要 JDK 21+，低版本 JDK 只运行平台线程部分。
+ *
+ * 运行：java wechatapi.VirtualThreadBenchmark [调用次数] [延迟毫秒] [平台线程数]
+ */
+public class VirtualThreadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        final long latencyMillis = args.length > 1 ? Long.parseLong(args[1]) : 50;
+        int platformThreads = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        MemoryTransport transport = new MemoryTransport() {
+            @Override
+            public String postJson(String url, String body) {
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.postJson(url, body);
+            }
+        };
+        WechatAPI api = new WechatAPI("appid", "appsecret", transport);
+
+        ExecutorService platform = Executors.newFixedThreadPool(platformThreads);
+        try {
+            report("platform(" + platformThreads + ")", calls, run(api, platform, calls));
+        } finally {
+            platform.shutdown();
+        }
+
+        if (ThreadUtils.isVirtualThreadSupported()) {
+            ExecutorService virtual = ThreadUtils.newVirtualThreadPerTaskExecutor();
+            try {
+                report("virtual", calls, run(api, virtual, calls));
+            } finally {
+                virtual.shutdown();
+            }
+        } else {
+            System.out.println("virtual: skipped, requires JDK 21+ (running " + System.getProperty("java.version") + ")");
+        }
+    }
+
+    private static long run(final WechatAPI api, ExecutorService executor, int calls) throws Exception {
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<Future<?>>(calls);
+        for (int i = 0; i < calls; i++) {
+            final String content = "message " + i;
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    api.sendText("OPENID", content);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String name, int calls, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.println(String.format("%s: %d calls in %.2fs, %.0f calls/s", name, calls, seconds, calls / seconds));
+    }
+
+}
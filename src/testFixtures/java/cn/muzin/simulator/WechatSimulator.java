@@ -0,0 +1,1387 @@
+package cn.muzin.simulator;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内的微信接口模拟服务，用于离线的正确性测试与压测
+ *
+ * 提供 `cgi-bin/token`、`ticket/getticket`、`message/custom/send`、`message/template/send`、`message/mass/send`、
+ * `message/mass/sendall`、`message/mass/get`、`user/get`、`user/info`、`user/info/updateremark`、
+ * `user/info/batchget`、`media/upload`、`material/add_material`、`media/get`、`material/get_material`、`datacube/*`、`merchant/*` 与用户标签接口，
+ * 校验 access token（未知 40001、过期 42001），并支持配置延迟、注入 errcode 与每日调用额度。
+ *
+ * 关注者为 `followerCount` 个按序号生成的用户，openid 由 `openid(index)` 得到；
+ * 标签可通过接口创建，也可以用 `createTag`、`tagUsers` 直接准备数据。
+ *
+ * Examples:
+ * ```
+ * WechatSimulator simulator = new WechatSimulator()
+ *         .setFollowerCount(25000)
+ *         .setLatency(20, 5)
+ *         .setQuota("cgi-bin/message/custom/send", 100000)
+ *         .start();
+ * WechatAPI api = new WechatAPI(simulator.getAppid(), simulator.getAppsecret())
+ *         .setBaseUrl(simulator.getBaseUrl());
+ *
+ * simulator.failNext("cgi-bin/message/custom/send", 45015, "response out of time limit or subscription is canceled");
+ * api.sendText(WechatSimulator.openid(0), "hello");
+ *
+ * simulator.close();
+ * ```
+ */
+public class WechatSimulator implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    /**
+     * user/get 每页返回的 openid 数量
+     */
+    public static final int FOLLOWERS_PAGE_SIZE = 10000;
+
+    /**
+     * user/info/batchget 每次最多查询的用户数
+     */
+    public static final int BATCH_GET_LIMIT = 100;
+
+    /**
+     * tags/members/batchtagging、batchuntagging、groups/members/batchupdate 每次最多处理的用户数
+     */
+    public static final int BATCH_TAGGING_LIMIT = 50;
+
+    private String appid = "appid";
+
+    private String appsecret = "appsecret";
+
+    private String host = "127.0.0.1";
+
+    private int port = 0;
+
+    private int threads = 200;
+
+    /**
+     * 关注者数量
+     */
+    private volatile int followerCount = 1000;
+
+    /**
+     * access token 与 ticket 的有效期（秒）
+     */
+    private volatile long expiresIn = 7200;
+
+    /**
+     * 获取新 token 后旧 token 继续有效的时间（毫秒），与微信一致为 5 分钟
+     */
+    private volatile long tokenGraceMillis = 5 * 60 * 1000;
+
+    private volatile long latencyMillis = 0;
+
+    private volatile long jitterMillis = 0;
+
+    private final Map<String, Long> endpointLatency = new ConcurrentHashMap<String, Long>();
+
+    private final Map<String, Long> quotas = new ConcurrentHashMap<String, Long>();
+
+    private final Map<String, AtomicLong> quotaUsed = new ConcurrentHashMap<String, AtomicLong>();
+
+    private final Map<String, Queue<Fault>> nextFaults = new ConcurrentHashMap<String, Queue<Fault>>();
+
+    private final Map<String, Fault> faultRates = new ConcurrentHashMap<String, Fault>();
+
+    private final Map<String, AtomicLong> requestCounts = new ConcurrentHashMap<String, AtomicLong>();
+
+    private final AtomicLong totalRequests = new AtomicLong();
+
+    /**
+     * access token -> 过期时间
+     */
+    private final Map<String, Long> tokens = new ConcurrentHashMap<String, Long>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * 标签id -> 成员的关注者序号
+     */
+    private final Map<Integer, ConcurrentSkipListSet<Integer>> tags = new ConcurrentHashMap<Integer, ConcurrentSkipListSet<Integer>>();
+
+    private final AtomicInteger tagSequence = new AtomicInteger(100);
+
+    /**
+     * openid -> 按到达顺序记录的客服消息
+     */
+    private final Map<String, List<JsonObject>> customMessages = new ConcurrentHashMap<String, List<JsonObject>>();
+
+    /**
+     * openid -> 按到达顺序记录的模板消息
+     */
+    private final Map<String, List<JsonObject>> templateMessages = new ConcurrentHashMap<String, List<JsonObject>>();
+
+    /**
+     * 按到达顺序记录的群发任务（请求体中加入 msg_id）
+     */
+    private final List<JsonObject> massMessages = Collections.synchronizedList(new ArrayList<JsonObject>());
+
+    /**
+     * openid -> 备注名
+     */
+    private final Map<String, String> remarks = new ConcurrentHashMap<String, String>();
+
+    /**
+     * 按到达顺序记录的素材上传
+     */
+    private final List<JsonObject> uploads = Collections.synchronizedList(new ArrayList<JsonObject>());
+
+    /**
+     * clientmsgid -> msg_id
+     */
+    private final Map<String, Long> massClientMsgIds = new ConcurrentHashMap<String, Long>();
+
+    /**
+     * msg_id -> 已查询状态的次数，第一次查询返回 SENDING，之后返回 SEND_SUCCESS
+     */
+    private final Map<Long, AtomicInteger> massStatusPolls = new ConcurrentHashMap<Long, AtomicInteger>();
+
+    /**
+     * media_id -> 可下载的素材，临时素材与永久素材共用
+     */
+    private final Map<String, Media> media = new ConcurrentHashMap<String, Media>();
+
+    private final JsonParser jsonParser = new JsonParser();
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    public WechatSimulator setAppid(String appid) {
+        this.appid = appid;
+        return this;
+    }
+
+    public String getAppid() {
+        return appid;
+    }
+
+    public WechatSimulator setAppsecret(String appsecret) {
+        this.appsecret = appsecret;
+        return this;
+    }
+
+    public String getAppsecret() {
+        return appsecret;
+    }
+
+    /**
+     * 监听端口，默认 0 由系统分配
+     */
+    public WechatSimulator setPort(int port) {
+        this.port = port;
+        return this;
+    }
+
+    /**
+     * 处理请求的线程数，配置了延迟时需要足够多的线程才能支撑高并发
+     */
+    public WechatSimulator setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    public WechatSimulator setFollowerCount(int followerCount) {
+        this.followerCount = followerCount;
+        return this;
+    }
+
+    public int getFollowerCount() {
+        return followerCount;
+    }
+
+    public WechatSimulator setExpiresIn(long expiresIn) {
+        this.expiresIn = expiresIn;
+        return this;
+    }
+
+    public WechatSimulator setTokenGraceMillis(long tokenGraceMillis) {
+        this.tokenGraceMillis = tokenGraceMillis;
+        return this;
+    }
+
+    /**
+     * 所有接口的响应延迟
+     * @param latencyMillis 固定延迟（毫秒）
+     * @param jitterMillis 在固定延迟上随机增加 [0, jitterMillis] 毫秒
+     */
+    public WechatSimulator setLatency(long latencyMillis, long jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        return this;
+    }
+
+    /**
+     * 指定接口的响应延迟，覆盖全局的固定延迟
+     * @param endpoint 接口路径或路径前缀，如 `cgi-bin/user/info/batchget`、`datacube/`
+     */
+    public WechatSimulator setLatency(String endpoint, long latencyMillis) {
+        this.endpointLatency.put(endpoint, latencyMillis);
+        return this;
+    }
+
+    /**
+     * 每日调用额度，超出后返回 45009
+     * @param endpoint 接口路径或路径前缀
+     */
+    public WechatSimulator setQuota(String endpoint, long limit) {
+        this.quotas.put(endpoint, limit);
+        this.quotaUsed.put(endpoint, new AtomicLong());
+        return this;
+    }
+
+    /**
+     * 清零已使用的额度，相当于进入新的一天
+     */
+    public WechatSimulator resetQuotas() {
+        for (AtomicLong used : quotaUsed.values()) {
+            used.set(0);
+        }
+        return this;
+    }
+
+    /**
+     * 接下来一次请求该接口时返回指定 errcode
+     */
+    public WechatSimulator failNext(String endpoint, int errcode, String errmsg) {
+        return failNext(endpoint, errcode, errmsg, 1);
+    }
+
+    /**
+     * 接下来 times 次请求该接口时返回指定 errcode
+     * @param endpoint 接口路径或路径前缀
+     */
+    public WechatSimulator failNext(String endpoint, int errcode, String errmsg, int times) {
+        Queue<Fault> queue = nextFaults.get(endpoint);
+        if (queue == null) {
+            nextFaults.put(endpoint, new ConcurrentLinkedQueue<Fault>());
+            queue = nextFaults.get(endpoint);
+        }
+        for (int i = 0; i < times; i++) {
+            queue.add(new Fault(errcode, errmsg, 1));
+        }
+        return this;
+    }
+
+    /**
+     * 请求该接口时按比例随机返回指定 errcode
+     * @param rate 0 到 1 之间的比例
+     */
+    public WechatSimulator setErrorRate(String endpoint, double rate, int errcode, String errmsg) {
+        this.faultRates.put(endpoint, new Fault(errcode, errmsg, rate));
+        return this;
+    }
+
+    /**
+     * 清除所有注入的错误
+     */
+    public WechatSimulator clearFaults() {
+        nextFaults.clear();
+        faultRates.clear();
+        return this;
+    }
+
+    /**
+     * 使已发放的全部 access token 过期，之后的请求返回 42001
+     */
+    public WechatSimulator expireAccessTokens() {
+        for (Map.Entry<String, Long> entry : tokens.entrySet()) {
+            entry.setValue(0L);
+        }
+        return this;
+    }
+
+    /**
+     * 添加可通过 `media/get`、`material/get_material` 下载的素材
+     * @param mediaId 媒体文件的ID
+     * @param contentType 响应的 Content-Type，为 application/json 时以JSON返回（如视频素材的 video_url）
+     * @param content 响应体
+     */
+    public WechatSimulator addMedia(String mediaId, String contentType, byte[] content) {
+        media.put(mediaId, new Media(contentType, content));
+        return this;
+    }
+
+    /**
+     * 创建标签
+     * @return 标签id，从 100 开始
+     */
+    public int createTag() {
+        int tagId = tagSequence.getAndIncrement();
+        tags.put(tagId, new ConcurrentSkipListSet<Integer>());
+        return tagId;
+    }
+
+    /**
+     * 为序号在 [fromIndex, toIndex) 之间的关注者打上标签
+     */
+    public WechatSimulator tagUsers(int tagId, int fromIndex, int toIndex) {
+        ConcurrentSkipListSet<Integer> members = tags.get(tagId);
+        if (members == null) {
+            throw new IllegalArgumentException("unknown tag " + tagId);
+        }
+        for (int i = fromIndex; i < toIndex; i++) {
+            members.add(i);
+        }
+        return this;
+    }
+
+    /**
+     * 标签下的用户数，标签不存在时为 -1
+     */
+    public int getTagMemberCount(int tagId) {
+        ConcurrentSkipListSet<Integer> members = tags.get(tagId);
+        return members == null ? -1 : members.size();
+    }
+
+    /**
+     * 成功发送给该用户的客服消息，按到达顺序排列
+     */
+    public List<JsonObject> getCustomMessages(String openid) {
+        return snapshot(customMessages.get(openid));
+    }
+
+    /**
+     * 成功发送给该用户的模板消息，按到达顺序排列
+     */
+    public List<JsonObject> getTemplateMessages(String openid) {
+        return snapshot(templateMessages.get(openid));
+    }
+
+    /**
+     * 已受理的群发任务，按到达顺序排列，请求体中加入了分配的 msg_id
+     */
+    public List<JsonObject> getMassMessages() {
+        return snapshot(massMessages);
+    }
+
+    /**
+     * 成功上传的素材，按到达顺序排列，含 media_id、type、filename、size（文件字节数）
+     * 与 content_length（请求头中的 Content-Length，分块传输时为 -1）；上传的文件可通过 `media/get` 下载
+     */
+    public List<JsonObject> getUploads() {
+        return snapshot(uploads);
+    }
+
+    private static List<JsonObject> snapshot(List<JsonObject> messages) {
+        if (messages == null) {
+            return new ArrayList<JsonObject>();
+        }
+        synchronized (messages) {
+            return new ArrayList<JsonObject>(messages);
+        }
+    }
+
+    /**
+     * 启动服务
+     */
+    public WechatSimulator start() throws IOException {
+        // 关闭 Nagle 算法，否则小响应会叠加 40ms 的延迟确认
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(host, port), 4096);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                dispatch(exchange);
+            }
+        });
+        final AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "wechat-simulator-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+        return this;
+    }
+
+    /**
+     * 替代 `https://api.weixin.qq.com/` 的地址，传给 `WechatAPI.setBaseUrl`
+     */
+    public String getBaseUrl() {
+        return "http://" + host + ":" + server.getAddress().getPort() + "/";
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    /**
+     * 接口收到的请求数（含被注入错误、超出额度的请求）
+     * @param endpoint 完整的接口路径，如 `cgi-bin/message/custom/send`
+     */
+    public long getRequestCount(String endpoint) {
+        AtomicLong count = requestCounts.get(endpoint);
+        return count == null ? 0 : count.get();
+    }
+
+    public long getTotalRequests() {
+        return totalRequests.get();
+    }
+
+    /**
+     * 第 index 个关注者的 openid
+     */
+    public static String openid(int index) {
+        String digits = Integer.toString(index);
+        StringBuilder sb = new StringBuilder(28).append("oSIM");
+        for (int i = digits.length(); i < 24; i++) {
+            sb.append('0');
+        }
+        return sb.append(digits).toString();
+    }
+
+    /**
+     * openid 对应的关注者序号，不是关注者时返回 -1
+     */
+    private int followerIndex(String openid) {
+        if (openid == null || openid.length() != 28 || !openid.startsWith("oSIM")) {
+            return -1;
+        }
+        try {
+            int index = Integer.parseInt(openid.substring(4));
+            return index < followerCount ? index : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static class Fault {
+        final int errcode;
+        final String errmsg;
+        final double rate;
+
+        Fault(int errcode, String errmsg, double rate) {
+            this.errcode = errcode;
+            this.errmsg = errmsg;
+            this.rate = rate;
+        }
+    }
+
+    /**
+     * 二进制响应
+     */
+    private static class Media {
+        final String contentType;
+        final byte[] content;
+
+        Media(String contentType, byte[] content) {
+            this.contentType = contentType;
+            this.content = content;
+        }
+    }
+
+    private static class Request {
+        String endpoint;
+        Map<String, String> query;
+        String contentType;
+        long contentLength;
+        byte[] body;
+    }
+
+    /**
+     * multipart/form-data 中的一部分
+     */
+    private static class FormPart {
+        String name;
+        String filename;
+        String contentType;
+        byte[] content;
+    }
+
+    private void dispatch(HttpExchange exchange) throws IOException {
+        try {
+            Request request = new Request();
+            request.endpoint = exchange.getRequestURI().getPath().substring(1);
+            request.query = parseQuery(exchange.getRequestURI().getRawQuery());
+            request.contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+            request.contentLength = contentLength == null ? -1 : Long.parseLong(contentLength);
+            request.body = readBody(exchange.getRequestBody());
+
+            totalRequests.incrementAndGet();
+            AtomicLong count = requestCounts.get(request.endpoint);
+            if (count == null) {
+                requestCounts.putIfAbsent(request.endpoint, new AtomicLong());
+                count = requestCounts.get(request.endpoint);
+            }
+            count.incrementAndGet();
+
+            delay(request.endpoint);
+            Object response = handle(request);
+            if (response instanceof Media) {
+                Media binary = (Media) response;
+                respond(exchange, 200, binary.contentType, binary.content);
+            } else {
+                respond(exchange, 200, response.toString().getBytes(UTF_8));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            respond(exchange, 500, error(-1, "system error").toString().getBytes(UTF_8));
+        }
+    }
+
+    /**
+     * @return JsonObject，或下载接口的 Media
+     */
+    private Object handle(Request request) {
+        String endpoint = request.endpoint;
+
+        Fault fault = injectedFault(endpoint);
+        if (fault != null) {
+            return error(fault.errcode, fault.errmsg);
+        }
+        if (endpoint.equals("cgi-bin/token")) {
+            return token(request);
+        }
+        JsonObject credential = checkAccessToken(request.query.get("access_token"));
+        if (credential != null) {
+            return credential;
+        }
+        if (!acquireQuota(endpoint)) {
+            return error(45009, "reach max api daily quota limit");
+        }
+
+        if (endpoint.equals("cgi-bin/ticket/getticket")) {
+            return ticket(request);
+        } else if (endpoint.equals("cgi-bin/message/custom/send")) {
+            return customSend(request);
+        } else if (endpoint.equals("cgi-bin/message/template/send")) {
+            return templateSend(request);
+        } else if (endpoint.equals("cgi-bin/message/mass/send")) {
+            return massSend(request);
+        } else if (endpoint.equals("cgi-bin/message/mass/sendall")) {
+            return massSendAll(request);
+        } else if (endpoint.equals("cgi-bin/message/mass/get")) {
+            return massStatus(request);
+        } else if (endpoint.equals("cgi-bin/user/get")) {
+            return followers(request);
+        } else if (endpoint.equals("cgi-bin/user/info")) {
+            return userInfo(request);
+        } else if (endpoint.equals("cgi-bin/user/info/updateremark")) {
+            return updateRemark(request);
+        } else if (endpoint.equals("cgi-bin/user/info/batchget")) {
+            return batchGetUsers(request);
+        } else if (endpoint.equals("cgi-bin/media/upload")) {
+            return uploadMedia(request, false);
+        } else if (endpoint.equals("cgi-bin/material/add_material")) {
+            return uploadMedia(request, true);
+        } else if (endpoint.equals("cgi-bin/media/get")) {
+            return downloadMedia(request.query.get("media_id"));
+        } else if (endpoint.equals("cgi-bin/material/get_material")) {
+            JsonObject body = parseBody(request);
+            if (body == null || !body.has("media_id")) {
+                return error(44002, "empty post data");
+            }
+            return downloadMedia(body.get("media_id").getAsString());
+        } else if (endpoint.startsWith("datacube/")) {
+            return datacube(request);
+        } else if (endpoint.startsWith("merchant/")) {
+            return merchant(request);
+        } else if (endpoint.equals("cgi-bin/tags/create")) {
+            return createTag(request);
+        } else if (endpoint.equals("cgi-bin/tags/delete")) {
+            return deleteTag(request);
+        } else if (endpoint.equals("cgi-bin/user/tag/get")) {
+            return tagMembers(request);
+        } else if (endpoint.equals("cgi-bin/tags/members/batchtagging")) {
+            return batchTagging(request, true);
+        } else if (endpoint.equals("cgi-bin/tags/members/batchuntagging")) {
+            return batchTagging(request, false);
+        } else if (endpoint.equals("cgi-bin/tags/getidlist")) {
+            return userTags(request);
+        } else if (endpoint.equals("cgi-bin/groups/members/batchupdate")) {
+            return moveUsersToGroup(request);
+        }
+        return error(48001, "api unauthorized, simulator does not serve " + endpoint);
+    }
+
+    private JsonObject token(Request request) {
+        if (!appid.equals(request.query.get("appid"))) {
+            return error(40013, "invalid appid");
+        }
+        if (!appsecret.equals(request.query.get("secret"))) {
+            return error(40125, "invalid appsecret");
+        }
+        long now = System.currentTimeMillis();
+        // 新 token 发放后，旧 token 在宽限期内仍然有效
+        Iterator<Map.Entry<String, Long>> it = tokens.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            if (entry.getValue() <= now) {
+                it.remove();
+            } else if (entry.getValue() > now + tokenGraceMillis) {
+                entry.setValue(now + tokenGraceMillis);
+            }
+        }
+        String token = "SIMTOKEN_" + sequence.incrementAndGet();
+        tokens.put(token, now + expiresIn * 1000);
+
+        JsonObject resp = new JsonObject();
+        resp.addProperty("access_token", token);
+        resp.addProperty("expires_in", expiresIn);
+        return resp;
+    }
+
+    private JsonObject checkAccessToken(String token) {
+        if (token == null || token.isEmpty()) {
+            return error(41001, "access_token missing");
+        }
+        Long expireAt = tokens.get(token);
+        if (expireAt == null) {
+            return error(40001, "invalid credential, access_token is invalid or not latest");
+        }
+        if (expireAt <= System.currentTimeMillis()) {
+            return error(42001, "access_token expired");
+        }
+        return null;
+    }
+
+    private JsonObject ticket(Request request) {
+        String type = request.query.get("type");
+        if (!"jsapi".equals(type) && !"wx_card".equals(type)) {
+            return error(40097, "invalid args");
+        }
+        JsonObject resp = ok();
+        resp.addProperty("ticket", "SIMTICKET_" + type + "_" + sequence.incrementAndGet());
+        resp.addProperty("expires_in", expiresIn);
+        return resp;
+    }
+
+    private JsonObject customSend(Request request) {
+        JsonObject body = parseBody(request);
+        if (body == null || !body.has("msgtype")) {
+            return error(44002, "empty post data");
+        }
+        if (!body.has("touser") || followerIndex(body.get("touser").getAsString()) < 0) {
+            return error(40003, "invalid openid");
+        }
+        String msgtype = body.get("msgtype").getAsString();
+        if (!body.has(msgtype)) {
+            return error(40008, "invalid message type");
+        }
+        record(customMessages, body.get("touser").getAsString(), body);
+        return ok();
+    }
+
+    private JsonObject templateSend(Request request) {
+        JsonObject body = parseBody(request);
+        if (body == null) {
+            return error(44002, "empty post data");
+        }
+        if (!body.has("touser") || followerIndex(body.get("touser").getAsString()) < 0) {
+            return error(40003, "invalid openid");
+        }
+        if (!body.has("template_id") || body.get("template_id").getAsString().isEmpty()) {
+            return error(40037, "invalid template_id");
+        }
+        record(templateMessages, body.get("touser").getAsString(), body);
+        JsonObject resp = ok();
+        resp.addProperty("msgid", sequence.incrementAndGet());
+        return resp;
+    }
+
+    private JsonObject massSend(Request request) {
+        JsonObject body = parseBody(request);
+        if (body == null || !body.has("msgtype")) {
+            return error(44002, "empty post data");
+        }
+        String msgtype = body.get("msgtype").getAsString();
+        if (!body.has(msgtype)) {
+            return error(40008, "invalid message type");
+        }
+        if (!body.has("touser") || !body.get("touser").isJsonArray()) {
+            return error(40130, "invalid openid list size, at least two openid");
+        }
+        JsonArray touser = body.getAsJsonArray("touser");
+        if (touser.size() < 2 || touser.size() > 10000) {
+            return error(40130, "invalid openid list size, at least two openid");
+        }
+        for (int i = 0; i < touser.size(); i++) {
+            if (followerIndex(touser.get(i).getAsString()) < 0) {
+                return error(40003, "invalid openid");
+            }
+        }
+        return acceptMass(body);
+    }
+
+    private JsonObject massSendAll(Request request) {
+        JsonObject body = parseBody(request);
+        if (body == null || !body.has("msgtype")) {
+            return error(44002, "empty post data");
+        }
+        String msgtype = body.get("msgtype").getAsString();
+        if (!body.has(msgtype)) {
+            return error(40008, "invalid message type");
+        }
+        if (!body.has("filter") || !body.get("filter").isJsonObject()) {
+            return error(40035, "invalid args, filter is required");
+        }
+        JsonObject filter = body.getAsJsonObject("filter");
+        boolean toAll = filter.has("is_to_all") && filter.get("is_to_all").getAsBoolean();
+        if (!toAll) {
+            if (!filter.has("tag_id")) {
+                return error(40035, "invalid args, tag_id is required");
+            }
+            int tagId;
+            try {
+                tagId = filter.get("tag_id").getAsInt();
+            } catch (NumberFormatException e) {
+                return error(45159, "invalid tag id");
+            }
+            if (!tags.containsKey(tagId)) {
+                return error(45159, "invalid tag id");
+            }
+        }
+        return acceptMass(body);
+    }
+
+    /**
+     * 受理群发任务，重复的 clientmsgid 返回 45065 及已有任务的 msg_id
+     */
+    private JsonObject acceptMass(JsonObject body) {
+        long msgId;
+        if (body.has("clientmsgid")) {
+            String clientMsgId = body.get("clientmsgid").getAsString();
+            Long existing;
+            synchronized (massClientMsgIds) {
+                existing = massClientMsgIds.get(clientMsgId);
+                msgId = existing != null ? existing : sequence.incrementAndGet();
+                massClientMsgIds.put(clientMsgId, msgId);
+            }
+            if (existing != null) {
+                JsonObject resp = error(45065, "clientmsgid exist");
+                resp.addProperty("msg_id", msgId);
+                return resp;
+            }
+        } else {
+            msgId = sequence.incrementAndGet();
+        }
+        massStatusPolls.put(msgId, new AtomicInteger());
+        body.addProperty("msg_id", msgId);
+        massMessages.add(body);
+        JsonObject resp = error(0, "send job submission success");
+        resp.addProperty("msg_id", msgId);
+        return resp;
+    }
+
+    private JsonObject massStatus(Request request) {
+        JsonObject body = parseBody(request);
+        if (body == null || !body.has("msg_id")) {
+            return error(44002, "empty post data");
+        }
+        long msgId;
+        try {
+            msgId = body.get("msg_id").getAsLong();
+        } catch (NumberFormatException e) {
+            return error(40007, "invalid msg_id");
+        }
+        AtomicInteger polls = massStatusPolls.get(msgId);
+        if (polls == null) {
+            return error(40007, "invalid msg_id");
+        }
+        JsonObject resp = new JsonObject();
+        resp.addProperty("msg_id", msgId);
+        resp.addProperty("msg_status", polls.getAndIncrement() == 0 ? "SENDING" : "SEND_SUCCESS");
+        return resp;
+    }
+
+    private static void record(Map<String, List<JsonObject>> store, String touser, JsonObject body) {
+        List<JsonObject> messages = store.get(touser);
+        if (messages == null) {
+            store.putIfAbsent(touser, Collections.synchronizedList(new ArrayList<JsonObject>()));
+            messages = store.get(touser);
+        }
+        messages.add(body);
+    }
+
+    private JsonObject followers(Request request) {
+        String next = request.query.get("next_openid");
+        int start = 0;
+        if (next != null && !next.isEmpty()) {
+            int index = followerIndex(next);
+            if (index < 0) {
+                return error(40003, "invalid openid");
+            }
+            start = index + 1;
+        }
+        int total = followerCount;
+        int end = Math.min(total, start + FOLLOWERS_PAGE_SIZE);
+
+        JsonArray openids = new JsonArray();
+        for (int i = start; i < end; i++) {
+            openids.add(openid(i));
+        }
+        JsonObject resp = new JsonObject();
+        resp.addProperty("total", total);
+        resp.addProperty("count", end - start);
+        if (end > start) {
+            JsonObject data = new JsonObject();
+            data.add("openid", openids);
+            resp.add("data", data);
+            resp.addProperty("next_openid", openid(end - 1));
+        } else {
+            resp.addProperty("next_openid", "");
+        }
+        return resp;
+    }
+
+    private JsonObject userInfo(Request request) {
+        int index = followerIndex(request.query.get("openid"));
+        if (index < 0) {
+            return error(40003, "invalid openid");
+        }
+        return user(index, request.query.get("lang"));
+    }
+
+    private JsonObject updateRemark(Request request) {
+        JsonObject body = parseBody(request);
+        if (body == null || !body.has("openid") || !body.has("remark")) {
+            return error(44002, "empty post data");
+        }
+        String openid = body.get("openid").getAsString();
+        if (followerIndex(openid) < 0) {
+            return error(40003, "invalid openid");
+        }
+        remarks.put(openid, body.get("remark").getAsString());
+        return ok();
+    }
+
+    private JsonObject batchGetUsers(Request request) {
+        JsonObject body = parseBody(request);
+        if (body == null || !body.has("user_list")) {
+            return error(44002, "empty post data");
+        }
+        JsonArray userList = body.getAsJsonArray("user_list");
+        if (userList.size() == 0 || userList.size() > BATCH_GET_LIMIT) {
+            return error(40032, "invalid openid list size");
+        }
+        JsonArray users = new JsonArray();
+        for (JsonElement item : userList) {
+            JsonObject query = item.getAsJsonObject();
+            int index = followerIndex(query.get("openid").getAsString());
+            if (index < 0) {
+                return error(40003, "invalid openid");
+            }
+            users.add(user(index, query.has("lang") ? query.get("lang").getAsString() : null));
+        }
+        JsonObject resp = new JsonObject();
+        resp.add("user_info_list", users);
+        return resp;
+    }
+
+    private JsonObject createTag(Request request) {
+        JsonObject body = parseBody(request);
+        if (body == null || !body.has("tag")) {
+            return error(44002, "empty post data");
+        }
+        int tagId = createTag();
+        JsonObject tag = new JsonObject();
+        tag.addProperty("id", tagId);
+        tag.add("name", body.getAsJsonObject("tag").get("name"));
+        JsonObject resp = new JsonObject();
+        resp.add("tag", tag);
+        return resp;
+    }
+
+    private JsonObject deleteTag(Request request) {
+        JsonObject body = parseBody(request);
+        if (body == null || !body.has("tag")) {
+            return error(44002, "empty post data");
+        }
+        if (tags.remove(body.getAsJsonObject("tag").get("id").getAsInt()) == null) {
+            return error(45159, "invalid tag id");
+        }
+        return ok();
+    }
+
+    private JsonObject tagMembers(Request request) {
+        JsonObject body = parseBody(request);
+        if (body == null || !body.has("tagid")) {
+            return error(44002, "empty post data");
+        }
+        ConcurrentSkipListSet<Integer> members = tags.get(body.get("tagid").getAsInt());
+        if (members == null) {
+            return error(45159, "invalid tag id");
+        }
+        String next = body.has("next_openid") ? body.get("next_openid").getAsString() : "";
+        int after = -1;
+        if (!next.isEmpty()) {
+            after = followerIndex(next);
+            if (after < 0) {
+                return error(40003, "invalid openid");
+            }
+        }
+
+        JsonArray openids = new JsonArray();
+        int last = after;
+        for (Integer index : members.tailSet(after, false)) {
+            if (openids.size() >= FOLLOWERS_PAGE_SIZE) {
+                break;
+            }
+            openids.add(openid(index));
+            last = index;
+        }
+        JsonObject resp = new JsonObject();
+        resp.addProperty("count", openids.size());
+        if (openids.size() > 0) {
+            JsonObject data = new JsonObject();
+            data.add("openid", openids);
+            resp.add("data", data);
+            resp.addProperty("next_openid", openid(last));
+        } else {
+            resp.addProperty("next_openid", "");
+        }
+        return resp;
+    }
+
+    private JsonObject batchTagging(Request request, boolean tagging) {
+        JsonObject body = parseBody(request);
+        if (body == null || !body.has("tagid") || !body.has("openid_list")) {
+            return error(44002, "empty post data");
+        }
+        ConcurrentSkipListSet<Integer> members = tags.get(body.get("tagid").getAsInt());
+        if (members == null) {
+            return error(45159, "invalid tag id");
+        }
+        JsonArray openidList = body.getAsJsonArray("openid_list");
+        if (openidList.size() == 0 || openidList.size() > BATCH_TAGGING_LIMIT) {
+            return error(40032, "invalid openid list size");
+        }
+        int[] indexes = new int[openidList.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = followerIndex(openidList.get(i).getAsString());
+            if (indexes[i] < 0) {
+                return error(40003, "invalid openid");
+            }
+        }
+        for (int index : indexes) {
+            if (tagging) {
+                members.add(index);
+            } else {
+                members.remove(index);
+            }
+        }
+        return ok();
+    }
+
+    private JsonObject moveUsersToGroup(Request request) {
+        JsonObject body = parseBody(request);
+        if (body == null || !body.has("openid_list") || !body.has("to_groupid")) {
+            return error(44002, "empty post data");
+        }
+        JsonArray openidList = body.getAsJsonArray("openid_list");
+        if (openidList.size() == 0 || openidList.size() > BATCH_TAGGING_LIMIT) {
+            return error(40032, "invalid openid list size");
+        }
+        for (JsonElement openid : openidList) {
+            if (followerIndex(openid.getAsString()) < 0) {
+                return error(40003, "invalid openid");
+            }
+        }
+        return ok();
+    }
+
+    private JsonObject userTags(Request request) {
+        JsonObject body = parseBody(request);
+        if (body == null || !body.has("openid")) {
+            return error(44002, "empty post data");
+        }
+        int index = followerIndex(body.get("openid").getAsString());
+        if (index < 0) {
+            return error(40003, "invalid openid");
+        }
+        JsonArray tagIds = new JsonArray();
+        for (Map.Entry<Integer, ConcurrentSkipListSet<Integer>> tag : tags.entrySet()) {
+            if (tag.getValue().contains(index)) {
+                tagIds.add(tag.getKey());
+            }
+        }
+        JsonObject resp = new JsonObject();
+        resp.add("tagid_list", tagIds);
+        return resp;
+    }
+
+    private JsonObject user(int index, String lang) {
+        JsonObject user = new JsonObject();
+        user.addProperty("subscribe", 1);
+        user.addProperty("openid", openid(index));
+        user.addProperty("nickname", "user" + index);
+        user.addProperty("sex", index % 3);
+        user.addProperty("language", lang == null ? "zh_CN" : lang);
+        user.addProperty("city", "广州");
+        user.addProperty("province", "广东");
+        user.addProperty("country", "中国");
+        user.addProperty("headimgurl", "http://thirdwx.qlogo.cn/mmopen/sim" + index + "/0");
+        user.addProperty("subscribe_time", 1500000000L + index);
+        String remark = remarks.get(openid(index));
+        user.addProperty("remark", remark == null ? "" : remark);
+        user.addProperty("groupid", 0);
+        user.add("tagid_list", new JsonArray());
+        user.addProperty("subscribe_scene", "ADD_SCENE_QR_CODE");
+        user.addProperty("qr_scene", 0);
+        user.addProperty("qr_scene_str", "");
+        return user;
+    }
+
+    private JsonObject uploadMedia(Request request, boolean permanent) {
+        String type = request.query.get("type");
+        if (!"image".equals(type) && !"voice".equals(type) && !"video".equals(type) && !"thumb".equals(type)) {
+            return error(40004, "invalid media type");
+        }
+        FormPart file = null;
+        Map<String, String> fields = new HashMap<String, String>();
+        for (FormPart part : parseMultipart(request)) {
+            if (part.filename != null) {
+                file = part;
+            } else {
+                fields.put(part.name, new String(part.content, UTF_8));
+            }
+        }
+        if (file == null || file.content.length == 0) {
+            return error(41005, "media data missing");
+        }
+        if (permanent && "video".equals(type) && !fields.containsKey("description")) {
+            return error(40005, "invalid video description");
+        }
+        String mediaId = (permanent ? "SIMMATERIAL_" : "SIMMEDIA_") + sequence.incrementAndGet();
+        media.put(mediaId, new Media(file.contentType != null ? file.contentType : "application/octet-stream", file.content));
+
+        JsonObject upload = new JsonObject();
+        upload.addProperty("media_id", mediaId);
+        upload.addProperty("type", type);
+        upload.addProperty("filename", file.filename);
+        upload.addProperty("size", file.content.length);
+        upload.addProperty("content_length", request.contentLength);
+        uploads.add(upload);
+
+        JsonObject resp = new JsonObject();
+        if (permanent) {
+            resp.addProperty("media_id", mediaId);
+            if ("image".equals(type)) {
+                resp.addProperty("url", "http://mmbiz.qpic.cn/mmbiz/" + mediaId + "/0");
+            }
+            return resp;
+        }
+        resp.addProperty("type", type);
+        resp.addProperty("thumb".equals(type) ? "thumb_media_id" : "media_id", mediaId);
+        resp.addProperty("created_at", System.currentTimeMillis() / 1000);
+        return resp;
+    }
+
+    /**
+     * 按 Content-Type 中的 boundary 拆分请求体，格式错误时返回已解析的部分
+     */
+    private static List<FormPart> parseMultipart(Request request) {
+        List<FormPart> parts = new ArrayList<FormPart>();
+        if (request.contentType == null || !request.contentType.startsWith("multipart/form-data")) {
+            return parts;
+        }
+        int index = request.contentType.indexOf("boundary=");
+        if (index < 0) {
+            return parts;
+        }
+        // ISO-8859-1 与字节一一对应，便于按分隔符定位
+        String body = new String(request.body, ISO_8859_1);
+        String delimiter = "--" + request.contentType.substring(index + "boundary=".length()).trim();
+        int start = body.indexOf(delimiter);
+        while (start >= 0) {
+            int headerStart = start + delimiter.length();
+            if (body.startsWith("--", headerStart)) {
+                break;
+            }
+            int headerEnd = body.indexOf("\r\n\r\n", headerStart);
+            int next = body.indexOf("\r\n" + delimiter, headerEnd);
+            if (headerEnd < 0 || next < 0) {
+                break;
+            }
+            FormPart part = new FormPart();
+            String headers = new String(request.body, headerStart, headerEnd - headerStart, UTF_8);
+            for (String header : headers.split("\r\n")) {
+                String lower = header.toLowerCase();
+                if (lower.startsWith("content-disposition:")) {
+                    part.name = headerParam(header, "name");
+                    part.filename = headerParam(header, "filename");
+                } else if (lower.startsWith("content-type:")) {
+                    part.contentType = header.substring("content-type:".length()).trim();
+                }
+            }
+            part.content = Arrays.copyOfRange(request.body, headerEnd + 4, next);
+            parts.add(part);
+            start = next + 2;
+        }
+        return parts;
+    }
+
+    private static String headerParam(String header, String param) {
+        String key = "; " + param + "=\"";
+        int index = header.indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        int end = header.indexOf('"', index + key.length());
+        return end < 0 ? null : header.substring(index + key.length(), end);
+    }
+
+    private Object downloadMedia(String mediaId) {
+        Media found = mediaId == null ? null : media.get(mediaId);
+        if (found == null) {
+            return error(40007, "invalid media_id");
+        }
+        return found;
+    }
+
+    /**
+     * 返回 begin_date 到 end_date 每天一条、指标为 0 的数据
+     */
+    private JsonObject datacube(Request request) {
+        JsonObject body = parseBody(request);
+        if (body == null || !body.has("begin_date") || !body.has("end_date")) {
+            return error(44002, "empty post data");
+        }
+        LocalDate begin;
+        LocalDate end;
+        try {
+            begin = LocalDate.parse(body.get("begin_date").getAsString());
+            end = LocalDate.parse(body.get("end_date").getAsString());
+        } catch (RuntimeException e) {
+            return error(40009, "invalid date");
+        }
+        if (end.isBefore(begin)) {
+            return error(61500, "date format error");
+        }
+        JsonArray list = new JsonArray();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            JsonObject item = new JsonObject();
+            item.addProperty("ref_date", date.toString());
+            item.addProperty("user_source", 0);
+            item.addProperty("new_user", 0);
+            item.addProperty("cancel_user", 0);
+            list.add(item);
+        }
+        JsonObject resp = new JsonObject();
+        resp.add("list", list);
+        return resp;
+    }
+
+    private JsonObject merchant(Request request) {
+        String path = request.endpoint.substring("merchant/".length());
+        JsonObject resp = new JsonObject();
+        resp.addProperty("errcode", 0);
+        resp.addProperty("errmsg", "success");
+        if (path.equals("create")) {
+            resp.addProperty("product_id", "pSIM_" + sequence.incrementAndGet());
+        } else if (path.equals("get")) {
+            JsonObject body = parseBody(request);
+            JsonObject product = new JsonObject();
+            product.addProperty("product_id", body != null && body.has("product_id") ? body.get("product_id").getAsString() : "");
+            product.add("product_base", new JsonObject());
+            product.addProperty("status", 1);
+            resp.add("product_info", product);
+        } else if (path.equals("getbystatus")) {
+            resp.add("products_info", new JsonArray());
+        } else if (path.equals("group/add")) {
+            resp.addProperty("group_id", sequence.incrementAndGet());
+        } else if (path.equals("group/getall")) {
+            resp.add("groups_detail", new JsonArray());
+        } else if (path.equals("shelf/add")) {
+            resp.addProperty("shelf_id", sequence.incrementAndGet());
+        } else if (path.equals("shelf/getall")) {
+            resp.add("shelves", new JsonArray());
+        } else if (path.equals("express/add")) {
+            resp.addProperty("template_id", sequence.incrementAndGet());
+        } else if (path.equals("express/getall")) {
+            resp.add("templates_info", new JsonArray());
+        } else if (path.equals("order/getbyfilter")) {
+            resp.add("order_list", new JsonArray());
+        } else if (path.equals("order/getbyid")) {
+            resp.add("order", new JsonObject());
+        } else if (path.equals("category/getsub")) {
+            resp.add("cate_list", new JsonArray());
+        } else if (path.equals("category/getsku")) {
+            resp.add("sku_table", new JsonArray());
+        } else if (path.equals("category/getproperty")) {
+            resp.add("properties", new JsonArray());
+        } else if (path.equals("common/upload_img")) {
+            resp.addProperty("image_url", "http://mmbiz.qpic.cn/mmbiz/sim" + sequence.incrementAndGet() + "/0");
+        }
+        return resp;
+    }
+
+    /**
+     * 取得匹配接口路径的配置，key 为完整路径或路径前缀
+     */
+    private static <T> T match(Map<String, T> config, String endpoint) {
+        if (config.isEmpty()) {
+            return null;
+        }
+        T value = config.get(endpoint);
+        if (value != null) {
+            return value;
+        }
+        for (Map.Entry<String, T> entry : config.entrySet()) {
+            if (endpoint.startsWith(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private Fault injectedFault(String endpoint) {
+        Queue<Fault> queue = match(nextFaults, endpoint);
+        if (queue != null) {
+            Fault fault = queue.poll();
+            if (fault != null) {
+                return fault;
+            }
+        }
+        Fault rate = match(faultRates, endpoint);
+        if (rate != null && ThreadLocalRandom.current().nextDouble() < rate.rate) {
+            return rate;
+        }
+        return null;
+    }
+
+    private boolean acquireQuota(String endpoint) {
+        if (quotas.isEmpty()) {
+            return true;
+        }
+        for (Map.Entry<String, Long> entry : quotas.entrySet()) {
+            if (endpoint.startsWith(entry.getKey())
+                    && quotaUsed.get(entry.getKey()).incrementAndGet() > entry.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void delay(String endpoint) throws InterruptedException {
+        Long fixed = match(endpointLatency, endpoint);
+        long millis = fixed != null ? fixed : latencyMillis;
+        if (jitterMillis > 0) {
+            millis += ThreadLocalRandom.current().nextLong(jitterMillis + 1);
+        }
+        if (millis > 0) {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        }
+    }
+
+    private JsonObject parseBody(Request request) {
+        if (request.body.length == 0) {
+            return null;
+        }
+        try {
+            JsonElement element = jsonParser.parse(new String(request.body, UTF_8));
+            return element.isJsonObject() ? element.getAsJsonObject() : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static JsonObject ok() {
+        return error(0, "ok");
+    }
+
+    private static JsonObject error(int errcode, String errmsg) {
+        JsonObject resp = new JsonObject();
+        resp.addProperty("errcode", errcode);
+        resp.addProperty("errmsg", errmsg);
+        return resp;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+        Map<String, String> query = new HashMap<String, String>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String param : rawQuery.split("&")) {
+            int eq = param.indexOf('=');
+            if (eq < 0) {
+                query.put(URLDecoder.decode(param, "UTF-8"), "");
+            } else {
+                query.put(URLDecoder.decode(param.substring(0, eq), "UTF-8"), URLDecoder.decode(param.substring(eq + 1), "UTF-8"));
+            }
+        }
+        return query;
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        respond(exchange, status, "application/json; charset=UTF-8", body);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(body);
+        } finally {
+            out.close();
+        }
+    }
+
+}